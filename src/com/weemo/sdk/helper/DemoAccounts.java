@@ -20,7 +20,8 @@ public final class DemoAccounts extends LinkedHashMap<String, String> {
 	/**
 	 * Initializes the {@link #ACCOUNTS} map.
 	 *
-	 * Change this to set your own list of demo accounts
+	 * Change this to set your own list of demo accounts,
+	 * or import them from a CSV or vCard file with the "Import contacts" menu (see ContactImporter)
 	 * These are the names the main characters of the manga "Monster" by Naoki Urasawa
 	 * Every UID must comply to the Weemo naming rules:
 	 * https://github.com/weemo/Release-4.x/wiki/WeemoDriver-Naming#token
@@ -0,0 +1,572 @@
+package com.weemo.sdk.helper.avatar;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import com.weemo.sdk.helper.R;
+
+/**
+ * Two level cache of contact avatars.
+ *
+ * Avatars are downloaded from R.string.avatar_url (followed by the user ID) into a disk cache,
+ * bounded to {@link #DISK_MAX_SIZE} bytes (least recently used files are deleted first).
+ * They are decoded downsampled to the size at which they are displayed, and kept in a memory LRU cache
+ * bounded to an eighth of the application memory class.
+ *
+ * Downloading and decoding happen on a background thread, one avatar at a time, and only for avatars that are still wanted:
+ * a list row that was recycled for another contact while its avatar was waiting does not cause a decode.
+ * Contacts that have no avatar are remembered, so that they are not asked for again.
+ * Downloads that fail are remembered for {@link #FAILED_BACKOFF}, during which neither they nor any other download are retried:
+ * when the server cannot be reached, each attempt would otherwise wait for {@link #TIMEOUT} on the single background thread.
+ *
+ * This object must be used from the UI thread.
+ */
+public class AvatarCache {
+
+	/** Log tag for Log.* */
+	private static final String LOGTAG = "AvatarCache";
+
+	/** Maximum size, in bytes, of the disk cache */
+	public static final long DISK_MAX_SIZE = 8 * 1024 * 1024;
+
+	/** Maximum number of remembered contacts without avatar */
+	private static final int NO_AVATAR_MAX_SIZE = 1024;
+
+	/** Connection and read timeout, in milliseconds */
+	private static final int TIMEOUT = 10000;
+
+	/** Time, in milliseconds, during which a failed download is not retried */
+	public static final long FAILED_BACKOFF = 60000;
+
+	/**
+	 * Interface that objects asking for an avatar must implement
+	 */
+	public static interface Callback {
+		/**
+		 * Used to give an avatar, on the UI thread.
+		 * Not called if the contact has no avatar.
+		 *
+		 * @param uid The user ID of the contact
+		 * @param avatar The avatar, decoded at the asked size
+		 */
+		public void onAvatar(String uid, Bitmap avatar);
+
+		/**
+		 * Used, on the background thread, to know if an avatar is still wanted before it is loaded
+		 *
+		 * @param uid The user ID of the contact
+		 * @return Whether the avatar is still wanted
+		 */
+		public boolean isWaitingFor(String uid);
+	}
+
+	/**
+	 * Callback of an ImageView bound to a contact with {@link AvatarCache#bind(ImageView, String, Drawable)}
+	 */
+	private static final class ViewTarget implements Callback {
+
+		/** The bound view */
+		final ImageView view;
+
+		/** The user ID of the contact currently bound to the view */
+		volatile String uid = "";
+
+		/**
+		 * Constructor
+		 *
+		 * @param view The bound view
+		 */
+		ViewTarget(final ImageView view) {
+			this.view = view;
+		}
+
+		@Override
+		public void onAvatar(final String avatarUid, final Bitmap avatar) {
+			if (avatarUid.equals(this.uid)) {
+				this.view.setImageBitmap(avatar);
+			}
+		}
+
+		@Override
+		public boolean isWaitingFor(final String avatarUid) {
+			return avatarUid.equals(this.uid);
+		}
+	}
+
+	/**
+	 * Loads an avatar on the background thread
+	 */
+	private final class Job implements Runnable {
+
+		/** User ID of the contact */
+		final String uid;
+
+		/** Size, in pixels, at which to decode */
+		final int size;
+
+		/** Key in the memory cache and in the pending jobs */
+		final String key;
+
+		/**
+		 * Constructor
+		 *
+		 * @param uid User ID of the contact
+		 * @param size Size, in pixels, at which to decode
+		 */
+		Job(final String uid, final int size) {
+			this.uid = uid;
+			this.size = size;
+			this.key = key(uid, size);
+		}
+
+		@Override
+		public void run() {
+			if (!isWanted(this.key, this.uid)) {
+				complete(this.key, this.uid, null);
+				return ;
+			}
+
+			Bitmap avatar = null;
+			try {
+				final File file = fetch(this.uid);
+				if (file != null) {
+					avatar = decode(file, this.size);
+					if (avatar == null) {
+						Log.w(LOGTAG, "Could not decode the avatar of " + this.uid);
+						deleteFile(file);
+					}
+				}
+				if (avatar == null) {
+					AvatarCache.this.noAvatar.put(this.uid, Boolean.TRUE);
+				}
+				else {
+					AvatarCache.this.memory.put(this.key, avatar);
+				}
+			}
+			catch (IOException e) {
+				// Not remembered as without avatar: it may work after the backoff
+				AvatarCache.this.failed.put(this.uid, Long.valueOf(SystemClock.uptimeMillis()));
+				Log.w(LOGTAG, "Could not download the avatar of " + this.uid + ": " + e.getMessage());
+			}
+			complete(this.key, this.uid, avatar);
+		}
+	}
+
+	/** The cache used by the application, created on first use */
+	private static @CheckForNull AvatarCache instance; // = null;
+
+	/** URL to which user IDs are appended to get avatars, empty if there are no avatars */
+	private final String baseUrl;
+
+	/** Directory of the disk cache */
+	private final File dir;
+
+	/** Decoded avatars ("uid@size" => bitmap), bounded by their size in bytes */
+	final LruCache<String, Bitmap> memory;
+
+	/** User IDs of the contacts that have no avatar */
+	final LruCache<String, Boolean> noAvatar = new LruCache<String, Boolean>(NO_AVATAR_MAX_SIZE);
+
+	/** User IDs of the contacts whose avatar could not be downloaded => when it failed (from SystemClock.uptimeMillis()) */
+	final LruCache<String, Long> failed = new LruCache<String, Long>(NO_AVATAR_MAX_SIZE);
+
+	/** Pending jobs ("uid@size" => the callbacks waiting for them); accessed from both threads, synchronized on itself */
+	private final Map<String, List<Callback>> pending = new HashMap<String, List<Callback>>();
+
+	/** UI thread handler, on which callbacks are called */
+	private final Handler handler = new Handler(Looper.getMainLooper());
+
+	/** Background thread handler, on which jobs run */
+	private final Handler worker;
+
+	/** Size of the disk cache, in bytes, computed on first write (accessed from the background thread only) */
+	private long diskSize = -1;
+
+	/** Time (from SystemClock.uptimeMillis()) before which the server is not asked again, because a download failed (accessed from the background thread only) */
+	private long retryTime; // = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param context Any context of the application
+	 */
+	protected AvatarCache(final Context context) {
+		this.baseUrl = context.getString(R.string.avatar_url);
+		this.dir = new File(context.getCacheDir(), "avatars");
+
+		final int memoryClass = ((ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE)).getMemoryClass();
+		this.memory = new LruCache<String, Bitmap>(memoryClass * 1024 * 1024 / 8) {
+			@Override protected int sizeOf(final String key, final Bitmap value) {
+				return value.getByteCount();
+			}
+		};
+
+		final HandlerThread thread = new HandlerThread("AvatarCache", Process.THREAD_PRIORITY_BACKGROUND);
+		thread.start();
+		this.worker = new Handler(thread.getLooper());
+	}
+
+	/**
+	 * Get the cache used by the application
+	 *
+	 * @param context Any context of the application
+	 * @return The application avatar cache
+	 */
+	public static AvatarCache instance(final Context context) {
+		if (instance == null) {
+			instance = new AvatarCache(context.getApplicationContext());
+		}
+		return instance;
+	}
+
+	/**
+	 * @param uid User ID of the contact
+	 * @param size Size of the avatar, in pixels
+	 * @return The key of the avatar in the memory cache
+	 */
+	static String key(final String uid, final int size) {
+		return uid + "@" + size;
+	}
+
+	/**
+	 * Get an avatar if it is in memory
+	 *
+	 * @param uid User ID of the contact
+	 * @param size Size of the avatar, in pixels
+	 * @return The avatar, or null if it is not in memory
+	 */
+	public @CheckForNull Bitmap getCached(final String uid, final int size) {
+		return this.memory.get(key(uid, size));
+	}
+
+	/**
+	 * Asks for an avatar.
+	 * If it is in memory, the callback is called immediately.
+	 * Otherwise it is called later, unless the contact has no avatar.
+	 *
+	 * @param uid User ID of the contact
+	 * @param size Size of the avatar, in pixels
+	 * @param callback The callback to call with the avatar
+	 */
+	public void load(final String uid, final int size, final Callback callback) {
+		final Bitmap cached = getCached(uid, size);
+		if (cached != null) {
+			callback.onAvatar(uid, cached);
+			return ;
+		}
+		if (TextUtils.isEmpty(this.baseUrl) || this.noAvatar.get(uid) != null) {
+			return ;
+		}
+		final Long failedTime = this.failed.get(uid);
+		if (failedTime != null && SystemClock.uptimeMillis() - failedTime.longValue() < FAILED_BACKOFF) {
+			return ;
+		}
+
+		final String key = key(uid, size);
+		synchronized (this.pending) {
+			List<Callback> callbacks = this.pending.get(key);
+			if (callbacks == null) {
+				callbacks = new ArrayList<Callback>(1);
+				this.pending.put(key, callbacks);
+				this.worker.post(new Job(uid, size));
+			}
+			if (!callbacks.contains(callback)) {
+				callbacks.add(callback);
+			}
+		}
+	}
+
+	/**
+	 * Removes a callback from all the avatars it waits for
+	 *
+	 * @param callback The callback to remove
+	 */
+	public void cancel(final Callback callback) {
+		synchronized (this.pending) {
+			for (final List<Callback> callbacks : this.pending.values()) {
+				callbacks.remove(callback);
+			}
+		}
+	}
+
+	/**
+	 * Displays the avatar of a contact in an ImageView.
+	 * The placeholder is displayed until the avatar is loaded, or if the contact has no avatar.
+	 * The avatar is decoded at the width of the view layout params (or R.dimen.avatar_size if it is not fixed).
+	 * A view can be bound again to another contact (which is what list rows do), the previous avatar is then ignored.
+	 *
+	 * @param view The view
+	 * @param uid User ID of the contact
+	 * @param placeholder Drawable displayed when the avatar is not loaded
+	 */
+	public void bind(final ImageView view, final String uid, final Drawable placeholder) {
+		final int width = view.getLayoutParams() == null ? 0 : view.getLayoutParams().width;
+		final int size = width > 0 ? width : view.getResources().getDimensionPixelSize(R.dimen.avatar_size);
+
+		ViewTarget target = (ViewTarget) view.getTag(R.id.avatar_target);
+		if (target == null) {
+			target = new ViewTarget(view);
+			view.setTag(R.id.avatar_target, target);
+		}
+		target.uid = uid;
+
+		final Bitmap cached = getCached(uid, size);
+		if (cached != null) {
+			view.setImageBitmap(cached);
+			return ;
+		}
+		view.setImageDrawable(placeholder);
+		load(uid, size, target);
+	}
+
+	/**
+	 * Checks, on the background thread, whether a callback still waits for an avatar
+	 *
+	 * @param key The key of the avatar
+	 * @param uid The user ID of the contact
+	 * @return Whether the avatar is still wanted
+	 */
+	boolean isWanted(final String key, final String uid) {
+		synchronized (this.pending) {
+			final List<Callback> callbacks = this.pending.get(key);
+			if (callbacks == null) {
+				return false;
+			}
+			for (final Callback callback : callbacks) {
+				if (callback.isWaitingFor(uid)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Ends a job and gives its avatar to its callbacks, on the UI thread
+	 *
+	 * @param key The key of the avatar
+	 * @param uid The user ID of the contact
+	 * @param avatar The avatar, or null if there is none
+	 */
+	void complete(final String key, final String uid, final @CheckForNull Bitmap avatar) {
+		final List<Callback> callbacks;
+		synchronized (this.pending) {
+			callbacks = this.pending.remove(key);
+		}
+		if (avatar == null || callbacks == null) {
+			return ;
+		}
+		this.handler.post(new Runnable() {
+			@Override public void run() {
+				for (final Callback callback : callbacks) {
+					callback.onAvatar(uid, avatar);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Get the avatar file of a contact, downloading it if it is not in the disk cache
+	 *
+	 * @param uid User ID of the contact
+	 * @return The avatar file, or null if the contact has no avatar
+	 * @throws IOException If the avatar could not be downloaded, or a download failed less than {@link #FAILED_BACKOFF} ago
+	 */
+	@CheckForNull File fetch(final String uid) throws IOException {
+		final String encoded = URLEncoder.encode(uid, "UTF-8");
+		final File file = new File(this.dir, encoded);
+		if (file.exists()) {
+			// Keeps the file the most recently used
+			file.setLastModified(System.currentTimeMillis());
+			return file;
+		}
+
+		if (SystemClock.uptimeMillis() < this.retryTime) {
+			throw new IOException("A download failed less than " + FAILED_BACKOFF + "ms ago");
+		}
+		final boolean downloaded;
+		try {
+			downloaded = download(encoded, file);
+		}
+		catch (IOException e) {
+			this.retryTime = SystemClock.uptimeMillis() + FAILED_BACKOFF;
+			throw e;
+		}
+		if (!downloaded) {
+			return null;
+		}
+
+		addToDisk(file.length());
+		return file;
+	}
+
+	/**
+	 * Downloads an avatar into the disk cache
+	 *
+	 * @param encoded The URL encoded user ID of the contact
+	 * @param file The file in which to save the avatar
+	 * @return Whether the avatar was downloaded, false if the contact has no avatar
+	 * @throws IOException If the avatar could not be downloaded
+	 */
+	private boolean download(final String encoded, final File file) throws IOException {
+		final HttpURLConnection connection = (HttpURLConnection) new URL(this.baseUrl + encoded).openConnection();
+		try {
+			connection.setConnectTimeout(TIMEOUT);
+			connection.setReadTimeout(TIMEOUT);
+			final int code = connection.getResponseCode();
+			if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+				return false;
+			}
+			if (code != HttpURLConnection.HTTP_OK) {
+				throw new IOException("Avatar server answered " + code);
+			}
+
+			if (!this.dir.isDirectory() && !this.dir.mkdirs()) {
+				throw new IOException("Could not create " + this.dir);
+			}
+			final File tmpFile = new File(this.dir, encoded + ".tmp");
+			final InputStream input = connection.getInputStream();
+			try {
+				final OutputStream output = new FileOutputStream(tmpFile);
+				try {
+					final byte[] buffer = new byte[8192];
+					int read;
+					while ((read = input.read(buffer)) != -1) {
+						output.write(buffer, 0, read);
+					}
+				}
+				finally {
+					output.close();
+				}
+			}
+			finally {
+				input.close();
+			}
+			if (!tmpFile.renameTo(file)) {
+				tmpFile.delete();
+				throw new IOException("Could not rename " + tmpFile);
+			}
+		}
+		finally {
+			connection.disconnect();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Decodes an avatar, downsampled so that its smallest side is a size.
+	 * The image is first subsampled by the greatest power of 2 that keeps it larger than the size,
+	 * so that the full size image is never allocated, then scaled to the size.
+	 *
+	 * @param file The avatar file
+	 * @param size The size, in pixels
+	 * @return The avatar, or null if it could not be decoded
+	 */
+	static @CheckForNull Bitmap decode(final File file, final int size) {
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeFile(file.getPath(), options);
+		if (options.outWidth <= 0 || options.outHeight <= 0) {
+			return null;
+		}
+
+		int sampleSize = 1;
+		while (options.outWidth / (sampleSize * 2) >= size && options.outHeight / (sampleSize * 2) >= size) {
+			sampleSize *= 2;
+		}
+		options.inJustDecodeBounds = false;
+		options.inSampleSize = sampleSize;
+		final Bitmap sampled = BitmapFactory.decodeFile(file.getPath(), options);
+		if (sampled == null || Math.min(sampled.getWidth(), sampled.getHeight()) <= size) {
+			return sampled;
+		}
+
+		final float scale = (float) size / Math.min(sampled.getWidth(), sampled.getHeight());
+		final Bitmap scaled = Bitmap.createScaledBitmap(sampled, Math.round(sampled.getWidth() * scale), Math.round(sampled.getHeight() * scale), true);
+		if (scaled != sampled) {
+			sampled.recycle();
+		}
+		return scaled;
+	}
+
+	/**
+	 * Deletes a file of the disk cache
+	 *
+	 * @param file The file to delete
+	 */
+	void deleteFile(final File file) {
+		final long length = file.length();
+		if (file.delete() && this.diskSize != -1) {
+			this.diskSize -= length;
+		}
+	}
+
+	/**
+	 * Accounts for a new file of the disk cache, and deletes the least recently used files if the cache is too big
+	 *
+	 * @param length The size of the new file
+	 */
+	private void addToDisk(final long length) {
+		if (this.diskSize != -1 && this.diskSize + length <= DISK_MAX_SIZE) {
+			this.diskSize += length;
+			return ;
+		}
+
+		// Size unknown yet, or too big: counts the files (including the new one)
+		final File[] files = this.dir.listFiles();
+		if (files == null) {
+			return ;
+		}
+
+		this.diskSize = 0;
+		for (final File file : files) {
+			this.diskSize += file.length();
+		}
+		if (this.diskSize <= DISK_MAX_SIZE) {
+			return ;
+		}
+
+		// Trims to three quarters, so that trimming does not happen at each download
+		Arrays.sort(files, new Comparator<File>() {
+			@Override public int compare(final File lhs, final File rhs) {
+				final long diff = lhs.lastModified() - rhs.lastModified();
+				return diff < 0 ? -1 : (diff == 0 ? 0 : 1);
+			}
+		});
+		final Iterator<File> it = Arrays.asList(files).iterator();
+		while (this.diskSize > DISK_MAX_SIZE * 3 / 4 && it.hasNext()) {
+			deleteFile(it.next());
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package com.weemo.sdk.helper.avatar;
+
+import java.util.Locale;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Avatar placeholder: the initials of a contact in a colored disc.
+ *
+ * The color is computed from the user ID, so a contact always gets the same one.
+ * Nothing is allocated when drawing, and a drawable can be reused for another contact with
+ * {@link #setContact(String, String)}, so list rows can keep one each.
+ */
+public class InitialsDrawable extends Drawable {
+
+	/** Disc colors (Holo palette) */
+	private static final int[] COLORS = {
+		0xFF33B5E5, 0xFFAA66CC, 0xFF99CC00, 0xFFFFBB33, 0xFFFF4444,
+		0xFF0099CC, 0xFF9933CC, 0xFF669900, 0xFFFF8800, 0xFFCC0000
+	};
+
+	/** Paint of the disc */
+	private final Paint discPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+	/** Paint of the initials */
+	private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+	/** The displayed initials */
+	private String initials = "";
+
+	/** Intrinsic width and height, -1 to fill the bounds */
+	private final int intrinsicSize;
+
+	/**
+	 * Constructor
+	 *
+	 * @param intrinsicSize Intrinsic width and height in pixels, -1 to fill the bounds
+	 */
+	public InitialsDrawable(final int intrinsicSize) {
+		this.intrinsicSize = intrinsicSize;
+		this.textPaint.setColor(0xFFFFFFFF);
+		this.textPaint.setTextAlign(Paint.Align.CENTER);
+		this.textPaint.setFakeBoldText(true);
+	}
+
+	/**
+	 * Displays the initials of a contact
+	 *
+	 * @param displayName The display name of the contact
+	 * @param uid The user ID of the contact, which determines the color
+	 */
+	public void setContact(final String displayName, final String uid) {
+		this.initials = initials(displayName);
+		this.discPaint.setColor(COLORS[(uid.hashCode() & 0x7FFFFFFF) % COLORS.length]);
+		invalidateSelf();
+	}
+
+	/**
+	 * Get the initials of a name: the first letter of its first and last words
+	 *
+	 * @param name The name
+	 * @return Its initials, upper cased, at most 2 characters
+	 */
+	static String initials(final String name) {
+		final String trimmed = name.trim();
+		if (trimmed.isEmpty()) {
+			return "";
+		}
+		final int lastSpace = trimmed.lastIndexOf(' ');
+		final String initials = lastSpace == -1 ? trimmed.substring(0, 1) : "" + trimmed.charAt(0) + trimmed.charAt(lastSpace + 1);
+		return initials.toUpperCase(Locale.getDefault());
+	}
+
+	@Override
+	public void draw(final Canvas canvas) {
+		final Rect bounds = getBounds();
+		final float radius = Math.min(bounds.width(), bounds.height()) / 2f;
+		canvas.drawCircle(bounds.exactCenterX(), bounds.exactCenterY(), radius, this.discPaint);
+
+		this.textPaint.setTextSize(radius * 0.8f);
+		final float baseline = bounds.exactCenterY() - (this.textPaint.ascent() + this.textPaint.descent()) / 2;
+		canvas.drawText(this.initials, bounds.exactCenterX(), baseline, this.textPaint);
+	}
+
+	@Override
+	public int getIntrinsicWidth() {
+		return this.intrinsicSize;
+	}
+
+	@Override
+	public int getIntrinsicHeight() {
+		return this.intrinsicSize;
+	}
+
+	@Override
+	public void setAlpha(final int alpha) {
+		this.discPaint.setAlpha(alpha);
+		this.textPaint.setAlpha(alpha);
+		invalidateSelf();
+	}
+
+	@Override
+	public void setColorFilter(final ColorFilter filter) {
+		this.discPaint.setColorFilter(filter);
+		this.textPaint.setColorFilter(filter);
+		invalidateSelf();
+	}
+
+	@Override
+	public int getOpacity() {
+		return PixelFormat.TRANSLUCENT;
+	}
+}
@@ -20,6 +20,7 @@ import com.weemo.sdk.event.global.CanCreateCallChangedEvent.Error;
 import com.weemo.sdk.helper.R;
 import com.weemo.sdk.helper.call.CallFragment.TouchType;
 import com.weemo.sdk.helper.contacts.ContactsActivity;
+import com.weemo.sdk.helper.event.HelperEventBus;
 
 /**
  * This is the activity in which calls will take place for phone devices.
@@ -78,14 +79,14 @@ public class CallActivity extends Activity implements DialogInterface.OnCancelLi
 				.commit();
 		}
 
-		// Register as event listener
-		Weemo.eventBus().register(this);
+		// Register as event listener of this call only
+		HelperEventBus.instance().register(this, callId);
 	}
 
 	@Override
 	public void onDestroy() {
 		// Unregister as event listener
-		Weemo.eventBus().unregister(this);
+		HelperEventBus.instance().unregister(this);
 
 		// When we leave this activity, we stop the video.
 		if (this.call != null) {
@@ -108,17 +109,13 @@ public class CallActivity extends Activity implements DialogInterface.OnCancelLi
 	 * This listener catches CallStatusChangedEvent
 	 * 1. It is annotated with @WeemoEventListener
 	 * 2. It takes one argument which type is CallStatusChangedEvent
-	 * 3. It's activity object has been registered with Weemo.getEventBus().register(this) in onCreate()
+	 * 3. It's activity object has been registered with HelperEventBus.instance().register(this, callId) in onCreate()
+	 *    so it only receives the events of the call we are monitoring
 	 *
 	 * @param event The event
 	 */
 	@WeemoEventListener
 	public void onCallStatusChanged(final CallStatusChangedEvent event) {
-		// First, we check that this event concerns the call we are monitoring
-		if (event.getCall().getCallId() != this.call.getCallId()) {
-			return ;
-		}
-
 		// If the call has ended, we finish the activity (as this activity is only for an active call)
 		if (event.getCallStatus() == CallStatus.ENDED) {
 			finish();
@@ -129,7 +126,7 @@ public class CallActivity extends Activity implements DialogInterface.OnCancelLi
 	 * This listener catches CallStatusChangedEvent
 	 * 1. It is annotated with @WeemoEventListener
 	 * 2. It takes one argument which type is CallStatusChangedEvent
-	 * 3. It's activity object has been registered with Weemo.getEventBus().register(this) in onCreate()
+	 * 3. It's activity object has been registered with HelperEventBus.instance().register(this) in onCreate()
 	 *
 	 * @param event The event
 	 */
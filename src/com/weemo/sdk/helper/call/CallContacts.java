@@ -0,0 +1,219 @@
+package com.weemo.sdk.helper.call;
+
+import javax.annotation.CheckForNull;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+import com.weemo.sdk.WeemoCall;
+import com.weemo.sdk.WeemoCall.CallStatus;
+import com.weemo.sdk.WeemoEngine;
+import com.weemo.sdk.event.WeemoEventListener;
+import com.weemo.sdk.event.call.CallCreatedEvent;
+import com.weemo.sdk.event.call.CallStatusChangedEvent;
+import com.weemo.sdk.event.global.CanCreateCallChangedEvent;
+import com.weemo.sdk.helper.directory.ContactDirectories;
+import com.weemo.sdk.helper.directory.ContactDirectory;
+import com.weemo.sdk.helper.directory.ContactSearchIndex;
+import com.weemo.sdk.helper.event.HelperEventBus;
+import com.weemo.sdk.helper.stats.CallSetupTracker;
+
+/**
+ * Knows the user ID of the contact of each call.
+ *
+ * A WeemoCall only gives the display name of the contact.
+ * For outgoing calls made with {@link #createCall(WeemoEngine, String)}, the called user ID is remembered
+ * and given to the next created call, if it is outgoing and created within {@link #PENDING_TIMEOUT}.
+ * It is forgotten if the engine reports that calls cannot be created.
+ * For other calls, the user ID is looked up in the contact directory, by display name.
+ * The user ID of a call is forgotten once it has ended (after the other listeners of its ENDED status had a chance to ask for it).
+ *
+ * This object must be used from the UI thread.
+ */
+public final class CallContacts {
+
+	/** Time, in milliseconds, after which a called user ID that did not get its call is forgotten */
+	public static final long PENDING_TIMEOUT = 10000;
+
+	/** Number of name index entries materialized at a time when looking up a display name */
+	private static final int LOOKUP_CHUNK = 64;
+
+	/** The registry used by the application, created on first use */
+	private static @CheckForNull CallContacts instance; // = null;
+
+	/** The user ID being called, until its call is created */
+	private @CheckForNull String pendingUid; // = null;
+
+	/** When the pending user ID was called (from SystemClock.uptimeMillis()) */
+	private long pendingTime; // = 0;
+
+	/** ID of the call that was given the pending user ID, until it is known to be outgoing (PROCEEDING), -1 if none */
+	private int pendingCallId = -1;
+
+	/** Call ID => contact user ID */
+	private final SparseArray<String> uids = new SparseArray<String>();
+
+	/** UI thread handler, on which the user IDs of ended calls are forgotten */
+	private final Handler handler = new Handler(Looper.getMainLooper());
+
+	/**
+	 * Constructor.
+	 * Registers itself as event listener.
+	 */
+	private CallContacts() {
+		HelperEventBus.instance().register(this);
+	}
+
+	/**
+	 * Get the registry used by the application
+	 *
+	 * @return The application registry
+	 */
+	public static CallContacts instance() {
+		if (instance == null) {
+			instance = new CallContacts();
+		}
+		return instance;
+	}
+
+	/**
+	 * Calls a contact, remembering its user ID for the call that will be created.
+	 * The setup of the call is timed from here by the {@link CallSetupTracker}.
+	 *
+	 * @param weemo The Weemo engine
+	 * @param uid The user ID to call
+	 */
+	public void createCall(final WeemoEngine weemo, final String uid) {
+		this.pendingUid = uid;
+		this.pendingTime = SystemClock.uptimeMillis();
+		CallSetupTracker.instance().createCalled();
+		weemo.createCall(uid);
+	}
+
+	/**
+	 * Get the user ID of the contact of a call
+	 *
+	 * @param context Any context of the application, used to find the directory
+	 * @param call The call
+	 * @return The user ID of the contact, or null if it is unknown
+	 */
+	public @CheckForNull String getUid(final Context context, final WeemoCall call) {
+		String uid = this.uids.get(call.getCallId());
+		if (uid == null) {
+			uid = findByDisplayName(context, call.getContactDisplayName());
+			if (uid != null) {
+				this.uids.put(call.getCallId(), uid);
+			}
+		}
+		return uid;
+	}
+
+	/**
+	 * Looks up a contact by display name in the contact directory
+	 *
+	 * @param context Any context of the application
+	 * @param displayName The display name
+	 * @return The user ID of the first contact with this display name (or user ID), or null if none
+	 */
+	private static @CheckForNull String findByDisplayName(final Context context, final String displayName) {
+		final ContactSearchIndex index = ContactDirectories.getSearchIndex(context);
+		final ContactDirectory directory = index.getDirectory();
+
+		// Results are materialized chunk by chunk, and the lookup stops at the first match
+		final ContactSearchIndex.Query query = index.query(displayName, null, -1);
+		int checked = 0;
+		while (true) {
+			for (; checked < query.size(); ++checked) {
+				final int position = query.positionAt(checked);
+				if (displayName.equals(directory.getDisplayName(position)) || displayName.equals(directory.getId(position))) {
+					return directory.getId(position);
+				}
+			}
+			if (query.isComplete()) {
+				return null;
+			}
+			query.advance(LOOKUP_CHUNK);
+		}
+	}
+
+	/**
+	 * This listener method catches CallCreatedEvent
+	 * 1. It is annotated with @WeemoEventListener
+	 * 2. It takes one argument which type is CallCreatedEvent
+	 * 3. It's object has been registered with HelperEventBus.instance().register(this) in its constructor
+	 *
+	 * @param event The event
+	 */
+	@WeemoEventListener
+	public void onCallCreated(final CallCreatedEvent event) {
+		final WeemoCall call = event.getCall();
+		final String uid = this.pendingUid;
+		// An incoming call is RINGING: it does not consume the user ID being called
+		if (uid == null || call.getCallStatus() == CallStatus.RINGING) {
+			return ;
+		}
+		this.pendingUid = null;
+		if (SystemClock.uptimeMillis() - this.pendingTime > PENDING_TIMEOUT) {
+			// The call that was asked for was never created
+			return ;
+		}
+		this.uids.put(call.getCallId(), uid);
+		this.pendingCallId = call.getCallId();
+	}
+
+	/**
+	 * This listener method catches CallStatusChangedEvent
+	 * 1. It is annotated with @WeemoEventListener
+	 * 2. It takes one argument which type is CallStatusChangedEvent
+	 * 3. It's object has been registered with HelperEventBus.instance().register(this) in its constructor
+	 *
+	 * @param event The event
+	 */
+	@WeemoEventListener
+	public void onCallStatusChanged(final CallStatusChangedEvent event) {
+		final int callId = event.getCall().getCallId();
+		if (event.getCallStatus() == CallStatus.ENDED) {
+			this.handler.post(new Runnable() {
+				@Override public void run() {
+					CallContacts.this.uids.remove(callId);
+				}
+			});
+		}
+		if (callId != this.pendingCallId) {
+			return ;
+		}
+		switch (event.getCallStatus()) {
+		case RINGING:
+			// The call was incoming after all: its user ID will be looked up by display name
+			this.uids.remove(callId);
+			this.pendingCallId = -1;
+			break ;
+		case PROCEEDING:
+		case ACTIVE:
+		case ENDED:
+			this.pendingCallId = -1;
+			break ;
+		default:
+			break ;
+		}
+	}
+
+	/**
+	 * This listener method catches CanCreateCallChangedEvent
+	 * 1. It is annotated with @WeemoEventListener
+	 * 2. It takes one argument which type is CanCreateCallChangedEvent
+	 * 3. It's object has been registered with HelperEventBus.instance().register(this) in its constructor
+	 *
+	 * @param event The event
+	 */
+	@WeemoEventListener
+	public void onCanCreateCallChanged(final CanCreateCallChangedEvent event) {
+		if (event.getError() != null) {
+			// The call being created will never be
+			this.pendingUid = null;
+		}
+	}
+}
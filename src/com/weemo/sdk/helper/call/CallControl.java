@@ -1,5 +1,7 @@
 package com.weemo.sdk.helper.call;
 
+import java.util.Locale;
+
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
@@ -15,10 +17,16 @@ import android.view.View;
 import android.view.View.OnClickListener;
 import android.widget.ImageButton;
 import android.widget.LinearLayout;
+import android.widget.TextView;
 
 import com.weemo.sdk.WeemoCall;
 import com.weemo.sdk.WeemoCall.VideoSource;
+import com.weemo.sdk.event.WeemoEventListener;
 import com.weemo.sdk.helper.R;
+import com.weemo.sdk.helper.event.HelperEventBus;
+import com.weemo.sdk.helper.stats.CallQualityChangedEvent;
+import com.weemo.sdk.helper.stats.CpuGovernor;
+import com.weemo.sdk.helper.stats.CpuLevelChangedEvent;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
@@ -29,9 +37,18 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
  *
  * Weemo does not exposes api to control audio IN.
  * This fragment uses Android's AudioManager to control everything that relates to audio IN.
+ *
+ * It also displays the quality score of the call, from the {@link CallQualityChangedEvent}s of the call,
+ * and follows the outgoing video stopped and restarted by the {@link CpuGovernor}.
  */
 public class CallControl extends LinearLayout implements OnClickListener {
 
+	/** Score from which the call quality is displayed as good */
+	private static final float GOOD_SCORE = 4.0f;
+
+	/** Score from which the call quality is displayed as fair (poor under it) */
+	private static final float FAIR_SCORE = 3.6f;
+
 	/** The call to control */
 	private WeemoCall call;
 
@@ -59,6 +76,9 @@ public class CallControl extends LinearLayout implements OnClickListener {
 	/** The hangup button */
 	protected ImageButton hangup;
 
+	/** The call quality score, hidden until the call is scored */
+	protected TextView quality;
+
 	/**
 	 * Initializes this view (called from constructors)
 	 *
@@ -73,12 +93,14 @@ public class CallControl extends LinearLayout implements OnClickListener {
 		this.video     = (ImageButton) findViewById(R.id.item_video);
 		this.frontBack = (ImageButton) findViewById(R.id.item_front_back);
 		this.hangup    = (ImageButton) findViewById(R.id.item_hangup);
+		this.quality   = (TextView) findViewById(R.id.item_quality);
 
 		CheatSheet.setup(this.speakers);
 		CheatSheet.setup(this.micro);
 		CheatSheet.setup(this.video);
 		CheatSheet.setup(this.frontBack);
 		CheatSheet.setup(this.hangup);
+		CheatSheet.setup(this.quality);
 
 		switch (style) {
 		case DARK:
@@ -172,7 +194,13 @@ public class CallControl extends LinearLayout implements OnClickListener {
 	 * @param call The call to control
 	 */
 	public void setCall(WeemoCall call) {
+		if (this.call != null && getWindowToken() != null) {
+			HelperEventBus.instance().unregister(this);
+		}
 		this.call = call;
+		if (getWindowToken() != null) {
+			HelperEventBus.instance().register(this, call.getCallId());
+		}
 
 		if (!this.audioManager.isSpeakerphoneOn()) {
 			this.speakers.setActivated(true);
@@ -324,12 +352,56 @@ public class CallControl extends LinearLayout implements OnClickListener {
 			}
 		};
 		getContext().registerReceiver(this.headsetPlugReceiver, new IntentFilter(Intent.ACTION_HEADSET_PLUG));
+
+		if (this.call != null) {
+			HelperEventBus.instance().register(this, this.call.getCallId());
+		}
 	}
 
 	@Override
 	protected void onDetachedFromWindow() {
 		getContext().unregisterReceiver(this.headsetPlugReceiver);
+		if (this.call != null) {
+			HelperEventBus.instance().unregister(this);
+		}
 
 		super.onDetachedFromWindow();
 	}
+
+	/**
+	 * This listener catches CallQualityChangedEvent
+	 * 1. It is annotated with @WeemoEventListener
+	 * 2. It takes one argument which type is CallQualityChangedEvent
+	 * 3. This view has been registered with HelperEventBus.instance().register(this, callId) when attached to its window
+	 *    so it only receives the events of the call it controls
+	 *
+	 * @param event The event
+	 */
+	@WeemoEventListener
+	public void onCallQualityChanged(final CallQualityChangedEvent event) {
+		final float score = event.getScore();
+		this.quality.setText(String.format(Locale.US, "%.1f", Float.valueOf(score)));
+		final int color = score >= GOOD_SCORE ? R.color.weemo_quality_good : score >= FAIR_SCORE ? R.color.weemo_quality_fair : R.color.weemo_quality_poor;
+		this.quality.setTextColor(getResources().getColor(color));
+		this.quality.setVisibility(View.VISIBLE);
+	}
+
+	/**
+	 * This listener catches CpuLevelChangedEvent
+	 * 1. It is annotated with @WeemoEventListener
+	 * 2. It takes one argument which type is CpuLevelChangedEvent
+	 * 3. This view has been registered with HelperEventBus.instance().register(this, callId) when attached to its window
+	 *    so it only receives the events of the call it controls
+	 *
+	 * The governor may have stopped or restarted the outgoing video: the video button must reflect it,
+	 * so that the next click does what it shows.
+	 *
+	 * @param event The event
+	 */
+	@WeemoEventListener
+	public void onCpuLevelChanged(final CpuLevelChangedEvent event) {
+		final boolean sending = this.call.isSendingVideo();
+		this.video.setActivated(!sending);
+		this.frontBack.setVisibility(sending && Camera.getNumberOfCameras() > 1 ? View.VISIBLE : View.GONE);
+	}
 }
@@ -18,10 +18,12 @@ import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.View.OnLongClickListener;
 import android.view.View.OnSystemUiVisibilityChangeListener;
 import android.view.View.OnTouchListener;
 import android.view.ViewGroup;
 import android.view.WindowManager;
+import android.widget.ImageView;
 
 import com.weemo.sdk.Weemo;
 import com.weemo.sdk.WeemoCall;
@@ -31,20 +33,33 @@ import com.weemo.sdk.event.call.ReceivingVideoChangedEvent;
 import com.weemo.sdk.event.global.CanCreateCallChangedEvent;
 import com.weemo.sdk.event.global.CanCreateCallChangedEvent.Error;
 import com.weemo.sdk.helper.R;
+import com.weemo.sdk.helper.avatar.AvatarCache;
+import com.weemo.sdk.helper.avatar.InitialsDrawable;
+import com.weemo.sdk.helper.event.Conflate;
+import com.weemo.sdk.helper.event.HelperEventBus;
 import com.weemo.sdk.helper.fragment.LoadingDialogFragment;
+import com.weemo.sdk.helper.stats.CallStatsMonitor;
+import com.weemo.sdk.helper.stats.CallStatsMonitor.SamplerListener;
+import com.weemo.sdk.helper.stats.CallStatsSampler;
+import com.weemo.sdk.helper.stats.FirstFrameTimer;
+import com.weemo.sdk.helper.stats.StatsOverlayView;
 import com.weemo.sdk.view.WeemoVideoInFrame;
 import com.weemo.sdk.view.WeemoVideoOutPreviewFrame;
 
 /**
  * This is the fragment that displays a call video views.
  *
- * It uses the {@link CallControl} view to control the call
+ * It uses the {@link CallControl} view to control the call.
+ * A long press shows or hides the stats of the call.
  */
-public class CallFragment extends Fragment implements OnSystemUiVisibilityChangeListener, OnTouchListener {
+public class CallFragment extends Fragment implements OnSystemUiVisibilityChangeListener, OnTouchListener, SamplerListener {
 
 	/** fragment argument key */
 	private static final int CONTROL_DELAY = 4000;
 
+	/** Time during which network lost / recovered events are conflated, so that a flapping network does not flash the dialog */
+	private static final long NETWORK_FLAP_WINDOW = 500;
+
 	/** fragment argument key */
 	private static final String ARG_CALLID = "callId";
 
@@ -81,6 +96,12 @@ public class CallFragment extends Fragment implements OnSystemUiVisibilityChange
 	/** Frame (declared in the XML) that will contain video OUT */
 	protected @Nullable WeemoVideoOutPreviewFrame videoOutFrame;
 
+	/** Avatar of the contact, displayed when there is no remote video */
+	protected @Nullable ImageView avatar;
+
+	/** Overlay displaying the stats of the call, toggled by a long press */
+	protected @Nullable StatsOverlayView statsOverlay;
+
 	/**
 	 * Behaviour expected from this fragment on touch regarding the call control bar
 	 */
@@ -218,7 +239,11 @@ public class CallFragment extends Fragment implements OnSystemUiVisibilityChange
 		final int callId = getArguments().getInt(ARG_CALLID);
 		this.call = weemo.getCall(callId);
 
-		Weemo.eventBus().register(this);
+		// Register as event listener of this call only
+		HelperEventBus.instance().register(this, callId);
+
+		// The call is sampled once it is active
+		CallStatsMonitor.instance(getActivity()).addSamplerListener(this);
 	}
 
 	@Override
@@ -243,9 +268,11 @@ public class CallFragment extends Fragment implements OnSystemUiVisibilityChange
 		this.videoOutFrame = (WeemoVideoOutPreviewFrame) root.findViewById(R.id.video_out);
 		this.videoOutFrame.setDeviceCorrection(getArguments().getInt(ARG_CORRECTION));
 		assert this.call != null;
+		FirstFrameTimer.start(this.videoOutFrame, this.call, FirstFrameTimer.Direction.OUT);
 		this.call.setVideoOut(this.videoOutFrame);
 
 		final WeemoVideoInFrame videoInFrame = (WeemoVideoInFrame) root.findViewById(R.id.video_in);
+		FirstFrameTimer.start(videoInFrame, this.call, FirstFrameTimer.Direction.IN);
 		this.call.setVideoIn(videoInFrame);
 
 		this.videoOutFrame.post(new Runnable() {
@@ -255,6 +282,34 @@ public class CallFragment extends Fragment implements OnSystemUiVisibilityChange
 			}
 		});
 
+		// Shows who we are talking to, until their video arrives
+		this.avatar = (ImageView) root.findViewById(R.id.call_avatar);
+		final String displayName = this.call.getContactDisplayName();
+		final String uid = CallContacts.instance().getUid(getActivity(), this.call);
+		final InitialsDrawable placeholder = new InitialsDrawable(-1);
+		placeholder.setContact(displayName, uid == null ? displayName : uid);
+		if (uid == null) {
+			this.avatar.setImageDrawable(placeholder);
+		}
+		else {
+			AvatarCache.instance(getActivity()).bind(this.avatar, uid, placeholder);
+		}
+		this.avatar.setVisibility(this.call.isReceivingVideo() ? View.GONE : View.VISIBLE);
+
+		this.statsOverlay = (StatsOverlayView) root.findViewById(R.id.call_stats);
+		final CallStatsMonitor statsMonitor = CallStatsMonitor.instance(getActivity());
+		this.statsOverlay.setSampler(statsMonitor.getSampler(this.call.getCallId()));
+		// The overlay is only offered if the stats of the call can be read
+		if (statsMonitor.isAvailable(this.call)) {
+			root.setOnLongClickListener(new OnLongClickListener() {
+				@Override public boolean onLongClick(final View v) {
+					final StatsOverlayView overlay = CallFragment.this.statsOverlay;
+					overlay.setVisibility(overlay.getVisibility() == View.VISIBLE ? View.GONE : View.VISIBLE);
+					return true;
+				}
+			});
+		}
+
 		return root;
 	}
 
@@ -266,13 +321,26 @@ public class CallFragment extends Fragment implements OnSystemUiVisibilityChange
 			getActivity().getWindow().getDecorView().setOnSystemUiVisibilityChangeListener(null);
 		}
 
-		Weemo.eventBus().unregister(this);
+		HelperEventBus.instance().unregister(this);
+		CallStatsMonitor.instance(getActivity()).removeSamplerListener(this);
 
 		getActivity().getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
 
 		super.onDestroy();
 	}
 
+	@Override
+	public void onSamplerStarted(final CallStatsSampler sampler) {
+		if (this.statsOverlay != null && this.call != null && sampler.getCall().getCallId() == this.call.getCallId()) {
+			this.statsOverlay.setSampler(sampler);
+		}
+	}
+
+	@Override
+	public void onSamplerStopped(final CallStatsSampler sampler) {
+		// The overlay keeps displaying the last stats of the call
+	}
+
 	/**
 	 * Post the removal of the control bar after {@link #CONTROL_DELAY}
 	 * Does nothing if the fragment is not configured to hide the call control bar
@@ -355,30 +423,37 @@ public class CallFragment extends Fragment implements OnSystemUiVisibilityChange
 	 * This listener catches ReceivingVideoChangedEvent
 	 * 1. It is annotated with @WeemoEventListener
 	 * 2. It takes one argument which type is ReceivingVideoChangedEvent
-	 * 3. It's fragment object has been registered with Weemo.getEventBus().register(this) in onCreate()
+	 * 3. It's fragment object has been registered with HelperEventBus.instance().register(this, callId) in onCreate()
+	 *    so it only receives the events of the call we are monitoring
+	 * 4. It is annotated with @Conflate so a burst of changes only triggers one relayout, with the latest value
 	 *
 	 * @param event The event
 	 */
 	@WeemoEventListener
+	@Conflate
 	public void onReceivingVideoChanged(final ReceivingVideoChangedEvent event) {
-		// First, we check that this event concerns the call we are monitoring
-		if (this.call == null || event.getCall().getCallId() != this.call.getCallId()) {
+		// If the call did not exist when this fragment was created, there is no video view to resize
+		if (this.call == null) {
 			return ;
 		}
 
 		// Sets the camera preview dimensions according to whether or not the remote contact has started his video
 		setVideoOutFrameDimensions(event.isReceivingVideo());
+		this.avatar.setVisibility(event.isReceivingVideo() ? View.GONE : View.VISIBLE);
 	}
 
 	/**
-	 * This listener catches CallStatusChangedEvent
+	 * This listener catches CanCreateCallChangedEvent
 	 * 1. It is annotated with @WeemoEventListener
-	 * 2. It takes one argument which type is CallStatusChangedEvent
-	 * 3. It's activity object has been registered with Weemo.getEventBus().register(this) in onCreate()
+	 * 2. It takes one argument which type is CanCreateCallChangedEvent
+	 * 3. It's fragment object has been registered with HelperEventBus.instance().register(this, callId) in onCreate()
+	 *    (this is not a call event, so it is received whatever the call)
+	 * 4. It is annotated with @Conflate so a flapping network only shows or dismisses the dialog for the latest state
 	 *
 	 * @param event The event
 	 */
 	@WeemoEventListener
+	@Conflate(NETWORK_FLAP_WINDOW)
 	public void onCanCreateCallChanged(final CanCreateCallChangedEvent event) {
 		final Error error = event.getError();
 		if (error == CanCreateCallChangedEvent.Error.NETWORK_LOST) {
@@ -5,6 +5,7 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.view.View;
 import android.view.View.OnClickListener;
+import android.widget.ImageView;
 
 import com.weemo.sdk.Weemo;
 import com.weemo.sdk.WeemoCall;
@@ -13,7 +14,11 @@ import com.weemo.sdk.WeemoEngine;
 import com.weemo.sdk.event.WeemoEventListener;
 import com.weemo.sdk.event.call.CallStatusChangedEvent;
 import com.weemo.sdk.helper.R;
+import com.weemo.sdk.helper.avatar.AvatarCache;
+import com.weemo.sdk.helper.avatar.InitialsDrawable;
 import com.weemo.sdk.helper.contacts.ContactsActivity;
+import com.weemo.sdk.helper.event.HelperEventBus;
+import com.weemo.sdk.helper.stats.CallSetupTracker;
 
 /**
  * This activity is shown when a call is incoming.
@@ -37,7 +42,22 @@ public class IncomingActivity extends Activity {
 
 		setFinishOnTouchOutside(false);
 
-		setTitle(getIntent().getStringExtra(EXTRA_DISPLAYNAME));
+		final String displayName = getIntent().getStringExtra(EXTRA_DISPLAYNAME);
+		setTitle(displayName);
+
+		// Displays the avatar of the caller, or its initials if it has none or is not in the directory
+		final WeemoEngine engine = Weemo.instance();
+		final WeemoCall incoming = engine == null ? null : engine.getCall(getIntent().getIntExtra(EXTRA_CALLID, -1));
+		final String uid = incoming == null ? null : CallContacts.instance().getUid(this, incoming);
+		final ImageView avatar = (ImageView) findViewById(R.id.avatar);
+		final InitialsDrawable placeholder = new InitialsDrawable(-1);
+		placeholder.setContact(displayName, uid == null ? displayName : uid);
+		if (uid == null) {
+			avatar.setImageDrawable(placeholder);
+		}
+		else {
+			AvatarCache.instance(this).bind(avatar, uid, placeholder);
+		}
 
 		findViewById(R.id.answer).setOnClickListener(new OnClickListener() {
 			@Override public void onClick(final View arg0) {
@@ -47,6 +67,7 @@ public class IncomingActivity extends Activity {
 				final WeemoCall call = weemo.getCall(getIntent().getIntExtra(EXTRA_CALLID, -1));
 				if (call != null) {
 					// Accepts the call
+					CallSetupTracker.instance().resumed(call.getCallId());
 					call.resume();
 
 					startActivity(
@@ -74,14 +95,14 @@ public class IncomingActivity extends Activity {
 			}
 		});
 
-		// Register as event listener
-		Weemo.eventBus().register(this);
+		// Register as event listener of this call only
+		HelperEventBus.instance().register(this, getIntent().getIntExtra(EXTRA_CALLID, -1));
 	}
 
 	@Override
 	protected void onDestroy() {
 		// Unregister as event listener
-		Weemo.eventBus().unregister(this);
+		HelperEventBus.instance().unregister(this);
 
 		super.onDestroy();
 	}
@@ -90,16 +111,13 @@ public class IncomingActivity extends Activity {
 	 * This listener catches CallStatusChangedEvent
 	 * 1. It is annotated with @WeemoEventListener
 	 * 2. It takes one argument which type is CallStatusChangedEvent
-	 * 3. It's activity object has been registered with Weemo.getEventBus().register(this) in onStart()
+	 * 3. It's activity object has been registered with HelperEventBus.instance().register(this, callId) in onCreate()
+	 *    so it only receives the events of the call we are currently watching
 	 *
 	 * @param event The event
 	 */
 	@WeemoEventListener
 	public void onCallStatusChanged(final CallStatusChangedEvent event) {
-		// First, we check that this event affects the call we are currently watching
-		if (event.getCall().getCallId() != getIntent().getIntExtra(EXTRA_CALLID, -1)) {
-			return ;
-		}
 		// If the call has ended, we end this activity as it cannot be accepted anymore
 		if (event.getCallStatus() == CallStatus.ENDED) {
 			finish();
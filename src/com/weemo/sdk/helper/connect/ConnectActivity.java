@@ -18,6 +18,7 @@ import com.weemo.sdk.event.global.AuthenticatedEvent;
 import com.weemo.sdk.event.global.ConnectedEvent;
 import com.weemo.sdk.helper.R;
 import com.weemo.sdk.helper.contacts.ContactsActivity;
+import com.weemo.sdk.helper.event.HelperEventBus;
 import com.weemo.sdk.helper.fragment.ChooseFragment;
 import com.weemo.sdk.helper.fragment.ChooseFragment.ChooseListener;
 import com.weemo.sdk.helper.fragment.ErrorFragment;
@@ -67,7 +68,7 @@ public class ConnectActivity extends Activity implements InputListener, ChooseLi
 		}
 
 		// Register the activity as event listener
-		Weemo.eventBus().register(this);
+		HelperEventBus.instance().register(this);
 
 		// Initialize Weemo, can be called multiple times
 	}
@@ -75,7 +76,7 @@ public class ConnectActivity extends Activity implements InputListener, ChooseLi
 	@Override
 	protected void onDestroy() {
 		// Unregister as event listener
-		Weemo.eventBus().unregister(this);
+		HelperEventBus.instance().unregister(this);
 
 		// If this activity is destroyed with hasLoggedIn is true,
 		// this means it is destroyed after CallActivity being displayed.
@@ -158,7 +159,7 @@ public class ConnectActivity extends Activity implements InputListener, ChooseLi
 	 * This listener catches ConnectedEvent
 	 * 1. It is annotated with @WeemoEventListener
 	 * 2. It takes one argument which type is ConnectedEvent
-	 * 3. It's activity object has been registered with Weemo.getEventBus().register(this) in onStart()
+	 * 3. It's activity object has been registered with HelperEventBus.instance().register(this) in onStart()
 	 *
 	 * @param event The event
 	 */
@@ -194,7 +195,7 @@ public class ConnectActivity extends Activity implements InputListener, ChooseLi
 	 * This listener catches AuthenticatedEvent
 	 * 1. It is annotated with @WeemoEventListener
 	 * 2. It takes one argument which type is AuthenticatedEvent
-	 * 3. It's activity object has been registered with Weemo.getEventBus().register(this) in onStart()
+	 * 3. It's activity object has been registered with HelperEventBus.instance().register(this) in onStart()
 	 *
 	 * @param event The event
 	 */
@@ -22,6 +22,8 @@ import com.weemo.sdk.event.call.CallStatusChangedEvent;
 import com.weemo.sdk.helper.R;
 import com.weemo.sdk.helper.call.IncomingActivity;
 import com.weemo.sdk.helper.contacts.ContactsActivity;
+import com.weemo.sdk.helper.event.Background;
+import com.weemo.sdk.helper.event.HelperEventBus;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
@@ -37,6 +39,8 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
  *  - CallCreatedEvent to change the notification to it's call state
  *  - CallStatusChangedEvent with status ENDED to put the notification back to it's normal state
  *  - CallStatusChangedEvent with status RINGING to show the "you are called" popup
+ *
+ * As none of these needs the UI thread, they are delivered on the HelperEventBus background lane.
  */
 @SuppressFBWarnings({"ST_WRITE_TO_STATIC_FROM_INSTANCE_METHOD"})
 public class ConnectedService extends Service {
@@ -105,8 +109,6 @@ public class ConnectedService extends Service {
 	public void onCreate() {
 		super.onCreate();
 
-		Weemo.eventBus().register(this);
-
 		try {
 			final AssetFileDescriptor afd = getResources().openRawResourceFd(R.raw.weemo_ring);
 			try {
@@ -124,6 +126,9 @@ public class ConnectedService extends Service {
 			e.printStackTrace();
 			this.player = null;
 		}
+
+		// Registers only once the player is ready, as the listeners run on the background lane
+		HelperEventBus.instance().register(this);
 	}
 
 	/**
@@ -131,7 +136,7 @@ public class ConnectedService extends Service {
 	 */
 	@Override
 	public void onDestroy() {
-		Weemo.eventBus().unregister(this);
+		HelperEventBus.instance().unregister(this);
 
 		super.onDestroy();
 	}
@@ -140,11 +145,13 @@ public class ConnectedService extends Service {
 	 * This listener method catches CallCreatedEvent
 	 * 1. It is annotated with @WeemoEventListener
 	 * 2. It takes one argument which type is CallCreatedEvent
-	 * 3. It's service object has been registered with Weemo.getEventBus().register(this) in onCreate()
+	 * 3. It's service object has been registered with HelperEventBus.instance().register(this) in onCreate()
+	 * 4. It is annotated with @Background so it does not run on the UI thread
 	 *
 	 * @param event The event
 	 */
 	@WeemoEventListener
+	@Background
 	public void onCallCreated(final CallCreatedEvent event) {
 		presenceNotification(android.R.drawable.ic_menu_call, event.getCall().getContactDisplayName(), "");
 	}
@@ -153,11 +160,13 @@ public class ConnectedService extends Service {
 	 * This listener method catches CallStatusChangedEvent
 	 * 1. It is annotated with @WeemoEventListener
 	 * 2. It takes one argument which type is CallStatusChangedEvent
-	 * 3. It's service object has been registered with Weemo.getEventBus().register(this) in onCreate()
+	 * 3. It's service object has been registered with HelperEventBus.instance().register(this) in onCreate()
+	 * 4. It is annotated with @Background so it does not run on the UI thread
 	 *
 	 * @param event The event
 	 */
 	@WeemoEventListener
+	@Background
 	public void onCallStatusChanged(final CallStatusChangedEvent event) {
 		// If the ringing sound is playing, it means that we have gone from RINGING to whatever-but-RINGING
 		// In which case we stop the ringing
@@ -14,6 +14,8 @@ import com.weemo.sdk.event.WeemoEventListener;
 import com.weemo.sdk.event.global.CanCreateCallChangedEvent;
 import com.weemo.sdk.event.global.CanCreateCallChangedEvent.Error;
 import com.weemo.sdk.helper.R;
+import com.weemo.sdk.helper.call.CallContacts;
+import com.weemo.sdk.helper.event.HelperEventBus;
 
 /**
  * Displays a confirmation dialog asking if the user want to call a remote contact.
@@ -43,7 +45,7 @@ public class ContactCallDialogFragment extends DialogFragment {
 		super.onCreate(savedInstanceState);
 
 		// Register as event listener
-		Weemo.eventBus().register(this);
+		HelperEventBus.instance().register(this);
 	}
 
 	@Override
@@ -56,7 +58,7 @@ public class ContactCallDialogFragment extends DialogFragment {
 				// We start the call
 				final WeemoEngine weemo = Weemo.instance();
 				assert weemo != null;
-				weemo.createCall(getArguments().getString(ARG_CONTACTID));
+				CallContacts.instance().createCall(weemo, getArguments().getString(ARG_CONTACTID));
 			}
 		});
 		dialog.setNegativeButton(android.R.string.cancel, null);
@@ -66,7 +68,7 @@ public class ContactCallDialogFragment extends DialogFragment {
 	@Override
 	public void onDestroy() {
 		// Unregister as event listener
-		Weemo.eventBus().unregister(this);
+		HelperEventBus.instance().unregister(this);
 
 		super.onDestroy();
 	}
@@ -75,7 +77,7 @@ public class ContactCallDialogFragment extends DialogFragment {
 	 * This listener catches CanCreateCallChangedEvent
 	 * 1. It is annotated with @WeemoEventListener
 	 * 2. It takes one argument which type is CanCreateCallChangedEvent
-	 * 3. It's fragment object has been registered with Weemo.getEventBus().register(this) in onStart()
+	 * 3. It's fragment object has been registered with HelperEventBus.instance().register(this) in onStart()
 	 *
 	 * @param event The event
 	 */
@@ -14,6 +14,7 @@ import com.weemo.sdk.WeemoEngine;
 import com.weemo.sdk.event.WeemoEventListener;
 import com.weemo.sdk.event.call.CallStatusChangedEvent;
 import com.weemo.sdk.helper.R;
+import com.weemo.sdk.helper.event.HelperEventBus;
 
 /**
  * This fragments displays a loading dialog while calling a remote contact.
@@ -42,8 +43,8 @@ public class ContactCallingDialogFragment extends DialogFragment {
 	public void onCreate(final Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 
-		// Register as event listener
-		Weemo.eventBus().register(this);
+		// Register as event listener of this call only
+		HelperEventBus.instance().register(this, getArguments().getInt(ARG_CALLID));
 	}
 
 	@Override
@@ -67,7 +68,7 @@ public class ContactCallingDialogFragment extends DialogFragment {
 	@Override
 	public void onDestroy() {
 		// Unregister as event listener
-		Weemo.eventBus().unregister(this);
+		HelperEventBus.instance().unregister(this);
 
 		super.onDestroy();
 	}
@@ -76,17 +77,13 @@ public class ContactCallingDialogFragment extends DialogFragment {
 	 * This listener catches CallStatusChangedEvent
 	 * 1. It is annotated with @WeemoEventListener
 	 * 2. It takes one argument which type is CallStatusChangedEvent
-	 * 3. It's fragment object has been registered with Weemo.getEventBus().register(this) in onStart()
+	 * 3. It's fragment object has been registered with HelperEventBus.instance().register(this, callId) in onCreate()
+	 *    so it only receives the events of the call we are monitoring
 	 *
 	 * @param event The event
 	 */
 	@WeemoEventListener
 	public void onCallStatusChanged(final CallStatusChangedEvent event) {
-		// We check that the call affected is the one we are monitoring
-		if (event.getCall().getCallId() != getArguments().getInt(ARG_CALLID)) {
-			return ;
-		}
-
 		// If the call is now ENDED, it means that the remote user has either:
 		// - disconnected
 		// - refused the call
@@ -1,26 +1,35 @@
 package com.weemo.sdk.helper.contacts;
 
+import javax.annotation.CheckForNull;
+
+import android.app.Activity;
 import android.app.Dialog;
 import android.app.DialogFragment;
 import android.app.ProgressDialog;
 import android.os.Bundle;
+import android.os.Handler;
 import android.widget.Toast;
 
-import com.weemo.sdk.Weemo;
-import com.weemo.sdk.WeemoEngine;
-import com.weemo.sdk.event.WeemoEventListener;
-import com.weemo.sdk.event.global.StatusEvent;
 import com.weemo.sdk.helper.R;
+import com.weemo.sdk.helper.presence.PresenceCache;
+import com.weemo.sdk.helper.presence.StatusRequests;
 
 /**
  * This fragments checks if a remote contact is available.
  * Displays a loading dialog while checking.
+ * The check goes through {@link StatusRequests}, so that checking a contact that is already being checked
+ * does not send a second request.
+ *
+ * Use {@link #check(Activity, String)} to answer from the presence cache when it knows the contact.
  */
-public class ContactCheckDialogFragment extends DialogFragment {
+public class ContactCheckDialogFragment extends DialogFragment implements StatusRequests.Callback {
 
 	/** Fragment required int argument key: the contact ID to check */
 	private static final String ARG_CONTACTID = "contactId";
 
+	/** UI thread handler, on which the answer of the check is shown */
+	private final Handler handler = new Handler();
+
 	/**
 	 * Factory (best practice for fragments)
 	 *
@@ -35,18 +44,48 @@ public class ContactCheckDialogFragment extends DialogFragment {
 		return fragment;
 	}
 
+	/**
+	 * Checks if a remote contact is available.
+	 * If the presence cache has a fresh presence for this contact, the result is shown immediately.
+	 * Otherwise, this dialog is shown while the Weemo engine does the check.
+	 *
+	 * @param activity The activity in which to show the result
+	 * @param contactId The Contact IDentifier to check
+	 */
+	public static void check(final Activity activity, final String contactId) {
+		final Boolean canBeCalled = PresenceCache.instance(activity).get(contactId);
+		if (canBeCalled == null) {
+			newInstance(contactId).show(activity.getFragmentManager(), null);
+			return ;
+		}
+		showResult(activity, contactId, canBeCalled.booleanValue());
+	}
+
+	/**
+	 * Shows the result of a check:
+	 * If the remote contact can be called, we propose the user to do so.
+	 * If it can't, we display a toast saying so.
+	 *
+	 * @param activity The activity in which to show the result
+	 * @param contactId The checked Contact IDentifier
+	 * @param canBeCalled Whether the contact can be called
+	 */
+	private static void showResult(final Activity activity, final String contactId, final boolean canBeCalled) {
+		if (canBeCalled) {
+			ContactCallDialogFragment.newInstance(contactId).show(activity.getFragmentManager(), null);
+		}
+		else {
+			Toast.makeText(activity, R.string.unreachable, Toast.LENGTH_SHORT).show();
+		}
+	}
+
 	@Override
 	public void onCreate(final Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 
-		// Register as event listener
-		Weemo.eventBus().register(this);
-
-		// Asks weemo engine to do the check
-		// The answer of this check will be provided through a StatusEvent
-		final WeemoEngine weemo = Weemo.instance();
-		assert weemo != null;
-		weemo.getStatus(getArguments().getString(ARG_CONTACTID));
+		// Asks for the check
+		// The answer of this check will be provided through onStatus
+		StatusRequests.instance(getActivity()).request(getArguments().getString(ARG_CONTACTID), this);
 	}
 
 	@Override
@@ -59,37 +98,29 @@ public class ContactCheckDialogFragment extends DialogFragment {
 
 	@Override
 	public void onDestroy() {
-		// Unregister as event listener
-		Weemo.eventBus().unregister(this);
+		// We are not interested in the answer anymore
+		StatusRequests.instance(getActivity()).cancel(this);
+		this.handler.removeCallbacksAndMessages(null);
 
 		super.onDestroy();
 	}
 
-	/**
-	 * This listener catches StatusEvent
-	 * 1. It is annotated with @WeemoEventListener
-	 * 2. It takes one argument which type is StatusEvent
-	 * 3. It's fragment object has been registered with Weemo.getEventBus().register(this) in onStart()
-	 *
-	 * @param event The event
+	/*
+	 * This is the answer to the question we asked (StatusRequests only calls us for the contact we asked for).
+	 * A contact that did not answer in time cannot be called.
+	 * The answer may be given synchronously, from onCreate(): it is shown at the next loop iteration, once the dialog is.
 	 */
-	@WeemoEventListener
-	public void onStatus(final StatusEvent event) {
-		// First, we check that the status event affects the remote user we asked.
-		// In other terms, we check that this is the answer to the question we asked
-		if (!event.getUserID().equals(getArguments().getString(ARG_CONTACTID))) {
-			return ;
-		}
-
-		// If the remote contact can be called, we propose the user to do so.
-		// If it can't, we display a toast saying so.
-		if (event.canBeCalled()) {
-			ContactCallDialogFragment.newInstance(getArguments().getString(ARG_CONTACTID)).show(getFragmentManager(), null);
-		}
-		else {
-			Toast.makeText(getActivity(), R.string.unreachable, Toast.LENGTH_SHORT).show();
-		}
+	@Override
+	public void onStatus(final String uid, final @CheckForNull Boolean canBeCalled) {
+		this.handler.post(new Runnable() {
+			@Override public void run() {
+				if (!isAdded()) {
+					return ;
+				}
+				showResult(getActivity(), uid, Boolean.TRUE.equals(canBeCalled));
 
-		dismiss();
+				dismiss();
+			}
+		});
 	}
 }
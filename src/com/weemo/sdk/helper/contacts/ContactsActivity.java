@@ -1,5 +1,8 @@
 package com.weemo.sdk.helper.contacts;
 
+import java.io.IOException;
+import java.util.List;
+
 import javax.annotation.CheckForNull;
 
 import org.acra.ACRA;
@@ -7,6 +10,9 @@ import org.acra.ACRA;
 import android.app.ActionBar;
 import android.app.Activity;
 import android.app.Fragment;
+import android.app.ProgressDialog;
+import android.content.ActivityNotFoundException;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.res.Configuration;
 import android.os.Bundle;
@@ -32,12 +38,32 @@ import com.weemo.sdk.event.global.CanCreateCallChangedEvent;
 import com.weemo.sdk.helper.DemoAccounts;
 import com.weemo.sdk.helper.R;
 import com.weemo.sdk.helper.call.CallActivity;
+import com.weemo.sdk.helper.call.CallContacts;
 import com.weemo.sdk.helper.call.CallControl;
 import com.weemo.sdk.helper.call.CallFragment;
 import com.weemo.sdk.helper.call.CallFragment.TouchType;
 import com.weemo.sdk.helper.connect.ConnectedService;
+import com.weemo.sdk.helper.directory.ContactDirectories;
+import com.weemo.sdk.helper.directory.ContactDirectory;
+import com.weemo.sdk.helper.directory.ContactImporter;
+import com.weemo.sdk.helper.directory.DirectorySync;
+import com.weemo.sdk.helper.event.Conflate;
+import com.weemo.sdk.helper.event.EventBusBenchmark;
+import com.weemo.sdk.helper.event.HelperEventBus;
 import com.weemo.sdk.helper.fragment.ChooseFragment;
 import com.weemo.sdk.helper.fragment.ChooseFragment.ChooseListener;
+import com.weemo.sdk.helper.fragment.ChooseFragment.VisibleListener;
+import com.weemo.sdk.helper.history.CallHistory;
+import com.weemo.sdk.helper.presence.PresenceEngine;
+import com.weemo.sdk.helper.presence.PresenceEngine.Presence;
+import com.weemo.sdk.helper.presence.PresenceEngine.PresenceListener;
+import com.weemo.sdk.helper.presence.PresenceScheduler;
+import com.weemo.sdk.helper.stats.CallHistograms;
+import com.weemo.sdk.helper.stats.CallQualityMonitor;
+import com.weemo.sdk.helper.stats.CallQualityRecorder;
+import com.weemo.sdk.helper.stats.CallStatsMonitor;
+import com.weemo.sdk.helper.stats.CpuGovernor;
+import com.weemo.sdk.helper.stats.VideoProfileController;
 import com.weemo.sdk.helper.util.ReportException;
 import com.weemo.sdk.helper.util.UIUtils;
 
@@ -45,7 +71,10 @@ import com.weemo.sdk.helper.util.UIUtils;
  * This is the main activity when the user is connected.
  * From this activity, the user can:
  *  - Poll for the status of a remote contact
+ *  - Poll for the status of all the contacts displayed in the list
+ *  - See the status of the contacts displayed in the list, kept up to date in the background
  *  - Call a remote contact.
+ *  - Import contacts from a CSV or vCard file.
  *
  * When a call starts, this activity will :
  *  - Start the CallActivity if we are using a phone or a small tablet
@@ -54,7 +83,7 @@ import com.weemo.sdk.helper.util.UIUtils;
  * It is also that activity that starts and stops the ConnectedService.
  * This service will run as long as the user is connected.
  */
-public class ContactsActivity extends Activity implements ChooseListener {
+public class ContactsActivity extends Activity implements ChooseListener, VisibleListener, PresenceListener, ContactImporter.ProgressListener {
 
 	/** Key of optional extra int for intent: call identifier if there is one taking place */
 	public static final String EXTRA_CALLID = "callId";
@@ -65,12 +94,24 @@ public class ContactsActivity extends Activity implements ChooseListener {
 	/** Log tag for Log.* */
 	private static final String LOGTAG = "ContactsActivity";
 
+	/** Request code of the file picker used to import contacts */
+	private static final int REQUEST_IMPORT = 1;
+
+	/** Time during which network lost / recovered events are conflated, so that a flapping network does not toggle the call button */
+	private static final long NETWORK_FLAP_WINDOW = 500;
+
 	/** STATIC value to retain the connected user id */
 	public @CheckForNull static String currentUid; // = null;
 
 	/** Whether the user is in checked mode (meaning that a userid will be checked before being called) or not */
 	protected boolean checkedMode; // = false;
 
+	/** Checks the presence of the contacts of the list, null if Weemo is not initialized */
+	protected @CheckForNull PresenceEngine presenceEngine;
+
+	/** Keeps the presence of the visible contacts up to date, null if Weemo is not initialized */
+	protected @CheckForNull PresenceScheduler presenceScheduler;
+
 	/**
 	 * Drawer toggle, null if there is no drawer (in phones)
 	 */
@@ -81,6 +122,9 @@ public class ContactsActivity extends Activity implements ChooseListener {
 	 */
 	protected @CheckForNull DrawerLayout drawer;
 
+	/** Shows the progress of the running import, null if there is none */
+	private @CheckForNull ProgressDialog importDialog;
+
 	/**
 	 * Starts the call view if there is a call currently taking place
 	 * or starts the service to listen for call events if not.
@@ -135,12 +179,17 @@ public class ContactsActivity extends Activity implements ChooseListener {
 		// If we need to ask for the display name, shows the apropriate popup
 		if (weemo.getDisplayName().isEmpty()) {
 			String defaultName = DemoAccounts.getDeviceName(false);
-			if (DemoAccounts.ACCOUNTS.containsKey(currentUid)) {
-				defaultName = DemoAccounts.ACCOUNTS.get(currentUid);
+			final ContactDirectory directory = ContactDirectories.get(this);
+			final int position = directory.indexOf(currentUid);
+			if (position != -1) {
+				defaultName = directory.getDisplayName(position);
 			}
             AskDisplayNameDialogFragment.newInstance(defaultName).show(getFragmentManager(), null);
 		}
 
+		// Pulls the contacts that changed since the last login, the list is updated when they arrive
+		DirectorySync.start(this);
+
 		startCallOrService();
 	}
 
@@ -206,8 +255,23 @@ public class ContactsActivity extends Activity implements ChooseListener {
 
 		setTitleFromDisplayName();
 
+		this.presenceEngine = new PresenceEngine(this, this, getResources().getInteger(R.integer.presence_window));
+		this.presenceScheduler = new PresenceScheduler(this.presenceEngine, getResources().getInteger(R.integer.presence_refresh_period));
+
+		// Starts recording the calls, which ranks the contacts of the list, and sampling their stats
+		CallHistory.instance(this);
+		CallStatsMonitor.instance(this);
+		VideoProfileController.install(this);
+		CpuGovernor.install(this);
+		CallQualityRecorder.instance(this);
+		CallQualityMonitor.instance(this);
+		CallHistograms.instance(this);
+
+		// Shows the progress of the import, which may have been started before a configuration change
+		ContactImporter.addProgressListener(this);
+
 		// Register as event listener
-		Weemo.eventBus().register(this);
+		HelperEventBus.instance().register(this);
 	}
 
 	@Override
@@ -276,6 +340,9 @@ public class ContactsActivity extends Activity implements ChooseListener {
 		if (weemo.isInBackground()) {
 			weemo.goToForeground();
 		}
+		if (this.presenceScheduler != null) {
+			this.presenceScheduler.setBackground(false);
+		}
 	}
 
 	@Override
@@ -286,6 +353,9 @@ public class ContactsActivity extends Activity implements ChooseListener {
 		// which allows the Weemo engine to save battery
 		if (weemo != null && weemo.getCurrentCall() == null) {
 			weemo.goToBackground();
+			if (this.presenceScheduler != null) {
+				this.presenceScheduler.setBackground(true);
+			}
 		}
 
 		super.onStop();
@@ -294,7 +364,20 @@ public class ContactsActivity extends Activity implements ChooseListener {
 	@Override
 	protected void onDestroy() {
 		// Unregister as event listener
-		Weemo.eventBus().unregister(this);
+		HelperEventBus.instance().unregister(this);
+
+		ContactImporter.removeProgressListener(this);
+		if (this.importDialog != null) {
+			this.importDialog.dismiss();
+			this.importDialog = null;
+		}
+
+		if (this.presenceScheduler != null) {
+			this.presenceScheduler.stop();
+		}
+		if (this.presenceEngine != null) {
+			this.presenceEngine.cancel();
+		}
 
 		super.onDestroy();
 	}
@@ -341,6 +424,34 @@ public class ContactsActivity extends Activity implements ChooseListener {
 			})
 		;
 
+		menu.add(R.string.check_visible)
+			.setOnMenuItemClickListener(new OnMenuItemClickListener() {
+				@Override public boolean onMenuItemClick(final MenuItem item) {
+					if (ContactsActivity.this.presenceEngine != null) {
+						ContactsActivity.this.presenceEngine.check(((ChooseFragment) getFragmentManager().findFragmentById(R.id.contact_list)).getVisibleIds());
+					}
+					return true;
+				}
+			})
+		;
+
+		menu.add(R.string.import_contacts)
+			.setOnMenuItemClickListener(new OnMenuItemClickListener() {
+				@Override public boolean onMenuItemClick(final MenuItem item) {
+					final Intent intent = new Intent(Intent.ACTION_GET_CONTENT)
+						.setType("*/*")
+						.addCategory(Intent.CATEGORY_OPENABLE);
+					try {
+						startActivityForResult(intent, REQUEST_IMPORT);
+					}
+					catch (ActivityNotFoundException e) {
+						Toast.makeText(ContactsActivity.this, R.string.import_no_picker, Toast.LENGTH_SHORT).show();
+					}
+					return true;
+				}
+			})
+		;
+
 		menu.add(R.string.core_dump)
 			.setOnMenuItemClickListener(new OnMenuItemClickListener() {
 				@Override public boolean onMenuItemClick(final MenuItem item) {
@@ -350,22 +461,139 @@ public class ContactsActivity extends Activity implements ChooseListener {
 			})
 		;
 
+		menu.add(R.string.event_bus_benchmark)
+			.setOnMenuItemClickListener(new OnMenuItemClickListener() {
+				@Override public boolean onMenuItemClick(final MenuItem item) {
+					// The benchmark takes a few seconds, so it must not block the UI thread
+					new Thread(new Runnable() {
+						@Override public void run() {
+							final String results = EventBusBenchmark.run(10, 100);
+							runOnUiThread(new Runnable() {
+								@Override public void run() {
+									Toast.makeText(ContactsActivity.this, results, Toast.LENGTH_LONG).show();
+								}
+							});
+						}
+					}, "EventBusBenchmark").start();
+					return true;
+				}
+			})
+		;
+
 		return super.onCreateOptionsMenu(menu);
 	}
 
+	@Override
+	protected void onActivityResult(final int requestCode, final int resultCode, final Intent data) {
+		if (requestCode == REQUEST_IMPORT) {
+			if (resultCode == RESULT_OK && data != null && data.getData() != null) {
+				if (ContactImporter.start(this, data.getData())) {
+					onImportProgress(0, 0, 0);
+				}
+				else {
+					Toast.makeText(this, R.string.import_running, Toast.LENGTH_SHORT).show();
+				}
+			}
+			return ;
+		}
+		super.onActivityResult(requestCode, resultCode, data);
+	}
+
+	/*
+	 * When an import progresses, shows its progress in a dialog, which cancels the import when closed
+	 */
+	@Override
+	public void onImportProgress(final int imported, final int rejected, final int percent) {
+		ProgressDialog dialog = this.importDialog;
+		if (dialog == null) {
+			dialog = new ProgressDialog(this);
+			dialog.setTitle(R.string.import_contacts);
+			dialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+			dialog.setMax(100);
+			dialog.setProgressNumberFormat(null);
+			dialog.setOnCancelListener(new DialogInterface.OnCancelListener() {
+				@Override public void onCancel(final DialogInterface cancelled) {
+					ContactImporter.cancel();
+				}
+			});
+			dialog.show();
+			this.importDialog = dialog;
+		}
+		dialog.setIndeterminate(percent == -1);
+		dialog.setProgress(Math.max(percent, 0));
+		dialog.setMessage(getString(R.string.import_progress, Integer.valueOf(imported), Integer.valueOf(rejected)));
+	}
+
+	/*
+	 * When an import has finished, tells how many contacts were imported (the list is updated by the directory change)
+	 */
+	@Override
+	public void onImportDone(final int imported, final int rejected, final @CheckForNull IOException error) {
+		if (this.importDialog != null) {
+			this.importDialog.dismiss();
+			this.importDialog = null;
+		}
+		if (error == null) {
+			Toast.makeText(this, getString(R.string.import_done, Integer.valueOf(imported), Integer.valueOf(rejected)), Toast.LENGTH_LONG).show();
+		}
+		else {
+			Toast.makeText(this, getString(R.string.import_failed, error.getMessage()), Toast.LENGTH_LONG).show();
+		}
+	}
+
 	/*
 	 * When the user has chosen someone to check, starts the dialog fragment that will make the check
+	 * (unless the presence cache already knows the answer).
+	 * When the user has chosen someone to call, calls him.
 	 */
 	@Override
 	public void onChoose(final String contactId) {
 		if (this.checkedMode) {
-			ContactCheckDialogFragment.newInstance(contactId).show(getFragmentManager(), null);
+			ContactCheckDialogFragment.check(this, contactId);
 		}
 		else {
 			final WeemoEngine weemo = Weemo.instance();
 			assert weemo != null;
-			weemo.createCall(contactId);
+			CallContacts.instance().createCall(weemo, contactId);
+		}
+	}
+
+	/*
+	 * When the contacts displayed in the list change, keeps the presence of the new ones up to date
+	 */
+	@Override
+	public void onVisibleChanged(final List<String> ids) {
+		if (this.presenceScheduler != null) {
+			this.presenceScheduler.watch(ids);
+		}
+	}
+
+	/*
+	 * When the presence engine has a result, displays it in the contact list
+	 */
+	@Override
+	public void onPresence(final String uid, final Presence presence) {
+		final ChooseFragment chooseFragment = (ChooseFragment) getFragmentManager().findFragmentById(R.id.contact_list);
+		if (chooseFragment == null) {
+			return ;
+		}
+		final int status;
+		switch (presence) {
+		case CHECKING:
+			status = R.string.presence_checking;
+			break ;
+		case REACHABLE:
+			status = R.string.presence_reachable;
+			break ;
+		case UNREACHABLE:
+			status = R.string.presence_unreachable;
+			break ;
+		case UNKNOWN:
+		default:
+			status = R.string.presence_unknown;
+			break ;
 		}
+		chooseFragment.setStatus(uid, getString(status));
 	}
 
 	/**
@@ -431,11 +659,13 @@ public class ContactsActivity extends Activity implements ChooseListener {
 	 * This listener method catches CanCreateCallChangedEvent
 	 * 1. It is annotated with @WeemoEventListener
 	 * 2. It takes one argument which type is CanCreateCallChangedEvent
-	 * 3. It's activity object has been registered with Weemo.getEventBus().register(this) in onStart()
+	 * 3. It's activity object has been registered with HelperEventBus.instance().register(this) in onStart()
+	 * 4. It is annotated with @Conflate so a flapping network only enables or disables the call button for the latest state
 	 *
 	 * @param event The event
 	 */
 	@WeemoEventListener
+	@Conflate(NETWORK_FLAP_WINDOW)
 	public void onCanCreateCallChanged(final CanCreateCallChangedEvent event) {
 		final CanCreateCallChangedEvent.Error error = event.getError();
 
@@ -524,7 +754,7 @@ public class ContactsActivity extends Activity implements ChooseListener {
 	 * This listener method catches CallStatusChangedEvent
 	 * 1. It is annotated with @WeemoEventListener
 	 * 2. It takes one argument which type is CallStatusChangedEvent
-	 * 3. It's activity object has been registered with Weemo.getEventBus().register(this) in onStart()
+	 * 3. It's activity object has been registered with HelperEventBus.instance().register(this) in onStart()
 	 *
 	 * @param event The event
 	 */
@@ -0,0 +1,169 @@
+package com.weemo.sdk.helper.directory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.CheckForNull;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.weemo.sdk.helper.DemoAccounts;
+
+/**
+ * Gives access to the contact directory of the application.
+ *
+ * The directory is a {@link FileContactDirectory} stored in the application files.
+ * On first use, this store is created from the {@link DemoAccounts}, which are then only its initial source.
+ * If the store cannot be used, the demo accounts are used directly.
+ * The store is then kept up to date by {@link DirectorySync}, which replaces the directory when it changes,
+ * and contacts can be added from files with {@link ContactImporter}.
+ */
+public final class ContactDirectories {
+
+	/** Log tag for Log.* */
+	private static final String LOGTAG = "ContactDirectories";
+
+	/** Name of the directory file, in the application files dir */
+	private static final String FILENAME = "contacts.wcd";
+
+	/** Held while the store file is rewritten, so that concurrent writers do not lose each other's changes */
+	static final Object STORE_LOCK = new Object();
+
+	/** The directory of the application, opened on first use */
+	private static @CheckForNull ContactDirectory directory; // = null;
+
+	/** The search index of the directory, created on first use */
+	private static @CheckForNull ContactSearchIndex searchIndex; // = null;
+
+	/** Objects to notify when the directory is replaced */
+	private static final List<ChangeListener> listeners = new ArrayList<ChangeListener>();
+
+	/**
+	 * Interface that objects displaying the directory may implement to know when it is replaced
+	 */
+	public static interface ChangeListener {
+		/**
+		 * Used to tell that the directory has been replaced (called on the UI thread)
+		 *
+		 * @param directory The new directory
+		 */
+		public void onDirectoryChanged(ContactDirectory directory);
+	}
+
+	/**
+	 * This class is a function repository and cannot be instanciated
+	 */
+	private ContactDirectories() {}
+
+	/**
+	 * Get the directory file
+	 *
+	 * @param context The context used to find the application files dir
+	 * @return The file in which the contact directory is stored
+	 */
+	public static File getFile(final Context context) {
+		return new File(context.getFilesDir(), FILENAME);
+	}
+
+	/**
+	 * Writes a directory file from a map of contacts
+	 *
+	 * @param file The file to write
+	 * @param accounts User ID => Display name, in any order
+	 * @throws IOException If the file could not be written
+	 */
+	public static void write(final File file, final Map<String, String> accounts) throws IOException {
+		final FileContactDirectory.Writer writer = new FileContactDirectory.Writer(file);
+		try {
+			for (final Map.Entry<String, String> entry : new TreeMap<String, String>(accounts).entrySet()) {
+				writer.add(entry.getKey(), entry.getValue());
+			}
+			writer.commit();
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Get the contact directory of the application, opening (and creating if needed) its store on first call
+	 *
+	 * @param context Any context of the application
+	 * @return The contact directory
+	 */
+	public static synchronized ContactDirectory get(final Context context) {
+		if (directory != null) {
+			return directory;
+		}
+
+		final File file = getFile(context);
+		try {
+			if (!file.exists()) {
+				write(file, DemoAccounts.ACCOUNTS);
+				// The store does not come from the directory service anymore
+				DirectorySync.clearCursor(context);
+			}
+			directory = new FileContactDirectory(file);
+		}
+		catch (IOException e) {
+			Log.e(LOGTAG, "Could not open the contact store, using demo accounts", e);
+			directory = new MapContactDirectory(DemoAccounts.ACCOUNTS);
+		}
+		return directory;
+	}
+
+	/**
+	 * Get the search index of the contact directory of the application, starting to build it on first call
+	 *
+	 * @param context Any context of the application
+	 * @return The search index
+	 */
+	public static synchronized ContactSearchIndex getSearchIndex(final Context context) {
+		final ContactDirectory current = get(context);
+		if (searchIndex == null || searchIndex.getDirectory() != current) {
+			searchIndex = new ContactSearchIndex(current);
+		}
+		return searchIndex;
+	}
+
+	/**
+	 * Replaces the directory of the application, and notifies the change listeners.
+	 * Must be called from the UI thread.
+	 *
+	 * @param replacement The new directory
+	 */
+	public static void replace(final ContactDirectory replacement) {
+		final ChangeListener[] toNotify;
+		synchronized (ContactDirectories.class) {
+			directory = replacement;
+			searchIndex = null;
+			toNotify = listeners.toArray(new ChangeListener[listeners.size()]);
+		}
+		for (final ChangeListener listener : toNotify) {
+			listener.onDirectoryChanged(replacement);
+		}
+	}
+
+	/**
+	 * Adds an object to notify when the directory is replaced
+	 *
+	 * @param listener The listener to add
+	 */
+	public static synchronized void addChangeListener(final ChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes an object added with {@link #addChangeListener(ChangeListener)}
+	 *
+	 * @param listener The listener to remove
+	 */
+	public static synchronized void removeChangeListener(final ChangeListener listener) {
+		listeners.remove(listener);
+	}
+}
@@ -0,0 +1,40 @@
+package com.weemo.sdk.helper.directory;
+
+/**
+ * A list of contacts (user ID and display name) that can be browsed by position.
+ *
+ * Contacts are sorted by user ID (String natural order), so that a list view can ask for any position
+ * without the directory having to build the whole list in memory, and so that user IDs can be binary searched.
+ * Implementations must be safe to read from any thread.
+ */
+public interface ContactDirectory {
+
+	/**
+	 * @return The number of contacts in this directory
+	 */
+	public int size();
+
+	/**
+	 * Get the user ID of a contact
+	 *
+	 * @param position The position of the contact, between 0 and {@link #size()} excluded
+	 * @return The user ID of the contact
+	 */
+	public String getId(int position);
+
+	/**
+	 * Get the display name of a contact
+	 *
+	 * @param position The position of the contact, between 0 and {@link #size()} excluded
+	 * @return The display name of the contact
+	 */
+	public String getDisplayName(int position);
+
+	/**
+	 * Find a contact
+	 *
+	 * @param id The user ID of the contact
+	 * @return The position of the contact, or -1 if it is not in this directory
+	 */
+	public int indexOf(String id);
+}
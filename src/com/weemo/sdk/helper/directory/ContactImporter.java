@@ -0,0 +1,1010 @@
+package com.weemo.sdk.helper.directory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import javax.annotation.CheckForNull;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Imports the contacts of a CSV or vCard file into the contact store.
+ *
+ * CSV files have one contact per line. If the first line is a header, the user ID and display name columns
+ * are found by name ("uid", "id", "user id"... and "name", "display name"...), otherwise they are the first two columns.
+ * Fields may be separated by commas, semicolons or tabs, and quoted.
+ *
+ * vCard files have one contact per card. The user ID is the X-WEEMO-UID property, or a "weemo:" IMPP address,
+ * or the first EMAIL. The display name is FN, or N.
+ *
+ * Files of any size are imported with bounded memory: the file is read as a stream and contacts are sorted by batches
+ * of {@link #BATCH_SIZE}, each batch being written to a temporary run file.
+ * The runs and the current store, all sorted by user ID, are then merged into a new store file
+ * that replaces the current one atomically. At most {@link #MAX_FAN_IN} runs are open at the same time:
+ * when there are more, groups of runs are first merged into bigger runs, pass after pass. An imported contact replaces the contact of the store with the same user ID.
+ *
+ * Contacts which user ID does not comply to the Weemo naming rules are rejected (see {@link #isValidUid(String)}).
+ */
+public final class ContactImporter {
+
+	/** Log tag for Log.* */
+	private static final String LOGTAG = "ContactImporter";
+
+	/** Number of contacts sorted in memory before being written to a run */
+	public static final int BATCH_SIZE = 2000;
+
+	/** Maximum number of runs merged at the same time, which bounds the number of open files */
+	public static final int MAX_FAN_IN = 64;
+
+	/** Maximum length of a field or property that is kept, longer values (like vCard photos) are truncated */
+	private static final int MAX_FIELD_LENGTH = 1024;
+
+	/** Maximum length of a display name */
+	private static final int MAX_NAME_LENGTH = 256;
+
+	/** Maximum number of rejected user IDs that are logged */
+	private static final int MAX_LOGGED_REJECTS = 20;
+
+	/** Weemo naming rules of user IDs: https://github.com/weemo/Release-4.x/wiki/WeemoDriver-Naming#token */
+	private static final Pattern UID_PATTERN = Pattern.compile("[^&\"\\\\%? ]{6,90}");
+
+	/** CSV header names of the user ID column */
+	private static final String[] UID_COLUMNS = { "uid", "id", "userid", "user id", "user_id", "weemo uid" };
+
+	/** CSV header names of the display name column */
+	private static final String[] NAME_COLUMNS = { "name", "displayname", "display name", "display_name", "full name", "fn" };
+
+	/** Whether an import is running (UI thread only) */
+	private static boolean running; // = false;
+
+	/** Whether the running import must stop */
+	static volatile boolean cancelled; // = false;
+
+	/** Objects to notify of the progress of imports (UI thread only) */
+	private static final List<ProgressListener> listeners = new ArrayList<ProgressListener>();
+
+	/**
+	 * Interface that objects displaying the progress of an import may implement
+	 */
+	public static interface ProgressListener {
+		/**
+		 * Used to tell that a batch of contacts has been read (called on the UI thread)
+		 *
+		 * @param imported The number of valid contacts read so far
+		 * @param rejected The number of contacts rejected so far
+		 * @param percent The percentage of the file read, or -1 if the file size is unknown
+		 */
+		public void onImportProgress(int imported, int rejected, int percent);
+
+		/**
+		 * Used to tell that an import has finished (called on the UI thread)
+		 *
+		 * @param imported The number of contacts imported
+		 * @param rejected The number of contacts rejected
+		 * @param error The error that stopped the import, or null if the contacts were imported
+		 */
+		public void onImportDone(int imported, int rejected, @CheckForNull IOException error);
+	}
+
+	/**
+	 * Receives the contacts read from a file
+	 */
+	static interface Sink {
+		/**
+		 * Used to give a contact read from the file
+		 *
+		 * @param uid The user ID, not yet validated
+		 * @param displayName The display name, possibly empty
+		 * @throws IOException If the contact could not be stored
+		 */
+		public void add(String uid, String displayName) throws IOException;
+	}
+
+	/**
+	 * This class is a function repository and cannot be instanciated
+	 */
+	private ContactImporter() {}
+
+	/**
+	 * Checks that a user ID complies to the Weemo naming rules:
+	 * 6 to 90 characters, none of them being a space, &amp;, ", \, % or ?
+	 *
+	 * @param uid The user ID to check
+	 * @return Whether the user ID is valid
+	 */
+	public static boolean isValidUid(final String uid) {
+		return UID_PATTERN.matcher(uid).matches();
+	}
+
+	/**
+	 * Whether an import is running. Must be called from the UI thread.
+	 *
+	 * @return Whether an import is running
+	 */
+	public static boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Adds an object to notify of the progress of imports. Must be called from the UI thread.
+	 *
+	 * @param listener The listener to add
+	 */
+	public static void addProgressListener(final ProgressListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes an object added with {@link #addProgressListener(ProgressListener)}. Must be called from the UI thread.
+	 *
+	 * @param listener The listener to remove
+	 */
+	public static void removeProgressListener(final ProgressListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Stops the running import, if any. The store is left unchanged.
+	 */
+	public static void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Starts importing a file in background, unless an import is already running.
+	 * When the store has changed, the new directory is given to {@link ContactDirectories#replace(ContactDirectory)}.
+	 * Must be called from the UI thread.
+	 *
+	 * @param context Any context of the application
+	 * @param uri The CSV or vCard file to import
+	 * @return Whether the import has started
+	 */
+	public static boolean start(final Context context, final Uri uri) {
+		if (running) {
+			return false;
+		}
+		running = true;
+		cancelled = false;
+
+		final Context appContext = context.getApplicationContext();
+		final Handler handler = new Handler(Looper.getMainLooper());
+
+		new Thread(new Runnable() {
+			@Override public void run() {
+				final Batcher batcher = new Batcher(appContext.getCacheDir(), handler);
+				IOException error = null;
+				ContactDirectory imported = null;
+				try {
+					imported = importUri(appContext, uri, batcher);
+				}
+				catch (IOException e) {
+					Log.w(LOGTAG, "Could not import " + uri, e);
+					error = e;
+				}
+				catch (RuntimeException e) {
+					// A malformed file must not crash the application
+					Log.e(LOGTAG, "Could not import " + uri, e);
+					error = new IOException(e);
+				}
+				finally {
+					batcher.deleteRuns();
+				}
+
+				final ContactDirectory result = imported;
+				final IOException resultError = error;
+				handler.post(new Runnable() {
+					@Override public void run() {
+						running = false;
+						if (result != null) {
+							ContactDirectories.replace(result);
+						}
+						for (final ProgressListener listener : listeners.toArray(new ProgressListener[listeners.size()])) {
+							listener.onImportDone(batcher.imported, batcher.rejected, resultError);
+						}
+					}
+				});
+			}
+		}, "ContactImporter").start();
+
+		return true;
+	}
+
+	/**
+	 * Reads a file and merges its contacts into the store
+	 *
+	 * @param context The application context
+	 * @param uri The file to import
+	 * @param batcher Where to sort the contacts
+	 * @return The new directory
+	 * @throws IOException If the file could not be read or the store could not be written, or if the import was cancelled
+	 */
+	static ContactDirectory importUri(final Context context, final Uri uri, final Batcher batcher) throws IOException {
+		final long start = SystemClock.uptimeMillis();
+
+		long length = -1;
+		try {
+			final AssetFileDescriptor descriptor = context.getContentResolver().openAssetFileDescriptor(uri, "r");
+			if (descriptor != null) {
+				length = descriptor.getLength();
+				descriptor.close();
+			}
+		}
+		catch (IOException e) {
+			// The size is only used to report progress
+		}
+		batcher.length = length;
+
+		final InputStream stream = context.getContentResolver().openInputStream(uri);
+		if (stream == null) {
+			throw new IOException("Could not open " + uri);
+		}
+		final CountingInputStream input = new CountingInputStream(new BufferedInputStream(stream));
+		batcher.input = input;
+		try {
+			read(new BufferedReader(new InputStreamReader(input, FileContactDirectory.UTF8)), batcher);
+		}
+		finally {
+			input.close();
+		}
+		batcher.flush();
+
+		final File file = ContactDirectories.getFile(context);
+		final ContactDirectory imported;
+		synchronized (ContactDirectories.STORE_LOCK) {
+			// The store is read from its file, which may have been replaced since the import started
+			merge(file.exists() ? new FileContactDirectory(file) : null, batcher.runs, file);
+			imported = new FileContactDirectory(file);
+		}
+
+		Log.d(LOGTAG, "Imported " + batcher.imported + " contacts (" + batcher.rejected + " rejected) in "
+				+ batcher.runs.size() + " runs, " + (SystemClock.uptimeMillis() - start) + "ms");
+
+		return imported;
+	}
+
+	/**
+	 * Reads a CSV or vCard file, according to its first line
+	 *
+	 * @param reader The file content
+	 * @param sink Where to give the contacts
+	 * @throws IOException If the file could not be read
+	 */
+	static void read(final BufferedReader reader, final Sink sink) throws IOException {
+		reader.mark(MAX_FIELD_LENGTH);
+		String first = "";
+		for (int i = 0; i < MAX_FIELD_LENGTH; ++i) {
+			final int c = reader.read();
+			if (c == -1 || c == '\n' || c == '\r') {
+				break ;
+			}
+			first += (char) c;
+		}
+		reader.reset();
+
+		// Skips the byte order mark
+		if (first.startsWith("\uFEFF")) {
+			reader.skip(1);
+			first = first.substring(1);
+		}
+
+		if (first.trim().toUpperCase(Locale.US).startsWith("BEGIN:VCARD")) {
+			readVCard(reader, sink);
+		}
+		else {
+			readCsv(reader, separator(first), sink);
+		}
+	}
+
+	/**
+	 * Guesses the separator of a CSV file: the most frequent of comma, semicolon and tab in its first line
+	 *
+	 * @param line The first line of the file
+	 * @return The separator
+	 */
+	private static char separator(final String line) {
+		final char[] candidates = { ',', ';', '\t' };
+		char separator = ',';
+		int best = 0;
+		for (final char candidate : candidates) {
+			int count = 0;
+			for (int i = 0; i < line.length(); ++i) {
+				if (line.charAt(i) == candidate) {
+					++count;
+				}
+			}
+			if (count > best) {
+				best = count;
+				separator = candidate;
+			}
+		}
+		return separator;
+	}
+
+	/**
+	 * Reads a CSV file
+	 *
+	 * @param reader The file content
+	 * @param separator The field separator
+	 * @param sink Where to give the contacts
+	 * @throws IOException If the file could not be read
+	 */
+	static void readCsv(final Reader reader, final char separator, final Sink sink) throws IOException {
+		final List<String> fields = new ArrayList<String>();
+		if (!readCsvRecord(reader, separator, fields)) {
+			return ;
+		}
+
+		int uidColumn = column(fields, UID_COLUMNS);
+		int nameColumn = column(fields, NAME_COLUMNS);
+		final boolean header = uidColumn != -1;
+		if (!header) {
+			uidColumn = 0;
+			nameColumn = 1;
+		}
+
+		boolean more = true;
+		if (header) {
+			more = readCsvRecord(reader, separator, fields);
+		}
+		while (more) {
+			if (fields.size() > uidColumn && !(fields.size() == 1 && fields.get(0).isEmpty())) {
+				final String uid = fields.get(uidColumn).trim();
+				final String name = nameColumn != -1 && fields.size() > nameColumn ? fields.get(nameColumn).trim() : "";
+				sink.add(uid, name);
+			}
+			more = readCsvRecord(reader, separator, fields);
+		}
+	}
+
+	/**
+	 * Finds a column in a CSV header
+	 *
+	 * @param header The fields of the header
+	 * @param names The possible names of the column, lower cased
+	 * @return The index of the column, or -1 if the header has none of these names
+	 */
+	private static int column(final List<String> header, final String[] names) {
+		for (int i = 0; i < header.size(); ++i) {
+			final String field = header.get(i).trim().toLowerCase(Locale.US);
+			for (final String name : names) {
+				if (field.equals(name)) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Reads a CSV record, which may span several lines if a quoted field contains line breaks
+	 *
+	 * @param reader The file content
+	 * @param separator The field separator
+	 * @param fields Cleared, then filled with the fields of the record
+	 * @return Whether a record was read (false at the end of the file)
+	 * @throws IOException If the file could not be read
+	 */
+	static boolean readCsvRecord(final Reader reader, final char separator, final List<String> fields) throws IOException {
+		fields.clear();
+		final StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		boolean any = false;
+		while (true) {
+			final int c = reader.read();
+			if (c == -1) {
+				if (any) {
+					fields.add(field.toString());
+				}
+				return any;
+			}
+			any = true;
+			if (quoted) {
+				if (c == '"') {
+					reader.mark(1);
+					if (reader.read() == '"') {
+						append(field, '"');
+					}
+					else {
+						reader.reset();
+						quoted = false;
+					}
+				}
+				else {
+					append(field, (char) c);
+				}
+			}
+			else if (c == '"' && field.length() == 0) {
+				quoted = true;
+			}
+			else if (c == separator) {
+				fields.add(field.toString());
+				field.setLength(0);
+			}
+			else if (c == '\n' || c == '\r') {
+				if (c == '\r') {
+					reader.mark(1);
+					if (reader.read() != '\n') {
+						reader.reset();
+					}
+				}
+				fields.add(field.toString());
+				return true;
+			}
+			else {
+				append(field, (char) c);
+			}
+		}
+	}
+
+	/**
+	 * Appends a character to a field, unless the field has reached {@link #MAX_FIELD_LENGTH}
+	 *
+	 * @param field The field
+	 * @param c The character
+	 */
+	private static void append(final StringBuilder field, final char c) {
+		if (field.length() < MAX_FIELD_LENGTH) {
+			field.append(c);
+		}
+	}
+
+	/**
+	 * Reads a vCard file (versions 2.1, 3.0 and 4.0)
+	 *
+	 * @param reader The file content
+	 * @param sink Where to give the contacts
+	 * @throws IOException If the file could not be read
+	 */
+	static void readVCard(final BufferedReader reader, final Sink sink) throws IOException {
+		final StringBuilder line = new StringBuilder();
+		String weemoUid = null;
+		String impp = null;
+		String email = null;
+		String fn = null;
+		String n = null;
+
+		boolean more = true;
+		while (more) {
+			more = readVCardLine(reader, line);
+
+			final int colon = line.indexOf(":");
+			if (colon == -1) {
+				continue ;
+			}
+			String name = line.substring(0, colon);
+			final int semicolon = name.indexOf(';');
+			if (semicolon != -1) {
+				name = name.substring(0, semicolon);
+			}
+			final int dot = name.lastIndexOf('.');
+			if (dot != -1) {
+				// Strips the group
+				name = name.substring(dot + 1);
+			}
+			name = name.trim().toUpperCase(Locale.US);
+			final String value = line.substring(colon + 1).trim();
+
+			if ("BEGIN".equals(name)) {
+				weemoUid = impp = email = fn = n = null;
+			}
+			else if ("END".equals(name)) {
+				final String uid = weemoUid != null ? weemoUid : impp != null ? impp : email;
+				if (uid != null) {
+					final String displayName = fn != null ? fn : n != null ? n : "";
+					sink.add(uid, displayName);
+				}
+			}
+			else if ("X-WEEMO-UID".equals(name)) {
+				weemoUid = unescape(value);
+			}
+			else if ("IMPP".equals(name) && value.regionMatches(true, 0, "weemo:", 0, 6)) {
+				impp = unescape(value.substring(6));
+			}
+			else if ("EMAIL".equals(name) && email == null) {
+				email = unescape(value);
+			}
+			else if ("FN".equals(name)) {
+				fn = unescape(value);
+			}
+			else if ("N".equals(name)) {
+				// Family;Given;Additional;Prefix;Suffix
+				final String[] parts = value.split(";", -1);
+				final String given = parts.length > 1 ? unescape(parts[1]).trim() : "";
+				final String family = unescape(parts[0]).trim();
+				n = (given + " " + family).trim();
+			}
+		}
+	}
+
+	/**
+	 * Reads an unfolded vCard line: lines starting with a space or a tab continue the previous one
+	 *
+	 * @param reader The file content
+	 * @param line Cleared, then filled with the line
+	 * @return Whether there may be more lines
+	 * @throws IOException If the file could not be read
+	 */
+	private static boolean readVCardLine(final BufferedReader reader, final StringBuilder line) throws IOException {
+		line.setLength(0);
+		while (true) {
+			final int c = reader.read();
+			if (c == -1) {
+				return false;
+			}
+			if (c == '\r' || c == '\n') {
+				if (c == '\r') {
+					reader.mark(1);
+					if (reader.read() != '\n') {
+						reader.reset();
+					}
+				}
+				reader.mark(1);
+				final int next = reader.read();
+				if (next == ' ' || next == '\t') {
+					continue ;
+				}
+				if (next == -1) {
+					return false;
+				}
+				reader.reset();
+				return true;
+			}
+			append(line, (char) c);
+		}
+	}
+
+	/**
+	 * Unescapes a vCard value
+	 *
+	 * @param value The escaped value
+	 * @return The value, with \n, \, \; and \\ unescaped
+	 */
+	private static String unescape(final String value) {
+		if (value.indexOf('\\') == -1) {
+			return value;
+		}
+		final StringBuilder result = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); ++i) {
+			char c = value.charAt(i);
+			if (c == '\\' && i + 1 < value.length()) {
+				c = value.charAt(++i);
+				if (c == 'n' || c == 'N') {
+					c = ' ';
+				}
+			}
+			result.append(c);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Validates the contacts read from a file, sorts them by batches, and writes each batch to a run file
+	 */
+	static final class Batcher implements Sink {
+
+		/** Where the runs are written */
+		private final File dir;
+
+		/** UI thread handler, on which progress is reported */
+		private final Handler handler;
+
+		/** The contacts of the current batch, user ID => display name */
+		private final TreeMap<String, String> batch = new TreeMap<String, String>();
+
+		/** The run files written so far, in file order */
+		final List<File> runs = new ArrayList<File>();
+
+		/** The file being read, to report progress */
+		@CheckForNull CountingInputStream input; // = null;
+
+		/** The size of the file being read, -1 if unknown */
+		long length = -1;
+
+		/** Number of valid contacts read */
+		int imported; // = 0;
+
+		/** Number of rejected contacts */
+		int rejected; // = 0;
+
+		/**
+		 * Constructor
+		 *
+		 * @param dir Where to write the runs
+		 * @param handler UI thread handler, on which progress is reported
+		 */
+		Batcher(final File dir, final Handler handler) {
+			this.dir = dir;
+			this.handler = handler;
+		}
+
+		@Override
+		public void add(final String uid, final String displayName) throws IOException {
+			if (cancelled) {
+				throw new IOException("Import cancelled");
+			}
+			if (!isValidUid(uid)) {
+				if (this.rejected < MAX_LOGGED_REJECTS) {
+					Log.i(LOGTAG, "Rejected user ID: \"" + uid + "\"");
+				}
+				++this.rejected;
+				return ;
+			}
+			// Quoted CSV fields may contain line breaks
+			final String oneLine = displayName.replace('\r', ' ').replace('\n', ' ');
+			final String name = oneLine.isEmpty() ? uid : oneLine.length() > MAX_NAME_LENGTH ? oneLine.substring(0, MAX_NAME_LENGTH) : oneLine;
+			this.batch.put(uid, name);
+			++this.imported;
+			if (this.batch.size() == BATCH_SIZE) {
+				flush();
+			}
+		}
+
+		/**
+		 * Writes the current batch to a new run, and reports progress
+		 *
+		 * @throws IOException If the run could not be written
+		 */
+		void flush() throws IOException {
+			if (!this.batch.isEmpty()) {
+				final File run = new File(this.dir, "import-" + this.runs.size() + ".run");
+				this.runs.add(run);
+				final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)));
+				try {
+					out.writeInt(this.batch.size());
+					for (final Map.Entry<String, String> entry : this.batch.entrySet()) {
+						out.writeUTF(entry.getKey());
+						out.writeUTF(entry.getValue());
+					}
+				}
+				finally {
+					out.close();
+				}
+				this.batch.clear();
+			}
+
+			final int importedSoFar = this.imported;
+			final int rejectedSoFar = this.rejected;
+			final CountingInputStream in = this.input;
+			final int percent = this.length <= 0 || in == null ? -1 : (int) Math.min(100, in.count * 100 / this.length);
+			this.handler.post(new Runnable() {
+				@Override public void run() {
+					for (final ProgressListener listener : listeners.toArray(new ProgressListener[listeners.size()])) {
+						listener.onImportProgress(importedSoFar, rejectedSoFar, percent);
+					}
+				}
+			});
+		}
+
+		/**
+		 * Deletes the run files
+		 */
+		void deleteRuns() {
+			for (final File run : this.runs) {
+				run.delete();
+			}
+		}
+	}
+
+	/**
+	 * A sorted source of contacts to merge
+	 */
+	private abstract static class Source {
+
+		/** Priority of this source: when sources have the same user ID, the contact of the highest priority is kept */
+		final int priority;
+
+		/** The user ID of the current contact */
+		String id = "";
+
+		/** The display name of the current contact */
+		String name = "";
+
+		/**
+		 * Constructor
+		 *
+		 * @param priority The priority of this source
+		 */
+		Source(final int priority) {
+			this.priority = priority;
+		}
+
+		/**
+		 * Moves to the next contact
+		 *
+		 * @return Whether there is a next contact
+		 * @throws IOException If the contact could not be read
+		 */
+		abstract boolean next() throws IOException;
+	}
+
+	/**
+	 * The contacts of the current store
+	 */
+	private static final class DirectorySource extends Source {
+
+		/** The store */
+		private final ContactDirectory directory;
+
+		/** The position of the current contact */
+		private int position = -1;
+
+		/**
+		 * Constructor
+		 *
+		 * @param directory The store
+		 */
+		DirectorySource(final ContactDirectory directory) {
+			super(-1);
+			this.directory = directory;
+		}
+
+		@Override
+		boolean next() {
+			if (++this.position >= this.directory.size()) {
+				return false;
+			}
+			this.id = this.directory.getId(this.position);
+			this.name = this.directory.getDisplayName(this.position);
+			return true;
+		}
+	}
+
+	/**
+	 * The contacts of a run file
+	 */
+	private static final class RunSource extends Source {
+
+		/** The run content */
+		final DataInputStream in;
+
+		/** Number of contacts left to read */
+		private int remaining;
+
+		/**
+		 * Constructor
+		 *
+		 * @param run The run file
+		 * @param priority The index of the run
+		 * @throws IOException If the run could not be opened
+		 */
+		RunSource(final File run, final int priority) throws IOException {
+			super(priority);
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run)));
+			this.remaining = this.in.readInt();
+		}
+
+		@Override
+		boolean next() throws IOException {
+			if (this.remaining == 0) {
+				return false;
+			}
+			--this.remaining;
+			this.id = this.in.readUTF();
+			this.name = this.in.readUTF();
+			return true;
+		}
+	}
+
+	/**
+	 * Writes a new store from the current one and the runs, all sorted by user ID.
+	 * A contact of a run replaces the contacts with the same user ID of the store and of previous runs.
+	 * While there are more than {@link #MAX_FAN_IN} runs, consecutive groups of runs are merged into intermediate runs,
+	 * which are deleted once merged.
+	 *
+	 * @param current The current store, or null if there is none
+	 * @param runs The run files, in file order
+	 * @param file The store file to replace
+	 * @throws IOException If a run could not be read or the new store could not be written
+	 */
+	static void merge(final @CheckForNull ContactDirectory current, final List<File> runs, final File file) throws IOException {
+		final List<File> intermediates = new ArrayList<File>();
+		List<File> level = runs;
+		int pass = 0;
+		try {
+			while (level.size() > MAX_FAN_IN) {
+				++pass;
+				final List<File> next = new ArrayList<File>((level.size() + MAX_FAN_IN - 1) / MAX_FAN_IN);
+				for (int from = 0; from < level.size(); from += MAX_FAN_IN) {
+					final File run = new File(level.get(0).getParentFile(), "import-p" + pass + "-" + next.size() + ".run");
+					next.add(run);
+					intermediates.add(run);
+					mergeToRun(level.subList(from, Math.min(from + MAX_FAN_IN, level.size())), run);
+				}
+				if (level != runs) {
+					deleteFiles(level);
+				}
+				level = next;
+			}
+
+			final FileContactDirectory.Writer writer = new FileContactDirectory.Writer(file);
+			try {
+				mergeSources(current, level, new Sink() {
+					@Override public void add(final String uid, final String displayName) throws IOException {
+						writer.add(uid, displayName);
+					}
+				});
+				writer.commit();
+			}
+			finally {
+				writer.close();
+			}
+		}
+		finally {
+			deleteFiles(intermediates);
+		}
+	}
+
+	/**
+	 * Merges runs into a new run
+	 *
+	 * @param runs The run files to merge, in file order
+	 * @param run The run file to write
+	 * @throws IOException If a run could not be read or written
+	 */
+	private static void mergeToRun(final List<File> runs, final File run) throws IOException {
+		final int[] count = new int[1];
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)));
+		try {
+			// The number of contacts is only known at the end, it is written over this placeholder
+			out.writeInt(0);
+			mergeSources(null, runs, new Sink() {
+				@Override public void add(final String uid, final String displayName) throws IOException {
+					out.writeUTF(uid);
+					out.writeUTF(displayName);
+					++count[0];
+				}
+			});
+		}
+		finally {
+			out.close();
+		}
+		final RandomAccessFile header = new RandomAccessFile(run, "rw");
+		try {
+			header.writeInt(count[0]);
+		}
+		finally {
+			header.close();
+		}
+	}
+
+	/**
+	 * Merges the current store and runs, all sorted by user ID, in one pass.
+	 * A contact of a run replaces the contacts with the same user ID of the store and of previous runs.
+	 *
+	 * @param current The current store, or null if there is none
+	 * @param runs The run files, in file order (all of them are open at the same time)
+	 * @param sink Where to give the merged contacts, sorted by user ID
+	 * @throws IOException If a run could not be read or the sink could not store a contact
+	 */
+	private static void mergeSources(final @CheckForNull ContactDirectory current, final List<File> runs, final Sink sink) throws IOException {
+		final PriorityQueue<Source> queue = new PriorityQueue<Source>(runs.size() + 1, new Comparator<Source>() {
+			@Override public int compare(final Source lhs, final Source rhs) {
+				final int cmp = lhs.id.compareTo(rhs.id);
+				return cmp != 0 ? cmp : rhs.priority - lhs.priority;
+			}
+		});
+		final List<RunSource> opened = new ArrayList<RunSource>(runs.size());
+
+		try {
+			if (current != null) {
+				final Source source = new DirectorySource(current);
+				if (source.next()) {
+					queue.add(source);
+				}
+			}
+			for (int i = 0; i < runs.size(); ++i) {
+				final RunSource source = new RunSource(runs.get(i), i);
+				opened.add(source);
+				if (source.next()) {
+					queue.add(source);
+				}
+			}
+
+			String lastId = null;
+			while (!queue.isEmpty()) {
+				if (cancelled) {
+					throw new IOException("Import cancelled");
+				}
+				final Source source = queue.poll();
+				// Sources with the same user ID come by decreasing priority: only the first one is kept
+				if (!source.id.equals(lastId)) {
+					sink.add(source.id, source.name);
+					lastId = source.id;
+				}
+				if (source.next()) {
+					queue.add(source);
+				}
+			}
+		}
+		finally {
+			for (final RunSource source : opened) {
+				source.in.close();
+			}
+		}
+	}
+
+	/**
+	 * Deletes files
+	 *
+	 * @param files The files to delete
+	 */
+	private static void deleteFiles(final List<File> files) {
+		for (final File file : files) {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Counts the bytes read from a stream, to report progress
+	 */
+	static final class CountingInputStream extends FilterInputStream {
+
+		/** Number of bytes read so far */
+		long count; // = 0;
+
+		/**
+		 * Constructor
+		 *
+		 * @param in The stream to count
+		 */
+		CountingInputStream(final InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = super.read();
+			if (b != -1) {
+				++this.count;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+			final int read = super.read(buffer, offset, length);
+			if (read > 0) {
+				this.count += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+			final long skipped = super.skip(n);
+			this.count += skipped;
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,538 @@
+package com.weemo.sdk.helper.directory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+import javax.annotation.CheckForNull;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Prefix search over the user IDs and display names of a {@link ContactDirectory}.
+ *
+ * User IDs need no index: the directory is sorted by user ID, so the contacts whose ID starts with a prefix
+ * are a range of positions, found with two binary searches.
+ *
+ * Display names are indexed by word: for each word of each name, the index keeps the position of the contact
+ * and the offset of the word in the lower cased name, packed in a long, sorted by the text that starts at that word.
+ * The index is a sorted array of primitives, so it costs a few bytes per word and no object per contact;
+ * the text itself is read from the directory when needed.
+ * Searching "tenma" or "kenzo te" is then a range of this array, also found with two binary searches.
+ *
+ * A {@link Query} that extends the previous one only searches inside the previous ranges,
+ * and materializes its results chunk by chunk so that the list can be filled while the user types.
+ *
+ * The name index is built on a background thread; until it is ready, only user IDs are searched.
+ */
+public class ContactSearchIndex {
+
+	/** Log tag for Log.* */
+	private static final String LOGTAG = "ContactSearchIndex";
+
+	/** The indexed directory */
+	final ContactDirectory directory;
+
+	/** Words of the display names: (position << 16 | offset of the word), sorted by the text from the word to the end of the name */
+	volatile @CheckForNull long[] words; // = null;
+
+	/** Tasks to run when the name index is ready */
+	final List<Runnable> readyListeners = new ArrayList<Runnable>();
+
+	/** UI thread handler, on which ready tasks are run */
+	final Handler handler = new Handler(Looper.getMainLooper());
+
+	/**
+	 * The result of a search: the contacts whose user ID or one of whose display name words starts with the query.
+	 *
+	 * Contacts matching by user ID come first, in directory order.
+	 * Contacts matching by name only come next, and are added by {@link #advance(int)}.
+	 */
+	public final class Query {
+
+		/** The searched text */
+		final String text;
+
+		/** The searched text, lower cased to search names */
+		final String lowerText;
+
+		/** First directory position whose user ID starts with the text */
+		final int idLow;
+
+		/** Directory position after the last one whose user ID starts with the text */
+		final int idHigh;
+
+		/** Directory position of the contact that must not be in the results, -1 if none */
+		final int excluded;
+
+		/** Whether the excluded contact is in the user ID range (so it must be skipped) */
+		private final boolean excludedInIds;
+
+		/** The name index used by this query, null if it was not ready */
+		final @CheckForNull long[] queryWords;
+
+		/** First name index entry that starts with the text */
+		final int wordLow;
+
+		/** Name index entry after the last one that starts with the text */
+		final int wordHigh;
+
+		/** Next name index entry to materialize */
+		private int wordNext;
+
+		/** Directory positions of the contacts matching by name only, in materialization order */
+		private int[] byName = new int[16];
+
+		/** Number of entries of {@link #byName} */
+		private int byNameCount; // = 0;
+
+		/** Directory positions already in {@link #byName}, as a name can have several matching words */
+		private @CheckForNull BitSet seen; // = null;
+
+		/**
+		 * Constructor: searches the ranges
+		 *
+		 * @param text The searched text
+		 * @param previous A previous query whose text is a prefix of this one, to restrict the search, or null
+		 * @param excluded Directory position of the contact that must not be in the results, -1 if none
+		 */
+		Query(final String text, final @CheckForNull Query previous, final int excluded) {
+			this.text = text;
+			this.excluded = excluded;
+			this.lowerText = text.toLowerCase(Locale.getDefault());
+
+			final int size = ContactSearchIndex.this.directory.size();
+			final boolean narrow = previous != null && text.startsWith(previous.text);
+
+			this.idLow = lowerId(narrow ? previous.idLow : 0, narrow ? previous.idHigh : size, text);
+			this.idHigh = upperId(this.idLow, narrow ? previous.idHigh : size, text);
+			this.excludedInIds = excluded >= this.idLow && excluded < this.idHigh;
+
+			this.queryWords = ContactSearchIndex.this.words;
+			if (this.queryWords == null || text.isEmpty()) {
+				this.wordLow = 0;
+				this.wordHigh = 0;
+			}
+			else {
+				final boolean narrowWords = narrow && previous.queryWords == this.queryWords;
+				this.wordLow = lowerWord(this.queryWords, narrowWords ? previous.wordLow : 0, narrowWords ? previous.wordHigh : this.queryWords.length, this.lowerText);
+				this.wordHigh = upperWord(this.queryWords, this.wordLow, narrowWords ? previous.wordHigh : this.queryWords.length, this.lowerText);
+			}
+			this.wordNext = this.wordLow;
+		}
+
+		/**
+		 * @return The searched text
+		 */
+		public String getText() {
+			return this.text;
+		}
+
+		/**
+		 * @return The searched directory
+		 */
+		public ContactDirectory getDirectory() {
+			return ContactSearchIndex.this.directory;
+		}
+
+		/**
+		 * @return Whether this query was made without the name index (which means it should be redone when the index is ready)
+		 */
+		public boolean isIdOnly() {
+			return this.queryWords == null;
+		}
+
+		/**
+		 * @return The number of results materialized so far
+		 */
+		public int size() {
+			return (this.idHigh - this.idLow) - (this.excludedInIds ? 1 : 0) + this.byNameCount;
+		}
+
+		/**
+		 * Get the directory position of a result
+		 *
+		 * @param index The index of the result, between 0 and {@link #size()} excluded
+		 * @return The position of the contact in the directory
+		 */
+		public int positionAt(final int index) {
+			int rawIndex = index;
+			if (this.excludedInIds && rawIndex >= this.excluded - this.idLow) {
+				++rawIndex;
+			}
+			final int idCount = this.idHigh - this.idLow;
+			return rawIndex < idCount ? this.idLow + rawIndex : this.byName[rawIndex - idCount];
+		}
+
+		/**
+		 * @return The number of results matching by user ID, which are the first results
+		 */
+		public int getIdCount() {
+			return (this.idHigh - this.idLow) - (this.excludedInIds ? 1 : 0);
+		}
+
+		/**
+		 * Get the index of a contact among the results matching by user ID
+		 *
+		 * @param position The position of the contact in the directory
+		 * @return The index of its result, or -1 if it does not match by user ID
+		 */
+		public int indexOfId(final int position) {
+			if (position < this.idLow || position >= this.idHigh || position == this.excluded) {
+				return -1;
+			}
+			return position - this.idLow - (this.excludedInIds && position > this.excluded ? 1 : 0);
+		}
+
+		/**
+		 * @return Whether all results are materialized
+		 */
+		public boolean isComplete() {
+			return this.wordNext >= this.wordHigh;
+		}
+
+		/**
+		 * Materializes the next name matches
+		 *
+		 * @param max The maximum number of name index entries to go through
+		 * @return Whether there are still results to materialize
+		 */
+		public boolean advance(final int max) {
+			if (this.queryWords == null) {
+				return false;
+			}
+			final int end = Math.min(this.wordHigh, this.wordNext + max);
+			for (; this.wordNext < end; ++this.wordNext) {
+				final int position = (int) (this.queryWords[this.wordNext] >>> 16);
+				if ((position >= this.idLow && position < this.idHigh) || position == this.excluded) {
+					// Already a result by user ID, or not wanted
+					continue ;
+				}
+				if (this.seen == null) {
+					this.seen = new BitSet(ContactSearchIndex.this.directory.size());
+				}
+				if (this.seen.get(position)) {
+					continue ;
+				}
+				this.seen.set(position);
+				if (this.byNameCount == this.byName.length) {
+					final int[] grown = new int[this.byName.length * 2];
+					System.arraycopy(this.byName, 0, grown, 0, this.byNameCount);
+					this.byName = grown;
+				}
+				this.byName[this.byNameCount++] = position;
+			}
+			return !isComplete();
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * The user ID search is available immediately, the name index is built in background.
+	 *
+	 * @param directory The directory to index
+	 */
+	public ContactSearchIndex(final ContactDirectory directory) {
+		this.directory = directory;
+
+		new Thread(new Runnable() {
+			@Override public void run() {
+				final long start = SystemClock.uptimeMillis();
+				final long[] built = buildWords(directory);
+				Log.d(LOGTAG, "Indexed " + directory.size() + " names in " + (SystemClock.uptimeMillis() - start) + "ms");
+				synchronized (ContactSearchIndex.this) {
+					ContactSearchIndex.this.words = built;
+					for (final Runnable onReady : ContactSearchIndex.this.readyListeners) {
+						ContactSearchIndex.this.handler.post(onReady);
+					}
+					ContactSearchIndex.this.readyListeners.clear();
+				}
+			}
+		}, "ContactSearchIndex").start();
+	}
+
+	/**
+	 * Runs a task on the UI thread once the name index is ready (or immediately if it already is)
+	 *
+	 * @param onReady The task to run
+	 */
+	public synchronized void whenReady(final Runnable onReady) {
+		if (this.words != null) {
+			this.handler.post(onReady);
+		}
+		else {
+			this.readyListeners.add(onReady);
+		}
+	}
+
+	/**
+	 * Cancels a task given to {@link #whenReady(Runnable)}
+	 *
+	 * @param onReady The task to cancel
+	 */
+	public synchronized void cancelWhenReady(final Runnable onReady) {
+		this.readyListeners.remove(onReady);
+		this.handler.removeCallbacks(onReady);
+	}
+
+	/**
+	 * Tells whether a contact matches a search, with the same rules as a {@link Query} with the name index:
+	 * its user ID starts with the text, or a word of its lower cased display name starts with the lower cased text
+	 *
+	 * @param id The user ID of the contact
+	 * @param displayName The display name of the contact
+	 * @param text The searched text
+	 * @return Whether the contact is a result of the search
+	 */
+	public static boolean matches(final String id, final String displayName, final String text) {
+		if (id.startsWith(text)) {
+			return true;
+		}
+		if (text.isEmpty()) {
+			return false;
+		}
+		final String name = displayName.toLowerCase(Locale.getDefault());
+		final String lowerText = text.toLowerCase(Locale.getDefault());
+		for (int offset = 0; offset < name.length(); ++offset) {
+			final boolean wordStart = Character.isLetterOrDigit(name.charAt(offset))
+				&& (offset == 0 || !Character.isLetterOrDigit(name.charAt(offset - 1)));
+			if (wordStart && name.startsWith(lowerText, offset)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the text of the name index starting at a word
+	 *
+	 * @param directory The directory
+	 * @param word A name index entry
+	 * @return The lower cased text of the name, from the word to the end
+	 */
+	static String wordText(final ContactDirectory directory, final long word) {
+		final String name = directory.getDisplayName((int) (word >>> 16)).toLowerCase(Locale.getDefault());
+		return name.substring(Math.min((int) (word & 0xFFFF), name.length()));
+	}
+
+	/**
+	 * Builds the name index of a directory.
+	 *
+	 * The lower cased names are copied, one after the other, in a single char buffer, and the entries are sorted
+	 * by comparing the buffer in place, so the build allocates a few arrays and no object per word.
+	 *
+	 * @param directory The directory to index
+	 * @return The sorted name index
+	 */
+	static long[] buildWords(final ContactDirectory directory) {
+		final int size = directory.size();
+		final int[] starts = new int[size + 1];
+		char[] chars = new char[Math.max(size, 16) * 16];
+		long[] entries = new long[Math.max(size, 16)];
+		int length = 0;
+		int count = 0;
+		for (int position = 0; position < size; ++position) {
+			final String name = directory.getDisplayName(position).toLowerCase(Locale.getDefault());
+			final int max = Math.min(name.length(), 0xFFFF);
+			if (length + max > chars.length) {
+				chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + max));
+			}
+			name.getChars(0, max, chars, length);
+			starts[position] = length;
+			for (int offset = 0; offset < max; ++offset) {
+				final boolean wordStart = Character.isLetterOrDigit(chars[length + offset])
+					&& (offset == 0 || !Character.isLetterOrDigit(chars[length + offset - 1]));
+				if (wordStart) {
+					if (count == entries.length) {
+						entries = Arrays.copyOf(entries, count * 2);
+					}
+					entries[count++] = ((long) position << 16) | offset;
+				}
+			}
+			length += max;
+		}
+		starts[size] = length;
+
+		final long[] words = Arrays.copyOf(entries, count);
+		sortWords(words, new long[count], 0, count, chars, starts);
+		return words;
+	}
+
+	/**
+	 * Compares the texts of two name index entries in the buffer of the lower cased names, like String.compareTo
+	 *
+	 * @param lhs The first entry
+	 * @param rhs The second entry
+	 * @param chars The lower cased names, one after the other
+	 * @param starts The start of each name in chars, by position, followed by the end of the last one
+	 * @return A negative number, zero, or a positive number if the text of lhs is lower, equal, or greater than the text of rhs
+	 */
+	private static int compareWords(final long lhs, final long rhs, final char[] chars, final int[] starts) {
+		final int lhsPosition = (int) (lhs >>> 16);
+		final int rhsPosition = (int) (rhs >>> 16);
+		int l = starts[lhsPosition] + (int) (lhs & 0xFFFF);
+		int r = starts[rhsPosition] + (int) (rhs & 0xFFFF);
+		final int lhsEnd = starts[lhsPosition + 1];
+		final int rhsEnd = starts[rhsPosition + 1];
+		while (l < lhsEnd && r < rhsEnd) {
+			if (chars[l] != chars[r]) {
+				return chars[l] - chars[r];
+			}
+			++l;
+			++r;
+		}
+		return (lhsEnd - l) - (rhsEnd - r);
+	}
+
+	/**
+	 * Sorts a range of name index entries by text (merge sort)
+	 *
+	 * @param words The entries to sort
+	 * @param tmp A buffer as large as words
+	 * @param from The first entry of the range
+	 * @param to The entry after the range
+	 * @param chars The lower cased names, one after the other
+	 * @param starts The start of each name in chars, by position, followed by the end of the last one
+	 */
+	private static void sortWords(final long[] words, final long[] tmp, final int from, final int to, final char[] chars, final int[] starts) {
+		if (to - from < 2) {
+			return ;
+		}
+		final int mid = (from + to) >>> 1;
+		sortWords(words, tmp, from, mid, chars, starts);
+		sortWords(words, tmp, mid, to, chars, starts);
+		if (compareWords(words[mid - 1], words[mid], chars, starts) <= 0) {
+			return ;
+		}
+		System.arraycopy(words, from, tmp, from, to - from);
+		int l = from;
+		int r = mid;
+		for (int i = from; i < to; ++i) {
+			if (r >= to || (l < mid && compareWords(tmp[l], tmp[r], chars, starts) <= 0)) {
+				words[i] = tmp[l++];
+			}
+			else {
+				words[i] = tmp[r++];
+			}
+		}
+	}
+
+	/**
+	 * Finds the first directory position, in a range, whose user ID is not lower than a prefix
+	 *
+	 * @param from The first position of the range
+	 * @param to The position after the range
+	 * @param prefix The prefix
+	 * @return The first position whose ID is greater or equal to the prefix (or to if none)
+	 */
+	int lowerId(final int from, final int to, final String prefix) {
+		int low = from;
+		int high = to;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (this.directory.getId(mid).compareTo(prefix) < 0) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Finds the first directory position, in a range, whose user ID does not start with a prefix
+	 *
+	 * @param from The first position of the range, which ID is greater or equal to the prefix
+	 * @param to The position after the range
+	 * @param prefix The prefix
+	 * @return The first position whose ID does not start with the prefix (or to if none)
+	 */
+	int upperId(final int from, final int to, final String prefix) {
+		int low = from;
+		int high = to;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (this.directory.getId(mid).startsWith(prefix)) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Finds the first name index entry, in a range, whose text is not lower than a prefix
+	 *
+	 * @param words The name index
+	 * @param from The first entry of the range
+	 * @param to The entry after the range
+	 * @param prefix The lower cased prefix
+	 * @return The first entry whose text is greater or equal to the prefix (or to if none)
+	 */
+	int lowerWord(final long[] words, final int from, final int to, final String prefix) {
+		int low = from;
+		int high = to;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (wordText(this.directory, words[mid]).compareTo(prefix) < 0) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Finds the first name index entry, in a range, whose text does not start with a prefix
+	 *
+	 * @param words The name index
+	 * @param from The first entry of the range, which text is greater or equal to the prefix
+	 * @param to The entry after the range
+	 * @param prefix The lower cased prefix
+	 * @return The first entry whose text does not start with the prefix (or to if none)
+	 */
+	int upperWord(final long[] words, final int from, final int to, final String prefix) {
+		int low = from;
+		int high = to;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (wordText(this.directory, words[mid]).startsWith(prefix)) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return The indexed directory
+	 */
+	public ContactDirectory getDirectory() {
+		return this.directory;
+	}
+
+	/**
+	 * Searches the contacts whose user ID or a display name word starts with a text.
+	 * Only the user ID results are materialized, call {@link Query#advance(int)} to get the name results.
+	 *
+	 * @param text The text to search, empty to get the whole directory
+	 * @param previous The previous query, used to narrow the search if the text extends its text, or null
+	 * @param excluded Directory position of a contact that must not be in the results, -1 if none
+	 * @return The query
+	 */
+	public Query query(final String text, final @CheckForNull Query previous, final int excluded) {
+		return new Query(text, previous, excluded);
+	}
+}
@@ -0,0 +1,359 @@
+package com.weemo.sdk.helper.directory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.CheckForNull;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.JsonReader;
+import android.util.Log;
+
+import com.weemo.sdk.helper.R;
+
+/**
+ * Pulls the contacts that changed since the last sync from a directory service, and applies them to the contact store.
+ *
+ * The service is asked for <code>GET &lt;url&gt;?since=&lt;cursor&gt;</code> (without since on the first sync)
+ * and answers a JSON object:
+ * <pre>
+ * {
+ *   "cursor": "1234",                                       // to send with the next sync
+ *   "reset": false,                                         // true if changes is the whole directory
+ *   "more": false,                                          // true if changes continue after this cursor
+ *   "changes": [
+ *     { "id": "kenzo", "name": "Kenzo Tenma" },             // added or renamed
+ *     { "id": "johan", "deleted": true }                    // removed
+ *   ]
+ * }
+ * </pre>
+ *
+ * The response is read as a stream, and only the changes are kept in memory.
+ * They are then merged with the current store, both being sorted by user ID, into a new store file
+ * that replaces the current one atomically: nothing is downloaded or loaded for unchanged contacts.
+ * The cursor is only saved once the new store is committed, so an interrupted sync is simply done again.
+ *
+ * The endpoint is R.string.directory_sync_url, sync is disabled if it is empty.
+ * A stand-in service, to use during development, is in tools/directory-server.
+ */
+public final class DirectorySync {
+
+	/** Log tag for Log.* */
+	private static final String LOGTAG = "DirectorySync";
+
+	/** Name of the shared preferences in which the sync state is saved */
+	private static final String PREFS = "directory_sync";
+
+	/** Preference key: the cursor to send with the next sync */
+	private static final String PREF_CURSOR = "cursor";
+
+	/** Connection and read timeout, in milliseconds */
+	private static final int TIMEOUT = 15000;
+
+	/** Whether a sync is running */
+	private static boolean running; // = false;
+
+	/**
+	 * The result of a sync request (one or more pages)
+	 */
+	static final class Delta {
+		/** The cursor to send with the next request */
+		@CheckForNull String cursor; // = null;
+
+		/** Whether the changes are the whole directory */
+		boolean reset; // = false;
+
+		/** Whether changes continue after the cursor */
+		boolean more; // = false;
+
+		/** User ID => new display name, or null if the contact was removed; sorted like the store */
+		final TreeMap<String, String> changes = new TreeMap<String, String>();
+	}
+
+	/**
+	 * This class is a function repository and cannot be instanciated
+	 */
+	private DirectorySync() {}
+
+	/**
+	 * Forgets the cursor, so that the next sync downloads the whole directory.
+	 * Used when the store is created from another source.
+	 *
+	 * @param context Any context of the application
+	 */
+	public static void clearCursor(final Context context) {
+		context.getSharedPreferences(PREFS, Context.MODE_PRIVATE).edit().remove(PREF_CURSOR).commit();
+	}
+
+	/**
+	 * Starts a sync in background, if sync is enabled and no sync is already running.
+	 * When the store has changed, the new directory is given to {@link ContactDirectories#replace(ContactDirectory)}
+	 * on the UI thread.
+	 *
+	 * @param context Any context of the application
+	 */
+	public static void start(final Context context) {
+		final String url = context.getString(R.string.directory_sync_url);
+		if (TextUtils.isEmpty(url)) {
+			return ;
+		}
+
+		synchronized (DirectorySync.class) {
+			if (running) {
+				return ;
+			}
+			running = true;
+		}
+
+		final Context appContext = context.getApplicationContext();
+		final ContactDirectory current = ContactDirectories.get(appContext);
+		final Handler handler = new Handler(Looper.getMainLooper());
+
+		new Thread(new Runnable() {
+			@Override public void run() {
+				try {
+					final ContactDirectory synced = sync(appContext, url, current);
+					if (synced != null) {
+						handler.post(new Runnable() {
+							@Override public void run() {
+								ContactDirectories.replace(synced);
+							}
+						});
+					}
+				}
+				catch (IOException e) {
+					Log.w(LOGTAG, "Could not sync the contact directory", e);
+				}
+				catch (RuntimeException e) {
+					// A malformed response must not crash the application
+					Log.e(LOGTAG, "Could not sync the contact directory", e);
+				}
+				finally {
+					synchronized (DirectorySync.class) {
+						running = false;
+					}
+				}
+			}
+		}, "DirectorySync").start();
+	}
+
+	/**
+	 * Downloads the changes and applies them to the store
+	 *
+	 * @param context The application context
+	 * @param url The directory service endpoint
+	 * @param current The current directory
+	 * @return The new directory, or null if nothing changed
+	 * @throws IOException If the changes could not be downloaded or applied
+	 */
+	static @CheckForNull ContactDirectory sync(final Context context, final String url, final ContactDirectory current) throws IOException {
+		if (!(current instanceof FileContactDirectory)) {
+			// The store could not be created, there is nothing to sync to
+			return null;
+		}
+
+		final SharedPreferences prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+		final long start = SystemClock.uptimeMillis();
+
+		final Delta delta = new Delta();
+		delta.cursor = prefs.getString(PREF_CURSOR, null);
+		int requests = 0;
+		do {
+			fetch(url, delta);
+			++requests;
+		}
+		while (delta.more);
+
+		ContactDirectory synced = null;
+		if (delta.reset || !delta.changes.isEmpty()) {
+			final File file = ContactDirectories.getFile(context);
+			synchronized (ContactDirectories.STORE_LOCK) {
+				// The store is read from its file, which an import may have replaced since the sync started
+				merge(delta.reset ? null : new FileContactDirectory(file), delta.changes, file);
+				synced = new FileContactDirectory(file);
+			}
+		}
+		prefs.edit().putString(PREF_CURSOR, delta.cursor).commit();
+
+		Log.d(LOGTAG, "Synced " + delta.changes.size() + " changes" + (delta.reset ? " (full directory)" : "")
+				+ " in " + requests + " requests, " + (SystemClock.uptimeMillis() - start) + "ms");
+
+		return synced;
+	}
+
+	/**
+	 * Downloads a page of changes
+	 *
+	 * @param url The directory service endpoint
+	 * @param delta The changes so far, which cursor is sent, and to which the page is added
+	 * @throws IOException If the changes could not be downloaded
+	 */
+	static void fetch(final String url, final Delta delta) throws IOException {
+		final String query = delta.cursor == null ? "" : (url.indexOf('?') == -1 ? "?" : "&") + "since=" + URLEncoder.encode(delta.cursor, "UTF-8");
+		final HttpURLConnection connection = (HttpURLConnection) new URL(url + query).openConnection();
+		try {
+			connection.setConnectTimeout(TIMEOUT);
+			connection.setReadTimeout(TIMEOUT);
+			if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+				throw new IOException("Directory service answered " + connection.getResponseCode());
+			}
+
+			// HttpURLConnection asks for and decompresses gzip transparently
+			final InputStream input = connection.getInputStream();
+			try {
+				parse(new JsonReader(new InputStreamReader(input, FileContactDirectory.UTF8)), delta);
+			}
+			finally {
+				input.close();
+			}
+		}
+		finally {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * Reads a page of changes
+	 *
+	 * @param reader The JSON reader of the response
+	 * @param delta The changes so far, to which the page is added
+	 * @throws IOException If the response could not be read
+	 */
+	static void parse(final JsonReader reader, final Delta delta) throws IOException {
+		delta.more = false;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			final String key = reader.nextName();
+			if ("cursor".equals(key)) {
+				delta.cursor = reader.nextString();
+			}
+			else if ("more".equals(key)) {
+				delta.more = reader.nextBoolean();
+			}
+			else if ("reset".equals(key)) {
+				if (reader.nextBoolean()) {
+					// Changes of previous pages were computed from a cursor that the service does not know anymore
+					delta.reset = true;
+					delta.changes.clear();
+				}
+			}
+			else if ("changes".equals(key)) {
+				reader.beginArray();
+				while (reader.hasNext()) {
+					parseChange(reader, delta.changes);
+				}
+				reader.endArray();
+			}
+			else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (delta.cursor == null) {
+			throw new IOException("Directory service did not answer a cursor");
+		}
+	}
+
+	/**
+	 * Reads a change
+	 *
+	 * @param reader The JSON reader of the response
+	 * @param changes The changes, to which the change is added
+	 * @throws IOException If the change could not be read
+	 */
+	private static void parseChange(final JsonReader reader, final Map<String, String> changes) throws IOException {
+		String id = null;
+		String name = null;
+		boolean deleted = false;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			final String key = reader.nextName();
+			if ("id".equals(key)) {
+				id = reader.nextString();
+			}
+			else if ("name".equals(key)) {
+				name = reader.nextString();
+			}
+			else if ("deleted".equals(key)) {
+				deleted = reader.nextBoolean();
+			}
+			else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (TextUtils.isEmpty(id)) {
+			Log.w(LOGTAG, "Ignoring a change without id");
+			return ;
+		}
+		changes.put(id, deleted ? null : (name == null ? id : name));
+	}
+
+	/**
+	 * Writes a new store from the current one and the changes.
+	 * Both are sorted by user ID, so the new store is written in one pass, without loading the current one.
+	 *
+	 * @param current The current directory, or null to write only the changes
+	 * @param changes User ID => new display name, or null if the contact was removed
+	 * @param file The store file to replace
+	 * @throws IOException If the new store could not be written
+	 */
+	static void merge(final @CheckForNull ContactDirectory current, final TreeMap<String, String> changes, final File file) throws IOException {
+		final FileContactDirectory.Writer writer = new FileContactDirectory.Writer(file);
+		try {
+			final Iterator<Map.Entry<String, String>> it = changes.entrySet().iterator();
+			Map.Entry<String, String> change = it.hasNext() ? it.next() : null;
+
+			final int size = current == null ? 0 : current.size();
+			for (int position = 0; position < size; ++position) {
+				final String id = current.getId(position);
+
+				// Changes that come before this contact are new contacts
+				while (change != null && change.getKey().compareTo(id) < 0) {
+					if (change.getValue() != null) {
+						writer.add(change.getKey(), change.getValue());
+					}
+					change = it.hasNext() ? it.next() : null;
+				}
+
+				if (change != null && change.getKey().equals(id)) {
+					if (change.getValue() != null) {
+						writer.add(id, change.getValue());
+					}
+					change = it.hasNext() ? it.next() : null;
+				}
+				else {
+					writer.add(id, current.getDisplayName(position));
+				}
+			}
+
+			// Changes that come after the last contact are new contacts
+			while (change != null) {
+				if (change.getValue() != null) {
+					writer.add(change.getKey(), change.getValue());
+				}
+				change = it.hasNext() ? it.next() : null;
+			}
+
+			writer.commit();
+		}
+		finally {
+			writer.close();
+		}
+	}
+}
@@ -0,0 +1,279 @@
+package com.weemo.sdk.helper.directory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Contact directory stored in a file, sorted by user ID.
+ *
+ * The file is memory mapped: opening it only reads its header, whatever the number of contacts,
+ * and contacts are only decoded when they are asked for.
+ * This allows directories of hundreds of thousands of contacts without loading them on the heap.
+ *
+ * File format (big endian):
+ *  - int: {@link #MAGIC}
+ *  - int: number of contacts
+ *  - int[number of contacts]: offset of each record, relative to the first record
+ *  - records, sorted by user ID: unsigned short length + UTF-8 user ID, unsigned short length + UTF-8 display name
+ *
+ * Files are written with a {@link Writer} and never modified: changes are applied by writing a new file.
+ */
+public class FileContactDirectory implements ContactDirectory {
+
+	/** Magic number at the start of a directory file ("WCD1") */
+	public static final int MAGIC = 0x57434431;
+
+	/** Size of the file header (magic and count) */
+	private static final int HEADER_SIZE = 8;
+
+	/** Charset of user IDs and display names */
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The file content */
+	private final MappedByteBuffer buffer;
+
+	/** Number of contacts */
+	private final int count;
+
+	/** Position of the first record in the file */
+	private final int recordsStart;
+
+	/**
+	 * Writes a directory file.
+	 *
+	 * Contacts must be added sorted by user ID, without duplicates.
+	 * Records are first written to a temporary file, then the directory file is assembled and atomically
+	 * renamed to its final name on {@link #commit()}, so that readers never see a partial file.
+	 */
+	public static final class Writer implements Closeable {
+
+		/** The directory file to write */
+		private final File target;
+
+		/** Temporary file in which records are written */
+		private final File recordsFile;
+
+		/** Output of the records */
+		private final DataOutputStream records;
+
+		/** Offset of each record written so far */
+		private int[] offsets = new int[1024];
+
+		/** Number of records written so far */
+		private int count; // = 0;
+
+		/** Size of the records written so far */
+		private int size; // = 0;
+
+		/** The user ID of the last record, to check the order */
+		private String lastId = "";
+
+		/** Whether the file has been committed (or the writer closed) */
+		private boolean done; // = false;
+
+		/**
+		 * Constructor
+		 *
+		 * @param target The directory file to write
+		 * @throws IOException If the temporary file could not be created
+		 */
+		public Writer(final File target) throws IOException {
+			this.target = target;
+			this.recordsFile = new File(target.getPath() + ".records");
+			this.records = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.recordsFile)));
+		}
+
+		/**
+		 * Write an UTF-8 string, prefixed by its length
+		 *
+		 * @param value The string to write
+		 * @return The number of bytes written
+		 * @throws IOException If the string could not be written
+		 */
+		private int writeString(final String value) throws IOException {
+			final byte[] bytes = value.getBytes(UTF8);
+			if (bytes.length > 0xFFFF) {
+				throw new IllegalArgumentException("String too long: " + value.substring(0, 32) + "...");
+			}
+			this.records.writeShort(bytes.length);
+			this.records.write(bytes);
+			return 2 + bytes.length;
+		}
+
+		/**
+		 * Adds a contact
+		 *
+		 * @param id The user ID of the contact, greater than the previous one
+		 * @param displayName The display name of the contact
+		 * @throws IOException If the contact could not be written
+		 */
+		public void add(final String id, final String displayName) throws IOException {
+			if (this.count > 0 && id.compareTo(this.lastId) <= 0) {
+				throw new IllegalArgumentException("Contacts must be sorted by ID: " + id + " after " + this.lastId);
+			}
+			if (this.count == this.offsets.length) {
+				final int[] grown = new int[this.offsets.length * 2];
+				System.arraycopy(this.offsets, 0, grown, 0, this.count);
+				this.offsets = grown;
+			}
+			this.offsets[this.count++] = this.size;
+			this.size += writeString(id);
+			this.size += writeString(displayName);
+			this.lastId = id;
+		}
+
+		/**
+		 * Assembles the directory file and moves it to its final name
+		 *
+		 * @throws IOException If the file could not be written
+		 */
+		public void commit() throws IOException {
+			this.records.close();
+
+			final File tmpFile = new File(this.target.getPath() + ".tmp");
+			final FileOutputStream output = new FileOutputStream(tmpFile);
+			try {
+				final DataOutputStream header = new DataOutputStream(new BufferedOutputStream(output));
+				header.writeInt(MAGIC);
+				header.writeInt(this.count);
+				for (int i = 0; i < this.count; ++i) {
+					header.writeInt(this.offsets[i]);
+				}
+				header.flush();
+
+				final FileInputStream input = new FileInputStream(this.recordsFile);
+				try {
+					final FileChannel from = input.getChannel();
+					final FileChannel to = output.getChannel();
+					long copied = 0;
+					while (copied < this.size) {
+						copied += from.transferTo(copied, this.size - copied, to);
+					}
+				}
+				finally {
+					input.close();
+				}
+				output.getFD().sync();
+			}
+			finally {
+				output.close();
+			}
+
+			if (!tmpFile.renameTo(this.target)) {
+				throw new IOException("Could not rename " + tmpFile + " to " + this.target);
+			}
+			this.done = true;
+			this.recordsFile.delete();
+		}
+
+		/**
+		 * Closes this writer, discarding the file if it has not been committed
+		 */
+		@Override
+		public void close() throws IOException {
+			if (this.done) {
+				return ;
+			}
+			this.done = true;
+			this.records.close();
+			this.recordsFile.delete();
+		}
+	}
+
+	/**
+	 * Constructor: maps the file in memory
+	 *
+	 * @param file The directory file
+	 * @throws IOException If the file could not be read or is not a directory file
+	 */
+	public FileContactDirectory(final File file) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			// The mapping stays valid after the file is closed
+			this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		}
+		finally {
+			raf.close();
+		}
+
+		if (this.buffer.capacity() < HEADER_SIZE || this.buffer.getInt(0) != MAGIC) {
+			throw new IOException(file + " is not a contact directory");
+		}
+		this.count = this.buffer.getInt(4);
+		this.recordsStart = HEADER_SIZE + this.count * 4;
+		if (this.count < 0 || this.recordsStart > this.buffer.capacity()) {
+			throw new IOException(file + " is corrupted");
+		}
+	}
+
+	/**
+	 * Get the position of a record in the file
+	 *
+	 * @param position The position of the contact
+	 * @return The position of its record in the file
+	 */
+	private int recordOffset(final int position) {
+		if (position < 0 || position >= this.count) {
+			throw new IndexOutOfBoundsException("Position " + position + " of " + this.count);
+		}
+		return this.recordsStart + this.buffer.getInt(HEADER_SIZE + position * 4);
+	}
+
+	/**
+	 * Reads a string, prefixed by its length
+	 *
+	 * @param offset The position of the string in the file
+	 * @return The string
+	 */
+	private synchronized String readString(final int offset) {
+		final byte[] bytes = new byte[this.buffer.getShort(offset) & 0xFFFF];
+		this.buffer.position(offset + 2);
+		this.buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	@Override
+	public int size() {
+		return this.count;
+	}
+
+	@Override
+	public String getId(final int position) {
+		return readString(recordOffset(position));
+	}
+
+	@Override
+	public String getDisplayName(final int position) {
+		final int offset = recordOffset(position);
+		return readString(offset + 2 + (this.buffer.getShort(offset) & 0xFFFF));
+	}
+
+	@Override
+	public int indexOf(final String id) {
+		int low = 0;
+		int high = this.count - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final int cmp = getId(mid).compareTo(id);
+			if (cmp < 0) {
+				low = mid + 1;
+			}
+			else if (cmp > 0) {
+				high = mid - 1;
+			}
+			else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+}
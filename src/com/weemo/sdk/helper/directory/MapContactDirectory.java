@@ -0,0 +1,60 @@
+package com.weemo.sdk.helper.directory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Contact directory backed by an in memory map (like DemoAccounts.ACCOUNTS).
+ *
+ * This is meant for small lists: every contact is on the heap.
+ */
+public class MapContactDirectory implements ContactDirectory {
+
+	/** User IDs, in order */
+	private final String[] ids;
+
+	/** Display names, in the same order as {@link #ids} */
+	private final String[] names;
+
+	/** User ID => its position */
+	private final Map<String, Integer> positions = new HashMap<String, Integer>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param accounts User ID => Display name, in any order
+	 */
+	public MapContactDirectory(final Map<String, String> accounts) {
+		this.ids = new String[accounts.size()];
+		this.names = new String[accounts.size()];
+		int position = 0;
+		for (final Map.Entry<String, String> entry : new TreeMap<String, String>(accounts).entrySet()) {
+			this.ids[position] = entry.getKey();
+			this.names[position] = entry.getValue();
+			this.positions.put(entry.getKey(), Integer.valueOf(position));
+			++position;
+		}
+	}
+
+	@Override
+	public int size() {
+		return this.ids.length;
+	}
+
+	@Override
+	public String getId(final int position) {
+		return this.ids[position];
+	}
+
+	@Override
+	public String getDisplayName(final int position) {
+		return this.names[position];
+	}
+
+	@Override
+	public int indexOf(final String id) {
+		final Integer position = this.positions.get(id);
+		return position == null ? -1 : position.intValue();
+	}
+}
@@ -0,0 +1,24 @@
+package com.weemo.sdk.helper.event;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a @WeemoEventListener method as not needing the UI thread.
+ *
+ * The {@link HelperEventBus} calls such a listener on its background lane (a dedicated HandlerThread) instead of the UI thread.
+ * Events are delivered on the lane in the order they were fired.
+ * This is meant for service side and bookkeeping work (notifications, sounds, logs...) that would otherwise
+ * compete with the call UI for the main thread.
+ *
+ * Because delivery is deferred, the return value of a background listener does not stop the propagation of the event.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Background {
+	// Marker annotation
+}
@@ -0,0 +1,31 @@
+package com.weemo.sdk.helper.event;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a @WeemoEventListener method as only interested in the latest state.
+ *
+ * When events reach such a listener in burst, the {@link HelperEventBus} holds them during the window
+ * and only delivers the last one (per call for call events).
+ * This is meant for "state" events, like CanCreateCallChangedEvent or ReceivingVideoChangedEvent,
+ * where an intermediate value is obsolete as soon as the next one arrives.
+ *
+ * Because delivery is deferred, the return value of a conflated listener does not stop the propagation of the event.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Conflate {
+
+	/** Duration of one frame, in milliseconds */
+	long FRAME = 16;
+
+	/**
+	 * @return The time, in milliseconds, during which successive events are conflated. Defaults to one frame.
+	 */
+	long value() default FRAME;
+}
@@ -0,0 +1,154 @@
+package com.weemo.sdk.helper.event;
+
+import java.util.Locale;
+
+import android.util.Log;
+
+import com.weemo.sdk.event.WeemoEvent;
+import com.weemo.sdk.event.WeemoEventBus;
+import com.weemo.sdk.event.WeemoEventListener;
+import com.weemo.sdk.event.global.CanCreateCallChangedEvent;
+import com.weemo.sdk.event.global.StatusEvent;
+
+/**
+ * Compares the cost of registering listeners and firing events
+ * between the {@link HelperEventBus.Mode#REFLECTIVE}, {@link HelperEventBus.Mode#INDEXED} and {@link HelperEventBus.Mode#WEAK} modes.
+ *
+ * Each mode runs on its own private SDK bus which delivers events synchronously,
+ * so the benchmark neither touches the application bus nor depends on the UI thread.
+ * It should nevertheless be run outside the UI thread as it takes a few seconds.
+ */
+public final class EventBusBenchmark {
+
+	/** Log tag for Log.* */
+	private static final String LOGTAG = "EventBusBenchmark";
+
+	/**
+	 * This class is a function repository and cannot be instanciated
+	 */
+	private EventBusBenchmark() {}
+
+	/**
+	 * SDK bus that delivers events synchronously instead of posting them on the UI thread
+	 */
+	private static final class DirectEventBus extends WeemoEventBus {
+
+		/**
+		 * Constructor
+		 */
+		DirectEventBus() {
+			super();
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public <T extends WeemoEvent> void fire(final T event) {
+			fireEvent((Class<? super T>) event.getClass(), event);
+		}
+	}
+
+	/**
+	 * Listener with two listener methods, like most of the application screens
+	 */
+	public static final class BenchListener {
+
+		/** Number of events received */
+		int received; // = 0;
+
+		/**
+		 * Receives StatusEvent
+		 *
+		 * @param event The event
+		 */
+		@WeemoEventListener
+		public void onStatus(final StatusEvent event) {
+			++this.received;
+		}
+
+		/**
+		 * Receives CanCreateCallChangedEvent
+		 *
+		 * @param event The event
+		 */
+		@WeemoEventListener
+		public void onCanCreateCallChanged(final CanCreateCallChangedEvent event) {
+			++this.received;
+		}
+	}
+
+	/**
+	 * Runs the benchmark for one mode
+	 *
+	 * @param mode The mode to benchmark
+	 * @param listeners The number of listeners registered at the same time
+	 * @param rounds The number of register / fire / unregister rounds
+	 * @return A one line description of the results
+	 */
+	private static String runMode(final HelperEventBus.Mode mode, final int listeners, final int rounds) {
+		final DirectEventBus sdkBus = new DirectEventBus();
+		final HelperEventBus bus = new HelperEventBus(mode, sdkBus, null);
+
+		final BenchListener[] objects = new BenchListener[listeners];
+		for (int i = 0; i < listeners; ++i) {
+			objects[i] = new BenchListener();
+		}
+
+		final WeemoEvent[] events = { new StatusEvent("k.tenma", true), new CanCreateCallChangedEvent(null) };
+
+		long registerNanos = 0;
+		long fireNanos = 0;
+		for (int round = 0; round < rounds; ++round) {
+			long start = System.nanoTime();
+			for (final BenchListener listener : objects) {
+				bus.register(listener);
+			}
+			registerNanos += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (final WeemoEvent event : events) {
+				sdkBus.fire(event);
+			}
+			fireNanos += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (final BenchListener listener : objects) {
+				bus.unregister(listener);
+			}
+			registerNanos += System.nanoTime() - start;
+		}
+
+		if (mode != HelperEventBus.Mode.REFLECTIVE) {
+			sdkBus.unregister(bus);
+		}
+
+		return String.format(Locale.US, "%s: %.1f us per register+unregister, %.1f us per fire to %d listeners",
+				mode.name(),
+				registerNanos / 1000.0 / (rounds * listeners),
+				fireNanos / 1000.0 / (rounds * events.length),
+				Integer.valueOf(listeners)
+			);
+	}
+
+	/**
+	 * Runs the benchmark for the REFLECTIVE, INDEXED and WEAK modes and logs the results
+	 *
+	 * @param listeners The number of listeners registered at the same time
+	 * @param rounds The number of register / fire / unregister rounds
+	 * @return The results, one line per mode
+	 */
+	public static String run(final int listeners, final int rounds) {
+		// Warm up all three paths so that the first mode does not pay for class loading
+		runMode(HelperEventBus.Mode.REFLECTIVE, listeners, 1);
+		runMode(HelperEventBus.Mode.INDEXED, listeners, 1);
+		runMode(HelperEventBus.Mode.WEAK, listeners, 1);
+
+		final String reflective = runMode(HelperEventBus.Mode.REFLECTIVE, listeners, rounds);
+		Log.i(LOGTAG, reflective);
+		final String indexed = runMode(HelperEventBus.Mode.INDEXED, listeners, rounds);
+		Log.i(LOGTAG, indexed);
+		final String weak = runMode(HelperEventBus.Mode.WEAK, listeners, rounds);
+		Log.i(LOGTAG, weak);
+
+		return reflective + "\n" + indexed + "\n" + weak;
+	}
+}
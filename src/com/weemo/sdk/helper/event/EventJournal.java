@@ -0,0 +1,139 @@
+package com.weemo.sdk.helper.event;
+
+import java.util.Locale;
+
+import com.weemo.sdk.WeemoCall.CallStatus;
+import com.weemo.sdk.event.WeemoEvent;
+import com.weemo.sdk.event.call.CallStatusChangedEvent;
+import com.weemo.sdk.event.call.WeemoCallEvent;
+import com.weemo.sdk.event.global.CanCreateCallChangedEvent;
+
+/**
+ * In memory journal of the last Weemo events, meant to be attached to crash reports.
+ *
+ * This is a ring buffer of preallocated parallel arrays: recording an event only writes a few array cells
+ * and never allocates, so it can stay enabled for the whole life of the application.
+ * When full, the oldest entries are overwritten.
+ *
+ * The {@link HelperEventBus} records every event it receives from the SDK (unless in {@link HelperEventBus.Mode#REFLECTIVE} mode).
+ */
+public final class EventJournal {
+
+	/** Number of events kept in the journal (must be a power of two) */
+	public static final int CAPACITY = 512;
+
+	/** The journal of the application */
+	private static final EventJournal INSTANCE = new EventJournal(CAPACITY);
+
+	/** Mask used to wrap the write position, as the capacity is a power of two */
+	private final int mask;
+
+	/** Type of the recorded events */
+	private final Class<?>[] types;
+
+	/** Call ID of the recorded events, -1 for non call events */
+	private final int[] callIds;
+
+	/** Status of the recorded events (see {@link #statusOf(WeemoEvent)}) */
+	private final int[] statuses;
+
+	/** Time at which the events were recorded, from System.nanoTime() */
+	private final long[] times;
+
+	/** Total number of events recorded since creation */
+	private long count; // = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param capacity Number of events kept in the journal (must be a power of two)
+	 */
+	EventJournal(final int capacity) {
+		if (Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("Capacity must be a power of two");
+		}
+		this.mask = capacity - 1;
+		this.types = new Class<?>[capacity];
+		this.callIds = new int[capacity];
+		this.statuses = new int[capacity];
+		this.times = new long[capacity];
+	}
+
+	/**
+	 * @return The journal of the application
+	 */
+	public static EventJournal instance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Get the status recorded for an event:
+	 *  - The ordinal of the call status for CallStatusChangedEvent
+	 *  - The ordinal of the error for CanCreateCallChangedEvent
+	 *  - -1 for all other events (and CanCreateCallChangedEvent without error)
+	 *
+	 * @param event The event
+	 * @return The status to record
+	 */
+	private static int statusOf(final WeemoEvent event) {
+		if (event instanceof CallStatusChangedEvent) {
+			return ((CallStatusChangedEvent) event).getCallStatus().ordinal();
+		}
+		if (event instanceof CanCreateCallChangedEvent) {
+			final CanCreateCallChangedEvent.Error error = ((CanCreateCallChangedEvent) event).getError();
+			return error == null ? -1 : error.ordinal();
+		}
+		return -1;
+	}
+
+	/**
+	 * Records an event, overwriting the oldest one if the journal is full
+	 *
+	 * @param event The event to record
+	 */
+	public synchronized void record(final WeemoEvent event) {
+		final int pos = (int) (this.count & this.mask);
+		this.types[pos] = event.getClass();
+		this.callIds[pos] = event instanceof WeemoCallEvent ? ((WeemoCallEvent) event).getCall().getCallId() : -1;
+		this.statuses[pos] = statusOf(event);
+		this.times[pos] = System.nanoTime();
+		++this.count;
+	}
+
+	/**
+	 * Writes the journal, oldest event first, one event per line.
+	 * Each event is timed relatively to the moment of the dump.
+	 *
+	 * @param builder The builder to write to
+	 */
+	public synchronized void dump(final StringBuilder builder) {
+		final long now = System.nanoTime();
+		final int size = (int) Math.min(this.count, this.mask + 1);
+
+		builder.append(this.count).append(" events recorded, last ").append(size).append(":\n");
+		for (long i = this.count - size; i < this.count; ++i) {
+			final int pos = (int) (i & this.mask);
+			final Class<?> type = this.types[pos];
+			final int status = this.statuses[pos];
+
+			builder.append(String.format(Locale.US, "-%.3fms ", (now - this.times[pos]) / 1000000.0));
+			builder.append(type.getSimpleName());
+			if (this.callIds[pos] != -1) {
+				builder.append(" call=").append(this.callIds[pos]);
+			}
+			if (status != -1) {
+				builder.append(" status=");
+				if (type == CallStatusChangedEvent.class) {
+					builder.append(CallStatus.values()[status]);
+				}
+				else if (type == CanCreateCallChangedEvent.class) {
+					builder.append(CanCreateCallChangedEvent.Error.values()[status]);
+				}
+				else {
+					builder.append(status);
+				}
+			}
+			builder.append('\n');
+		}
+	}
+}
@@ -0,0 +1,716 @@
+package com.weemo.sdk.helper.event;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.annotation.CheckForNull;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.weemo.sdk.Weemo;
+import com.weemo.sdk.event.WeemoEvent;
+import com.weemo.sdk.event.WeemoEventBus;
+import com.weemo.sdk.event.WeemoEventListener;
+import com.weemo.sdk.event.call.WeemoCallEvent;
+
+/**
+ * Event bus used by every component of the helper.
+ *
+ * Listeners are declared exactly like for the SDK's WeemoEventBus:
+ * public methods annotated with @WeemoEventListener that take one WeemoEvent subclass as argument.
+ *
+ * In {@link Mode#INDEXED} mode, this bus is the only object registered to the SDK's bus.
+ * It then dispatches every Weemo event itself, using the {@link ListenerIndex} built once per listener class.
+ * In {@link Mode#WEAK} mode, it does the same but only weakly references the listeners, so that a component
+ * that misses its unregister() call does not stay in the bus forever: see {@link #purge()} and {@link #report(StringBuilder)}.
+ * In {@link Mode#REFLECTIVE} mode, listeners are directly handed to the SDK's bus, which is the historical behaviour.
+ *
+ * Components that only care about one call should use {@link #register(Object, int)}:
+ * call events are then routed by call ID instead of being broadcast to every listener.
+ */
+public final class HelperEventBus {
+
+	/**
+	 * How listeners are registered and events dispatched
+	 */
+	public enum Mode {
+		/** Listeners are scanned at every registration and called by the SDK's WeemoEventBus */
+		REFLECTIVE,
+
+		/** Listeners are scanned once per class and called by this bus from its single SDK subscription */
+		INDEXED,
+
+		/**
+		 * Like {@link #INDEXED}, but listeners are only weakly referenced by the bus.
+		 * A listener that is garbage collected without having been unregistered stops receiving events
+		 * and is purged periodically, instead of staying in the bus forever.
+		 * Listener objects must therefore be referenced elsewhere (which is always the case of activities, fragments and services).
+		 */
+		WEAK
+	}
+
+	/**
+	 * A listener method bound to its listener object.
+	 * When run, it delivers the events whose conflation window has ended.
+	 */
+	private static final class Subscription implements Runnable {
+
+		/** The listener object, weakly referenced */
+		private final WeakReference<Object> ref;
+
+		/** The listener object, strongly referenced, or null if the subscription is weak */
+		private final @CheckForNull Object strong;
+
+		/** The class of the listener object, kept to report stale listeners once collected */
+		final Class<?> listenerClass;
+
+		/** The listener method */
+		final Method method;
+
+		/** The conflation window in milliseconds, or -1 if events are delivered immediately */
+		final long conflateWindow;
+
+		/** Whether the listener is called on the background lane instead of the UI thread */
+		final boolean background;
+
+		/** Events waiting for the end of the conflation window, by call ID (-1 for non call events) */
+		private @CheckForNull SparseArray<WeemoEvent> pending; // = null;
+
+		/** Whether this subscription is still registered (deferred events are dropped if not) */
+		volatile boolean active = true;
+
+		/**
+		 * Constructor
+		 *
+		 * @param listener The listener object
+		 * @param entry The listener method
+		 * @param weak Whether the listener object must only be weakly referenced
+		 */
+		Subscription(final Object listener, final ListenerIndex.Entry entry, final boolean weak) {
+			this.ref = new WeakReference<Object>(listener);
+			this.strong = weak ? null : listener;
+			this.listenerClass = listener.getClass();
+			this.method = entry.method;
+			this.conflateWindow = entry.conflateWindow;
+			this.background = entry.background;
+		}
+
+		/**
+		 * @return The listener object, or null if it has been garbage collected
+		 */
+		@CheckForNull Object listener() {
+			return this.ref.get();
+		}
+
+		/**
+		 * Keeps an event until the end of the conflation window, replacing the previous event of the same key.
+		 * The window starts with the first event of a burst.
+		 *
+		 * @param event The event to deliver
+		 * @param callId The ID of the call of the event, -1 for non call events
+		 * @param handler The handler on which the event will be delivered
+		 */
+		synchronized void conflate(final WeemoEvent event, final int callId, final Handler handler) {
+			if (this.pending == null) {
+				this.pending = new SparseArray<WeemoEvent>();
+			}
+			final boolean scheduled = this.pending.size() > 0;
+			this.pending.put(callId, event);
+			if (!scheduled) {
+				handler.postDelayed(this, this.conflateWindow);
+			}
+		}
+
+		/**
+		 * Delivers the latest event of each key at the end of the conflation window
+		 */
+		@Override
+		public void run() {
+			final WeemoEvent[] latest;
+			synchronized (this) {
+				final SparseArray<WeemoEvent> events = this.pending;
+				if (events == null || events.size() == 0) {
+					return ;
+				}
+				latest = new WeemoEvent[events.size()];
+				for (int i = 0; i < latest.length; ++i) {
+					latest[i] = events.valueAt(i);
+				}
+				events.clear();
+			}
+
+			if (!this.active) {
+				return ;
+			}
+			for (final WeemoEvent event : latest) {
+				invoke(event);
+			}
+		}
+
+		/**
+		 * Invokes the listener method, with the same semantic as the SDK's WeemoEventBus:
+		 * a listener returning false stops the propagation of the event.
+		 *
+		 * @param event The event to deliver
+		 * @return Whether the event should continue to be propagated
+		 */
+		boolean invoke(final WeemoEvent event) {
+			final Object listener = listener();
+			if (listener == null) {
+				// Collected without having been unregistered, it will be purged
+				return true;
+			}
+			try {
+				final Object ret = this.method.invoke(listener, event);
+				if (ret instanceof Boolean) {
+					return ((Boolean) ret).booleanValue();
+				}
+				return true;
+			}
+			catch (InvocationTargetException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new RuntimeException(e.getCause());
+			}
+			catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * Delivery of one event to a background listener
+	 */
+	private static final class Delivery implements Runnable {
+
+		/** The subscription to deliver to */
+		private final Subscription sub;
+
+		/** The event to deliver */
+		private final WeemoEvent event;
+
+		/**
+		 * Constructor
+		 *
+		 * @param sub The subscription to deliver to
+		 * @param event The event to deliver
+		 */
+		Delivery(final Subscription sub, final WeemoEvent event) {
+			this.sub = sub;
+			this.event = event;
+		}
+
+		@Override
+		public void run() {
+			if (this.sub.active) {
+				this.sub.invoke(this.event);
+			}
+		}
+	}
+
+	/** Log tag for Log.* */
+	private static final String LOGTAG = "HelperEventBus";
+
+	/** Interval, in milliseconds, between two purges of the collected listeners in {@link Mode#WEAK} mode */
+	private static final long PURGE_INTERVAL = 30000;
+
+	/** The bus used by the application, created on first use */
+	private static @CheckForNull HelperEventBus instance; // = null;
+
+	/** The registration and dispatch mode of this bus */
+	private final Mode mode;
+
+	/** The SDK bus this bus is plugged on */
+	private final WeemoEventBus sdkBus;
+
+	/** The journal in which every received event is recorded, if any */
+	private final @CheckForNull EventJournal journal;
+
+	/** UI (main) thread handler, on which conflated events are delivered */
+	private final Handler handler = new Handler(Looper.getMainLooper());
+
+	/** Handler of the background lane, created on first use */
+	private @CheckForNull Handler backgroundHandler; // = null;
+
+	/** Event type => subscriptions of listeners to this exact type (arrays are replaced, never modified) */
+	private final Map<Class<?>, Subscription[]> subscriptions = new HashMap<Class<?>, Subscription[]>();
+
+	/** Call ID => event type => subscriptions of listeners registered for this call only */
+	private final SparseArray<Map<Class<?>, Subscription[]>> callSubscriptions = new SparseArray<Map<Class<?>, Subscription[]>>();
+
+	/** Listeners registered for one call => the ID of this call */
+	private final Map<Object, Integer> callScoped;
+
+	/** Listener class => number of its objects that were collected without having been unregistered (in {@link Mode#WEAK} mode) */
+	private final Map<Class<?>, Integer> staleCounts = new HashMap<Class<?>, Integer>();
+
+	/** Whether a purge of the collected listeners is scheduled */
+	private boolean purgeScheduled; // = false;
+
+	/** Periodically purges the collected listeners, as long as there are listeners */
+	private final Runnable purgeTask = new Runnable() {
+		@Override
+		public void run() {
+			purge();
+		}
+	};
+
+	/** Event class => all the types an event of this class must be delivered to, WeemoEvent first */
+	private final Map<Class<?>, Class<?>[]> hierarchies = new HashMap<Class<?>, Class<?>[]>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param mode The registration and dispatch mode
+	 * @param sdkBus The SDK bus this bus is plugged on
+	 * @param journal The journal in which every received event is recorded, if any (not used in {@link Mode#REFLECTIVE} mode)
+	 */
+	HelperEventBus(final Mode mode, final WeemoEventBus sdkBus, final @CheckForNull EventJournal journal) {
+		this.mode = mode;
+		this.sdkBus = sdkBus;
+		this.journal = journal;
+		this.callScoped = mode == Mode.WEAK ? new WeakHashMap<Object, Integer>() : new IdentityHashMap<Object, Integer>();
+
+		if (mode != Mode.REFLECTIVE) {
+			sdkBus.register(this);
+		}
+	}
+
+	/**
+	 * Get the bus used by the application
+	 *
+	 * @return The application event bus
+	 */
+	public static synchronized HelperEventBus instance() {
+		if (instance == null) {
+			instance = new HelperEventBus(Mode.WEAK, Weemo.eventBus(), EventJournal.instance());
+		}
+		return instance;
+	}
+
+	/**
+	 * @return The registration and dispatch mode of this bus
+	 */
+	public Mode getMode() {
+		return this.mode;
+	}
+
+	/**
+	 * Registers all @WeemoEventListener methods of the given object.
+	 * Registering an object that is already registered has no effect.
+	 *
+	 * @param listener The object to register
+	 */
+	public synchronized void register(final Object listener) {
+		if (this.mode == Mode.REFLECTIVE) {
+			this.sdkBus.register(listener);
+			return ;
+		}
+
+		for (final ListenerIndex.Entry entry : ListenerIndex.get(listener.getClass())) {
+			add(this.subscriptions, entry, listener);
+		}
+		schedulePurge();
+	}
+
+	/**
+	 * Registers all @WeemoEventListener methods of the given object for one call only.
+	 *
+	 * Listener methods of call events (WeemoCallEvent subclasses) will only receive the events of the given call:
+	 * those subscriptions are indexed by call ID, so events of other calls never reach them.
+	 * Listener methods of other events are registered like with {@link #register(Object)}.
+	 * If the object is already registered (for another call or not), it is unregistered first.
+	 *
+	 * Not available in {@link Mode#REFLECTIVE} mode.
+	 *
+	 * @param listener The object to register
+	 * @param callId The ID of the only call whose events the object will receive
+	 */
+	public synchronized void register(final Object listener, final int callId) {
+		if (this.mode == Mode.REFLECTIVE) {
+			throw new UnsupportedOperationException("Call scoped listeners are not available in REFLECTIVE mode");
+		}
+
+		// Otherwise, the subscriptions of the previous call would be left behind
+		unregister(listener);
+
+		Map<Class<?>, Subscription[]> callTable = this.callSubscriptions.get(callId);
+		if (callTable == null) {
+			callTable = new HashMap<Class<?>, Subscription[]>();
+			this.callSubscriptions.put(callId, callTable);
+		}
+
+		for (final ListenerIndex.Entry entry : ListenerIndex.get(listener.getClass())) {
+			add(WeemoCallEvent.class.isAssignableFrom(entry.eventType) ? callTable : this.subscriptions, entry, listener);
+		}
+		this.callScoped.put(listener, Integer.valueOf(callId));
+		schedulePurge();
+	}
+
+	/**
+	 * Unregisters all @WeemoEventListener methods of the given object, whether it was registered for one call or not.
+	 * Unregistering an object that is not registered has no effect.
+	 *
+	 * @param listener The object to unregister
+	 */
+	public synchronized void unregister(final Object listener) {
+		if (this.mode == Mode.REFLECTIVE) {
+			this.sdkBus.unregister(listener);
+			return ;
+		}
+
+		final Integer callId = this.callScoped.remove(listener);
+		final Map<Class<?>, Subscription[]> callTable = callId == null ? null : this.callSubscriptions.get(callId.intValue());
+
+		for (final ListenerIndex.Entry entry : ListenerIndex.get(listener.getClass())) {
+			remove(this.subscriptions, entry, listener);
+			if (callTable != null) {
+				remove(callTable, entry, listener);
+			}
+		}
+
+		if (callTable != null && callTable.isEmpty()) {
+			this.callSubscriptions.remove(callId.intValue());
+		}
+	}
+
+	/**
+	 * Fires an event of the helper (such as com.weemo.sdk.helper.stats.CallQualityChangedEvent).
+	 * It goes through the SDK's bus, so it reaches the listeners of every mode and is recorded in the journal like any Weemo event.
+	 *
+	 * @param event The event to fire
+	 */
+	public void fire(final WeemoEvent event) {
+		this.sdkBus.fire(event);
+	}
+
+	/**
+	 * Adds a subscription to a table, unless it already is in it
+	 *
+	 * @param table The table in which to add the subscription
+	 * @param entry The listener method
+	 * @param listener The listener object
+	 */
+	private void add(final Map<Class<?>, Subscription[]> table, final ListenerIndex.Entry entry, final Object listener) {
+		final Subscription[] current = table.get(entry.eventType);
+		if (current == null) {
+			table.put(entry.eventType, new Subscription[] { new Subscription(listener, entry, this.mode == Mode.WEAK) });
+			return ;
+		}
+		if (indexOf(current, listener, entry.method) != -1) {
+			return ;
+		}
+		final Subscription[] added = new Subscription[current.length + 1];
+		System.arraycopy(current, 0, added, 0, current.length);
+		added[current.length] = new Subscription(listener, entry, this.mode == Mode.WEAK);
+		table.put(entry.eventType, added);
+	}
+
+	/**
+	 * Removes a subscription from a table, if it is in it
+	 *
+	 * @param table The table from which to remove the subscription
+	 * @param entry The listener method
+	 * @param listener The listener object
+	 */
+	private static void remove(final Map<Class<?>, Subscription[]> table, final ListenerIndex.Entry entry, final Object listener) {
+		final Subscription[] current = table.get(entry.eventType);
+		if (current == null) {
+			return ;
+		}
+		final int index = indexOf(current, listener, entry.method);
+		if (index == -1) {
+			return ;
+		}
+		current[index].active = false;
+		if (current.length == 1) {
+			table.remove(entry.eventType);
+			return ;
+		}
+		final Subscription[] removed = new Subscription[current.length - 1];
+		System.arraycopy(current, 0, removed, 0, index);
+		System.arraycopy(current, index + 1, removed, index, current.length - index - 1);
+		table.put(entry.eventType, removed);
+	}
+
+	/**
+	 * Find a subscription in an array
+	 *
+	 * @param array The subscriptions to search
+	 * @param listener The listener object of the subscription to find
+	 * @param method The listener method of the subscription to find
+	 * @return The index of the subscription or -1 if it is not found
+	 */
+	private static int indexOf(final Subscription[] array, final Object listener, final Method method) {
+		for (int i = 0; i < array.length; ++i) {
+			if (array[i].listener() == listener && array[i].method.equals(method)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Schedules the next purge of the collected listeners, if needed
+	 */
+	private void schedulePurge() {
+		if (this.mode != Mode.WEAK || this.purgeScheduled) {
+			return ;
+		}
+		this.purgeScheduled = true;
+		this.handler.postDelayed(this.purgeTask, PURGE_INTERVAL);
+	}
+
+	/**
+	 * Removes the collected listeners from a table
+	 *
+	 * @param table The table to purge
+	 * @param collected Listener class => number of collected subscriptions, incremented for each removed subscription
+	 */
+	private static void purge(final Map<Class<?>, Subscription[]> table, final Map<Class<?>, Integer> collected) {
+		final Iterator<Map.Entry<Class<?>, Subscription[]>> it = table.entrySet().iterator();
+		while (it.hasNext()) {
+			final Map.Entry<Class<?>, Subscription[]> tableEntry = it.next();
+			final List<Subscription> kept = new ArrayList<Subscription>();
+			for (final Subscription sub : tableEntry.getValue()) {
+				if (sub.listener() != null) {
+					kept.add(sub);
+					continue ;
+				}
+				sub.active = false;
+				final Integer count = collected.get(sub.listenerClass);
+				collected.put(sub.listenerClass, Integer.valueOf(count == null ? 1 : count.intValue() + 1));
+			}
+			if (kept.isEmpty()) {
+				it.remove();
+			}
+			else if (kept.size() != tableEntry.getValue().length) {
+				tableEntry.setValue(kept.toArray(new Subscription[kept.size()]));
+			}
+		}
+	}
+
+	/**
+	 * Removes the subscriptions of the listeners that were garbage collected without having been unregistered,
+	 * and logs them as stale listeners.
+	 * This is done periodically in {@link Mode#WEAK} mode, but may be called at any time.
+	 */
+	public synchronized void purge() {
+		this.purgeScheduled = false;
+
+		// Counts subscriptions, which are converted to objects using the number of listener methods of each class
+		final Map<Class<?>, Integer> collected = new HashMap<Class<?>, Integer>();
+		purge(this.subscriptions, collected);
+		for (int i = this.callSubscriptions.size() - 1; i >= 0; --i) {
+			final Map<Class<?>, Subscription[]> callTable = this.callSubscriptions.valueAt(i);
+			purge(callTable, collected);
+			if (callTable.isEmpty()) {
+				this.callSubscriptions.removeAt(i);
+			}
+		}
+
+		for (final Map.Entry<Class<?>, Integer> entry : collected.entrySet()) {
+			final int objects = Math.max(1, entry.getValue().intValue() / ListenerIndex.get(entry.getKey()).length);
+			final Integer previous = this.staleCounts.get(entry.getKey());
+			this.staleCounts.put(entry.getKey(), Integer.valueOf(previous == null ? objects : previous.intValue() + objects));
+			Log.w(LOGTAG, objects + " " + entry.getKey().getName() + " collected without having been unregistered");
+		}
+
+		if (!this.subscriptions.isEmpty() || this.callSubscriptions.size() > 0) {
+			schedulePurge();
+		}
+	}
+
+	/**
+	 * Writes the listeners currently registered and the stale listeners purged so far, per listener class.
+	 * A stale listener is an object that was garbage collected while still registered,
+	 * which means that its component missed its unregister() call.
+	 * Activities that are registered but finishing are reported too, as they are about to become stale.
+	 *
+	 * @param builder The builder to write to
+	 */
+	public synchronized void report(final StringBuilder builder) {
+		final Map<Class<?>, Set<Object>> live = new HashMap<Class<?>, Set<Object>>();
+		final Set<Object> finishing = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		final List<Map<Class<?>, Subscription[]>> tables = new ArrayList<Map<Class<?>, Subscription[]>>();
+		tables.add(this.subscriptions);
+		for (int i = 0; i < this.callSubscriptions.size(); ++i) {
+			tables.add(this.callSubscriptions.valueAt(i));
+		}
+		for (final Map<Class<?>, Subscription[]> table : tables) {
+			for (final Subscription[] subs : table.values()) {
+				for (final Subscription sub : subs) {
+					final Object listener = sub.listener();
+					if (listener == null) {
+						continue ;
+					}
+					Set<Object> objects = live.get(sub.listenerClass);
+					if (objects == null) {
+						objects = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+						live.put(sub.listenerClass, objects);
+					}
+					objects.add(listener);
+					if (listener instanceof Activity && ((Activity) listener).isFinishing()) {
+						finishing.add(listener);
+					}
+				}
+			}
+		}
+
+		builder.append("Mode: ").append(this.mode.name()).append('\n');
+		for (final Map.Entry<Class<?>, Set<Object>> entry : live.entrySet()) {
+			int finishingCount = 0;
+			for (final Object listener : entry.getValue()) {
+				if (finishing.contains(listener)) {
+					++finishingCount;
+				}
+			}
+			builder.append("Registered: ").append(entry.getKey().getName()).append(" x").append(entry.getValue().size());
+			if (finishingCount > 0) {
+				builder.append(" (").append(finishingCount).append(" finishing)");
+			}
+			builder.append('\n');
+		}
+		for (final Map.Entry<Class<?>, Integer> entry : this.staleCounts.entrySet()) {
+			builder.append("Stale: ").append(entry.getKey().getName()).append(" x").append(entry.getValue()).append('\n');
+		}
+	}
+
+	/**
+	 * Get all the types an event of the given class must be delivered to.
+	 *
+	 * @param eventClass The class of the event
+	 * @return The event class and all its superclasses up to WeemoEvent, WeemoEvent first
+	 */
+	private synchronized Class<?>[] hierarchyOf(final Class<?> eventClass) {
+		Class<?>[] hierarchy = this.hierarchies.get(eventClass);
+		if (hierarchy == null) {
+			final List<Class<?>> types = new ArrayList<Class<?>>();
+			for (Class<?> type = eventClass; type != null && WeemoEvent.class.isAssignableFrom(type); type = type.getSuperclass()) {
+				types.add(0, type);
+			}
+			hierarchy = types.toArray(new Class<?>[types.size()]);
+			this.hierarchies.put(eventClass, hierarchy);
+		}
+		return hierarchy;
+	}
+
+	/**
+	 * Get the current subscriptions to an event type
+	 *
+	 * @param eventType The event type
+	 * @return The subscriptions, or null if there are none
+	 */
+	private synchronized @CheckForNull Subscription[] subscriptionsOf(final Class<?> eventType) {
+		return this.subscriptions.get(eventType);
+	}
+
+	/**
+	 * Get the current subscriptions to an event type of the listeners registered for a specific call
+	 *
+	 * @param callId The ID of the call
+	 * @param eventType The event type
+	 * @return The subscriptions, or null if there are none
+	 */
+	private synchronized @CheckForNull Subscription[] subscriptionsOf(final int callId, final Class<?> eventType) {
+		final Map<Class<?>, Subscription[]> callTable = this.callSubscriptions.get(callId);
+		if (callTable == null) {
+			return null;
+		}
+		return callTable.get(eventType);
+	}
+
+	/**
+	 * Get the handler of the background lane, starting its thread if needed
+	 *
+	 * @return The background lane handler
+	 */
+	private synchronized Handler backgroundHandler() {
+		if (this.backgroundHandler == null) {
+			final HandlerThread thread = new HandlerThread("WeemoEventLane", Process.THREAD_PRIORITY_BACKGROUND);
+			thread.start();
+			this.backgroundHandler = new Handler(thread.getLooper());
+		}
+		return this.backgroundHandler;
+	}
+
+	/**
+	 * Delivers an event to all subscriptions of an array,
+	 * either immediately, on the background lane or at the end of their conflation window
+	 *
+	 * @param subs The subscriptions to deliver to, may be null
+	 * @param event The event to deliver
+	 * @param callId The ID of the call of the event, -1 for non call events
+	 * @return Whether the event should continue to be propagated
+	 */
+	private boolean deliverAll(final @CheckForNull Subscription[] subs, final WeemoEvent event, final int callId) {
+		if (subs == null) {
+			return true;
+		}
+		for (final Subscription sub : subs) {
+			if (sub.conflateWindow >= 0) {
+				sub.conflate(event, callId, sub.background ? backgroundHandler() : this.handler);
+			}
+			else if (sub.background) {
+				backgroundHandler().post(new Delivery(sub, event));
+			}
+			else if (!sub.invoke(event)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Delivers an event to all listeners registered on this bus.
+	 * Like in the SDK's bus, listeners of a superclass of the event are called first.
+	 * Call events are also delivered to the listeners registered for this call, and only to them.
+	 * Listeners annotated with @{@link Conflate} receive the event later, unless a newer one replaces it.
+	 * Listeners annotated with @{@link Background} receive the event on the background lane.
+	 *
+	 * @param event The event to deliver
+	 */
+	void dispatch(final WeemoEvent event) {
+		final int callId = event instanceof WeemoCallEvent ? ((WeemoCallEvent) event).getCall().getCallId() : -1;
+
+		for (final Class<?> type : hierarchyOf(event.getClass())) {
+			if (!deliverAll(subscriptionsOf(type), event, callId)) {
+				return ;
+			}
+			if (callId != -1 && !deliverAll(subscriptionsOf(callId, type), event, callId)) {
+				return ;
+			}
+		}
+	}
+
+	/**
+	 * This is the only listener registered on the SDK's bus when in {@link Mode#INDEXED} mode.
+	 * It is called (on the UI thread) for every Weemo event, records it in the journal and relays it to this bus listeners.
+	 *
+	 * @param event The event
+	 */
+	@WeemoEventListener
+	public void onEvent(final WeemoEvent event) {
+		if (this.journal != null) {
+			this.journal.record(event);
+		}
+		dispatch(event);
+	}
+}
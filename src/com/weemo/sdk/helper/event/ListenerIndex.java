@@ -0,0 +1,100 @@
+package com.weemo.sdk.helper.event;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.weemo.sdk.event.WeemoEvent;
+import com.weemo.sdk.event.WeemoEventListener;
+
+/**
+ * Dispatch table of the @WeemoEventListener methods of listener classes.
+ *
+ * The SDK's WeemoEventBus scans the class of every object that registers,
+ * which means a full reflection scan each time a screen is created or rotated.
+ * This index scans each class only once and keeps the result for the whole life of the process.
+ */
+final class ListenerIndex {
+
+	/**
+	 * One @WeemoEventListener method of a listener class
+	 */
+	static final class Entry {
+
+		/** The type of event the method listens to */
+		final Class<? extends WeemoEvent> eventType;
+
+		/** The listener method, with access checks already suppressed */
+		final Method method;
+
+		/** The conflation window in milliseconds, or -1 if the method is not annotated with @{@link Conflate} */
+		final long conflateWindow;
+
+		/** Whether the method is annotated with @{@link Background} */
+		final boolean background;
+
+		/**
+		 * Constructor
+		 *
+		 * @param eventType The type of event the method listens to
+		 * @param method The listener method
+		 */
+		Entry(final Class<? extends WeemoEvent> eventType, final Method method) {
+			this.eventType = eventType;
+			this.method = method;
+
+			final Conflate conflate = method.getAnnotation(Conflate.class);
+			this.conflateWindow = conflate == null ? -1 : conflate.value();
+
+			this.background = method.isAnnotationPresent(Background.class);
+		}
+	}
+
+	/** Listener class => its listener methods */
+	private static final Map<Class<?>, Entry[]> TABLES = new HashMap<Class<?>, Entry[]>();
+
+	/**
+	 * This class is a function repository and cannot be instanciated
+	 */
+	private ListenerIndex() {}
+
+	/**
+	 * Get the dispatch table of a listener class, building it if this is the first time the class is seen.
+	 *
+	 * The same validation rules as the SDK's WeemoEventBus are applied:
+	 * a listener method must take exactly one argument which type is a subclass of WeemoEvent.
+	 *
+	 * @param cls The class of the listener
+	 * @return The listener methods of this class (may be empty but never null)
+	 */
+	static synchronized Entry[] get(final Class<?> cls) {
+		Entry[] table = TABLES.get(cls);
+		if (table != null) {
+			return table;
+		}
+
+		final List<Entry> entries = new ArrayList<Entry>();
+		for (final Method method : cls.getMethods()) {
+			if (!method.isAnnotationPresent(WeemoEventListener.class)) {
+				continue ;
+			}
+			final Class<?>[] params = method.getParameterTypes();
+			if (params.length != 1) {
+				throw new UnsupportedOperationException("@WeemoEventListener methods must have only one argument");
+			}
+			if (!WeemoEvent.class.isAssignableFrom(params[0])) {
+				throw new UnsupportedOperationException("@WeemoEventListener methods parameter must be a subclass of WeemoEvent");
+			}
+			// Public methods of non public classes (like anonymous classes) would otherwise fail,
+			// and skipping the access check makes every invocation cheaper.
+			method.setAccessible(true);
+			entries.add(new Entry(params[0].asSubclass(WeemoEvent.class), method));
+		}
+
+		table = entries.toArray(new Entry[entries.size()]);
+		TABLES.put(cls, table);
+		return table;
+	}
+}
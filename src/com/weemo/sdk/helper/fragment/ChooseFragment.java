@@ -1,6 +1,9 @@
 package com.weemo.sdk.helper.fragment;
 
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.annotation.CheckForNull;
@@ -11,28 +14,39 @@ import android.app.DialogFragment;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.os.Bundle;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.View.OnClickListener;
 import android.view.ViewGroup;
 import android.view.inputmethod.InputMethodManager;
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
-import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ListView;
-import android.widget.TextView;
 
 import com.weemo.sdk.helper.DemoAccounts;
 import com.weemo.sdk.helper.R;
+import com.weemo.sdk.helper.directory.ContactDirectories;
+import com.weemo.sdk.helper.directory.ContactDirectory;
+import com.weemo.sdk.helper.directory.ContactSearchIndex;
+import com.weemo.sdk.helper.history.CallHistory;
 
 /**
  * This is a simple fragment that allows the user of the application to chose from a list
  * or to directly enter a value.
+ * Typing in the input filters the list on the accounts whose ID or display name starts with the typed text.
+ * The list follows the changes of the contact directory.
+ * The most frequently and recently called contacts that match the input are displayed first.
+ * Its activity may display a status (such as the presence) next to each contact, see {@link #setStatus(String, String)}.
  * It is used  multiple times in this project
- * This is a simple util and does not contain Weemo SDK specific code
+ * It does not use the Weemo SDK directly, but it reads the contact directory and the call history of this helper,
+ * which is built from the Weemo call events.
  */
 public class ChooseFragment extends DialogFragment {
 
@@ -48,12 +62,85 @@ public class ChooseFragment extends DialogFragment {
 	/** The validation button */
 	protected @Nullable Button goBtn;
 
+	/** Number of name index entries materialized at each step of a search */
+	private static final int SEARCH_CHUNK = 512;
+
+	/** Maximum number of frequent contacts displayed before the search results */
+	private static final int MAX_PINNED = 5;
+
 	/** Proposed accounts */
-	protected Map<String, String> accounts = new LinkedHashMap<String, String>(DemoAccounts.ACCOUNTS);
+	protected @Nullable ContactDirectory directory;
+
+	/** Search index of the proposed accounts */
+	protected @Nullable ContactSearchIndex searchIndex;
+
+	/** The current search, whose results are displayed */
+	protected @Nullable ContactSearchIndex.Query query;
+
+	/** Whether the input text is being set by this fragment (and not typed by the user) */
+	protected boolean settingText; // = false;
+
+	/** Materializes the next results of the current search, as long as there are some */
+	private final Runnable searchChunkTask = new Runnable() {
+		@Override public void run() {
+			final boolean more = ChooseFragment.this.query.advance(SEARCH_CHUNK);
+			ChooseFragment.this.adapter.notifyDataSetChanged();
+			if (more) {
+				ChooseFragment.this.list.post(this);
+			}
+		}
+	};
+
+	/** Searches again once the name index is ready, if the current search was made without it */
+	private final Runnable searchReadyTask = new Runnable() {
+		@Override public void run() {
+			if (ChooseFragment.this.list != null && ChooseFragment.this.query.isIdOnly()) {
+				search(ChooseFragment.this.query.getText(), false);
+			}
+		}
+	};
+
+	/** Displays the new directory when it is replaced, keeping the current search */
+	private final ContactDirectories.ChangeListener directoryListener = new ContactDirectories.ChangeListener() {
+		@Override public void onDirectoryChanged(final ContactDirectory directory) {
+			ChooseFragment.this.searchIndex.cancelWhenReady(ChooseFragment.this.searchReadyTask);
+			setDirectory(ContactDirectories.getSearchIndex(getActivity()));
+			if (ChooseFragment.this.list != null) {
+				search(ChooseFragment.this.query.getText(), false);
+			}
+		}
+	};
+
+	/** Updates the frequent contacts displayed first when the call history ranking changes */
+	private final CallHistory.RankingListener rankingListener = new CallHistory.RankingListener() {
+		@Override public void onRankingChanged() {
+			if (ChooseFragment.this.adapter != null) {
+				ChooseFragment.this.adapter.setQuery(ChooseFragment.this.query, pinnedPositions(ChooseFragment.this.query.getText()));
+			}
+		}
+	};
 
 	/** The string that should be hidden*/
 	private String removeID;
 
+	/** Position of the hidden account in the directory, -1 if none */
+	protected int removedPosition = -1;
+
+	/** The list of accounts */
+	protected @Nullable ListView list;
+
+	/** The adapter of the list, which displays the current search */
+	protected @Nullable ContactListAdapter adapter;
+
+	/** Status text of the accounts that have one, displayed next to their ID */
+	protected final Map<String, String> statuses = new HashMap<String, String>();
+
+	/** Position of the first visible account, as last reported to the {@link VisibleListener} */
+	protected int firstVisible = -1;
+
+	/** Number of visible accounts, as last reported to the {@link VisibleListener} */
+	protected int visibleCount = -1;
+
 	/**
 	 * Factory (best practice for fragments)
 	 *
@@ -80,6 +167,18 @@ public class ChooseFragment extends DialogFragment {
 		return newInstance(buttonText, null);
 	}
 
+	/**
+	 * Interface that activities using this fragment may implement to know which accounts are displayed on screen
+	 */
+	public static interface VisibleListener {
+		/**
+		 * Used by this fragment to tell its activity that the accounts displayed on screen have changed
+		 *
+		 * @param ids The visible IDs, in list order
+		 */
+		public void onVisibleChanged(List<String> ids);
+	}
+
 	/**
 	 * Interface that activities using this fragment must implements
 	 */
@@ -97,9 +196,38 @@ public class ChooseFragment extends DialogFragment {
 		super.onCreate(savedInstanceState);
 
 		this.removeID = getArguments().getString(ARG_REMOVEID);
-		if (this.removeID != null) {
-			this.accounts.remove(this.removeID);
-		}
+		setDirectory(ContactDirectories.getSearchIndex(getActivity()));
+
+		ContactDirectories.addChangeListener(this.directoryListener);
+		CallHistory.instance(getActivity()).addRankingListener(this.rankingListener);
+	}
+
+	@Override
+	public void onResume() {
+		super.onResume();
+
+		// The frecency of the contacts decreases with time, even when no call ends
+		CallHistory.instance(getActivity()).refreshRanking();
+	}
+
+	@Override
+	public void onDestroy() {
+		ContactDirectories.removeChangeListener(this.directoryListener);
+		CallHistory.instance(getActivity()).removeRankingListener(this.rankingListener);
+
+		super.onDestroy();
+	}
+
+	/**
+	 * Uses a directory, and resets the search to all its accounts
+	 *
+	 * @param index The search index of the directory
+	 */
+	protected void setDirectory(final ContactSearchIndex index) {
+		this.searchIndex = index;
+		this.directory = index.getDirectory();
+		this.removedPosition = this.removeID == null ? -1 : this.directory.indexOf(this.removeID);
+		this.query = index.query("", null, this.removedPosition);
 	}
 
 	@Override
@@ -129,28 +257,54 @@ public class ChooseFragment extends DialogFragment {
 
 		this.goBtn.setText(getArguments().getString(ARG_BUTTONTEXT));
 
-		final String[] ids = this.accounts.keySet().toArray(new String[0]);
-
-		final ListView list = (ListView) root.findViewById(R.id.list);
-		list.setAdapter(new ArrayAdapter<String>(getActivity(), android.R.layout.simple_list_item_2, ids) {
-			@Override public View getView(final int position, View row, final ViewGroup parent) {
-				if (row == null) {
-					row = inflater.inflate(android.R.layout.simple_list_item_2, null);
-				}
+		this.list = (ListView) root.findViewById(R.id.list);
+		this.adapter = new ContactListAdapter(inflater, this.query, this.statuses);
+		this.adapter.setQuery(this.query, pinnedPositions(this.query.getText()));
+		this.list.setAdapter(this.adapter);
 
-				final String itemId = getItem(position);
+		this.list.setOnItemClickListener(new OnItemClickListener() {
+			@Override public void onItemClick(final AdapterView<?> adapter, final View view, final int position, final long itemId) {
+				final String id = (String) adapter.getItemAtPosition(position);
+				// Choosing an account must not filter the list on it
+				ChooseFragment.this.settingText = true;
+				ChooseFragment.this.input.setText(id);
+				ChooseFragment.this.input.setSelection(id.length());
+				ChooseFragment.this.settingText = false;
+			}
+		});
 
-				((TextView) row.findViewById(android.R.id.text1)).setText(ChooseFragment.this.accounts.get(itemId));
-				((TextView) row.findViewById(android.R.id.text2)).setText(itemId);
+		this.list.setOnScrollListener(new OnScrollListener() {
+			@Override public void onScrollStateChanged(final AbsListView view, final int scrollState) {
+				// Nothing to do
+			}
 
-				return row;
+			// Also called when the list is laid out, which gives the first visible accounts
+			@Override public void onScroll(final AbsListView view, final int firstVisibleItem, final int visibleItemCount, final int totalItemCount) {
+				if (firstVisibleItem == ChooseFragment.this.firstVisible && visibleItemCount == ChooseFragment.this.visibleCount) {
+					return ;
+				}
+				ChooseFragment.this.firstVisible = firstVisibleItem;
+				ChooseFragment.this.visibleCount = visibleItemCount;
+				if (getActivity() instanceof VisibleListener) {
+					((VisibleListener) getActivity()).onVisibleChanged(getVisibleIds());
+				}
 			}
 		});
 
-		list.setOnItemClickListener(new OnItemClickListener() {
-			@Override public void onItemClick(final AdapterView<?> adapter, final View view, final int position, final long itemId) {
-				ChooseFragment.this.input.setText(ids[position]);
-				ChooseFragment.this.input.setSelection(ids[position].length());
+		// Added after the initial text is set, so that the list starts unfiltered
+		this.input.addTextChangedListener(new TextWatcher() {
+			@Override public void beforeTextChanged(final CharSequence text, final int start, final int count, final int after) {
+				// Nothing to do
+			}
+
+			@Override public void onTextChanged(final CharSequence text, final int start, final int before, final int count) {
+				// Nothing to do
+			}
+
+			@Override public void afterTextChanged(final Editable text) {
+				if (!ChooseFragment.this.settingText) {
+					search(text.toString(), true);
+				}
 			}
 		});
 
@@ -183,6 +337,60 @@ public class ChooseFragment extends DialogFragment {
 		super.onSaveInstanceState(outState);
 	}
 
+	@Override
+	public void onDestroyView() {
+		this.list.removeCallbacks(this.searchChunkTask);
+		this.searchIndex.cancelWhenReady(this.searchReadyTask);
+
+		super.onDestroyView();
+	}
+
+	/**
+	 * Filters the list on the accounts whose ID or a name word starts with the given text.
+	 * The first results are displayed immediately, the next ones are streamed into the list.
+	 *
+	 * @param text The text to search
+	 * @param incremental Whether the current search may be used to narrow the new one
+	 */
+	protected void search(final String text, final boolean incremental) {
+		this.list.removeCallbacks(this.searchChunkTask);
+
+		this.query = this.searchIndex.query(text, incremental ? this.query : null, this.removedPosition);
+		if (this.query.advance(SEARCH_CHUNK)) {
+			this.list.post(this.searchChunkTask);
+		}
+		if (this.query.isIdOnly()) {
+			this.searchIndex.whenReady(this.searchReadyTask);
+		}
+
+		this.adapter.setQuery(this.query, pinnedPositions(text));
+	}
+
+	/**
+	 * Get the best ranked contacts of the call history that match a search
+	 * (with the rules of the search, see ContactSearchIndex.matches)
+	 *
+	 * @param text The searched text
+	 * @return Their positions in the directory, best first, at most {@link #MAX_PINNED}
+	 */
+	protected int[] pinnedPositions(final String text) {
+		final int[] positions = new int[MAX_PINNED];
+		int count = 0;
+		for (final String uid : CallHistory.instance(getActivity()).getRanking(CallHistory.MAX_RANKED)) {
+			final int position = this.directory.indexOf(uid);
+			if (position == -1 || position == this.removedPosition) {
+				continue ;
+			}
+			if (ContactSearchIndex.matches(uid, this.directory.getDisplayName(position), text)) {
+				positions[count++] = position;
+				if (count == MAX_PINNED) {
+					break ;
+				}
+			}
+		}
+		return Arrays.copyOf(positions, count);
+	}
+
 	/**
 	 * Make this fragment usable or not
 	 *
@@ -198,6 +406,41 @@ public class ChooseFragment extends DialogFragment {
 		}
 	}
 
+	/**
+	 * Set the status text of an account, displayed next to its ID
+	 *
+	 * @param id The ID of the account
+	 * @param status The status text, or null to remove it
+	 */
+	public void setStatus(final String id, final @CheckForNull String status) {
+		if (status == null) {
+			this.statuses.remove(id);
+		}
+		else {
+			this.statuses.put(id, status);
+		}
+		if (this.adapter != null) {
+			this.adapter.notifyDataSetChanged();
+		}
+	}
+
+	/**
+	 * Get the IDs of the accounts currently displayed on screen
+	 *
+	 * @return The visible IDs, in list order
+	 */
+	public List<String> getVisibleIds() {
+		final List<String> ids = new ArrayList<String>();
+		if (this.list == null) {
+			return ids;
+		}
+		final int last = Math.min(this.list.getLastVisiblePosition(), this.list.getCount() - 1);
+		for (int position = Math.max(this.list.getFirstVisiblePosition(), 0); position <= last; ++position) {
+			ids.add((String) this.list.getItemAtPosition(position));
+		}
+		return ids;
+	}
+
 	/**
 	 * Changes the text of the selection button
 	 *
@@ -0,0 +1,294 @@
+package com.weemo.sdk.helper.fragment;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.weemo.sdk.helper.R;
+import com.weemo.sdk.helper.avatar.AvatarCache;
+import com.weemo.sdk.helper.avatar.InitialsDrawable;
+import com.weemo.sdk.helper.directory.ContactDirectory;
+import com.weemo.sdk.helper.directory.ContactSearchIndex;
+
+/**
+ * List adapter over the results of a contact search, optionally preceded by pinned contacts.
+ * Pinned contacts are not displayed again among the search results.
+ *
+ * Contacts are read from the directory by pages of {@link #PAGE_SIZE}, when a row of the page is first displayed.
+ * Only the last {@link #MAX_PAGES} used pages are kept, so the memory used does not depend on the directory size,
+ * and scrolling only reads the directory once per page instead of once per bound row.
+ *
+ * Rows are inflated from R.layout.layout_contact_row and keep their views in a {@link ViewHolder},
+ * so binding a recycled row is only setting two texts and an avatar.
+ * Avatars come from the {@link AvatarCache}, which loads them in background:
+ * a row displays the contact initials until the avatar is in memory.
+ *
+ * This is a simple util and does not contain Weemo SDK specific code
+ */
+public class ContactListAdapter extends BaseAdapter {
+
+	/** Number of contacts read at once from the directory */
+	public static final int PAGE_SIZE = 64;
+
+	/** Maximum number of pages kept in memory */
+	public static final int MAX_PAGES = 8;
+
+	/**
+	 * Views of a row, kept as the row's tag
+	 */
+	static final class ViewHolder {
+		/** Displays the contact name */
+		final TextView name;
+
+		/** Displays the contact ID and its status */
+		final TextView id;
+
+		/** Displays the contact avatar */
+		final ImageView avatar;
+
+		/** Avatar placeholder, reused for each contact bound to the row */
+		final InitialsDrawable placeholder = new InitialsDrawable(-1);
+
+		/**
+		 * Constructor: finds the views of the row, once
+		 *
+		 * @param row The row
+		 */
+		ViewHolder(final View row) {
+			this.name = (TextView) row.findViewById(R.id.contact_name);
+			this.id = (TextView) row.findViewById(R.id.contact_id);
+			this.avatar = (ImageView) row.findViewById(R.id.contact_avatar);
+		}
+	}
+
+	/**
+	 * Contacts of a page of results
+	 */
+	static final class Page {
+		/** Directory positions */
+		final int[] positions;
+
+		/** User IDs */
+		final String[] ids;
+
+		/** Display names */
+		final String[] names;
+
+		/**
+		 * Constructor
+		 *
+		 * @param count Number of contacts in the page
+		 */
+		Page(final int count) {
+			this.positions = new int[count];
+			this.ids = new String[count];
+			this.names = new String[count];
+		}
+	}
+
+	/** The inflater of the rows */
+	private final LayoutInflater inflater;
+
+	/** Status text of the contacts that have one, displayed next to their ID */
+	private final Map<String, String> statuses;
+
+	/** Provides the avatars of the contacts */
+	private final AvatarCache avatars;
+
+	/** The displayed search results */
+	private ContactSearchIndex.Query query;
+
+	/** Directory positions of the contacts displayed before the search results */
+	private int[] pinned = new int[0];
+
+	/** Index of each pinned contact in the search results, -1 if it was not found in the results materialized so far */
+	private int[] pinnedIndices = new int[0];
+
+	/** Indices of the search results that are pinned contacts, sorted, first {@link #skippedCount} are valid */
+	private int[] skipped = new int[0];
+
+	/** Number of valid entries of {@link #skipped} */
+	private int skippedCount; // = 0;
+
+	/** Number of search results already looked through for pinned contacts */
+	private int scanned; // = 0;
+
+	/** Page index => page, least recently used first */
+	@SuppressWarnings("serial")
+	private final Map<Integer, Page> pages = new LinkedHashMap<Integer, Page>(MAX_PAGES * 2, 0.75f, true) {
+		@Override protected boolean removeEldestEntry(final Map.Entry<Integer, Page> eldest) {
+			return size() > MAX_PAGES;
+		}
+	};
+
+	/**
+	 * Constructor
+	 *
+	 * @param inflater The inflater of the rows
+	 * @param query The search results to display
+	 * @param statuses Status text of the contacts that have one (read at each bind, not copied)
+	 */
+	public ContactListAdapter(final LayoutInflater inflater, final ContactSearchIndex.Query query, final Map<String, String> statuses) {
+		this.inflater = inflater;
+		this.query = query;
+		this.statuses = statuses;
+		this.avatars = AvatarCache.instance(inflater.getContext());
+	}
+
+	/**
+	 * Finds the pinned contacts among the search results:
+	 * those matching by user ID at once, the others in the results materialized since the last call
+	 */
+	private void findPinned() {
+		final int size = this.query.size();
+		if (this.scanned == size) {
+			return ;
+		}
+		if (this.scanned == 0) {
+			for (int p = 0; p < this.pinned.length; ++p) {
+				this.pinnedIndices[p] = this.query.indexOfId(this.pinned[p]);
+			}
+			this.scanned = this.query.getIdCount();
+		}
+		int missing = 0;
+		for (final int index : this.pinnedIndices) {
+			if (index == -1) {
+				++missing;
+			}
+		}
+		for (; this.scanned < size && missing > 0; ++this.scanned) {
+			final int position = this.query.positionAt(this.scanned);
+			for (int p = 0; p < this.pinned.length; ++p) {
+				if (this.pinnedIndices[p] == -1 && this.pinned[p] == position) {
+					this.pinnedIndices[p] = this.scanned;
+					--missing;
+				}
+			}
+		}
+		this.scanned = size;
+
+		this.skippedCount = 0;
+		for (final int index : this.pinnedIndices) {
+			if (index != -1) {
+				this.skipped[this.skippedCount++] = index;
+			}
+		}
+		Arrays.sort(this.skipped, 0, this.skippedCount);
+	}
+
+	/**
+	 * Displays other search results, possibly of another directory
+	 *
+	 * @param query The new search results
+	 * @param pinned Directory positions of the contacts to display before the search results
+	 */
+	public void setQuery(final ContactSearchIndex.Query query, final int[] pinned) {
+		if (query != this.query || !Arrays.equals(pinned, this.pinned)) {
+			this.query = query;
+			this.pinned = pinned;
+			this.pinnedIndices = new int[pinned.length];
+			this.skipped = new int[pinned.length];
+			this.skippedCount = 0;
+			this.scanned = 0;
+			this.pages.clear();
+		}
+		notifyDataSetChanged();
+	}
+
+	/**
+	 * Get the directory position of a row
+	 *
+	 * @param index The index of the row
+	 * @return The position of its contact in the directory
+	 */
+	protected int directoryPosition(final int index) {
+		if (index < this.pinned.length) {
+			return this.pinned[index];
+		}
+		findPinned();
+		int resultIndex = index - this.pinned.length;
+		for (int i = 0; i < this.skippedCount && this.skipped[i] <= resultIndex; ++i) {
+			++resultIndex;
+		}
+		return this.query.positionAt(resultIndex);
+	}
+
+	/**
+	 * Get the page of a result, reading it from the directory if it is not in memory.
+	 * A page read when results were still being materialized may be incomplete, in which case it is read again.
+	 *
+	 * @param position The index of the result
+	 * @return The page containing it
+	 */
+	protected Page page(final int position) {
+		final Integer index = Integer.valueOf(position / PAGE_SIZE);
+		Page page = this.pages.get(index);
+		if (page == null || position % PAGE_SIZE >= page.ids.length) {
+			final ContactDirectory directory = this.query.getDirectory();
+			final int start = index.intValue() * PAGE_SIZE;
+			page = new Page(Math.min(PAGE_SIZE, getCount() - start));
+			for (int i = 0; i < page.ids.length; ++i) {
+				final int directoryPosition = directoryPosition(start + i);
+				page.positions[i] = directoryPosition;
+				page.ids[i] = directory.getId(directoryPosition);
+				page.names[i] = directory.getDisplayName(directoryPosition);
+			}
+			this.pages.put(index, page);
+		}
+		return page;
+	}
+
+	@Override
+	public int getCount() {
+		findPinned();
+		return this.pinned.length + this.query.size() - this.skippedCount;
+	}
+
+	@Override
+	public String getItem(final int position) {
+		return page(position).ids[position % PAGE_SIZE];
+	}
+
+	/**
+	 * @return The position of the contact in the directory
+	 */
+	@Override
+	public long getItemId(final int position) {
+		return page(position).positions[position % PAGE_SIZE];
+	}
+
+	@Override
+	public View getView(final int position, final @CheckForNull View convertView, final ViewGroup parent) {
+		View row = convertView;
+		final ViewHolder holder;
+		if (row == null) {
+			row = this.inflater.inflate(R.layout.layout_contact_row, parent, false);
+			holder = new ViewHolder(row);
+			row.setTag(holder);
+		}
+		else {
+			holder = (ViewHolder) row.getTag();
+		}
+
+		final Page page = page(position);
+		final String itemId = page.ids[position % PAGE_SIZE];
+		final String name = page.names[position % PAGE_SIZE];
+		holder.name.setText(name);
+		final String status = this.statuses.get(itemId);
+		holder.id.setText(status == null ? itemId : itemId + " (" + status + ")");
+
+		holder.placeholder.setContact(name, itemId);
+		this.avatars.bind(holder.avatar, itemId, holder.placeholder);
+
+		return row;
+	}
+}
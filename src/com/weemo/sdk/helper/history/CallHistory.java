@@ -0,0 +1,742 @@
+package com.weemo.sdk.helper.history;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.weemo.sdk.WeemoCall;
+import com.weemo.sdk.event.WeemoEventListener;
+import com.weemo.sdk.event.call.CallCreatedEvent;
+import com.weemo.sdk.event.call.CallStatusChangedEvent;
+import com.weemo.sdk.helper.call.CallContacts;
+import com.weemo.sdk.helper.event.HelperEventBus;
+
+/**
+ * Remembers who was called (or called us), when, and for how long, and ranks contacts by "frecency".
+ *
+ * Calls are recorded from CallCreatedEvent and CallStatusChangedEvent (PROCEEDING, RINGING, ACTIVE, ENDED) in an append-only log.
+ * Records are written on a background thread, by batches: a batch is written {@link #FLUSH_DELAY} after its first record,
+ * or as soon as a call ends.
+ * The log only grows by appending; when {@link #COMPACT_THRESHOLD} records were appended,
+ * it is rewritten with one summary record per call, keeping the {@link #MAX_CALLS} most recent calls.
+ *
+ * The average call stats sampled during a call (see com.weemo.sdk.helper.stats) are recorded with it,
+ * in a record that follows its end (or its summary), and so is its quality score (see com.weemo.sdk.helper.stats.CallQualityEstimator).
+ *
+ * The frecency of a contact is the sum, over its calls, of a weight that decreases with the age of the call,
+ * doubled for answered calls. The ranking is computed on the background thread each time a call ends,
+ * and when asked with {@link #refreshRanking()} (so that the ages of the calls are up to date when it is displayed).
+ *
+ * This object must be used from the UI thread.
+ */
+public class CallHistory {
+
+	/** Log tag for Log.* */
+	private static final String LOGTAG = "CallHistory";
+
+	/** Name of the log file, in the application files dir */
+	private static final String FILENAME = "call_history.log";
+
+	/** Time, in milliseconds, during which records are batched before being written */
+	public static final long FLUSH_DELAY = 2000;
+
+	/** Number of records appended after which the log is compacted */
+	public static final int COMPACT_THRESHOLD = 256;
+
+	/** Maximum number of calls kept by compaction */
+	public static final int MAX_CALLS = 1000;
+
+	/** Maximum number of contacts in the ranking */
+	public static final int MAX_RANKED = 50;
+
+	/** Log record: a call was created */
+	static final byte CREATED = 0;
+
+	/** Log record: an outgoing call is proceeding */
+	static final byte PROCEEDING = 1;
+
+	/** Log record: an incoming call is ringing */
+	static final byte RINGING = 2;
+
+	/** Log record: a call was answered */
+	static final byte ACTIVE = 3;
+
+	/** Log record: a call ended */
+	static final byte ENDED = 4;
+
+	/** Log record: a whole call, written by compaction */
+	static final byte SUMMARY = 5;
+
+	/** Log record: the average stats of a call, followed by their count (byte) and values (floats) */
+	static final byte STATS = 6;
+
+	/** Log record: the quality score of a call, followed by its value (float) */
+	static final byte SCORE = 7;
+
+	/** Frecency weights, by age of the call (see {@link #AGE_BUCKETS}) */
+	private static final float[] AGE_WEIGHTS = { 100, 70, 50, 30, 10 };
+
+	/** Upper bounds, in days, of the age buckets of {@link #AGE_WEIGHTS} (the last bucket has no bound) */
+	private static final int[] AGE_BUCKETS = { 4, 14, 31, 90 };
+
+	/**
+	 * Interface that objects displaying the ranking may implement to know when it changes
+	 */
+	public static interface RankingListener {
+		/**
+		 * Used to tell that the ranking has changed (called on the UI thread)
+		 */
+		public void onRankingChanged();
+	}
+
+	/**
+	 * A call of the history
+	 */
+	static final class Call {
+
+		/** ID of the call, only unique during a session */
+		int callId; // = 0;
+
+		/** User ID of the contact, empty if it is unknown */
+		String uid = "";
+
+		/** When the call was created (from System.currentTimeMillis()) */
+		long start;
+
+		/** Whether we called the contact (as opposed to being called) */
+		boolean outgoing;
+
+		/** When the call was answered, 0 if it was not */
+		long answered; // = 0;
+
+		/** Duration, in milliseconds, of the conversation (0 if the call was not answered) */
+		long duration; // = 0;
+
+		/** Whether the call has ended */
+		boolean ended; // = false;
+
+		/** Average of each metric of the call stats (by com.weemo.sdk.helper.stats.Metric ordinal), null if it was not sampled */
+		@CheckForNull float[] stats; // = null;
+
+		/** Quality score (MOS) of the call, NaN if it was not scored */
+		float score = Float.NaN;
+	}
+
+	/** The history used by the application, created on first use */
+	private static @CheckForNull CallHistory instance; // = null;
+
+	/** The log file */
+	private final File file;
+
+	/** Used to find the user ID of the contact of a call */
+	private final Context context;
+
+	/** UI thread handler, on which listeners are notified */
+	private final Handler handler = new Handler(Looper.getMainLooper());
+
+	/** Background thread handler, on which the log is read and written */
+	final Handler worker;
+
+	/** Objects to notify when the ranking changes */
+	private final List<RankingListener> listeners = new ArrayList<RankingListener>();
+
+	/** Call ID => user ID of the contact, for the calls of this session, as known on the UI thread */
+	private final SparseArray<String> uids = new SparseArray<String>();
+
+	/** Calls, oldest first (background thread only) */
+	final List<Call> calls = new ArrayList<Call>();
+
+	/** Call ID => the calls of this session that have not ended (background thread only) */
+	final SparseArray<Call> ongoing = new SparseArray<Call>();
+
+	/** Records waiting to be written (background thread only) */
+	final ByteArrayOutputStream batch = new ByteArrayOutputStream();
+
+	/** Serializes records in {@link #batch} */
+	final DataOutputStream batchOut = new DataOutputStream(this.batch);
+
+	/** Whether writing the batch is scheduled (background thread only) */
+	boolean flushScheduled; // = false;
+
+	/** Number of records appended since the last compaction (background thread only) */
+	int appended; // = 0;
+
+	/** User IDs of the best ranked contacts, best first */
+	volatile List<String> ranking = Collections.emptyList();
+
+	/** Writes the pending records */
+	final Runnable flushTask = new Runnable() {
+		@Override public void run() {
+			flush();
+		}
+	};
+
+	/**
+	 * Constructor.
+	 * Loads the log in background and registers itself as event listener.
+	 *
+	 * @param context Any context of the application
+	 */
+	protected CallHistory(final Context context) {
+		this.context = context;
+		this.file = new File(context.getFilesDir(), FILENAME);
+
+		final HandlerThread thread = new HandlerThread("CallHistory", Process.THREAD_PRIORITY_BACKGROUND);
+		thread.start();
+		this.worker = new Handler(thread.getLooper());
+		this.worker.post(new Runnable() {
+			@Override public void run() {
+				load();
+				rank();
+			}
+		});
+
+		HelperEventBus.instance().register(this);
+	}
+
+	/**
+	 * Get the history used by the application
+	 *
+	 * @param context Any context of the application
+	 * @return The application call history
+	 */
+	public static CallHistory instance(final Context context) {
+		if (instance == null) {
+			instance = new CallHistory(context.getApplicationContext());
+		}
+		return instance;
+	}
+
+	/**
+	 * Get the best ranked contacts
+	 *
+	 * @param max The maximum number of contacts
+	 * @return The user IDs of the best ranked contacts, best first
+	 */
+	public List<String> getRanking(final int max) {
+		final List<String> current = this.ranking;
+		return current.size() <= max ? current : current.subList(0, max);
+	}
+
+	/**
+	 * Computes the ranking again in background, with the current ages of the calls.
+	 * The listeners are notified if it changes.
+	 */
+	public void refreshRanking() {
+		this.worker.post(new Runnable() {
+			@Override public void run() {
+				rank();
+			}
+		});
+	}
+
+	/**
+	 * Adds an object to notify when the ranking changes
+	 *
+	 * @param listener The listener to add
+	 */
+	public void addRankingListener(final RankingListener listener) {
+		this.listeners.add(listener);
+	}
+
+	/**
+	 * Removes an object added with {@link #addRankingListener(RankingListener)}
+	 *
+	 * @param listener The listener to remove
+	 */
+	public void removeRankingListener(final RankingListener listener) {
+		this.listeners.remove(listener);
+	}
+
+	/**
+	 * Records an event of a call, in background
+	 *
+	 * @param call The call
+	 * @param type The type of the record
+	 */
+	private void record(final WeemoCall call, final byte type) {
+		final int callId = call.getCallId();
+		final long time = System.currentTimeMillis();
+
+		String uid = this.uids.get(callId);
+		if (uid == null && type != CREATED) {
+			// Not asked at creation: the user ID of an outgoing call is known after its CallCreatedEvent
+			uid = CallContacts.instance().getUid(this.context, call);
+			this.uids.put(callId, uid == null ? "" : uid);
+		}
+		final String recordUid = uid == null ? "" : uid;
+		if (type == ENDED) {
+			this.uids.remove(callId);
+		}
+
+		this.worker.post(new Runnable() {
+			@Override public void run() {
+				apply(time, callId, type, 0, recordUid);
+				try {
+					write(CallHistory.this.batchOut, time, callId, type, 0, recordUid);
+				}
+				catch (IOException e) {
+					// Cannot happen in memory
+					throw new IllegalStateException(e);
+				}
+				++CallHistory.this.appended;
+
+				if (type == ENDED) {
+					flush();
+					if (CallHistory.this.appended >= COMPACT_THRESHOLD && CallHistory.this.ongoing.size() == 0) {
+						compact();
+					}
+					rank();
+				}
+				else if (!CallHistory.this.flushScheduled) {
+					CallHistory.this.flushScheduled = true;
+					CallHistory.this.worker.postAtTime(CallHistory.this.flushTask, SystemClock.uptimeMillis() + FLUSH_DELAY);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Records the average stats of a call, in background
+	 *
+	 * @param callId The ID of the call, which must have been recorded
+	 * @param averages The average of each metric, by com.weemo.sdk.helper.stats.Metric ordinal
+	 */
+	public void recordStats(final int callId, final float[] averages) {
+		final long time = System.currentTimeMillis();
+		final float[] stats = averages.clone();
+		this.worker.post(new Runnable() {
+			@Override public void run() {
+				applyStats(callId, stats);
+				try {
+					writeStats(CallHistory.this.batchOut, time, callId, stats);
+				}
+				catch (IOException e) {
+					// Cannot happen in memory
+					throw new IllegalStateException(e);
+				}
+				appended();
+			}
+		});
+	}
+
+	/**
+	 * Records the quality score of a call, in background
+	 *
+	 * @param callId The ID of the call, which must have been recorded
+	 * @param score The score of the call, as a MOS
+	 */
+	public void recordScore(final int callId, final float score) {
+		final long time = System.currentTimeMillis();
+		this.worker.post(new Runnable() {
+			@Override public void run() {
+				applyScore(callId, score);
+				try {
+					writeScore(CallHistory.this.batchOut, time, callId, score);
+				}
+				catch (IOException e) {
+					// Cannot happen in memory
+					throw new IllegalStateException(e);
+				}
+				appended();
+			}
+		});
+	}
+
+	/**
+	 * Counts a record appended to the batch, and schedules the batch to be written (background thread only)
+	 */
+	private void appended() {
+		++this.appended;
+		if (!this.flushScheduled) {
+			this.flushScheduled = true;
+			this.worker.postAtTime(this.flushTask, SystemClock.uptimeMillis() + FLUSH_DELAY);
+		}
+	}
+
+	/**
+	 * Serializes a stats record
+	 *
+	 * @param out Where to serialize
+	 * @param time When the stats were recorded
+	 * @param callId The call ID
+	 * @param stats The average of each metric
+	 * @throws IOException If the record could not be written
+	 */
+	static void writeStats(final DataOutputStream out, final long time, final int callId, final float[] stats) throws IOException {
+		write(out, time, callId, STATS, 0, "");
+		out.writeByte(stats.length);
+		for (final float value : stats) {
+			out.writeFloat(value);
+		}
+	}
+
+	/**
+	 * Applies a stats record to the most recent call with its ID (background thread only).
+	 * Call IDs are reused across sessions, but stats are always recorded after their call and before the next one with the same ID.
+	 *
+	 * @param callId The call ID
+	 * @param stats The average of each metric
+	 */
+	void applyStats(final int callId, final float[] stats) {
+		final Call call = lastCall(callId);
+		if (call != null) {
+			call.stats = stats;
+		}
+	}
+
+	/**
+	 * Serializes a score record
+	 *
+	 * @param out Where to serialize
+	 * @param time When the score was recorded
+	 * @param callId The call ID
+	 * @param score The score of the call
+	 * @throws IOException If the record could not be written
+	 */
+	static void writeScore(final DataOutputStream out, final long time, final int callId, final float score) throws IOException {
+		write(out, time, callId, SCORE, 0, "");
+		out.writeFloat(score);
+	}
+
+	/**
+	 * Applies a score record to the most recent call with its ID (background thread only), like {@link #applyStats(int, float[])}
+	 *
+	 * @param callId The call ID
+	 * @param score The score of the call
+	 */
+	void applyScore(final int callId, final float score) {
+		final Call call = lastCall(callId);
+		if (call != null) {
+			call.score = score;
+		}
+	}
+
+	/**
+	 * Get the most recent call with an ID (background thread only)
+	 *
+	 * @param callId The call ID
+	 * @return The call, null if there is none
+	 */
+	private @CheckForNull Call lastCall(final int callId) {
+		for (int i = this.calls.size() - 1; i >= 0; --i) {
+			final Call call = this.calls.get(i);
+			if (call.callId == callId) {
+				return call;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Serializes a record
+	 *
+	 * @param out Where to serialize
+	 * @param time When the event happened (for a summary, when the call was created)
+	 * @param callId The call ID
+	 * @param type The type of the record
+	 * @param duration For a summary, the duration of the conversation, or -1 if the call was not answered; 0 for other records
+	 * @param uid The user ID of the contact (for a summary, prefixed by '>' for outgoing calls), empty if unknown
+	 * @throws IOException If the record could not be written
+	 */
+	static void write(final DataOutputStream out, final long time, final int callId, final byte type, final long duration, final String uid) throws IOException {
+		out.writeLong(time);
+		out.writeInt(callId);
+		out.writeByte(type);
+		out.writeLong(duration);
+		out.writeUTF(uid);
+	}
+
+	/**
+	 * Applies a record to the calls (background thread only)
+	 *
+	 * @param time When the event happened
+	 * @param callId The call ID
+	 * @param type The type of the record
+	 * @param duration For a summary, the duration of the conversation, or -1 if the call was not answered
+	 * @param uid The user ID of the contact, empty if unknown
+	 */
+	void apply(final long time, final int callId, final byte type, final long duration, final String uid) {
+		if (type == SUMMARY) {
+			final Call call = new Call();
+			call.callId = callId;
+			call.outgoing = uid.startsWith(">");
+			call.uid = call.outgoing ? uid.substring(1) : uid;
+			call.start = time;
+			call.answered = duration < 0 ? 0 : time;
+			call.duration = Math.max(duration, 0);
+			call.ended = true;
+			this.calls.add(call);
+			return ;
+		}
+
+		Call call = this.ongoing.get(callId);
+		if (type == CREATED || call == null) {
+			// Call IDs are only unique during a session: a created call replaces an unfinished one of a previous session
+			call = new Call();
+			call.callId = callId;
+			call.start = time;
+			this.ongoing.put(callId, call);
+			this.calls.add(call);
+		}
+		if (call.uid.isEmpty() && !uid.isEmpty()) {
+			call.uid = uid;
+		}
+		switch (type) {
+		case PROCEEDING:
+			call.outgoing = true;
+			break ;
+		case ACTIVE:
+			if (call.answered == 0) {
+				call.answered = time;
+			}
+			break ;
+		case ENDED:
+			if (call.answered != 0) {
+				call.duration = time - call.answered;
+			}
+			call.ended = true;
+			this.ongoing.remove(callId);
+			break ;
+		default:
+			break ;
+		}
+	}
+
+	/**
+	 * Reads the log (background thread only)
+	 */
+	void load() {
+		if (!this.file.exists()) {
+			return ;
+		}
+		int count = 0;
+		try {
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)));
+			try {
+				while (true) {
+					final long time;
+					try {
+						time = in.readLong();
+					}
+					catch (EOFException e) {
+						break ;
+					}
+					final int callId = in.readInt();
+					final byte type = in.readByte();
+					final long duration = in.readLong();
+					final String uid = in.readUTF();
+					if (type == STATS) {
+						final float[] stats = new float[in.readUnsignedByte()];
+						for (int i = 0; i < stats.length; ++i) {
+							stats[i] = in.readFloat();
+						}
+						applyStats(callId, stats);
+					}
+					else if (type == SCORE) {
+						applyScore(callId, in.readFloat());
+					}
+					else {
+						apply(time, callId, type, duration, uid);
+					}
+					++count;
+				}
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException e) {
+			// A record truncated by a crash loses only that record
+			Log.w(LOGTAG, "Could not read the whole call history", e);
+		}
+
+		// Calls that were not ended in a previous session will not be
+		for (int i = 0; i < this.ongoing.size(); ++i) {
+			this.ongoing.valueAt(i).ended = true;
+		}
+		this.ongoing.clear();
+
+		this.appended = count;
+		if (this.appended >= COMPACT_THRESHOLD) {
+			compact();
+		}
+	}
+
+	/**
+	 * Appends the pending records to the log (background thread only)
+	 */
+	void flush() {
+		this.worker.removeCallbacks(this.flushTask);
+		this.flushScheduled = false;
+		if (this.batch.size() == 0) {
+			return ;
+		}
+		try {
+			final FileOutputStream out = new FileOutputStream(this.file, true);
+			try {
+				this.batch.writeTo(out);
+			}
+			finally {
+				out.close();
+			}
+		}
+		catch (IOException e) {
+			Log.e(LOGTAG, "Could not write the call history", e);
+		}
+		this.batch.reset();
+	}
+
+	/**
+	 * Rewrites the log with one summary per call, keeping the most recent ones (background thread only)
+	 */
+	void compact() {
+		flush();
+
+		final List<Call> kept = this.calls.size() <= MAX_CALLS ? this.calls : this.calls.subList(this.calls.size() - MAX_CALLS, this.calls.size());
+		final File tmpFile = new File(this.file.getPath() + ".tmp");
+		try {
+			final FileOutputStream output = new FileOutputStream(tmpFile);
+			try {
+				final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+				for (final Call call : kept) {
+					write(out, call.start, call.callId, SUMMARY, call.answered == 0 ? -1 : call.duration, call.outgoing ? ">" + call.uid : call.uid);
+					final float[] stats = call.stats;
+					if (stats != null) {
+						writeStats(out, call.start, call.callId, stats);
+					}
+					if (!Float.isNaN(call.score)) {
+						writeScore(out, call.start, call.callId, call.score);
+					}
+				}
+				out.flush();
+				output.getFD().sync();
+			}
+			finally {
+				output.close();
+			}
+			if (!tmpFile.renameTo(this.file)) {
+				throw new IOException("Could not rename " + tmpFile);
+			}
+		}
+		catch (IOException e) {
+			Log.e(LOGTAG, "Could not compact the call history", e);
+			tmpFile.delete();
+			return ;
+		}
+
+		final List<Call> remaining = new ArrayList<Call>(kept);
+		this.calls.clear();
+		this.calls.addAll(remaining);
+		this.appended = 0;
+		Log.d(LOGTAG, "Compacted the call history to " + this.calls.size() + " calls");
+	}
+
+	/**
+	 * Computes the ranking and notifies the listeners (background thread only)
+	 */
+	void rank() {
+		final long now = System.currentTimeMillis();
+		final Map<String, Float> scores = new HashMap<String, Float>();
+		for (final Call call : this.calls) {
+			if (call.uid.isEmpty()) {
+				continue ;
+			}
+			final long days = (now - call.start) / (24 * 3600 * 1000);
+			int bucket = 0;
+			while (bucket < AGE_BUCKETS.length && days >= AGE_BUCKETS[bucket]) {
+				++bucket;
+			}
+			final float score = AGE_WEIGHTS[bucket] * (call.answered == 0 ? 1 : 2);
+			final Float previous = scores.get(call.uid);
+			scores.put(call.uid, Float.valueOf(previous == null ? score : previous.floatValue() + score));
+		}
+
+		final List<Map.Entry<String, Float>> entries = new ArrayList<Map.Entry<String, Float>>(scores.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<String, Float>>() {
+			@Override public int compare(final Map.Entry<String, Float> lhs, final Map.Entry<String, Float> rhs) {
+				return rhs.getValue().compareTo(lhs.getValue());
+			}
+		});
+		final List<String> ranked = new ArrayList<String>(Math.min(entries.size(), MAX_RANKED));
+		for (int i = 0; i < entries.size() && i < MAX_RANKED; ++i) {
+			ranked.add(entries.get(i).getKey());
+		}
+
+		if (!ranked.equals(this.ranking)) {
+			this.ranking = Collections.unmodifiableList(ranked);
+			this.handler.post(new Runnable() {
+				@Override public void run() {
+					for (final RankingListener listener : CallHistory.this.listeners.toArray(new RankingListener[CallHistory.this.listeners.size()])) {
+						listener.onRankingChanged();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * This listener method catches CallCreatedEvent
+	 * 1. It is annotated with @WeemoEventListener
+	 * 2. It takes one argument which type is CallCreatedEvent
+	 * 3. It's object has been registered with HelperEventBus.instance().register(this) in its constructor
+	 *
+	 * @param event The event
+	 */
+	@WeemoEventListener
+	public void onCallCreated(final CallCreatedEvent event) {
+		record(event.getCall(), CREATED);
+	}
+
+	/**
+	 * This listener method catches CallStatusChangedEvent
+	 * 1. It is annotated with @WeemoEventListener
+	 * 2. It takes one argument which type is CallStatusChangedEvent
+	 * 3. It's object has been registered with HelperEventBus.instance().register(this) in its constructor
+	 *
+	 * @param event The event
+	 */
+	@WeemoEventListener
+	public void onCallStatusChanged(final CallStatusChangedEvent event) {
+		switch (event.getCallStatus()) {
+		case PROCEEDING:
+			record(event.getCall(), PROCEEDING);
+			break ;
+		case RINGING:
+			record(event.getCall(), RINGING);
+			break ;
+		case ACTIVE:
+			record(event.getCall(), ACTIVE);
+			break ;
+		case ENDED:
+			record(event.getCall(), ENDED);
+			break ;
+		default:
+			break ;
+		}
+	}
+}
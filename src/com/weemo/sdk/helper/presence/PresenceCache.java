@@ -0,0 +1,164 @@
+package com.weemo.sdk.helper.presence;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.os.SystemClock;
+
+import com.weemo.sdk.event.WeemoEventListener;
+import com.weemo.sdk.event.global.CanCreateCallChangedEvent;
+import com.weemo.sdk.event.global.StatusEvent;
+import com.weemo.sdk.helper.R;
+import com.weemo.sdk.helper.event.HelperEventBus;
+
+/**
+ * Remembers the last known presence of contacts, so that a contact checked a few seconds ago
+ * does not need a new WeemoEngine.getStatus() round trip.
+ *
+ * The cache listens to every StatusEvent, whoever asked for it.
+ * An entry is fresh during a fixed time (the TTL) after the StatusEvent that created it.
+ * The number of entries is bounded: when full, the least recently used entry is evicted.
+ * The whole cache is cleared when the connection to the Weemo server is lost, as presence may have changed meanwhile.
+ *
+ * This object must be used from the UI thread.
+ */
+public class PresenceCache {
+
+	/** Default time, in milliseconds, during which a cached presence is considered fresh (the application cache reads R.integer.presence_cache_ttl) */
+	public static final long DEFAULT_TTL = 30000;
+
+	/** Default maximum number of cached presences (the application cache reads R.integer.presence_cache_size) */
+	public static final int DEFAULT_MAX_SIZE = 256;
+
+	/**
+	 * A cached presence
+	 */
+	private static final class Entry {
+
+		/** Whether the contact could be called */
+		final boolean canBeCalled;
+
+		/** When the presence was received (from SystemClock.elapsedRealtime()) */
+		final long time;
+
+		/**
+		 * Constructor
+		 *
+		 * @param canBeCalled Whether the contact could be called
+		 * @param time When the presence was received
+		 */
+		Entry(final boolean canBeCalled, final long time) {
+			this.canBeCalled = canBeCalled;
+			this.time = time;
+		}
+	}
+
+	/** The cache used by the application, created on first use */
+	private static @CheckForNull PresenceCache instance; // = null;
+
+	/** Time, in milliseconds, during which a cached presence is considered fresh */
+	private final long ttl;
+
+	/** User ID => its presence, in access order */
+	private final Map<String, Entry> entries;
+
+	/**
+	 * Constructor.
+	 * The created cache registers itself as event listener.
+	 *
+	 * @param ttl Time, in milliseconds, during which a cached presence is considered fresh
+	 * @param maxSize Maximum number of cached presences
+	 */
+	@SuppressWarnings("serial")
+	public PresenceCache(final long ttl, final int maxSize) {
+		this.ttl = ttl;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			@Override protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+				return size() > maxSize;
+			}
+		};
+
+		HelperEventBus.instance().register(this);
+	}
+
+	/**
+	 * Get the cache used by the application, whose TTL and size are configured in weemo_conf.xml
+	 *
+	 * @param context Any context of the application
+	 * @return The application presence cache
+	 */
+	public static PresenceCache instance(final Context context) {
+		if (instance == null) {
+			final Resources res = context.getResources();
+			instance = new PresenceCache(res.getInteger(R.integer.presence_cache_ttl), res.getInteger(R.integer.presence_cache_size));
+		}
+		return instance;
+	}
+
+	/**
+	 * Get the presence of a contact, if it is fresh
+	 *
+	 * @param uid The user ID of the contact
+	 * @return Whether the contact can be called, or null if the cache does not know or the presence is too old
+	 */
+	public @CheckForNull Boolean get(final String uid) {
+		final Entry entry = this.entries.get(uid);
+		if (entry == null) {
+			return null;
+		}
+		if (SystemClock.elapsedRealtime() - entry.time > this.ttl) {
+			this.entries.remove(uid);
+			return null;
+		}
+		return Boolean.valueOf(entry.canBeCalled);
+	}
+
+	/**
+	 * Set the presence of a contact
+	 *
+	 * @param uid The user ID of the contact
+	 * @param canBeCalled Whether the contact can be called
+	 */
+	public void put(final String uid, final boolean canBeCalled) {
+		this.entries.put(uid, new Entry(canBeCalled, SystemClock.elapsedRealtime()));
+	}
+
+	/**
+	 * Forget all cached presences
+	 */
+	public void clear() {
+		this.entries.clear();
+	}
+
+	/**
+	 * This listener method catches StatusEvent
+	 * 1. It is annotated with @WeemoEventListener
+	 * 2. It takes one argument which type is StatusEvent
+	 * 3. It's cache object has been registered with HelperEventBus.instance().register(this) in its constructor
+	 *
+	 * @param event The event
+	 */
+	@WeemoEventListener
+	public void onStatus(final StatusEvent event) {
+		put(event.getUserID(), event.canBeCalled());
+	}
+
+	/**
+	 * This listener method catches CanCreateCallChangedEvent
+	 * 1. It is annotated with @WeemoEventListener
+	 * 2. It takes one argument which type is CanCreateCallChangedEvent
+	 * 3. It's cache object has been registered with HelperEventBus.instance().register(this) in its constructor
+	 *
+	 * @param event The event
+	 */
+	@WeemoEventListener
+	public void onCanCreateCallChanged(final CanCreateCallChangedEvent event) {
+		if (event.getError() != null) {
+			clear();
+		}
+	}
+}
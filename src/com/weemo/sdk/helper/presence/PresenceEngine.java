@@ -0,0 +1,188 @@
+package com.weemo.sdk.helper.presence;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+
+import android.content.Context;
+
+/**
+ * Checks the presence of many contacts at once.
+ *
+ * This engine keeps at most a fixed number of {@link StatusRequests} in flight (the concurrency window)
+ * and hands each result to its {@link PresenceListener} as soon as it arrives.
+ * A request that is not answered in time is reported as {@link Presence#UNKNOWN}.
+ *
+ * This object must be used from the UI thread.
+ */
+public class PresenceEngine implements StatusRequests.Callback {
+
+	/**
+	 * Presence of a contact
+	 */
+	public enum Presence {
+		/** The contact could not be checked (no answer in time) */
+		UNKNOWN,
+
+		/** The contact is being checked */
+		CHECKING,
+
+		/** The contact can be called */
+		REACHABLE,
+
+		/** The contact cannot be called */
+		UNREACHABLE
+	}
+
+	/**
+	 * Interface that objects using this engine must implement
+	 */
+	public static interface PresenceListener {
+		/**
+		 * Used by the engine to give the presence of a contact
+		 *
+		 * @param uid The user ID of the contact
+		 * @param presence The presence of the contact
+		 */
+		public void onPresence(String uid, Presence presence);
+	}
+
+	/** The listener to which results are given */
+	private final PresenceListener listener;
+
+	/** The cache answering contacts whose presence is fresh */
+	private final PresenceCache cache;
+
+	/** The coalescer through which requests are sent */
+	private final StatusRequests requests;
+
+	/** The maximum number of requests in flight */
+	private final int window;
+
+	/** User IDs waiting to be checked, in order */
+	private final Queue<String> queue = new ArrayDeque<String>();
+
+	/** User IDs being checked */
+	private final Set<String> inFlight = new HashSet<String>();
+
+	/** Whether requests are being sent (requests may be answered synchronously) */
+	private boolean pumping; // = false;
+
+	/**
+	 * Constructor
+	 *
+	 * @param context Any context of the application
+	 * @param listener The listener to which results are given
+	 * @param window The maximum number of requests in flight
+	 */
+	public PresenceEngine(final Context context, final PresenceListener listener, final int window) {
+		if (window < 1) {
+			throw new IllegalArgumentException("Window must be at least 1");
+		}
+		this.listener = listener;
+		this.cache = PresenceCache.instance(context);
+		this.requests = StatusRequests.instance(context);
+		this.window = window;
+	}
+
+	/**
+	 * Queues the given contacts for checking.
+	 * Contacts whose presence is fresh in the {@link PresenceCache} are answered immediately.
+	 * Contacts that are already queued or being checked are not queued twice.
+	 *
+	 * @param uids The user IDs of the contacts to check
+	 */
+	public void check(final Collection<String> uids) {
+		enqueue(uids, true);
+	}
+
+	/**
+	 * Same as {@link #check(Collection)}, but the contacts are not reported as {@link Presence#CHECKING},
+	 * so that their current presence stays displayed until the new one arrives.
+	 *
+	 * @param uids The user IDs of the contacts to refresh
+	 */
+	public void refresh(final Collection<String> uids) {
+		enqueue(uids, false);
+	}
+
+	/**
+	 * Queues the given contacts for checking
+	 *
+	 * @param uids The user IDs of the contacts to check
+	 * @param announce Whether to report queued contacts as {@link Presence#CHECKING}
+	 */
+	private void enqueue(final Collection<String> uids, final boolean announce) {
+		for (final String uid : uids) {
+			if (this.inFlight.contains(uid) || this.queue.contains(uid)) {
+				continue ;
+			}
+			final Boolean canBeCalled = this.cache.get(uid);
+			if (canBeCalled != null) {
+				this.listener.onPresence(uid, canBeCalled.booleanValue() ? Presence.REACHABLE : Presence.UNREACHABLE);
+				continue ;
+			}
+			this.queue.add(uid);
+			if (announce) {
+				this.listener.onPresence(uid, Presence.CHECKING);
+			}
+		}
+		pump();
+	}
+
+	/**
+	 * Cancels all requests.
+	 * Answers to the requests in flight will be ignored.
+	 */
+	public void cancel() {
+		this.queue.clear();
+		this.inFlight.clear();
+		this.requests.cancel(this);
+	}
+
+	/**
+	 * @return The number of contacts that are waiting or being checked
+	 */
+	public int getPendingCount() {
+		return this.queue.size() + this.inFlight.size();
+	}
+
+	/**
+	 * Sends requests until the window is full or there is nothing left to check.
+	 */
+	private void pump() {
+		if (this.pumping) {
+			return ;
+		}
+		this.pumping = true;
+		while (this.inFlight.size() < this.window && !this.queue.isEmpty()) {
+			final String uid = this.queue.remove();
+			this.inFlight.add(uid);
+			this.requests.request(uid, this);
+		}
+		this.pumping = false;
+	}
+
+	@Override
+	public void onStatus(final String uid, final @CheckForNull Boolean canBeCalled) {
+		// Only answers to our requests are interesting
+		if (!this.inFlight.remove(uid)) {
+			return ;
+		}
+
+		final Presence presence;
+		if (canBeCalled == null) {
+			presence = Presence.UNKNOWN;
+		}
+		else {
+			presence = canBeCalled.booleanValue() ? Presence.REACHABLE : Presence.UNREACHABLE;
+		}
+		this.listener.onPresence(uid, presence);
+
+		pump();
+	}
+}
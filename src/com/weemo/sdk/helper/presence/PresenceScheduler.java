@@ -0,0 +1,218 @@
+package com.weemo.sdk.helper.presence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Keeps the presence of a set of watched contacts (typically the visible ones) up to date.
+ *
+ * Each watched contact is refreshed through a {@link PresenceEngine} once per period.
+ * Every refresh date is randomly moved by up to {@link #JITTER} of the period,
+ * so that refreshes are spread over time instead of arriving in bursts.
+ * In background mode, the period is multiplied by {@link #BACKGROUND_FACTOR}, which saves battery and signaling.
+ *
+ * This object must be used from the UI thread.
+ */
+public class PresenceScheduler {
+
+	/** Log tag for Log.* */
+	private static final String LOGTAG = "PresenceScheduler";
+
+	/** Maximum random shift of a refresh, as a fraction of the period */
+	public static final float JITTER = 0.2f;
+
+	/** How much the period is multiplied in background mode */
+	public static final int BACKGROUND_FACTOR = 10;
+
+	/** Maximum delay, in milliseconds, before the first refresh of a newly watched contact */
+	private static final int INITIAL_SPREAD = 5000;
+
+	/** Time, in milliseconds, over which the refresh rate is measured */
+	private static final long RATE_WINDOW = 60000;
+
+	/** The engine used to refresh presence */
+	private final PresenceEngine engine;
+
+	/** Time, in milliseconds, between two refreshes of a contact, in foreground mode */
+	private final long period;
+
+	/** Watched user IDs => the date of their next refresh (from SystemClock.uptimeMillis()) */
+	private final Map<String, Long> nextRefresh = new HashMap<String, Long>();
+
+	/** Random generator of the jitter */
+	private final Random random = new Random();
+
+	/** UI thread handler, used to schedule refreshes */
+	private final Handler handler = new Handler(Looper.getMainLooper());
+
+	/** Whether the application is in background mode */
+	private boolean background; // = false;
+
+	/** Start date of the current rate measure window (from SystemClock.uptimeMillis()) */
+	private long rateWindowStart = SystemClock.uptimeMillis();
+
+	/** Number of refreshes in the current rate measure window */
+	private int rateWindowCount; // = 0;
+
+	/** Refreshes per minute, as measured over the last complete window */
+	private float refreshRate; // = 0;
+
+	/** Refreshes the contacts that are due */
+	private final Runnable refreshTask = new Runnable() {
+		@Override
+		public void run() {
+			refresh();
+		}
+	};
+
+	/**
+	 * Constructor
+	 *
+	 * @param engine The engine used to refresh presence
+	 * @param period Time, in milliseconds, between two refreshes of a contact, in foreground mode
+	 */
+	public PresenceScheduler(final PresenceEngine engine, final long period) {
+		this.engine = engine;
+		this.period = period;
+	}
+
+	/**
+	 * @return The time between two refreshes of a contact, in the current mode
+	 */
+	private long currentPeriod() {
+		return this.background ? this.period * BACKGROUND_FACTOR : this.period;
+	}
+
+	/**
+	 * @param base The date from which to compute
+	 * @return The date of the next refresh of a contact refreshed at the given date
+	 */
+	private long jittered(final long base) {
+		final long currentPeriod = currentPeriod();
+		final long shift = (long) ((this.random.nextFloat() * 2 - 1) * JITTER * currentPeriod);
+		return base + currentPeriod + shift;
+	}
+
+	/**
+	 * Set the contacts to keep up to date.
+	 * Contacts that were already watched keep their refresh date, new ones are refreshed in the next few seconds.
+	 *
+	 * @param uids The user IDs of the contacts to watch
+	 */
+	public void watch(final Collection<String> uids) {
+		final long now = SystemClock.uptimeMillis();
+		this.nextRefresh.keySet().retainAll(uids);
+		for (final String uid : uids) {
+			if (!this.nextRefresh.containsKey(uid)) {
+				this.nextRefresh.put(uid, Long.valueOf(now + this.random.nextInt(INITIAL_SPREAD)));
+			}
+		}
+		schedule();
+	}
+
+	/**
+	 * Stops watching every contact
+	 */
+	public void stop() {
+		this.nextRefresh.clear();
+		this.handler.removeCallbacks(this.refreshTask);
+	}
+
+	/**
+	 * Switches between foreground and background mode.
+	 * Going to background delays all refreshes; going back to foreground brings them back within one foreground period.
+	 *
+	 * @param background Whether the application is in background mode
+	 */
+	public void setBackground(final boolean background) {
+		if (this.background == background) {
+			return ;
+		}
+		this.background = background;
+
+		final long now = SystemClock.uptimeMillis();
+		for (final Map.Entry<String, Long> entry : this.nextRefresh.entrySet()) {
+			if (background) {
+				entry.setValue(Long.valueOf(jittered(now)));
+			}
+			else if (entry.getValue().longValue() - now > this.period) {
+				// Spread over the first seconds, not all at once
+				entry.setValue(Long.valueOf(now + this.random.nextInt(INITIAL_SPREAD)));
+			}
+		}
+		schedule();
+	}
+
+	/**
+	 * @return The number of refreshes per minute, as measured over the last minute
+	 */
+	public float getRefreshRate() {
+		return this.refreshRate;
+	}
+
+	/**
+	 * @return The number of contacts that are waiting for or being refreshed
+	 */
+	public int getQueueDepth() {
+		return this.engine.getPendingCount();
+	}
+
+	/**
+	 * Schedules the next refresh at the earliest refresh date
+	 */
+	private void schedule() {
+		this.handler.removeCallbacks(this.refreshTask);
+
+		long next = Long.MAX_VALUE;
+		for (final Long date : this.nextRefresh.values()) {
+			next = Math.min(next, date.longValue());
+		}
+		if (next != Long.MAX_VALUE) {
+			this.handler.postDelayed(this.refreshTask, Math.max(0, next - SystemClock.uptimeMillis()));
+		}
+	}
+
+	/**
+	 * Refreshes the contacts that are due, updates the metrics and schedules the next refresh
+	 */
+	protected void refresh() {
+		final long now = SystemClock.uptimeMillis();
+
+		final List<String> due = new ArrayList<String>();
+		final Iterator<Map.Entry<String, Long>> it = this.nextRefresh.entrySet().iterator();
+		while (it.hasNext()) {
+			final Map.Entry<String, Long> entry = it.next();
+			if (entry.getValue().longValue() <= now) {
+				due.add(entry.getKey());
+				entry.setValue(Long.valueOf(jittered(now)));
+			}
+		}
+
+		if (!due.isEmpty()) {
+			this.engine.refresh(due);
+		}
+
+		this.rateWindowCount += due.size();
+		if (now - this.rateWindowStart >= RATE_WINDOW) {
+			this.refreshRate = this.rateWindowCount * 60000f / (now - this.rateWindowStart);
+			this.rateWindowStart = now;
+			this.rateWindowCount = 0;
+		}
+
+		Log.d(LOGTAG, String.format(Locale.US, "Refreshed %d contacts, %.1f refreshes/min, queue depth %d%s",
+				Integer.valueOf(due.size()), Float.valueOf(this.refreshRate), Integer.valueOf(getQueueDepth()), this.background ? " (background)" : ""));
+
+		schedule();
+	}
+}
@@ -0,0 +1,278 @@
+package com.weemo.sdk.helper.presence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.weemo.sdk.Weemo;
+import com.weemo.sdk.WeemoEngine;
+import com.weemo.sdk.event.WeemoEventListener;
+import com.weemo.sdk.event.global.StatusEvent;
+import com.weemo.sdk.helper.R;
+import com.weemo.sdk.helper.event.HelperEventBus;
+
+/**
+ * Single entry point for WeemoEngine.getStatus() requests.
+ *
+ * Concurrent requests for the same user ID share a single request to the Weemo engine (a "flight"):
+ * all their callbacks are called together when the StatusEvent arrives.
+ * Each callback only receives the answer for the user ID it asked for.
+ *
+ * Requests for a user ID are also rate limited: a request is never sent less than a minimum interval
+ * (R.integer.presence_min_interval) after the previous one for the same user ID. A request that comes too early is delayed, and joined by the
+ * requests that come meanwhile.
+ *
+ * A flight that gets no answer in time (R.integer.presence_timeout) completes with an unknown presence.
+ *
+ * This object must be used from the UI thread.
+ */
+public final class StatusRequests {
+
+	/**
+	 * Interface that objects requesting a status must implement
+	 */
+	public static interface Callback {
+		/**
+		 * Used to give the answer to a status request
+		 *
+		 * @param uid The user ID of the contact
+		 * @param canBeCalled Whether the contact can be called, or null if there was no answer in time
+		 */
+		public void onStatus(String uid, @CheckForNull Boolean canBeCalled);
+	}
+
+	/**
+	 * A request to the Weemo engine, shared by all the callbacks that wait for it.
+	 * When run, it is either sent (if it was delayed) or timed out.
+	 */
+	private final class Flight implements Runnable {
+
+		/** The requested user ID */
+		final String uid;
+
+		/** The callbacks waiting for the answer */
+		final List<Callback> callbacks = new ArrayList<Callback>();
+
+		/** Whether the request has been sent to the Weemo engine */
+		boolean sent; // = false;
+
+		/**
+		 * Constructor
+		 *
+		 * @param uid The requested user ID
+		 */
+		Flight(final String uid) {
+			this.uid = uid;
+		}
+
+		/**
+		 * Sends the request to the Weemo engine
+		 */
+		void send() {
+			final WeemoEngine weemo = Weemo.instance();
+			if (weemo == null) {
+				complete(this, null);
+				return ;
+			}
+			this.sent = true;
+			StatusRequests.this.lastSent.remove(this.uid);
+			StatusRequests.this.lastSent.put(this.uid, Long.valueOf(SystemClock.uptimeMillis()));
+			++StatusRequests.this.sentCount;
+			StatusRequests.this.handler.postDelayed(this, StatusRequests.this.timeout);
+			weemo.getStatus(this.uid);
+		}
+
+		@Override
+		public void run() {
+			if (this.sent) {
+				complete(this, null);
+			}
+			else {
+				send();
+			}
+		}
+	}
+
+	/** The request coalescer used by the application, created on first use */
+	private static @CheckForNull StatusRequests instance; // = null;
+
+	/** Minimum time, in milliseconds, between two requests for the same user ID */
+	protected final long minInterval;
+
+	/** Time, in milliseconds, after which an unanswered request completes with an unknown presence */
+	protected final long timeout;
+
+	/** User ID => its flight, delayed or sent */
+	protected final Map<String, Flight> flights = new HashMap<String, Flight>();
+
+	/** User ID => when its last request was sent (from SystemClock.uptimeMillis()), oldest first */
+	@SuppressWarnings("serial")
+	protected final Map<String, Long> lastSent = new LinkedHashMap<String, Long>() {
+		@Override protected boolean removeEldestEntry(final Map.Entry<String, Long> eldest) {
+			// Entries older than the minimum interval cannot limit anything anymore
+			return SystemClock.uptimeMillis() - eldest.getValue().longValue() > StatusRequests.this.minInterval;
+		}
+	};
+
+	/** UI thread handler, used to delay and time out flights */
+	protected final Handler handler = new Handler(Looper.getMainLooper());
+
+	/** Number of requests sent to the Weemo engine */
+	protected int sentCount; // = 0;
+
+	/** Number of requests that joined a flight instead of being sent */
+	private int coalescedCount; // = 0;
+
+	/** Number of flights that were delayed by the rate limit */
+	private int delayedCount; // = 0;
+
+	/**
+	 * Constructor.
+	 * Registers itself as event listener.
+	 *
+	 * @param context Any context of the application
+	 */
+	private StatusRequests(final Context context) {
+		final Resources res = context.getResources();
+		this.minInterval = res.getInteger(R.integer.presence_min_interval);
+		this.timeout = res.getInteger(R.integer.presence_timeout);
+		HelperEventBus.instance().register(this);
+	}
+
+	/**
+	 * Get the request coalescer used by the application, whose interval and timeout are configured in weemo_conf.xml
+	 *
+	 * @param context Any context of the application
+	 * @return The application request coalescer
+	 */
+	public static StatusRequests instance(final Context context) {
+		if (instance == null) {
+			instance = new StatusRequests(context);
+		}
+		return instance;
+	}
+
+	/**
+	 * Asks for the status of a contact.
+	 * If a request for this contact is already in flight (or delayed), the callback joins it.
+	 * A callback that is already waiting for this contact is not added twice.
+	 *
+	 * @param uid The user ID of the contact
+	 * @param callback The callback to call with the answer
+	 */
+	public void request(final String uid, final Callback callback) {
+		Flight flight = this.flights.get(uid);
+		if (flight != null) {
+			if (!flight.callbacks.contains(callback)) {
+				flight.callbacks.add(callback);
+				++this.coalescedCount;
+			}
+			return ;
+		}
+
+		flight = new Flight(uid);
+		flight.callbacks.add(callback);
+		this.flights.put(uid, flight);
+
+		final Long last = this.lastSent.get(uid);
+		final long wait = last == null ? 0 : last.longValue() + this.minInterval - SystemClock.uptimeMillis();
+		if (wait > 0) {
+			++this.delayedCount;
+			this.handler.postDelayed(flight, wait);
+		}
+		else {
+			flight.send();
+		}
+	}
+
+	/**
+	 * Removes a callback from all the flights it waits for.
+	 * Delayed flights that have no callback anymore are dropped.
+	 * Sent flights are kept, so that new requests still join them.
+	 *
+	 * @param callback The callback to remove
+	 */
+	public void cancel(final Callback callback) {
+		final Iterator<Flight> it = this.flights.values().iterator();
+		while (it.hasNext()) {
+			final Flight flight = it.next();
+			flight.callbacks.remove(callback);
+			if (flight.callbacks.isEmpty() && !flight.sent) {
+				this.handler.removeCallbacks(flight);
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Completes a flight: removes it and calls all its callbacks
+	 *
+	 * @param flight The flight to complete
+	 * @param canBeCalled Whether the contact can be called, or null if there was no answer in time
+	 */
+	protected void complete(final Flight flight, final @CheckForNull Boolean canBeCalled) {
+		this.handler.removeCallbacks(flight);
+		if (this.flights.get(flight.uid) == flight) {
+			this.flights.remove(flight.uid);
+		}
+		// Callbacks may request again, so we iterate on a copy
+		for (final Callback callback : flight.callbacks.toArray(new Callback[flight.callbacks.size()])) {
+			callback.onStatus(flight.uid, canBeCalled);
+		}
+	}
+
+	/**
+	 * @return The number of flights, delayed or sent
+	 */
+	public int getPendingCount() {
+		return this.flights.size();
+	}
+
+	/**
+	 * @return The number of requests sent to the Weemo engine since the application started
+	 */
+	public int getSentCount() {
+		return this.sentCount;
+	}
+
+	/**
+	 * @return The number of requests that joined a flight instead of being sent
+	 */
+	public int getCoalescedCount() {
+		return this.coalescedCount;
+	}
+
+	/**
+	 * @return The number of flights that were delayed by the rate limit
+	 */
+	public int getDelayedCount() {
+		return this.delayedCount;
+	}
+
+	/**
+	 * This listener method catches StatusEvent
+	 * 1. It is annotated with @WeemoEventListener
+	 * 2. It takes one argument which type is StatusEvent
+	 * 3. It's object has been registered with HelperEventBus.instance().register(this) in its constructor
+	 *
+	 * @param event The event
+	 */
+	@WeemoEventListener
+	public void onStatus(final StatusEvent event) {
+		final Flight flight = this.flights.get(event.getUserID());
+		if (flight != null) {
+			complete(flight, Boolean.valueOf(event.canBeCalled()));
+		}
+	}
+}
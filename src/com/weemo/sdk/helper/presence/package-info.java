@@ -0,0 +1,3 @@
+
+@com.weemo.sdk.EverythingIsNonNullByDefault
+package com.weemo.sdk.helper.presence;
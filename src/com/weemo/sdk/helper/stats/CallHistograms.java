@@ -0,0 +1,399 @@
+package com.weemo.sdk.helper.stats;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import javax.annotation.CheckForNull;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.weemo.sdk.WeemoCall;
+
+/**
+ * Keeps {@link LogHistogram}s of the latency, the received video jitter and the time to the first video frames,
+ * and reports them with the call setup phases.
+ *
+ * The latency and jitter of each sampled call are recorded in histograms of the call, which are merged
+ * into the histograms of the session when the call ends.
+ * The times to the first video frames are recorded in the session by the {@link FirstFrameTimer}s.
+ * The setup phases of the calls are recorded in the session by the {@link CallSetupTracker}.
+ *
+ * The histograms are written in the crash reports (see com.weemo.sdk.helper.util.AttachmentEmailACRASender),
+ * and every {@link #DUMP_PERIOD} (and at the end of each call) in a dump file per release of the application,
+ * in which the sessions of the release are merged, so that percentiles can be compared across releases.
+ * Dump files are in the "histograms" external files dir (or internal files dir if there is no external storage).
+ *
+ * Histograms are recorded on the UI thread, and may be read from any thread.
+ */
+public final class CallHistograms implements CallStatsMonitor.SamplerListener, CallStatsSampler.SampleListener {
+
+	/** Log tag for Log.* */
+	private static final String LOGTAG = "CallHistograms";
+
+	/** Time, in milliseconds, between two dumps */
+	public static final long DUMP_PERIOD = 60000;
+
+	/** Histogram index: latency, in milliseconds */
+	public static final int LATENCY = 0;
+
+	/** Histogram index: received video jitter, in milliseconds */
+	public static final int JITTER = 1;
+
+	/** Histogram index: time to the first incoming video frame, in milliseconds */
+	public static final int FIRST_FRAME_IN = 2;
+
+	/** Histogram index: time to the first outgoing video frame, in milliseconds */
+	public static final int FIRST_FRAME_OUT = 3;
+
+	/** Names of the histograms, by index */
+	public static final String[] NAMES = { "latency_ms", "video_jitter_ms", "first_frame_in_ms", "first_frame_out_ms" };
+
+	/** Number of histograms recorded per call: the first ones of {@link #NAMES} */
+	private static final int CALL_HISTOGRAMS = 2;
+
+	/** Names of all reported histograms: those of {@link #NAMES} followed by those of the setup phases */
+	static final String[] ALL_NAMES = new String[NAMES.length + CallSetupTracker.PHASES.length];
+	static {
+		System.arraycopy(NAMES, 0, ALL_NAMES, 0, NAMES.length);
+		for (final CallSetupTracker.Phase phase : CallSetupTracker.PHASES) {
+			ALL_NAMES[NAMES.length + phase.ordinal()] = phase.histogramName;
+		}
+	}
+
+	/** Suffix of the names of the lines holding the written histograms in dump files */
+	private static final String DATA_SUFFIX = ".data";
+
+	/** The histograms used by the application, created on first use */
+	private static @CheckForNull CallHistograms instance; // = null;
+
+	/** The histograms of the session, by index (guarded by this) */
+	private final LogHistogram[] session = newHistograms(NAMES.length);
+
+	/** Call ID => the histograms of the call, by index (only the first {@link #CALL_HISTOGRAMS} are recorded per call) (guarded by this) */
+	private final SparseArray<LogHistogram[]> calls = new SparseArray<LogHistogram[]>();
+
+	/** Whether the session histograms changed since the last dump (guarded by this) */
+	private boolean dirty; // = false;
+
+	/** Background thread handler, on which the dump file is written */
+	private final Handler worker;
+
+	/** The dump file of this release */
+	private final File dumpFile;
+
+	/** First line of the dump file */
+	private final String dumpHeader;
+
+	/** The histograms of the previous sessions of this release, by index in {@link #ALL_NAMES}, null until the dump file is read (background thread only) */
+	private @CheckForNull LogHistogram[] previous; // = null;
+
+	/** The histograms being dumped, by index in {@link #ALL_NAMES} (background thread only) */
+	private final LogHistogram[] dumped = newHistograms(ALL_NAMES.length);
+
+	/** Writes the dump file, and schedules the next dump */
+	private final Runnable dumpTask = new Runnable() {
+		@Override public void run() {
+			dump();
+			CallHistograms.this.worker.postDelayed(this, DUMP_PERIOD);
+		}
+	};
+
+	/**
+	 * Constructor.
+	 * Starts recording the sampled calls and dumping.
+	 *
+	 * @param context The application context
+	 */
+	private CallHistograms(final Context context) {
+		String version = "unknown";
+		try {
+			final PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+			version = info.versionName + "-" + info.versionCode;
+		}
+		catch (NameNotFoundException e) {
+			Log.w(LOGTAG, "Could not get the application version", e);
+		}
+		final File external = context.getExternalFilesDir("histograms");
+		final File dir = external != null ? external : new File(context.getFilesDir(), "histograms");
+		this.dumpFile = new File(dir, "release-" + version + ".txt");
+		this.dumpHeader = "# " + context.getPackageName() + " " + version + " on " + Build.MODEL + " " + Build.VERSION.RELEASE;
+
+		final HandlerThread thread = new HandlerThread("CallHistograms", Process.THREAD_PRIORITY_BACKGROUND);
+		thread.start();
+		this.worker = new Handler(thread.getLooper());
+		this.worker.postDelayed(this.dumpTask, DUMP_PERIOD);
+
+		CallStatsMonitor.instance(context).addSamplerListener(this);
+		CallSetupTracker.instance();
+	}
+
+	/**
+	 * Get the histograms used by the application, which starts recording the calls
+	 *
+	 * @param context Any context of the application
+	 * @return The application histograms
+	 */
+	public static CallHistograms instance(final Context context) {
+		if (instance == null) {
+			instance = new CallHistograms(context.getApplicationContext());
+		}
+		return instance;
+	}
+
+	/**
+	 * Get the histograms used by the application without creating them, for reports
+	 *
+	 * @return The application histograms, null if they were not created
+	 */
+	public static @CheckForNull CallHistograms peek() {
+		return instance;
+	}
+
+	/**
+	 * Get new empty histograms
+	 *
+	 * @param count The number of histograms
+	 * @return The histograms
+	 */
+	static LogHistogram[] newHistograms(final int count) {
+		final LogHistogram[] histograms = new LogHistogram[count];
+		for (int i = 0; i < histograms.length; ++i) {
+			histograms[i] = new LogHistogram();
+		}
+		return histograms;
+	}
+
+	/**
+	 * Get a copy of a histogram of the session
+	 *
+	 * @param index The index of the histogram in {@link #NAMES}
+	 * @return A copy of the histogram
+	 */
+	public synchronized LogHistogram getSession(final int index) {
+		final LogHistogram copy = new LogHistogram();
+		copy.merge(this.session[index]);
+		return copy;
+	}
+
+	/**
+	 * Records a value in a histogram of the session
+	 *
+	 * @param index The index of the histogram ({@link #FIRST_FRAME_IN} or {@link #FIRST_FRAME_OUT},
+	 *              the others are recorded from the samples of the calls)
+	 * @param value The value
+	 */
+	public synchronized void record(final int index, final long value) {
+		this.session[index].record(value);
+		this.dirty = true;
+	}
+
+	@Override
+	public void onSamplerStarted(final CallStatsSampler sampler) {
+		synchronized (this) {
+			this.calls.put(sampler.getCall().getCallId(), newHistograms(CALL_HISTOGRAMS));
+		}
+		sampler.addSampleListener(this);
+	}
+
+	@Override
+	public void onSamplerStopped(final CallStatsSampler sampler) {
+		sampler.removeSampleListener(this);
+		final int callId = sampler.getCall().getCallId();
+		final StringBuilder builder = new StringBuilder();
+		synchronized (this) {
+			final LogHistogram[] histograms = this.calls.get(callId);
+			if (histograms == null) {
+				return ;
+			}
+			this.calls.remove(callId);
+			for (int i = 0; i < histograms.length; ++i) {
+				this.session[i].merge(histograms[i]);
+			}
+			this.dirty = true;
+			builder.append("Call ").append(callId).append(" latency ");
+			histograms[LATENCY].summary(builder);
+			builder.append(", jitter ");
+			histograms[JITTER].summary(builder);
+		}
+		Log.i(LOGTAG, builder.toString());
+
+		// Dumps now, so that the call is not lost if the application is killed
+		this.worker.removeCallbacks(this.dumpTask);
+		this.worker.post(this.dumpTask);
+	}
+
+	@Override
+	public void onSample(final CallStatsSampler sampler) {
+		final WeemoCall call = sampler.getCall();
+		final StatsRing ring = sampler.getRing();
+		final float latency = ring.latest(Metric.LATENCY);
+		final float jitter = call.isReceivingVideo() ? ring.latest(Metric.VIDEO_RECEIVED_JITTER) : Float.NaN;
+		synchronized (this) {
+			final LogHistogram[] histograms = this.calls.get(call.getCallId());
+			if (histograms == null) {
+				return ;
+			}
+			if (!Float.isNaN(latency)) {
+				histograms[LATENCY].record(Math.round(latency));
+			}
+			if (!Float.isNaN(jitter)) {
+				histograms[JITTER].record(Math.round(jitter));
+			}
+		}
+	}
+
+	/**
+	 * Get the histograms of the session, followed by those of the setup phases
+	 *
+	 * @return Copies of the histograms, by index in {@link #ALL_NAMES}
+	 */
+	private LogHistogram[] sessionHistograms() {
+		final LogHistogram[] histograms = newHistograms(ALL_NAMES.length);
+		synchronized (this) {
+			for (int i = 0; i < NAMES.length; ++i) {
+				histograms[i].merge(this.session[i]);
+			}
+		}
+		CallSetupTracker.instance().mergeTo(histograms, NAMES.length);
+		return histograms;
+	}
+
+	/**
+	 * Writes a summary of each histogram of the session and of the ongoing calls, one per line,
+	 * followed by the histograms of the session in the form read by {@link LogHistogram#mergeFrom(String)}
+	 *
+	 * @param builder The builder to write to
+	 */
+	public void report(final StringBuilder builder) {
+		final LogHistogram[] histograms = sessionHistograms();
+		for (int i = 0; i < ALL_NAMES.length; ++i) {
+			builder.append("session ").append(ALL_NAMES[i]).append(' ');
+			histograms[i].summary(builder);
+			builder.append('\n');
+		}
+		synchronized (this) {
+			for (int c = 0; c < this.calls.size(); ++c) {
+				final LogHistogram[] callHistograms = this.calls.valueAt(c);
+				for (int i = 0; i < CALL_HISTOGRAMS; ++i) {
+					builder.append("call ").append(this.calls.keyAt(c)).append(' ').append(NAMES[i]).append(' ');
+					callHistograms[i].summary(builder);
+					builder.append('\n');
+				}
+			}
+		}
+		for (int i = 0; i < ALL_NAMES.length; ++i) {
+			builder.append(ALL_NAMES[i]).append(DATA_SUFFIX).append(' ');
+			histograms[i].write(builder);
+			builder.append('\n');
+		}
+	}
+
+	/**
+	 * Reads the histograms of the previous sessions of this release from the dump file (background thread only)
+	 *
+	 * @return The histograms, empty if there is no dump file
+	 */
+	private LogHistogram[] readPrevious() {
+		final LogHistogram[] histograms = newHistograms(ALL_NAMES.length);
+		if (!this.dumpFile.exists()) {
+			return histograms;
+		}
+		try {
+			final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.dumpFile), "UTF-8"));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					for (int i = 0; i < ALL_NAMES.length; ++i) {
+						final String prefix = ALL_NAMES[i] + DATA_SUFFIX + " ";
+						if (line.startsWith(prefix) && !histograms[i].mergeFrom(line.substring(prefix.length()))) {
+							Log.w(LOGTAG, "Ignoring unreadable " + ALL_NAMES[i] + " in " + this.dumpFile);
+						}
+					}
+				}
+			}
+			finally {
+				reader.close();
+			}
+		}
+		catch (IOException e) {
+			Log.w(LOGTAG, "Could not read " + this.dumpFile, e);
+		}
+		return histograms;
+	}
+
+	/**
+	 * Writes the histograms of this release (previous sessions merged with this one) in the dump file, if the session changed (background thread only)
+	 */
+	void dump() {
+		if (this.previous == null) {
+			this.previous = readPrevious();
+		}
+		final LogHistogram[] base = this.previous;
+
+		final boolean setupChanged = CallSetupTracker.instance().takeChanged();
+		synchronized (this) {
+			if (!this.dirty && !setupChanged) {
+				return ;
+			}
+			this.dirty = false;
+			for (int i = 0; i < ALL_NAMES.length; ++i) {
+				this.dumped[i].clear();
+				this.dumped[i].merge(base[i]);
+			}
+			for (int i = 0; i < NAMES.length; ++i) {
+				this.dumped[i].merge(this.session[i]);
+			}
+		}
+		CallSetupTracker.instance().mergeTo(this.dumped, NAMES.length);
+
+		final StringBuilder builder = new StringBuilder();
+		builder.append(this.dumpHeader).append(", updated ").append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US).format(new Date())).append('\n');
+		for (int i = 0; i < ALL_NAMES.length; ++i) {
+			builder.append(ALL_NAMES[i]).append(' ');
+			this.dumped[i].summary(builder);
+			builder.append('\n');
+		}
+		for (int i = 0; i < ALL_NAMES.length; ++i) {
+			builder.append(ALL_NAMES[i]).append(DATA_SUFFIX).append(' ');
+			this.dumped[i].write(builder);
+			builder.append('\n');
+		}
+
+		final File dir = this.dumpFile.getParentFile();
+		final File tmpFile = new File(this.dumpFile.getPath() + ".tmp");
+		try {
+			if (!dir.isDirectory() && !dir.mkdirs()) {
+				throw new IOException("Could not create " + dir);
+			}
+			final FileOutputStream out = new FileOutputStream(tmpFile);
+			try {
+				out.write(builder.toString().getBytes("UTF-8"));
+			}
+			finally {
+				out.close();
+			}
+			if (!tmpFile.renameTo(this.dumpFile)) {
+				throw new IOException("Could not rename " + tmpFile);
+			}
+		}
+		catch (IOException e) {
+			Log.e(LOGTAG, "Could not dump the histograms", e);
+			tmpFile.delete();
+		}
+	}
+}
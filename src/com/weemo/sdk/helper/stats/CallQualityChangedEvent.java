@@ -0,0 +1,52 @@
+package com.weemo.sdk.helper.stats;
+
+import com.weemo.sdk.WeemoCall;
+import com.weemo.sdk.event.call.WeemoCallEvent;
+
+/**
+ * Event fired on the Weemo event bus when the estimated quality of a call changes.
+ *
+ * It is fired by the {@link CallQualityMonitor}, on the UI thread, when the rolling score
+ * moves by {@link CallQualityMonitor#SCORE_STEP} or more.
+ * Like the SDK call events, it can be received by the listeners registered for its call only.
+ */
+public class CallQualityChangedEvent extends WeemoCallEvent {
+
+	/** The rolling score */
+	private final float score;
+
+	/** The score of the call so far */
+	private final float callScore;
+
+	/**
+	 * Constructor
+	 *
+	 * @param call The call
+	 * @param score The rolling score
+	 * @param callScore The score of the call so far
+	 */
+	public CallQualityChangedEvent(final WeemoCall call, final float score, final float callScore) {
+		super(call);
+		this.score = score;
+		this.callScore = callScore;
+	}
+
+	/**
+	 * @return The rolling quality score of the call, as a MOS (from 1 to 4.5), see {@link CallQualityEstimator}
+	 */
+	public float getScore() {
+		return this.score;
+	}
+
+	/**
+	 * @return The quality score of the call since it became active (mean of the rolling scores)
+	 */
+	public float getCallScore() {
+		return this.callScore;
+	}
+
+	@Override
+	public String toString() {
+		return super.toString() + " score=" + this.score + " callScore=" + this.callScore;
+	}
+}
@@ -0,0 +1,204 @@
+package com.weemo.sdk.helper.stats;
+
+/**
+ * Estimates the quality of a call as a MOS (Mean Opinion Score, from 1 "bad" to 4.5 "excellent"), in constant memory.
+ *
+ * Each input (latency, jitter, audio and video received loss, received frame rate) is smoothed by an exponentially
+ * weighted moving average whose time constant is {@link #TIME_CONSTANT}, whatever the sampling interval.
+ * The rolling score is computed from the smoothed inputs with a simplified ITU-T G.107 E-model:
+ * <pre>
+ *   delay = latency / 2 + 2 * jitter + CODEC_DELAY
+ *   Id    = 0.024 * delay + 0.11 * (delay - 177.3) if delay &gt; 177.3
+ *   Ie    = 30 * ln(1 + 15 * loss)
+ *   R     = 93.2 - Id - Ie
+ *   MOS   = 1 + 0.035 * R + 7e-6 * R * (R - 60) * (100 - R)
+ * </pre>
+ * While video is received, a video R is computed the same way from the video loss, minus a penalty for a frame rate
+ * under {@link #TARGET_FRAME_RATE}, and the call is scored by the worst of its audio and video.
+ *
+ * The score of the whole call is the mean of the rolling scores, so that it is one number per call.
+ */
+public class CallQualityEstimator {
+
+	/** Time constant, in milliseconds, of the input averages */
+	public static final long TIME_CONSTANT = 5000;
+
+	/** Delay, in milliseconds, added by the codecs and the jitter buffer */
+	public static final float CODEC_DELAY = 10;
+
+	/** Received frame rate under which the video quality is penalized */
+	public static final float TARGET_FRAME_RATE = 15;
+
+	/** R penalty of a video that is received at 0 fps */
+	private static final float FRAME_RATE_PENALTY = 40;
+
+	/** R of a perfect call */
+	private static final float MAX_R = 93.2f;
+
+	/** Smoothing factor of each sample */
+	private final float alpha;
+
+	/** Average latency (round trip), in milliseconds, NaN until known */
+	private float latency = Float.NaN;
+
+	/** Average received video jitter, in milliseconds, NaN until known */
+	private float jitter = Float.NaN;
+
+	/** Average received audio loss, in percent, NaN until known */
+	private float audioLoss = Float.NaN;
+
+	/** Average received video loss, in percent, NaN until known or while video is not received */
+	private float videoLoss = Float.NaN;
+
+	/** Average received frame rate, NaN until known or while video is not received */
+	private float frameRate = Float.NaN;
+
+	/** Latest rolling score, NaN before the first sample */
+	private float score = Float.NaN;
+
+	/** Sum of the rolling scores */
+	private double scoreSum; // = 0;
+
+	/** Number of rolling scores */
+	private int scoreCount; // = 0;
+
+	/** Lowest rolling score, NaN before the first sample */
+	private float minScore = Float.NaN;
+
+	/**
+	 * Constructor
+	 *
+	 * @param interval Time, in milliseconds, between two samples
+	 */
+	public CallQualityEstimator(final long interval) {
+		this.alpha = (float) (1 - Math.exp(-(double) interval / TIME_CONSTANT));
+	}
+
+	/**
+	 * Updates an average with a new value
+	 *
+	 * @param average The current average, NaN if there is none yet
+	 * @param value The new value, NaN if it is unknown
+	 * @return The new average
+	 */
+	private float smooth(final float average, final float value) {
+		if (Float.isNaN(value)) {
+			return average;
+		}
+		if (Float.isNaN(average)) {
+			return value;
+		}
+		return average + this.alpha * (value - average);
+	}
+
+	/**
+	 * Adds a sample and updates the scores
+	 *
+	 * @param ring The ring of the sampler, whose latest sample is added
+	 * @param receivingVideo Whether video is received
+	 */
+	public void add(final StatsRing ring, final boolean receivingVideo) {
+		this.latency = smooth(this.latency, ring.latest(Metric.LATENCY));
+		this.audioLoss = smooth(this.audioLoss, ring.latest(Metric.AUDIO_RECEIVED_LOSS));
+		if (receivingVideo) {
+			this.jitter = smooth(this.jitter, ring.latest(Metric.VIDEO_RECEIVED_JITTER));
+			this.videoLoss = smooth(this.videoLoss, ring.latest(Metric.VIDEO_RECEIVED_LOSS));
+			this.frameRate = smooth(this.frameRate, ring.latest(Metric.VIDEO_RECEIVED_RATE));
+		}
+		else {
+			// The video restarts from its own samples, and its jitter does not delay the audio
+			this.jitter = Float.NaN;
+			this.videoLoss = Float.NaN;
+			this.frameRate = Float.NaN;
+		}
+
+		final float delay = (Float.isNaN(this.latency) ? 0 : this.latency / 2) + (Float.isNaN(this.jitter) ? 0 : 2 * this.jitter) + CODEC_DELAY;
+		final float delayR = MAX_R - delayImpairment(delay);
+		float r = delayR - lossImpairment(this.audioLoss);
+		if (!Float.isNaN(this.videoLoss) || !Float.isNaN(this.frameRate)) {
+			float videoR = delayR - lossImpairment(this.videoLoss);
+			if (this.frameRate < TARGET_FRAME_RATE) {
+				videoR -= FRAME_RATE_PENALTY * (1 - this.frameRate / TARGET_FRAME_RATE);
+			}
+			r = Math.min(r, videoR);
+		}
+
+		this.score = toMos(r);
+		this.scoreSum += this.score;
+		++this.scoreCount;
+		if (Float.isNaN(this.minScore) || this.score < this.minScore) {
+			this.minScore = this.score;
+		}
+	}
+
+	/**
+	 * Get the E-model delay impairment
+	 *
+	 * @param delay The one-way delay, in milliseconds
+	 * @return The impairment (Id)
+	 */
+	static float delayImpairment(final float delay) {
+		float id = 0.024f * delay;
+		if (delay > 177.3f) {
+			id += 0.11f * (delay - 177.3f);
+		}
+		return id;
+	}
+
+	/**
+	 * Get the E-model loss impairment
+	 *
+	 * @param loss The loss, in percent, NaN if it is unknown
+	 * @return The impairment (Ie), 0 if the loss is unknown
+	 */
+	static float lossImpairment(final float loss) {
+		if (Float.isNaN(loss) || loss <= 0) {
+			return 0;
+		}
+		return (float) (30 * Math.log(1 + 15 * Math.min(loss, 100) / 100));
+	}
+
+	/**
+	 * Converts an E-model R to a MOS
+	 *
+	 * @param r The R
+	 * @return The MOS, from 1 to 4.5
+	 */
+	static float toMos(final float r) {
+		if (r <= 0) {
+			return 1;
+		}
+		if (r >= 100) {
+			return 4.5f;
+		}
+		return Math.max(1, Math.min(4.5f, 1 + 0.035f * r + 7e-6f * r * (r - 60) * (100 - r)));
+	}
+
+	/**
+	 * @return The latest rolling score, NaN if no sample was added
+	 */
+	public float getScore() {
+		return this.score;
+	}
+
+	/**
+	 * @return The score of the call so far (mean of the rolling scores), NaN if no sample was added
+	 */
+	public float getCallScore() {
+		return this.scoreCount == 0 ? Float.NaN : (float) (this.scoreSum / this.scoreCount);
+	}
+
+	/**
+	 * @return The lowest rolling score of the call so far, NaN if no sample was added
+	 */
+	public float getMinScore() {
+		return this.minScore;
+	}
+
+	/**
+	 * @return The number of samples added
+	 */
+	public int getSampleCount() {
+		return this.scoreCount;
+	}
+}
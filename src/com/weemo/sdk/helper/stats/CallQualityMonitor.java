@@ -0,0 +1,115 @@
+package com.weemo.sdk.helper.stats;
+
+import javax.annotation.CheckForNull;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.weemo.sdk.WeemoCall;
+import com.weemo.sdk.helper.event.HelperEventBus;
+import com.weemo.sdk.helper.history.CallHistory;
+
+/**
+ * Estimates the quality of every sampled call, with one {@link CallQualityEstimator} per call.
+ *
+ * A {@link CallQualityChangedEvent} is fired on the event bus when the rolling score of a call moves by {@link #SCORE_STEP}
+ * or more, so that the UI is not refreshed for meaningless changes.
+ * When the call ends, its score (the mean of its rolling scores) is recorded in the {@link CallHistory}.
+ *
+ * This object must be used from the UI thread.
+ */
+public final class CallQualityMonitor implements CallStatsMonitor.SamplerListener, CallStatsSampler.SampleListener {
+
+	/** Log tag for Log.* */
+	private static final String LOGTAG = "CallQualityMonitor";
+
+	/** Change of the rolling score from which an event is fired */
+	public static final float SCORE_STEP = 0.1f;
+
+	/** The monitor used by the application, created on first use */
+	private static @CheckForNull CallQualityMonitor instance; // = null;
+
+	/** The application context */
+	private final Context context;
+
+	/** Call ID => the estimator of the call */
+	private final SparseArray<CallQualityEstimator> estimators = new SparseArray<CallQualityEstimator>();
+
+	/** Call ID => the rolling score of the last fired event */
+	private final SparseArray<Float> firedScores = new SparseArray<Float>();
+
+	/**
+	 * Constructor.
+	 * Listens to the samplers of the {@link CallStatsMonitor}.
+	 *
+	 * @param context The application context
+	 */
+	private CallQualityMonitor(final Context context) {
+		this.context = context;
+		CallStatsMonitor.instance(context).addSamplerListener(this);
+	}
+
+	/**
+	 * Get the monitor used by the application
+	 *
+	 * @param context Any context of the application
+	 * @return The application monitor
+	 */
+	public static CallQualityMonitor instance(final Context context) {
+		if (instance == null) {
+			instance = new CallQualityMonitor(context.getApplicationContext());
+		}
+		return instance;
+	}
+
+	/**
+	 * Get the estimator of a call
+	 *
+	 * @param callId The ID of the call
+	 * @return The estimator of the call, null if it is not active
+	 */
+	public @CheckForNull CallQualityEstimator getEstimator(final int callId) {
+		return this.estimators.get(callId);
+	}
+
+	@Override
+	public void onSamplerStarted(final CallStatsSampler sampler) {
+		this.estimators.put(sampler.getCall().getCallId(), new CallQualityEstimator(sampler.getInterval()));
+		sampler.addSampleListener(this);
+	}
+
+	@Override
+	public void onSamplerStopped(final CallStatsSampler sampler) {
+		sampler.removeSampleListener(this);
+		final int callId = sampler.getCall().getCallId();
+		final CallQualityEstimator estimator = this.estimators.get(callId);
+		this.estimators.remove(callId);
+		this.firedScores.remove(callId);
+		if (estimator == null || estimator.getSampleCount() == 0) {
+			return ;
+		}
+		final float score = estimator.getCallScore();
+		Log.i(LOGTAG, "Call " + callId + " scored " + score + " (lowest " + estimator.getMinScore() + ")");
+		CallHistory.instance(this.context).recordScore(callId, score);
+	}
+
+	@Override
+	public void onSample(final CallStatsSampler sampler) {
+		final WeemoCall call = sampler.getCall();
+		final int callId = call.getCallId();
+		final CallQualityEstimator estimator = this.estimators.get(callId);
+		if (estimator == null) {
+			return ;
+		}
+		estimator.add(sampler.getRing(), call.isReceivingVideo());
+
+		final float score = estimator.getScore();
+		final Float fired = this.firedScores.get(callId);
+		if (fired != null && Math.abs(score - fired.floatValue()) < SCORE_STEP) {
+			return ;
+		}
+		this.firedScores.put(callId, Float.valueOf(score));
+		HelperEventBus.instance().fire(new CallQualityChangedEvent(call, score, estimator.getCallScore()));
+	}
+}
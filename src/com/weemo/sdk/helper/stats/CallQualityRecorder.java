@@ -0,0 +1,492 @@
+package com.weemo.sdk.helper.stats;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.CheckForNull;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.weemo.sdk.WeemoCall;
+import com.weemo.sdk.WeemoCall.CallStatus;
+import com.weemo.sdk.WeemoCall.VideoProfile;
+import com.weemo.sdk.event.WeemoEventListener;
+import com.weemo.sdk.event.call.CallCreatedEvent;
+import com.weemo.sdk.event.call.CallStatusChangedEvent;
+import com.weemo.sdk.event.call.ReceivingVideoChangedEvent;
+import com.weemo.sdk.helper.event.HelperEventBus;
+
+/**
+ * Records the stats samples and the events of each call in a compact binary file, for support.
+ *
+ * There is one file per call, named <code>&lt;start&gt;-&lt;callId&gt;.wcq</code>, in the "quality" dir of the
+ * external application files (internal if there is no external storage). Only the last {@link #MAX_FILES} are kept.
+ * The files are read by tools/quality-analyzer.
+ *
+ * File format (big endian):
+ *  - int: {@link #MAGIC}
+ *  - short: {@link #VERSION}
+ *  - long: start of the call (from System.currentTimeMillis())
+ *  - int: call ID
+ *  - modified UTF-8: display name of the contact
+ *  - byte: number n of metrics, then for each metric: modified UTF-8 name and byte scale
+ *  - records, all of 3 + 2n bytes:
+ *    - byte: {@link #RECORD_SAMPLE}, {@link #RECORD_EVENT} or {@link #RECORD_GAP}
+ *    - unsigned short: milliseconds since the previous record (since the start for the first one)
+ *    - n shorts: for a sample, the difference between the value of each metric (multiplied by its scale,
+ *      rounded and bounded to 0..32767) and its value in the previous sample (0 before the first sample);
+ *      for an event, the event code (EVENT_*) followed by zeros; for a gap, zeros
+ *
+ * Gap records only carry time, when more than 65535 milliseconds separate two records.
+ * Records are encoded in preallocated buffers on the UI thread and written through a FileChannel on a background thread,
+ * by {@link #BUFFER_RECORDS} records or when the call ends.
+ *
+ * This object must be used from the UI thread.
+ */
+public final class CallQualityRecorder implements CallStatsMonitor.SamplerListener, CallStatsSampler.SampleListener {
+
+	/** Log tag for Log.* */
+	private static final String LOGTAG = "CallQualityRecorder";
+
+	/** Magic number at the start of a recording ("WCQ1") */
+	public static final int MAGIC = 0x57435131;
+
+	/** Version of the file format */
+	public static final short VERSION = 1;
+
+	/** Record type: a stats sample */
+	public static final byte RECORD_SAMPLE = 0;
+
+	/** Record type: an event */
+	public static final byte RECORD_EVENT = 1;
+
+	/** Record type: time only */
+	public static final byte RECORD_GAP = 2;
+
+	/** Event: the call was created */
+	public static final short EVENT_CREATED = 1;
+
+	/** Event: the outgoing call is proceeding */
+	public static final short EVENT_PROCEEDING = 2;
+
+	/** Event: the incoming call is ringing */
+	public static final short EVENT_RINGING = 3;
+
+	/** Event: the call is active */
+	public static final short EVENT_ACTIVE = 4;
+
+	/** Event: the call is paused */
+	public static final short EVENT_PAUSED = 5;
+
+	/** Event: the call has ended */
+	public static final short EVENT_ENDED = 6;
+
+	/** Event: the remote video has started */
+	public static final short EVENT_VIDEO_IN_STARTED = 7;
+
+	/** Event: the remote video has stopped */
+	public static final short EVENT_VIDEO_IN_STOPPED = 8;
+
+	/** Event: the incoming video profile is HD */
+	public static final short EVENT_PROFILE_HD = 9;
+
+	/** Event: the incoming video profile is SD */
+	public static final short EVENT_PROFILE_SD = 10;
+
+	/** Number of records in a buffer */
+	private static final int BUFFER_RECORDS = 64;
+
+	/** Maximum number of recordings kept */
+	private static final int MAX_FILES = 20;
+
+	/** Extension of the recordings */
+	public static final String EXTENSION = ".wcq";
+
+	/** Size of a record */
+	static final int RECORD_SIZE = 3 + 2 * Metric.ALL.length;
+
+	/** Scale of each metric: values are multiplied by it before being rounded */
+	private static final byte[] SCALES = new byte[Metric.ALL.length];
+	static {
+		Arrays.fill(SCALES, (byte) 1);
+		SCALES[Metric.VIDEO_RECEIVED_RATE.ordinal()] = 10;
+		SCALES[Metric.VIDEO_SENT_RATE.ordinal()] = 10;
+		// Losses are mostly under 1%
+		SCALES[Metric.AUDIO_RECEIVED_LOSS.ordinal()] = 100;
+		SCALES[Metric.AUDIO_SENT_LOSS.ordinal()] = 100;
+		SCALES[Metric.VIDEO_RECEIVED_LOSS.ordinal()] = 100;
+		SCALES[Metric.VIDEO_SENT_LOSS.ordinal()] = 100;
+	}
+
+	/**
+	 * The recording of a call
+	 */
+	private final class Recording {
+
+		/** The file */
+		final File file;
+
+		/** The file channel, null until it is opened (background thread only) */
+		@CheckForNull FileChannel channel; // = null;
+
+		/** Records being encoded */
+		ByteBuffer buffer = newBuffer();
+
+		/** Date of the last record (from SystemClock.uptimeMillis()) */
+		long lastRecord = SystemClock.uptimeMillis();
+
+		/** Value of each metric in the previous sample, scaled */
+		final int[] previous = new int[Metric.ALL.length];
+
+		/** The last incoming video profile recorded, null if none was */
+		@CheckForNull VideoProfile profile; // = null;
+
+		/**
+		 * Constructor
+		 *
+		 * @param file The file
+		 */
+		Recording(final File file) {
+			this.file = file;
+		}
+
+		/**
+		 * Starts a record, preceded by gap records if needed
+		 *
+		 * @param type The record type
+		 */
+		void begin(final byte type) {
+			final long now = SystemClock.uptimeMillis();
+			long delta = now - this.lastRecord;
+			this.lastRecord = now;
+			while (delta > 0xFFFF) {
+				reserve();
+				this.buffer.put(RECORD_GAP).putShort((short) 0xFFFF);
+				for (int i = 0; i < Metric.ALL.length; ++i) {
+					this.buffer.putShort((short) 0);
+				}
+				delta -= 0xFFFF;
+			}
+			reserve();
+			this.buffer.put(type).putShort((short) delta);
+		}
+
+		/**
+		 * Writes the buffer if it cannot hold another record
+		 */
+		private void reserve() {
+			if (this.buffer.remaining() < RECORD_SIZE) {
+				flush(this, false);
+			}
+		}
+	}
+
+	/** The recorder used by the application, created on first use */
+	private static @CheckForNull CallQualityRecorder instance; // = null;
+
+	/** Where the recordings are written */
+	private final File dir;
+
+	/** Background thread handler, on which the files are written */
+	private final Handler worker;
+
+	/** Buffers that have been written and can be reused */
+	final List<ByteBuffer> freeBuffers = new ArrayList<ByteBuffer>();
+
+	/** Call ID => its recording */
+	private final SparseArray<Recording> recordings = new SparseArray<Recording>();
+
+	/**
+	 * Constructor.
+	 * Registers itself as event listener.
+	 *
+	 * @param context The application context
+	 */
+	private CallQualityRecorder(final Context context) {
+		final File external = context.getExternalFilesDir("quality");
+		this.dir = external != null ? external : new File(context.getFilesDir(), "quality");
+
+		final HandlerThread thread = new HandlerThread("CallQualityRecorder", Process.THREAD_PRIORITY_BACKGROUND);
+		thread.start();
+		this.worker = new Handler(thread.getLooper());
+
+		HelperEventBus.instance().register(this);
+		CallStatsMonitor.instance(context).addSamplerListener(this);
+	}
+
+	/**
+	 * Get the recorder used by the application, which starts recording the calls
+	 *
+	 * @param context Any context of the application
+	 * @return The application recorder
+	 */
+	public static CallQualityRecorder instance(final Context context) {
+		if (instance == null) {
+			instance = new CallQualityRecorder(context.getApplicationContext());
+		}
+		return instance;
+	}
+
+	/**
+	 * Get the directory of the recordings
+	 *
+	 * @return The directory in which the recordings are written
+	 */
+	public File getDir() {
+		return this.dir;
+	}
+
+	/**
+	 * Get a buffer for records, reusing a written one if possible
+	 *
+	 * @return An empty buffer
+	 */
+	ByteBuffer newBuffer() {
+		synchronized (this.freeBuffers) {
+			if (!this.freeBuffers.isEmpty()) {
+				return this.freeBuffers.remove(this.freeBuffers.size() - 1);
+			}
+		}
+		return ByteBuffer.allocateDirect(BUFFER_RECORDS * RECORD_SIZE);
+	}
+
+	/**
+	 * Get the recording of a call, starting it if needed.
+	 * A call that has ended is not recorded anymore: its recording was closed when it ended.
+	 *
+	 * @param call The call
+	 * @return Its recording, null if the call has ended
+	 */
+	private @CheckForNull Recording recording(final WeemoCall call) {
+		Recording recording = this.recordings.get(call.getCallId());
+		if (recording != null) {
+			return recording;
+		}
+		if (call.getCallStatus() == CallStatus.ENDED) {
+			return null;
+		}
+
+		final long start = System.currentTimeMillis();
+		final int callId = call.getCallId();
+		final String displayName = call.getContactDisplayName();
+		recording = new Recording(new File(this.dir, start + "-" + callId + EXTENSION));
+		this.recordings.put(callId, recording);
+
+		final Recording opened = recording;
+		this.worker.post(new Runnable() {
+			@Override public void run() {
+				open(opened, start, callId, displayName);
+			}
+		});
+		return recording;
+	}
+
+	/**
+	 * Creates the file of a recording and writes its header, deleting the oldest recordings (background thread only)
+	 *
+	 * @param recording The recording
+	 * @param start The start of the call (from System.currentTimeMillis())
+	 * @param callId The call ID
+	 * @param displayName The display name of the contact
+	 */
+	void open(final Recording recording, final long start, final int callId, final String displayName) {
+		if (!this.dir.isDirectory() && !this.dir.mkdirs()) {
+			Log.w(LOGTAG, "Could not create " + this.dir);
+			return ;
+		}
+
+		final File[] files = this.dir.listFiles();
+		if (files != null && files.length >= MAX_FILES) {
+			// File names start with the date, so they sort by age
+			Arrays.sort(files);
+			for (int i = 0; i <= files.length - MAX_FILES; ++i) {
+				files[i].delete();
+			}
+		}
+
+		try {
+			final FileOutputStream output = new FileOutputStream(recording.file);
+			final DataOutputStream header = new DataOutputStream(new BufferedOutputStream(output));
+			header.writeInt(MAGIC);
+			header.writeShort(VERSION);
+			header.writeLong(start);
+			header.writeInt(callId);
+			header.writeUTF(displayName);
+			header.writeByte(Metric.ALL.length);
+			for (final Metric metric : Metric.ALL) {
+				header.writeUTF(metric.name());
+				header.writeByte(SCALES[metric.ordinal()]);
+			}
+			header.flush();
+			recording.channel = output.getChannel();
+		}
+		catch (IOException e) {
+			Log.w(LOGTAG, "Could not create " + recording.file, e);
+		}
+	}
+
+	/**
+	 * Hands the buffer of a recording to the background thread, which writes it
+	 *
+	 * @param recording The recording
+	 * @param close Whether to close the file afterwards
+	 */
+	void flush(final Recording recording, final boolean close) {
+		final ByteBuffer full = recording.buffer;
+		recording.buffer = newBuffer();
+		full.flip();
+		this.worker.post(new Runnable() {
+			@Override public void run() {
+				final FileChannel channel = recording.channel;
+				if (channel != null) {
+					try {
+						while (full.hasRemaining()) {
+							channel.write(full);
+						}
+						if (close) {
+							channel.close();
+							recording.channel = null;
+						}
+					}
+					catch (IOException e) {
+						Log.w(LOGTAG, "Could not write " + recording.file, e);
+					}
+				}
+				full.clear();
+				synchronized (CallQualityRecorder.this.freeBuffers) {
+					CallQualityRecorder.this.freeBuffers.add(full);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Records an event
+	 *
+	 * @param call The call
+	 * @param event The event code
+	 */
+	private void recordEvent(final WeemoCall call, final short event) {
+		final Recording recording = recording(call);
+		if (recording == null) {
+			return ;
+		}
+		recording.begin(RECORD_EVENT);
+		recording.buffer.putShort(event);
+		for (int i = 1; i < Metric.ALL.length; ++i) {
+			recording.buffer.putShort((short) 0);
+		}
+	}
+
+	@Override
+	public void onSamplerStarted(final CallStatsSampler sampler) {
+		sampler.addSampleListener(this);
+	}
+
+	@Override
+	public void onSamplerStopped(final CallStatsSampler sampler) {
+		sampler.removeSampleListener(this);
+	}
+
+	@Override
+	public void onSample(final CallStatsSampler sampler) {
+		final WeemoCall call = sampler.getCall();
+		final Recording recording = recording(call);
+		if (recording == null || call.getCallStatus() == CallStatus.ENDED) {
+			// The recording is closed
+			return ;
+		}
+
+		final VideoProfile profile = VideoProfileController.getRequestedProfile(call.getCallId());
+		if (profile != recording.profile) {
+			recording.profile = profile;
+			recordEvent(call, profile == VideoProfile.HD ? EVENT_PROFILE_HD : EVENT_PROFILE_SD);
+		}
+
+		recording.begin(RECORD_SAMPLE);
+		final StatsRing ring = sampler.getRing();
+		for (int i = 0; i < Metric.ALL.length; ++i) {
+			final int value = (int) Math.min(Math.max(Math.round(ring.latest(Metric.ALL[i]) * SCALES[i]), 0), Short.MAX_VALUE);
+			recording.buffer.putShort((short) (value - recording.previous[i]));
+			recording.previous[i] = value;
+		}
+	}
+
+	/**
+	 * This listener method catches CallCreatedEvent
+	 * 1. It is annotated with @WeemoEventListener
+	 * 2. It takes one argument which type is CallCreatedEvent
+	 * 3. It's object has been registered with HelperEventBus.instance().register(this) in its constructor
+	 *
+	 * @param event The event
+	 */
+	@WeemoEventListener
+	public void onCallCreated(final CallCreatedEvent event) {
+		recordEvent(event.getCall(), EVENT_CREATED);
+	}
+
+	/**
+	 * This listener method catches CallStatusChangedEvent
+	 * 1. It is annotated with @WeemoEventListener
+	 * 2. It takes one argument which type is CallStatusChangedEvent
+	 * 3. It's object has been registered with HelperEventBus.instance().register(this) in its constructor
+	 *
+	 * @param event The event
+	 */
+	@WeemoEventListener
+	public void onCallStatusChanged(final CallStatusChangedEvent event) {
+		final WeemoCall call = event.getCall();
+		switch (event.getCallStatus()) {
+		case PROCEEDING:
+			recordEvent(call, EVENT_PROCEEDING);
+			break ;
+		case RINGING:
+			recordEvent(call, EVENT_RINGING);
+			break ;
+		case ACTIVE:
+			recordEvent(call, EVENT_ACTIVE);
+			break ;
+		case PAUSED:
+			recordEvent(call, EVENT_PAUSED);
+			break ;
+		case ENDED:
+			final Recording recording = this.recordings.get(call.getCallId());
+			if (recording == null) {
+				break ;
+			}
+			recordEvent(call, EVENT_ENDED);
+			flush(recording, true);
+			this.recordings.remove(call.getCallId());
+			break ;
+		default:
+			break ;
+		}
+	}
+
+	/**
+	 * This listener method catches ReceivingVideoChangedEvent
+	 * 1. It is annotated with @WeemoEventListener
+	 * 2. It takes one argument which type is ReceivingVideoChangedEvent
+	 * 3. It's object has been registered with HelperEventBus.instance().register(this) in its constructor
+	 *
+	 * @param event The event
+	 */
+	@WeemoEventListener
+	public void onReceivingVideoChanged(final ReceivingVideoChangedEvent event) {
+		recordEvent(event.getCall(), event.isReceivingVideo() ? EVENT_VIDEO_IN_STARTED : EVENT_VIDEO_IN_STOPPED);
+	}
+}
@@ -0,0 +1,325 @@
+package com.weemo.sdk.helper.stats;
+
+import java.util.Locale;
+
+import javax.annotation.CheckForNull;
+
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.weemo.sdk.WeemoCall.CallStatus;
+import com.weemo.sdk.event.WeemoEventListener;
+import com.weemo.sdk.event.call.CallCreatedEvent;
+import com.weemo.sdk.event.call.CallStatusChangedEvent;
+import com.weemo.sdk.event.global.CanCreateCallChangedEvent;
+import com.weemo.sdk.helper.event.HelperEventBus;
+
+/**
+ * Measures the phases of the setup of each call, and keeps a {@link LogHistogram} of each {@link Phase}.
+ *
+ * Outgoing calls are timed from the WeemoEngine.createCall() made by com.weemo.sdk.helper.call.CallContacts
+ * (see {@link #createCalled()}), through CallCreatedEvent and PROCEEDING, to ACTIVE or ENDED.
+ * The createCall() is given to the next created call if it is not RINGING and is created within {@link #PENDING_TIMEOUT},
+ * and it is forgotten if the engine reports that calls cannot be created.
+ * Incoming calls are timed from RINGING, through the WeemoCall.resume() of the user (see {@link #resumed(int)}), to ACTIVE or ENDED.
+ * Times are taken from the monotonic clock (System.nanoTime()) and recorded in milliseconds.
+ *
+ * The histograms are reported and dumped with the {@link CallHistograms}.
+ *
+ * This object must be used from the UI thread, its histograms may be read from any thread.
+ */
+public final class CallSetupTracker {
+
+	/** Log tag for Log.* */
+	private static final String LOGTAG = "CallSetupTracker";
+
+	/** Nanoseconds in a millisecond */
+	private static final long NANOS_PER_MILLI = 1000000;
+
+	/** Time, in nanoseconds, after which a createCall() that did not get its call is forgotten (as in com.weemo.sdk.helper.call.CallContacts) */
+	private static final long PENDING_TIMEOUT = 10000 * NANOS_PER_MILLI;
+
+	/**
+	 * A phase of the setup of a call
+	 */
+	public enum Phase {
+		/** Outgoing: from createCall() to CallCreatedEvent */
+		DIAL("setup_dial_ms"),
+
+		/** Outgoing: from CallCreatedEvent to PROCEEDING */
+		PROCEED("setup_proceed_ms"),
+
+		/** Outgoing: from PROCEEDING to ACTIVE, mostly the time the contact takes to answer */
+		ANSWER("setup_answer_ms"),
+
+		/** Outgoing: from createCall() to ACTIVE, the time to connect */
+		CONNECT("setup_connect_ms"),
+
+		/** Outgoing: from createCall() to ENDED, for calls that never were active */
+		FAIL("setup_fail_ms"),
+
+		/** Incoming: from RINGING to resume(), the time the user takes to answer */
+		RING("setup_ring_ms"),
+
+		/** Incoming: from resume() to ACTIVE, the time to connect */
+		ACCEPT("setup_accept_ms"),
+
+		/** Incoming: from RINGING to ENDED, for calls that never were active */
+		MISS("setup_miss_ms");
+
+		/** Name of the histogram of the phase */
+		public final String histogramName;
+
+		/**
+		 * Constructor
+		 *
+		 * @param histogramName Name of the histogram of the phase
+		 */
+		private Phase(final String histogramName) {
+			this.histogramName = histogramName;
+		}
+	}
+
+	/** All phases, by ordinal (values() copies its array) */
+	static final Phase[] PHASES = Phase.values();
+
+	/**
+	 * The setup milestones of a call, from System.nanoTime(), 0 if not reached
+	 */
+	private static final class Timeline {
+		/** createCall() was called */
+		long createCall; // = 0;
+
+		/** CallCreatedEvent was received */
+		long created; // = 0;
+
+		/** The call was PROCEEDING */
+		long proceeding; // = 0;
+
+		/** The call was RINGING */
+		long ringing; // = 0;
+
+		/** The user answered with resume() */
+		long resumed; // = 0;
+	}
+
+	/** The tracker used by the application, created on first use */
+	private static @CheckForNull CallSetupTracker instance; // = null;
+
+	/** When createCall() was last called, until its call is created, 0 if no call is being created */
+	private long pendingCreateCall; // = 0;
+
+	/** Call ID => the milestones of the call, until it is active or ended */
+	private final SparseArray<Timeline> timelines = new SparseArray<Timeline>();
+
+	/** The histogram of each phase, by ordinal (guarded by this) */
+	private final LogHistogram[] histograms = new LogHistogram[PHASES.length];
+
+	/** Whether the histograms changed since {@link #takeChanged()} was last called (guarded by this) */
+	private boolean dirty; // = false;
+
+	/**
+	 * Constructor.
+	 * Registers itself as event listener.
+	 */
+	private CallSetupTracker() {
+		for (int i = 0; i < this.histograms.length; ++i) {
+			this.histograms[i] = new LogHistogram();
+		}
+		HelperEventBus.instance().register(this);
+	}
+
+	/**
+	 * Get the tracker used by the application
+	 *
+	 * @return The application tracker
+	 */
+	public static CallSetupTracker instance() {
+		if (instance == null) {
+			instance = new CallSetupTracker();
+		}
+		return instance;
+	}
+
+	/**
+	 * Tells that WeemoEngine.createCall() is about to be called
+	 */
+	public void createCalled() {
+		this.pendingCreateCall = System.nanoTime();
+	}
+
+	/**
+	 * Tells that the user answered an incoming call with WeemoCall.resume()
+	 *
+	 * @param callId The ID of the call
+	 */
+	public void resumed(final int callId) {
+		timeline(callId).resumed = System.nanoTime();
+	}
+
+	/**
+	 * Get the milestones of a call, creating them if needed
+	 *
+	 * @param callId The ID of the call
+	 * @return The milestones of the call
+	 */
+	private Timeline timeline(final int callId) {
+		Timeline timeline = this.timelines.get(callId);
+		if (timeline == null) {
+			timeline = new Timeline();
+			this.timelines.put(callId, timeline);
+		}
+		return timeline;
+	}
+
+	/**
+	 * Records the duration of a phase, if both its milestones were reached
+	 *
+	 * @param phase The phase
+	 * @param from The start of the phase (0 if it was not reached)
+	 * @param to The end of the phase (0 if it was not reached)
+	 * @param log Where the phase is appended for the log of the call
+	 */
+	private synchronized void record(final Phase phase, final long from, final long to, final StringBuilder log) {
+		if (from == 0 || to == 0) {
+			return ;
+		}
+		final long duration = (to - from) / NANOS_PER_MILLI;
+		this.histograms[phase.ordinal()].record(duration);
+		this.dirty = true;
+		log.append(' ').append(phase.name().toLowerCase(Locale.US)).append(' ').append(duration).append("ms");
+	}
+
+	/**
+	 * This listener method catches CallCreatedEvent
+	 * 1. It is annotated with @WeemoEventListener
+	 * 2. It takes one argument which type is CallCreatedEvent
+	 * 3. It's object has been registered with HelperEventBus.instance().register(this) in its constructor
+	 *
+	 * @param event The event
+	 */
+	@WeemoEventListener
+	public void onCallCreated(final CallCreatedEvent event) {
+		final long now = System.nanoTime();
+		final Timeline timeline = timeline(event.getCall().getCallId());
+		timeline.created = now;
+		// Like com.weemo.sdk.helper.call.CallContacts, the pending createCall() is given to the next created call,
+		// unless it is an incoming call (RINGING), or the createCall() is too old to have made this call
+		if (this.pendingCreateCall == 0 || event.getCall().getCallStatus() == CallStatus.RINGING) {
+			return ;
+		}
+		if (now - this.pendingCreateCall <= PENDING_TIMEOUT) {
+			timeline.createCall = this.pendingCreateCall;
+		}
+		this.pendingCreateCall = 0;
+	}
+
+	/**
+	 * This listener method catches CallStatusChangedEvent
+	 * 1. It is annotated with @WeemoEventListener
+	 * 2. It takes one argument which type is CallStatusChangedEvent
+	 * 3. It's object has been registered with HelperEventBus.instance().register(this) in its constructor
+	 *
+	 * @param event The event
+	 */
+	@WeemoEventListener
+	public void onCallStatusChanged(final CallStatusChangedEvent event) {
+		final long now = System.nanoTime();
+		final int callId = event.getCall().getCallId();
+		switch (event.getCallStatus()) {
+		case PROCEEDING:
+			timeline(callId).proceeding = now;
+			break ;
+		case RINGING:
+			final Timeline ringing = timeline(callId);
+			ringing.ringing = now;
+			// The call is incoming after all: it was not made by the pending createCall()
+			ringing.createCall = 0;
+			break ;
+		case ACTIVE:
+		case ENDED:
+			final Timeline timeline = this.timelines.get(callId);
+			if (timeline == null) {
+				// Already active, or not seen from its start
+				break ;
+			}
+			this.timelines.remove(callId);
+			final boolean active = event.getCallStatus() == CallStatus.ACTIVE;
+			final StringBuilder log = new StringBuilder();
+			log.append("Call ").append(callId).append(active ? " active:" : " ended before being active:");
+			if (timeline.createCall != 0 || timeline.proceeding != 0) {
+				record(Phase.DIAL, timeline.createCall, timeline.created, log);
+				record(Phase.PROCEED, timeline.created, timeline.proceeding, log);
+				if (active) {
+					record(Phase.ANSWER, timeline.proceeding, now, log);
+					record(Phase.CONNECT, timeline.createCall, now, log);
+				}
+				else {
+					record(Phase.FAIL, timeline.createCall, now, log);
+				}
+			}
+			else {
+				record(Phase.RING, timeline.ringing, timeline.resumed, log);
+				if (active) {
+					record(Phase.ACCEPT, timeline.resumed, now, log);
+				}
+				else {
+					record(Phase.MISS, timeline.ringing, now, log);
+				}
+			}
+			Log.i(LOGTAG, log.toString());
+			break ;
+		default:
+			break ;
+		}
+	}
+
+	/**
+	 * This listener method catches CanCreateCallChangedEvent
+	 * 1. It is annotated with @WeemoEventListener
+	 * 2. It takes one argument which type is CanCreateCallChangedEvent
+	 * 3. It's object has been registered with HelperEventBus.instance().register(this) in its constructor
+	 *
+	 * @param event The event
+	 */
+	@WeemoEventListener
+	public void onCanCreateCallChanged(final CanCreateCallChangedEvent event) {
+		if (event.getError() != null) {
+			// The call being created will never be
+			this.pendingCreateCall = 0;
+		}
+	}
+
+	/**
+	 * Get a copy of the histogram of a phase
+	 *
+	 * @param phase The phase
+	 * @return A copy of its histogram
+	 */
+	public synchronized LogHistogram getHistogram(final Phase phase) {
+		final LogHistogram copy = new LogHistogram();
+		copy.merge(this.histograms[phase.ordinal()]);
+		return copy;
+	}
+
+	/**
+	 * Adds the histogram of each phase to an array of histograms
+	 *
+	 * @param to The histograms to add to
+	 * @param offset The index, in the array, of the histogram of the first phase
+	 */
+	synchronized void mergeTo(final LogHistogram[] to, final int offset) {
+		for (int i = 0; i < this.histograms.length; ++i) {
+			to[offset + i].merge(this.histograms[i]);
+		}
+	}
+
+	/**
+	 * @return Whether the histograms changed since the last call
+	 */
+	synchronized boolean takeChanged() {
+		final boolean changed = this.dirty;
+		this.dirty = false;
+		return changed;
+	}
+}
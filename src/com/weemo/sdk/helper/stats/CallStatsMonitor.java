@@ -0,0 +1,200 @@
+package com.weemo.sdk.helper.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.CheckForNull;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.weemo.sdk.WeemoCall;
+import com.weemo.sdk.event.WeemoEventListener;
+import com.weemo.sdk.event.call.CallStatusChangedEvent;
+import com.weemo.sdk.helper.R;
+import com.weemo.sdk.helper.event.HelperEventBus;
+import com.weemo.sdk.helper.history.CallHistory;
+
+/**
+ * Samples the stats of every active call.
+ *
+ * A {@link CallStatsSampler} is started when a call becomes ACTIVE and stopped when it ends,
+ * at which point the averages of the call are recorded in the {@link CallHistory}.
+ * Calls whose stats the {@link StatsSource} cannot give are not sampled at all.
+ * The sampling interval and ring size are R.integer.stats_sample_period and R.integer.stats_ring_size.
+ *
+ * This object must be used from the UI thread.
+ */
+public final class CallStatsMonitor {
+
+	/** Log tag for Log.* */
+	private static final String LOGTAG = "CallStatsMonitor";
+
+	/**
+	 * Interface that objects using the stats of calls may implement to know when their samplers start and stop
+	 */
+	public static interface SamplerListener {
+		/**
+		 * Used to tell that a call is being sampled (called on the UI thread)
+		 *
+		 * @param sampler The sampler of the call
+		 */
+		public void onSamplerStarted(CallStatsSampler sampler);
+
+		/**
+		 * Used to tell that a call has ended and is not sampled anymore (called on the UI thread)
+		 *
+		 * @param sampler The sampler of the call
+		 */
+		public void onSamplerStopped(CallStatsSampler sampler);
+	}
+
+	/** The monitor used by the application, created on first use */
+	private static @CheckForNull CallStatsMonitor instance; // = null;
+
+	/** The application context */
+	private final Context context;
+
+	/** Time, in milliseconds, between two samples */
+	private final long interval;
+
+	/** Number of samples kept by each sampler */
+	private final int capacity;
+
+	/** Where the stats are read */
+	private StatsSource source = new ReflectiveStatsSource();
+
+	/** Call ID => the sampler of the call */
+	private final SparseArray<CallStatsSampler> samplers = new SparseArray<CallStatsSampler>();
+
+	/** Whether the stats were found unavailable, which is logged once */
+	private boolean unavailableLogged; // = false;
+
+	/** Objects to notify when samplers start and stop */
+	private final List<SamplerListener> listeners = new ArrayList<SamplerListener>();
+
+	/**
+	 * Constructor.
+	 * Registers itself as event listener.
+	 *
+	 * @param context The application context
+	 */
+	private CallStatsMonitor(final Context context) {
+		this.context = context;
+		this.interval = context.getResources().getInteger(R.integer.stats_sample_period);
+		this.capacity = context.getResources().getInteger(R.integer.stats_ring_size);
+		HelperEventBus.instance().register(this);
+	}
+
+	/**
+	 * Get the monitor used by the application
+	 *
+	 * @param context Any context of the application
+	 * @return The application monitor
+	 */
+	public static CallStatsMonitor instance(final Context context) {
+		if (instance == null) {
+			instance = new CallStatsMonitor(context.getApplicationContext());
+		}
+		return instance;
+	}
+
+	/**
+	 * Sets where the stats are read, for the calls that become active afterwards
+	 *
+	 * @param source The stats source
+	 */
+	public void setSource(final StatsSource source) {
+		this.source = source;
+	}
+
+	/**
+	 * Get the sampler of a call
+	 *
+	 * @param callId The ID of the call
+	 * @return The sampler of the call, null if it is not active
+	 */
+	public @CheckForNull CallStatsSampler getSampler(final int callId) {
+		return this.samplers.get(callId);
+	}
+
+	/**
+	 * Tells whether the stats of a call can be sampled
+	 *
+	 * @param call The call
+	 * @return Whether the stats source can give the stats of the call
+	 */
+	public boolean isAvailable(final WeemoCall call) {
+		return this.source.isAvailable(call);
+	}
+
+	/**
+	 * Adds an object to notify when samplers start and stop
+	 *
+	 * @param listener The listener to add
+	 */
+	public void addSamplerListener(final SamplerListener listener) {
+		this.listeners.add(listener);
+	}
+
+	/**
+	 * Removes an object added with {@link #addSamplerListener(SamplerListener)}
+	 *
+	 * @param listener The listener to remove
+	 */
+	public void removeSamplerListener(final SamplerListener listener) {
+		this.listeners.remove(listener);
+	}
+
+	/**
+	 * This listener method catches CallStatusChangedEvent
+	 * 1. It is annotated with @WeemoEventListener
+	 * 2. It takes one argument which type is CallStatusChangedEvent
+	 * 3. It's object has been registered with HelperEventBus.instance().register(this) in its constructor
+	 *
+	 * @param event The event
+	 */
+	@WeemoEventListener
+	public void onCallStatusChanged(final CallStatusChangedEvent event) {
+		final WeemoCall call = event.getCall();
+		final int callId = call.getCallId();
+		switch (event.getCallStatus()) {
+		case ACTIVE:
+			if (!this.source.isAvailable(call)) {
+				if (!this.unavailableLogged) {
+					Log.i(LOGTAG, "Call stats are unavailable, calls are not sampled");
+					this.unavailableLogged = true;
+				}
+				break ;
+			}
+			if (this.samplers.get(callId) == null) {
+				final CallStatsSampler sampler = new CallStatsSampler(call, this.source, this.interval, this.capacity);
+				this.samplers.put(callId, sampler);
+				sampler.start();
+				for (final SamplerListener listener : this.listeners.toArray(new SamplerListener[this.listeners.size()])) {
+					listener.onSamplerStarted(sampler);
+				}
+			}
+			break ;
+		case ENDED:
+			final CallStatsSampler stopped = this.samplers.get(callId);
+			if (stopped != null) {
+				stopped.stop();
+				this.samplers.remove(callId);
+				for (final SamplerListener listener : this.listeners.toArray(new SamplerListener[this.listeners.size()])) {
+					listener.onSamplerStopped(stopped);
+				}
+				if (stopped.getSampleCount() > 0) {
+					CallHistory.instance(this.context).recordStats(callId, stopped.getAverages());
+				}
+				else {
+					Log.d(LOGTAG, "No stats were sampled during call " + callId);
+				}
+			}
+			break ;
+		default:
+			break ;
+		}
+	}
+}
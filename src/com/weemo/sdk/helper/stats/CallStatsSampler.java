@@ -0,0 +1,216 @@
+package com.weemo.sdk.helper.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.weemo.sdk.WeemoCall;
+import com.weemo.sdk.WeemoStats;
+
+/**
+ * Samples the stats of a call at a fixed interval into a {@link StatsRing}.
+ *
+ * Sampling reuses one {@link WeemoStats} snapshot and the primitive arrays of the ring,
+ * so it does not allocate once started.
+ * Besides the ring, which only keeps the latest samples, the average of each metric over the whole call is kept.
+ *
+ * This object must be used from the UI thread.
+ */
+public class CallStatsSampler {
+
+	/**
+	 * Interface that objects using the stats may implement to know when a sample is taken
+	 */
+	public static interface SampleListener {
+		/**
+		 * Used to tell that a sample was added to the ring (called on the UI thread)
+		 *
+		 * @param sampler The sampler, which ring ends with the new sample
+		 */
+		public void onSample(CallStatsSampler sampler);
+	}
+
+	/** The sampled call */
+	private final WeemoCall call;
+
+	/** Where the stats are read */
+	private final StatsSource source;
+
+	/** Time, in milliseconds, between two samples */
+	private final long interval;
+
+	/** The latest samples */
+	private final StatsRing ring;
+
+	/** The snapshot filled at each sample */
+	private final WeemoStats stats = new WeemoStats();
+
+	/** Sum of the values of each metric over the whole call, by metric ordinal */
+	private final double[] sums = new double[Metric.ALL.length];
+
+	/** Number of samples taken during the call */
+	private int samples; // = 0;
+
+	/** Objects to notify of each sample */
+	private final List<SampleListener> listeners = new ArrayList<SampleListener>();
+
+	/** UI thread handler, on which samples are taken */
+	private final Handler handler = new Handler(Looper.getMainLooper());
+
+	/** Date of the next sample (from SystemClock.uptimeMillis()), 0 if sampling is stopped */
+	private long nextSample; // = 0;
+
+	/** Takes a sample and schedules the next one */
+	private final Runnable sampleTask = new Runnable() {
+		@Override public void run() {
+			sample();
+		}
+	};
+
+	/**
+	 * Constructor
+	 *
+	 * @param call The call to sample
+	 * @param source Where the stats are read
+	 * @param interval Time, in milliseconds, between two samples
+	 * @param capacity The number of samples kept in the ring
+	 */
+	public CallStatsSampler(final WeemoCall call, final StatsSource source, final long interval, final int capacity) {
+		this.call = call;
+		this.source = source;
+		this.interval = interval;
+		this.ring = new StatsRing(capacity);
+	}
+
+	/**
+	 * Starts sampling, the first sample being taken immediately
+	 */
+	public void start() {
+		if (this.nextSample != 0) {
+			return ;
+		}
+		this.nextSample = SystemClock.uptimeMillis();
+		this.handler.post(this.sampleTask);
+	}
+
+	/**
+	 * Stops sampling
+	 */
+	public void stop() {
+		this.nextSample = 0;
+		this.handler.removeCallbacks(this.sampleTask);
+	}
+
+	/**
+	 * Takes a sample, notifies the listeners, and schedules the next sample
+	 */
+	void sample() {
+		if (this.source.read(this.call, this.stats)) {
+			this.ring.add(SystemClock.uptimeMillis(), this.stats);
+			for (int i = 0; i < Metric.ALL.length; ++i) {
+				this.sums[i] += Metric.ALL[i].get(this.stats);
+			}
+			++this.samples;
+
+			// Iterates backward, so that a listener may remove itself without allocating a copy of the list
+			for (int i = this.listeners.size() - 1; i >= 0; --i) {
+				this.listeners.get(i).onSample(this);
+			}
+		}
+
+		if (this.nextSample != 0) {
+			// Fixed rate: a late sample does not delay the next ones
+			this.nextSample = Math.max(this.nextSample + this.interval, SystemClock.uptimeMillis());
+			this.handler.postAtTime(this.sampleTask, this.nextSample);
+		}
+	}
+
+	/**
+	 * Adds an object to notify of each sample
+	 *
+	 * @param listener The listener to add
+	 */
+	public void addSampleListener(final SampleListener listener) {
+		this.listeners.add(listener);
+	}
+
+	/**
+	 * Removes an object added with {@link #addSampleListener(SampleListener)}
+	 *
+	 * @param listener The listener to remove
+	 */
+	public void removeSampleListener(final SampleListener listener) {
+		this.listeners.remove(listener);
+	}
+
+	/**
+	 * Get the sampled call
+	 *
+	 * @return The call
+	 */
+	public WeemoCall getCall() {
+		return this.call;
+	}
+
+	/**
+	 * Get the time between two samples
+	 *
+	 * @return The sampling interval, in milliseconds
+	 */
+	public long getInterval() {
+		return this.interval;
+	}
+
+	/**
+	 * Get the latest samples
+	 *
+	 * @return The ring of samples, owned by this sampler
+	 */
+	public StatsRing getRing() {
+		return this.ring;
+	}
+
+	/**
+	 * Get the latest snapshot
+	 *
+	 * @return The stats of the latest sample, owned by this sampler and overwritten at each sample
+	 */
+	public WeemoStats getStats() {
+		return this.stats;
+	}
+
+	/**
+	 * Get the number of samples taken
+	 *
+	 * @return The number of samples taken since the sampler was started
+	 */
+	public int getSampleCount() {
+		return this.samples;
+	}
+
+	/**
+	 * Get the average of a metric over the whole call
+	 *
+	 * @param metric The metric
+	 * @return The average of all the samples taken, NaN if there is none
+	 */
+	public float getAverage(final Metric metric) {
+		return this.samples == 0 ? Float.NaN : (float) (this.sums[metric.ordinal()] / this.samples);
+	}
+
+	/**
+	 * Get the average of every metric over the whole call
+	 *
+	 * @return The averages, by metric ordinal
+	 */
+	public float[] getAverages() {
+		final float[] averages = new float[Metric.ALL.length];
+		for (int i = 0; i < averages.length; ++i) {
+			averages[i] = getAverage(Metric.ALL[i]);
+		}
+		return averages;
+	}
+}
@@ -0,0 +1,213 @@
+package com.weemo.sdk.helper.stats;
+
+import javax.annotation.CheckForNull;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.weemo.sdk.WeemoCall;
+import com.weemo.sdk.WeemoCall.VideoProfile;
+import com.weemo.sdk.helper.R;
+import com.weemo.sdk.helper.event.HelperEventBus;
+
+/**
+ * Sheds video work when the device CPU is saturated, so that the audio of the call does not break up.
+ *
+ * At each sample, the local CPU and the real sent frame rate are averaged over the last {@link #WINDOW} samples.
+ * The device is overloaded when the CPU reaches {@link #CPU_HIGH}, or {@link #CPU_BUSY} while the encoder
+ * cannot keep up {@link #MIN_SENT_RATE}. The call then steps down one {@link Level} at a time,
+ * every {@link #STEP_DOWN_DWELL} at most: first the incoming video is requested in SD (less to decode),
+ * then the outgoing video is stopped (nothing to encode).
+ * When the CPU has been under {@link #CPU_LOW} for {@link #STEP_UP_DWELL}, it steps back up one level at a time,
+ * restarting the outgoing video, then restoring the incoming profile the {@link VideoProfileController} had requested.
+ * Stepping down is quick and stepping up is slow: audio continuity matters more than video.
+ *
+ * A {@link CpuLevelChangedEvent} is fired at each step, so that the call controls display the real video state.
+ * If the user restarts their video while it is stopped by the governor, the call goes back to {@link Level#SD}.
+ * While the call is governed, the {@link VideoProfileController} does not restore HD.
+ *
+ * It is enabled by R.bool.cpu_governor.
+ *
+ * This object must be used from the UI thread.
+ */
+public final class CpuGovernor implements CallStatsMonitor.SamplerListener, CallStatsSampler.SampleListener {
+
+	/** Log tag for Log.* */
+	private static final String LOGTAG = "CpuGovernor";
+
+	/** Number of samples over which the stats are averaged */
+	public static final int WINDOW = 3;
+
+	/** Local CPU, in percent, from which the device is overloaded */
+	public static final float CPU_HIGH = 85;
+
+	/** Local CPU, in percent, from which the device is overloaded if the sent frame rate is under {@link #MIN_SENT_RATE} */
+	public static final float CPU_BUSY = 70;
+
+	/** Local CPU, in percent, under which the call may step up */
+	public static final float CPU_LOW = 55;
+
+	/** Real sent frame rate under which the encoder is considered starved of CPU */
+	public static final float MIN_SENT_RATE = 8;
+
+	/** Minimum time, in milliseconds, between two steps down */
+	public static final long STEP_DOWN_DWELL = 3000;
+
+	/** Minimum time, in milliseconds, without overload before stepping up */
+	public static final long STEP_UP_DWELL = 15000;
+
+	/**
+	 * How much video work is shed
+	 */
+	public enum Level {
+		/** Nothing is shed */
+		NORMAL,
+
+		/** The incoming video is requested in SD */
+		SD,
+
+		/** The incoming video is requested in SD and the outgoing video is stopped */
+		NO_VIDEO_OUT
+	}
+
+	/**
+	 * The governing state of a call
+	 */
+	private static final class State {
+		/** The current level */
+		Level level = Level.NORMAL;
+
+		/** The incoming profile the {@link VideoProfileController} requested before the call was stepped down (HD if it requested none) */
+		VideoProfile profile = VideoProfile.HD;
+
+		/** When the call last changed level (from SystemClock.uptimeMillis()) */
+		long stepped = SystemClock.uptimeMillis();
+
+		/** When the device was last overloaded (from SystemClock.uptimeMillis()) */
+		long overloaded = SystemClock.uptimeMillis();
+	}
+
+	/** The governor used by the application, created on first use */
+	private static @CheckForNull CpuGovernor instance; // = null;
+
+	/** Call ID => the governing state of the call */
+	private final SparseArray<State> states = new SparseArray<State>();
+
+	/**
+	 * Constructor
+	 */
+	private CpuGovernor() {}
+
+	/**
+	 * Starts governing the calls that become active, if enabled
+	 *
+	 * @param context Any context of the application
+	 */
+	public static void install(final Context context) {
+		if (instance != null || !context.getResources().getBoolean(R.bool.cpu_governor)) {
+			return ;
+		}
+		instance = new CpuGovernor();
+		CallStatsMonitor.instance(context).addSamplerListener(instance);
+	}
+
+	/**
+	 * Get the level of a call
+	 *
+	 * @param callId The ID of the call
+	 * @return The level of the call, {@link Level#NORMAL} if it is not governed
+	 */
+	public static Level getLevel(final int callId) {
+		final State state = instance == null ? null : instance.states.get(callId);
+		return state == null ? Level.NORMAL : state.level;
+	}
+
+	@Override
+	public void onSamplerStarted(final CallStatsSampler sampler) {
+		this.states.put(sampler.getCall().getCallId(), new State());
+		sampler.addSampleListener(this);
+	}
+
+	@Override
+	public void onSamplerStopped(final CallStatsSampler sampler) {
+		sampler.removeSampleListener(this);
+		this.states.remove(sampler.getCall().getCallId());
+	}
+
+	@Override
+	public void onSample(final CallStatsSampler sampler) {
+		final WeemoCall call = sampler.getCall();
+		final State state = this.states.get(call.getCallId());
+		final StatsRing ring = sampler.getRing();
+		if (state == null || ring.size() < WINDOW) {
+			return ;
+		}
+
+		final long now = SystemClock.uptimeMillis();
+
+		if (state.level == Level.NO_VIDEO_OUT && call.isSendingVideo()) {
+			// The user restarted their video: it is not ours to restart anymore
+			step(call, state, Level.SD, now);
+			return ;
+		}
+
+		final float cpu = ring.average(Metric.LOCAL_CPU, WINDOW);
+		final float sentRate = ring.average(Metric.VIDEO_SENT_RATE, WINDOW);
+		final boolean overloaded = cpu >= CPU_HIGH || (cpu >= CPU_BUSY && call.isSendingVideo() && sentRate < MIN_SENT_RATE);
+		if (overloaded || cpu > CPU_LOW) {
+			state.overloaded = now;
+		}
+
+		if (overloaded && now - state.stepped >= STEP_DOWN_DWELL) {
+			switch (state.level) {
+			case NORMAL:
+				state.profile = VideoProfileController.getRequestedProfile(call.getCallId());
+				call.setInVideoProfile(VideoProfile.SD);
+				step(call, state, Level.SD, now);
+				Log.i(LOGTAG, "Call " + call.getCallId() + " incoming video requested in SD (cpu " + cpu + "%, sent " + sentRate + "fps)");
+				break ;
+			case SD:
+				if (call.isSendingVideo()) {
+					call.videoStop();
+					step(call, state, Level.NO_VIDEO_OUT, now);
+					Log.i(LOGTAG, "Call " + call.getCallId() + " outgoing video stopped (cpu " + cpu + "%, sent " + sentRate + "fps)");
+				}
+				break ;
+			default:
+				break ;
+			}
+		}
+		else if (now - state.overloaded >= STEP_UP_DWELL && now - state.stepped >= STEP_UP_DWELL) {
+			switch (state.level) {
+			case NO_VIDEO_OUT:
+				call.videoStart();
+				step(call, state, Level.SD, now);
+				Log.i(LOGTAG, "Call " + call.getCallId() + " outgoing video restarted");
+				break ;
+			case SD:
+				call.setInVideoProfile(state.profile);
+				step(call, state, Level.NORMAL, now);
+				Log.i(LOGTAG, "Call " + call.getCallId() + " incoming video restored in " + state.profile);
+				break ;
+			default:
+				break ;
+			}
+		}
+	}
+
+	/**
+	 * Changes the level of a call and tells it
+	 *
+	 * @param call The call
+	 * @param state The governing state of the call
+	 * @param level The new level
+	 * @param now The current date (from SystemClock.uptimeMillis())
+	 */
+	private static void step(final WeemoCall call, final State state, final Level level, final long now) {
+		state.level = level;
+		state.stepped = now;
+		HelperEventBus.instance().fire(new CpuLevelChangedEvent(call, level));
+	}
+}
@@ -0,0 +1,39 @@
+package com.weemo.sdk.helper.stats;
+
+import com.weemo.sdk.WeemoCall;
+import com.weemo.sdk.event.call.WeemoCallEvent;
+
+/**
+ * Event fired on the Weemo event bus when the {@link CpuGovernor} steps a call up or down.
+ *
+ * When the level goes from or to {@link CpuGovernor.Level#NO_VIDEO_OUT}, the outgoing video
+ * of the call has been stopped or restarted: views displaying it should read WeemoCall.isSendingVideo() again.
+ */
+public class CpuLevelChangedEvent extends WeemoCallEvent {
+
+	/** The new level */
+	private final CpuGovernor.Level level;
+
+	/**
+	 * Constructor
+	 *
+	 * @param call The call
+	 * @param level The new level
+	 */
+	public CpuLevelChangedEvent(final WeemoCall call, final CpuGovernor.Level level) {
+		super(call);
+		this.level = level;
+	}
+
+	/**
+	 * @return How much video work is now shed for the call
+	 */
+	public CpuGovernor.Level getLevel() {
+		return this.level;
+	}
+
+	@Override
+	public String toString() {
+		return super.toString() + " level=" + this.level;
+	}
+}
@@ -0,0 +1,255 @@
+package com.weemo.sdk.helper.stats;
+
+import javax.annotation.CheckForNull;
+
+import android.content.Context;
+import android.graphics.SurfaceTexture;
+import android.util.Log;
+import android.view.TextureView;
+import android.view.TextureView.SurfaceTextureListener;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.weemo.sdk.WeemoCall;
+import com.weemo.sdk.WeemoCall.CallStatus;
+import com.weemo.sdk.event.WeemoEventListener;
+import com.weemo.sdk.event.call.CallStatusChangedEvent;
+import com.weemo.sdk.event.call.ReceivingVideoChangedEvent;
+import com.weemo.sdk.helper.R;
+import com.weemo.sdk.helper.event.HelperEventBus;
+
+/**
+ * Measures the time between giving a video frame to a call and the first frame it renders.
+ *
+ * The video frames of the SDK render in a TextureView which is its own SurfaceTextureListener.
+ * This timer replaces that listener with itself, forwarding every callback to it,
+ * until the first onSurfaceTextureUpdated(), which is when the first frame is on screen. The original listener is then put back.
+ *  - For the incoming video, the time is measured from WeemoCall.setVideoIn(), or from the moment the remote video starts
+ *    if it was not received yet (until then, there is no frame to wait for).
+ *  - For the outgoing video, the time is measured from WeemoCall.setVideoOut() to the first camera preview frame,
+ *    which is rendered when the camera starts delivering the frames that are sent. It is only measured if the call is sending video.
+ *
+ * Times are recorded in the {@link CallHistograms}. When a time exceeds the budget of its direction
+ * (R.integer.first_frame_in_budget or R.integer.first_frame_out_budget), a structured warning is logged:
+ * <pre>
+ *   budget_exceeded metric=first_frame_in_ms value=2874 budget=2000 call=3
+ * </pre>
+ *
+ * This object must be used from the UI thread.
+ */
+public final class FirstFrameTimer implements SurfaceTextureListener {
+
+	/** Log tag for Log.* */
+	private static final String LOGTAG = "FirstFrameTimer";
+
+	/** Nanoseconds in a millisecond */
+	private static final long NANOS_PER_MILLI = 1000000;
+
+	/**
+	 * The video whose first frame is timed
+	 */
+	public enum Direction {
+		/** The incoming video, from setVideoIn() */
+		IN(CallHistograms.FIRST_FRAME_IN, R.integer.first_frame_in_budget),
+
+		/** The outgoing video, from setVideoOut() */
+		OUT(CallHistograms.FIRST_FRAME_OUT, R.integer.first_frame_out_budget);
+
+		/** Index of the histogram in the {@link CallHistograms} */
+		final int histogram;
+
+		/** Resource of the budget, in milliseconds */
+		final int budgetRes;
+
+		/**
+		 * Constructor
+		 *
+		 * @param histogram Index of the histogram in the {@link CallHistograms}
+		 * @param budgetRes Resource of the budget, in milliseconds
+		 */
+		private Direction(final int histogram, final int budgetRes) {
+			this.histogram = histogram;
+			this.budgetRes = budgetRes;
+		}
+	}
+
+	/** The texture view in which the frames are rendered */
+	private final TextureView view;
+
+	/** The listener of the texture view, to which callbacks are forwarded */
+	private final @CheckForNull SurfaceTextureListener delegate;
+
+	/** The call */
+	private final WeemoCall call;
+
+	/** The timed video */
+	private final Direction direction;
+
+	/** The budget, in milliseconds */
+	private final long budget;
+
+	/** Where the time is recorded */
+	private final CallHistograms histograms;
+
+	/** When the timer started (from System.nanoTime()), 0 if it did not start yet */
+	private long start; // = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param view The texture view in which the frames are rendered
+	 * @param call The call
+	 * @param direction The timed video
+	 */
+	private FirstFrameTimer(final TextureView view, final WeemoCall call, final Direction direction) {
+		final Context context = view.getContext();
+		this.view = view;
+		this.delegate = view.getSurfaceTextureListener();
+		this.call = call;
+		this.direction = direction;
+		this.budget = context.getResources().getInteger(direction.budgetRes);
+		this.histograms = CallHistograms.instance(context);
+	}
+
+	/**
+	 * Starts timing the first frame of a video frame.
+	 * Must be called just before giving the frame to the call.
+	 *
+	 * @param frame The WeemoVideoInFrame or WeemoVideoOutPreviewFrame
+	 * @param call The call to which the frame is about to be given
+	 * @param direction The video of the frame
+	 * @return The timer, null if nothing is timed (the frame has no texture view, or the call does not send video)
+	 */
+	public static @CheckForNull FirstFrameTimer start(final ViewGroup frame, final WeemoCall call, final Direction direction) {
+		if (direction == Direction.OUT && !call.isSendingVideo()) {
+			return null;
+		}
+		final TextureView view = findTextureView(frame);
+		if (view == null) {
+			Log.w(LOGTAG, "No texture view in " + frame + ", the first frame cannot be timed");
+			return null;
+		}
+		final FirstFrameTimer timer = new FirstFrameTimer(view, call, direction);
+		view.setSurfaceTextureListener(timer);
+		if (direction == Direction.OUT || call.isReceivingVideo()) {
+			timer.start = System.nanoTime();
+		}
+		HelperEventBus.instance().register(timer, call.getCallId());
+		return timer;
+	}
+
+	/**
+	 * Finds the first texture view in a view hierarchy
+	 *
+	 * @param view The root of the hierarchy
+	 * @return The first texture view found, depth first, or null if there is none
+	 */
+	private static @CheckForNull TextureView findTextureView(final View view) {
+		if (view instanceof TextureView) {
+			return (TextureView) view;
+		}
+		if (view instanceof ViewGroup) {
+			final ViewGroup group = (ViewGroup) view;
+			for (int i = 0; i < group.getChildCount(); ++i) {
+				final TextureView found = findTextureView(group.getChildAt(i));
+				if (found != null) {
+					return found;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Stops timing: puts the original listener back and unregisters
+	 */
+	private void stop() {
+		if (this.view.getSurfaceTextureListener() == this) {
+			this.view.setSurfaceTextureListener(this.delegate);
+		}
+		HelperEventBus.instance().unregister(this);
+	}
+
+	/**
+	 * Records the time of the first frame, and warns if it exceeds the budget
+	 *
+	 * @param now When the first frame was rendered (from System.nanoTime())
+	 */
+	private void firstFrame(final long now) {
+		final long time = (now - this.start) / NANOS_PER_MILLI;
+		final String metric = CallHistograms.NAMES[this.direction.histogram];
+		this.histograms.record(this.direction.histogram, time);
+		if (time > this.budget) {
+			Log.w(LOGTAG, "budget_exceeded metric=" + metric + " value=" + time + " budget=" + this.budget + " call=" + this.call.getCallId());
+		}
+		else {
+			Log.i(LOGTAG, "metric=" + metric + " value=" + time + " call=" + this.call.getCallId());
+		}
+	}
+
+	@Override
+	public void onSurfaceTextureAvailable(final SurfaceTexture surface, final int width, final int height) {
+		if (this.delegate != null) {
+			this.delegate.onSurfaceTextureAvailable(surface, width, height);
+		}
+	}
+
+	@Override
+	public void onSurfaceTextureSizeChanged(final SurfaceTexture surface, final int width, final int height) {
+		if (this.delegate != null) {
+			this.delegate.onSurfaceTextureSizeChanged(surface, width, height);
+		}
+	}
+
+	@Override
+	public boolean onSurfaceTextureDestroyed(final SurfaceTexture surface) {
+		// The view is going away without having rendered a frame: nothing to measure anymore
+		stop();
+		return this.delegate == null || this.delegate.onSurfaceTextureDestroyed(surface);
+	}
+
+	@Override
+	public void onSurfaceTextureUpdated(final SurfaceTexture surface) {
+		if (this.start != 0) {
+			firstFrame(System.nanoTime());
+			stop();
+		}
+		if (this.delegate != null) {
+			this.delegate.onSurfaceTextureUpdated(surface);
+		}
+	}
+
+	/**
+	 * This listener catches ReceivingVideoChangedEvent
+	 * 1. It is annotated with @WeemoEventListener
+	 * 2. It takes one argument which type is ReceivingVideoChangedEvent
+	 * 3. It's object has been registered with HelperEventBus.instance().register(this, callId) in {@link #start(ViewGroup, WeemoCall, Direction)}
+	 *    so it only receives the events of the timed call
+	 *
+	 * The incoming video timer starts when the remote video starts, if it did not before.
+	 *
+	 * @param event The event
+	 */
+	@WeemoEventListener
+	public void onReceivingVideoChanged(final ReceivingVideoChangedEvent event) {
+		if (this.direction == Direction.IN && this.start == 0 && event.isReceivingVideo()) {
+			this.start = System.nanoTime();
+		}
+	}
+
+	/**
+	 * This listener catches CallStatusChangedEvent
+	 * 1. It is annotated with @WeemoEventListener
+	 * 2. It takes one argument which type is CallStatusChangedEvent
+	 * 3. It's object has been registered with HelperEventBus.instance().register(this, callId) in {@link #start(ViewGroup, WeemoCall, Direction)}
+	 *    so it only receives the events of the timed call
+	 *
+	 * @param event The event
+	 */
+	@WeemoEventListener
+	public void onCallStatusChanged(final CallStatusChangedEvent event) {
+		if (event.getCallStatus() == CallStatus.ENDED) {
+			stop();
+		}
+	}
+}
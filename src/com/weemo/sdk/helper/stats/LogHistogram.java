@@ -0,0 +1,247 @@
+package com.weemo.sdk.helper.stats;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of non negative values, in fixed log-scaled buckets, backed by a primitive array.
+ *
+ * Every power of two is split into {@link #SUB_BUCKETS} linear buckets, so a percentile is known within 25%,
+ * from 0 to 2^{@link #MAX_EXPONENT} (bigger values are counted in the last bucket).
+ * Values under {@link #SUB_BUCKETS} have their own bucket.
+ * As all histograms have the same buckets, they can be merged: the merge of the histograms of several calls
+ * is the histogram of all their values.
+ *
+ * Recording a value does not allocate. This object is not thread safe.
+ */
+public class LogHistogram {
+
+	/** Number of buckets per power of two */
+	public static final int SUB_BUCKETS = 4;
+
+	/** Values from 2 to the power of this are counted in the last bucket */
+	public static final int MAX_EXPONENT = 26;
+
+	/** Number of buckets */
+	public static final int BUCKETS = SUB_BUCKETS * (MAX_EXPONENT - 1);
+
+	/** Number of values of each bucket */
+	private final long[] counts = new long[BUCKETS];
+
+	/** Number of values */
+	private long count; // = 0;
+
+	/** Sum of the values */
+	private long sum; // = 0;
+
+	/** Smallest value, Long.MAX_VALUE if there is none */
+	private long min = Long.MAX_VALUE;
+
+	/** Biggest value, -1 if there is none */
+	private long max = -1;
+
+	/**
+	 * Get the bucket of a value
+	 *
+	 * @param value The value, not negative
+	 * @return The index of its bucket
+	 */
+	static int bucketOf(final long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent >= MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		final int sub = (int) (value >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS * (exponent - 1) + sub;
+	}
+
+	/**
+	 * Get the smallest value of a bucket
+	 *
+	 * @param bucket The index of the bucket
+	 * @return The smallest value counted in it
+	 */
+	public static long lowerBound(final int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		final int exponent = bucket / SUB_BUCKETS + 1;
+		return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - 2);
+	}
+
+	/**
+	 * Get the biggest value of a bucket
+	 *
+	 * @param bucket The index of the bucket
+	 * @return The biggest value counted in it (Long.MAX_VALUE for the last one)
+	 */
+	public static long upperBound(final int bucket) {
+		return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowerBound(bucket + 1) - 1;
+	}
+
+	/**
+	 * Records a value
+	 *
+	 * @param value The value (negative values are counted as 0)
+	 */
+	public void record(final long value) {
+		final long recorded = Math.max(value, 0);
+		++this.counts[bucketOf(recorded)];
+		++this.count;
+		this.sum += recorded;
+		if (recorded < this.min) {
+			this.min = recorded;
+		}
+		if (recorded > this.max) {
+			this.max = recorded;
+		}
+	}
+
+	/**
+	 * Adds the values of another histogram to this one
+	 *
+	 * @param other The histogram to merge in this one
+	 */
+	public void merge(final LogHistogram other) {
+		for (int i = 0; i < BUCKETS; ++i) {
+			this.counts[i] += other.counts[i];
+		}
+		this.count += other.count;
+		this.sum += other.sum;
+		this.min = Math.min(this.min, other.min);
+		this.max = Math.max(this.max, other.max);
+	}
+
+	/**
+	 * Removes all values
+	 */
+	public void clear() {
+		Arrays.fill(this.counts, 0);
+		this.count = 0;
+		this.sum = 0;
+		this.min = Long.MAX_VALUE;
+		this.max = -1;
+	}
+
+	/**
+	 * @return The number of values
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * @param bucket The index of a bucket
+	 * @return The number of values in it
+	 */
+	public long getBucketCount(final int bucket) {
+		return this.counts[bucket];
+	}
+
+	/**
+	 * @return The mean of the values, NaN if there is none
+	 */
+	public double getMean() {
+		return this.count == 0 ? Double.NaN : (double) this.sum / this.count;
+	}
+
+	/**
+	 * @return The smallest value, -1 if there is none
+	 */
+	public long getMin() {
+		return this.count == 0 ? -1 : this.min;
+	}
+
+	/**
+	 * @return The biggest value, -1 if there is none
+	 */
+	public long getMax() {
+		return this.max;
+	}
+
+	/**
+	 * Get a percentile (nearest rank)
+	 *
+	 * @param percentile The percentile, from 0 to 100
+	 * @return The upper bound of the bucket under which the percentile of values are (at most the biggest value), -1 if there is none
+	 */
+	public long getPercentile(final double percentile) {
+		if (this.count == 0) {
+			return -1;
+		}
+		final long rank = Math.max((long) Math.ceil(percentile / 100 * this.count), 1);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			seen += this.counts[i];
+			if (seen >= rank) {
+				return Math.min(upperBound(i), this.max);
+			}
+		}
+		return this.max;
+	}
+
+	/**
+	 * Appends a one line summary: count, min, mean, p50, p90, p99 and max
+	 *
+	 * @param builder Where to append
+	 */
+	public void summary(final StringBuilder builder) {
+		builder.append("count=").append(this.count);
+		if (this.count == 0) {
+			return ;
+		}
+		builder.append(" min=").append(getMin()).append(" mean=").append(Math.round(getMean()));
+		builder.append(" p50=").append(getPercentile(50)).append(" p90=").append(getPercentile(90)).append(" p99=").append(getPercentile(99));
+		builder.append(" max=").append(this.max);
+	}
+
+	/**
+	 * Appends this histogram in a compact text form that {@link #mergeFrom(String)} can read back:
+	 * "sum min max" followed by the non empty buckets as "index:count", separated by spaces
+	 *
+	 * @param builder Where to append
+	 */
+	public void write(final StringBuilder builder) {
+		builder.append(this.sum).append(' ').append(this.min).append(' ').append(this.max);
+		for (int i = 0; i < BUCKETS; ++i) {
+			if (this.counts[i] != 0) {
+				builder.append(' ').append(i).append(':').append(this.counts[i]);
+			}
+		}
+	}
+
+	/**
+	 * Adds the values of a histogram written by {@link #write(StringBuilder)} to this one
+	 *
+	 * @param text The written histogram
+	 * @return Whether it could be read (if not, this histogram is unchanged)
+	 */
+	public boolean mergeFrom(final String text) {
+		final LogHistogram read = new LogHistogram();
+		try {
+			final String[] tokens = text.trim().split(" ");
+			if (tokens.length < 3) {
+				return false;
+			}
+			read.sum = Long.parseLong(tokens[0]);
+			read.min = Long.parseLong(tokens[1]);
+			read.max = Long.parseLong(tokens[2]);
+			for (int i = 3; i < tokens.length; ++i) {
+				final int colon = tokens[i].indexOf(':');
+				final long bucketCount = Long.parseLong(tokens[i].substring(colon + 1));
+				read.counts[Integer.parseInt(tokens[i].substring(0, colon))] += bucketCount;
+				read.count += bucketCount;
+			}
+		}
+		catch (NumberFormatException e) {
+			return false;
+		}
+		catch (IndexOutOfBoundsException e) {
+			return false;
+		}
+		merge(read);
+		return true;
+	}
+}
@@ -0,0 +1,120 @@
+package com.weemo.sdk.helper.stats;
+
+import com.weemo.sdk.WeemoStats;
+
+/**
+ * A value of {@link WeemoStats} that is sampled during calls.
+ *
+ * The ordinal of a metric is its index in the arrays of {@link StatsRing} and of the call averages:
+ * new metrics must be added at the end.
+ */
+public enum Metric {
+
+	/** Round trip time, in milliseconds */
+	LATENCY("ms") {
+		@Override public float get(final WeemoStats stats) { return stats.networkLatency; }
+	},
+
+	/** Audio packets lost by the network on their way to us, in percent */
+	AUDIO_RECEIVED_LOSS("%") {
+		@Override public float get(final WeemoStats stats) { return stats.audioReceivedPcktLoss; }
+	},
+
+	/** Audio packets we sent that were lost by the network, in percent */
+	AUDIO_SENT_LOSS("%") {
+		@Override public float get(final WeemoStats stats) { return stats.audioSentPcktLoss; }
+	},
+
+	/** Video packets lost by the network on their way to us, in percent */
+	VIDEO_RECEIVED_LOSS("%") {
+		@Override public float get(final WeemoStats stats) { return stats.videoReceivedPcktLoss; }
+	},
+
+	/** Video packets we sent that were lost by the network, in percent */
+	VIDEO_SENT_LOSS("%") {
+		@Override public float get(final WeemoStats stats) { return stats.videoSentPcktLoss; }
+	},
+
+	/** Jitter of the received video packets, in milliseconds */
+	VIDEO_RECEIVED_JITTER("ms") {
+		@Override public float get(final WeemoStats stats) { return stats.videoReceivedJitter; }
+	},
+
+	/** Received audio throughput, in kbps */
+	AUDIO_RECEIVED_THROUGHPUT("kbps") {
+		@Override public float get(final WeemoStats stats) { return stats.audioReceivedIPThroughput; }
+	},
+
+	/** Sent audio throughput, in kbps */
+	AUDIO_SENT_THROUGHPUT("kbps") {
+		@Override public float get(final WeemoStats stats) { return stats.audioSentIPThroughput; }
+	},
+
+	/** Received video throughput, in kbps */
+	VIDEO_RECEIVED_THROUGHPUT("kbps") {
+		@Override public float get(final WeemoStats stats) { return stats.videoReceivedIPThroughput; }
+	},
+
+	/** Sent video throughput, in kbps */
+	VIDEO_SENT_THROUGHPUT("kbps") {
+		@Override public float get(final WeemoStats stats) { return stats.videoSentIPThroughput; }
+	},
+
+	/** Received video frame rate, in frames per second */
+	VIDEO_RECEIVED_RATE("fps") {
+		@Override public float get(final WeemoStats stats) { return stats.videoReceivedRate; }
+	},
+
+	/** Sent video frame rate, in frames per second */
+	VIDEO_SENT_RATE("fps") {
+		@Override public float get(final WeemoStats stats) { return stats.videoRealSentRate; }
+	},
+
+	/** Width of the received video, in pixels */
+	VIDEO_RECEIVED_WIDTH("px") {
+		@Override public float get(final WeemoStats stats) { return stats.videoReceivedWidth; }
+	},
+
+	/** Height of the received video, in pixels */
+	VIDEO_RECEIVED_HEIGHT("px") {
+		@Override public float get(final WeemoStats stats) { return stats.videoReceivedHeight; }
+	},
+
+	/** Width of the sent video, in pixels */
+	VIDEO_SENT_WIDTH("px") {
+		@Override public float get(final WeemoStats stats) { return stats.videoSendWidth; }
+	},
+
+	/** Height of the sent video, in pixels */
+	VIDEO_SENT_HEIGHT("px") {
+		@Override public float get(final WeemoStats stats) { return stats.videoSendHeight; }
+	},
+
+	/** Load of the local CPU, in percent */
+	LOCAL_CPU("%") {
+		@Override public float get(final WeemoStats stats) { return stats.localCPU; }
+	};
+
+	/** All metrics, so that iterating does not copy {@link #values()} */
+	static final Metric[] ALL = values();
+
+	/** The unit of this metric, to display it */
+	public final String unit;
+
+	/**
+	 * Constructor
+	 *
+	 * @param unit The unit of this metric
+	 */
+	private Metric(final String unit) {
+		this.unit = unit;
+	}
+
+	/**
+	 * Reads this metric in a stats snapshot
+	 *
+	 * @param stats The snapshot
+	 * @return The value of this metric
+	 */
+	public abstract float get(WeemoStats stats);
+}
@@ -0,0 +1,112 @@
+package com.weemo.sdk.helper.stats;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import javax.annotation.CheckForNull;
+
+import android.util.Log;
+
+import com.weemo.sdk.WeemoCall;
+import com.weemo.sdk.WeemoStats;
+
+/**
+ * Reads the stats of a call through a <code>WeemoStats getStats()</code> method of its implementation class, if it has one.
+ *
+ * The method is looked up once per implementation class, so this source works with the SDK versions that give stats
+ * and does nothing (without failing) with the others.
+ */
+public class ReflectiveStatsSource implements StatsSource {
+
+	/** Log tag for Log.* */
+	private static final String LOGTAG = "ReflectiveStatsSource";
+
+	/** Arguments of getStats, shared so that invoking it does not allocate */
+	private static final Object[] NO_ARGS = new Object[0];
+
+	/** The class in which the method was looked up, null if it was not */
+	private @CheckForNull Class<?> lookedUp; // = null;
+
+	/** The getStats method of {@link #lookedUp}, null if it has none */
+	private @CheckForNull Method getStats; // = null;
+
+	/**
+	 * Get the getStats method of the implementation class of a call, looking it up if the class changed
+	 *
+	 * @param call The call
+	 * @return The method, null if the class has none
+	 */
+	private @CheckForNull Method lookUp(final WeemoCall call) {
+		if (call.getClass() != this.lookedUp) {
+			this.lookedUp = call.getClass();
+			this.getStats = null;
+			try {
+				final Method method = call.getClass().getMethod("getStats");
+				if (WeemoStats.class.isAssignableFrom(method.getReturnType())) {
+					this.getStats = method;
+				}
+			}
+			catch (NoSuchMethodException e) {
+				Log.i(LOGTAG, "This version of the SDK does not give call stats");
+			}
+		}
+		return this.getStats;
+	}
+
+	@Override
+	public boolean isAvailable(final WeemoCall call) {
+		return lookUp(call) != null;
+	}
+
+	@Override
+	public boolean read(final WeemoCall call, final WeemoStats stats) {
+		final Method method = lookUp(call);
+		if (method == null) {
+			return false;
+		}
+		try {
+			final WeemoStats current = (WeemoStats) method.invoke(call, NO_ARGS);
+			if (current == null) {
+				return false;
+			}
+			copy(current, stats);
+			return true;
+		}
+		catch (IllegalAccessException e) {
+			this.getStats = null;
+			Log.w(LOGTAG, "Could not read call stats", e);
+			return false;
+		}
+		catch (InvocationTargetException e) {
+			Log.w(LOGTAG, "Could not read call stats", e.getCause());
+			return false;
+		}
+	}
+
+	/**
+	 * Copies a stats snapshot
+	 *
+	 * @param from The snapshot to copy
+	 * @param to The snapshot to fill
+	 */
+	static void copy(final WeemoStats from, final WeemoStats to) {
+		to.localCPU = from.localCPU;
+		to.networkLatency = from.networkLatency;
+		to.audioSentIPThroughput = from.audioSentIPThroughput;
+		to.audioReceivedIPThroughput = from.audioReceivedIPThroughput;
+		to.audioSentPcktLoss = from.audioSentPcktLoss;
+		to.audioReceivedPcktLoss = from.audioReceivedPcktLoss;
+		to.videoSentIPThroughput = from.videoSentIPThroughput;
+		to.videoReceivedIPThroughput = from.videoReceivedIPThroughput;
+		to.videoRealSentRate = from.videoRealSentRate;
+		to.videoReceivedRate = from.videoReceivedRate;
+		to.videoSentPcktLoss = from.videoSentPcktLoss;
+		to.videoReceivedPcktLoss = from.videoReceivedPcktLoss;
+		to.videoReceivedJitter = from.videoReceivedJitter;
+		to.videoSendWidth = from.videoSendWidth;
+		to.videoSendHeight = from.videoSendHeight;
+		to.videoReceivedWidth = from.videoReceivedWidth;
+		to.videoReceivedHeight = from.videoReceivedHeight;
+		to.pfm = from.pfm;
+	}
+}
@@ -0,0 +1,204 @@
+package com.weemo.sdk.helper.stats;
+
+import javax.annotation.CheckForNull;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+/**
+ * In-call overlay that displays the latest stats of a call, and the latency and received loss of the samples of its ring.
+ *
+ * It is redrawn at each sample while it is visible.
+ * Texts are built in a reused StringBuilder, so drawing does not allocate.
+ */
+public class StatsOverlayView extends View implements CallStatsSampler.SampleListener {
+
+	/** Number of text lines */
+	private static final int LINES = 5;
+
+	/** Height of the graph, in text lines */
+	private static final int GRAPH_LINES = 3;
+
+	/** Latency displayed at the top of the graph, in milliseconds */
+	private static final float GRAPH_MAX_LATENCY = 500;
+
+	/** Loss displayed at the top of the graph, in percent */
+	private static final float GRAPH_MAX_LOSS = 20;
+
+	/** The sampler of the displayed call, null if it is not sampled */
+	private @CheckForNull CallStatsSampler sampler; // = null;
+
+	/** Paint of the texts */
+	private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+	/** Paint of the latency graph */
+	private final Paint latencyPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+	/** Paint of the loss graph */
+	private final Paint lossPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+	/** Text being drawn */
+	private final StringBuilder text = new StringBuilder();
+
+	/** Padding, in pixels */
+	private final float padding;
+
+	/**
+	 * Constructor
+	 *
+	 * @param context The view context
+	 * @param attrs XML attributes
+	 */
+	public StatsOverlayView(final Context context, final @CheckForNull AttributeSet attrs) {
+		super(context, attrs);
+		this.padding = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 6, getResources().getDisplayMetrics());
+		this.textPaint.setColor(0xFFFFFFFF);
+		this.textPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 11, getResources().getDisplayMetrics()));
+		this.textPaint.setTypeface(Typeface.MONOSPACE);
+		this.latencyPaint.setColor(0xFF33B5E5);
+		this.latencyPaint.setStrokeWidth(2);
+		this.lossPaint.setColor(0xFFFF4444);
+		this.lossPaint.setStrokeWidth(2);
+		setBackgroundColor(0x99000000);
+	}
+
+	/**
+	 * Displays the stats of a call
+	 *
+	 * @param sampler The sampler of the call, null if it is not sampled (yet or anymore)
+	 */
+	public void setSampler(final @CheckForNull CallStatsSampler sampler) {
+		if (this.sampler != null) {
+			this.sampler.removeSampleListener(this);
+		}
+		this.sampler = sampler;
+		if (sampler != null && getWindowToken() != null) {
+			sampler.addSampleListener(this);
+		}
+		invalidate();
+	}
+
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		if (this.sampler != null) {
+			this.sampler.addSampleListener(this);
+		}
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		if (this.sampler != null) {
+			this.sampler.removeSampleListener(this);
+		}
+		super.onDetachedFromWindow();
+	}
+
+	@Override
+	public void onSample(final CallStatsSampler updated) {
+		if (getVisibility() == VISIBLE) {
+			invalidate();
+		}
+	}
+
+	@Override
+	protected void onMeasure(final int widthMeasureSpec, final int heightMeasureSpec) {
+		final float lineHeight = this.textPaint.getFontSpacing();
+		final int width = (int) (this.textPaint.measureText("video in 1920x1080 30fps HD ") + 2 * this.padding);
+		final int height = (int) ((LINES + GRAPH_LINES) * lineHeight + 3 * this.padding);
+		setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+	}
+
+	/**
+	 * Draws the text being built and starts a new one
+	 *
+	 * @param canvas The canvas
+	 * @param line The index of the line
+	 */
+	private void drawLine(final Canvas canvas, final int line) {
+		final float lineHeight = this.textPaint.getFontSpacing();
+		canvas.drawText(this.text, 0, this.text.length(), this.padding, this.padding + (line + 1) * lineHeight - this.textPaint.descent(), this.textPaint);
+		this.text.setLength(0);
+	}
+
+	/**
+	 * Appends a value to the text being built
+	 *
+	 * @param value The value, NaN if it is unknown
+	 * @param unit The unit of the value
+	 */
+	private void append(final float value, final String unit) {
+		if (Float.isNaN(value)) {
+			this.text.append('-');
+		}
+		else {
+			this.text.append(Math.round(value));
+		}
+		this.text.append(unit);
+	}
+
+	@Override
+	protected void onDraw(final Canvas canvas) {
+		super.onDraw(canvas);
+
+		final CallStatsSampler current = this.sampler;
+		if (current == null || current.getRing().size() == 0) {
+			this.text.append("no stats");
+			drawLine(canvas, 0);
+			return ;
+		}
+		final StatsRing ring = current.getRing();
+
+		this.text.append("latency  ");
+		append(ring.latest(Metric.LATENCY), Metric.LATENCY.unit);
+		this.text.append(" jitter ");
+		append(ring.latest(Metric.VIDEO_RECEIVED_JITTER), Metric.VIDEO_RECEIVED_JITTER.unit);
+		drawLine(canvas, 0);
+
+		this.text.append("loss in  a ");
+		append(ring.latest(Metric.AUDIO_RECEIVED_LOSS), Metric.AUDIO_RECEIVED_LOSS.unit);
+		this.text.append(" v ");
+		append(ring.latest(Metric.VIDEO_RECEIVED_LOSS), Metric.VIDEO_RECEIVED_LOSS.unit);
+		drawLine(canvas, 1);
+
+		this.text.append("video in ");
+		append(ring.latest(Metric.VIDEO_RECEIVED_WIDTH), "x");
+		append(ring.latest(Metric.VIDEO_RECEIVED_HEIGHT), " ");
+		append(ring.latest(Metric.VIDEO_RECEIVED_RATE), Metric.VIDEO_RECEIVED_RATE.unit);
+		this.text.append(' ').append(VideoProfileController.getRequestedProfile(current.getCall().getCallId()).name());
+		drawLine(canvas, 2);
+
+		this.text.append("video out ");
+		append(ring.latest(Metric.VIDEO_SENT_WIDTH), "x");
+		append(ring.latest(Metric.VIDEO_SENT_HEIGHT), " ");
+		append(ring.latest(Metric.VIDEO_SENT_RATE), Metric.VIDEO_SENT_RATE.unit);
+		drawLine(canvas, 3);
+
+		this.text.append("kbps in ");
+		append(ring.latest(Metric.VIDEO_RECEIVED_THROUGHPUT) + ring.latest(Metric.AUDIO_RECEIVED_THROUGHPUT), "");
+		this.text.append(" cpu ");
+		append(ring.latest(Metric.LOCAL_CPU), Metric.LOCAL_CPU.unit);
+		drawLine(canvas, 4);
+
+		// Graph of the ring, the latest sample on the right
+		final float lineHeight = this.textPaint.getFontSpacing();
+		final float left = this.padding;
+		final float bottom = getHeight() - this.padding;
+		final float height = GRAPH_LINES * lineHeight;
+		final float step = (getWidth() - 2 * this.padding) / Math.max(ring.capacity() - 1, 1);
+		final float start = left + (ring.capacity() - ring.size()) * step;
+		for (int i = 1; i < ring.size(); ++i) {
+			final float x0 = start + (i - 1) * step;
+			final float x1 = start + i * step;
+			canvas.drawLine(x0, bottom - height * Math.min(ring.get(Metric.LATENCY, i - 1) / GRAPH_MAX_LATENCY, 1),
+					x1, bottom - height * Math.min(ring.get(Metric.LATENCY, i) / GRAPH_MAX_LATENCY, 1), this.latencyPaint);
+			canvas.drawLine(x0, bottom - height * Math.min(ring.get(Metric.VIDEO_RECEIVED_LOSS, i - 1) / GRAPH_MAX_LOSS, 1),
+					x1, bottom - height * Math.min(ring.get(Metric.VIDEO_RECEIVED_LOSS, i) / GRAPH_MAX_LOSS, 1), this.lossPaint);
+		}
+	}
+}
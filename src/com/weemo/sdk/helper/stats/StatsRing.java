@@ -0,0 +1,156 @@
+package com.weemo.sdk.helper.stats;
+
+import com.weemo.sdk.WeemoStats;
+
+/**
+ * Fixed-size time series of stats snapshots: the last {@link #capacity()} samples of each {@link Metric}.
+ *
+ * Samples are stored in primitive arrays allocated once, so adding a sample never allocates.
+ * Indexes go from 0 (the oldest sample kept) to {@link #size()} - 1 (the latest).
+ *
+ * This object must be used from the UI thread.
+ */
+public final class StatsRing {
+
+	/** Sample dates (from SystemClock.uptimeMillis()), by slot */
+	private final long[] times;
+
+	/** Sample values, by metric ordinal then slot */
+	private final float[][] values;
+
+	/** The slot of the next sample */
+	private int next; // = 0;
+
+	/** Number of samples kept */
+	private int size; // = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param capacity The number of samples kept
+	 */
+	public StatsRing(final int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		this.times = new long[capacity];
+		this.values = new float[Metric.ALL.length][capacity];
+	}
+
+	/**
+	 * Adds a sample, replacing the oldest one if the ring is full
+	 *
+	 * @param time The date of the sample (from SystemClock.uptimeMillis())
+	 * @param stats The sampled stats
+	 */
+	void add(final long time, final WeemoStats stats) {
+		this.times[this.next] = time;
+		for (int i = 0; i < Metric.ALL.length; ++i) {
+			this.values[i][this.next] = Metric.ALL[i].get(stats);
+		}
+		this.next = (this.next + 1) % this.times.length;
+		if (this.size < this.times.length) {
+			++this.size;
+		}
+	}
+
+	/**
+	 * Get the maximum number of samples kept
+	 *
+	 * @return The capacity of the ring
+	 */
+	public int capacity() {
+		return this.times.length;
+	}
+
+	/**
+	 * Get the number of samples kept
+	 *
+	 * @return The number of samples, at most {@link #capacity()}
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Get the slot of a sample
+	 *
+	 * @param index The index of the sample, 0 being the oldest
+	 * @return Its slot in the arrays
+	 */
+	private int slot(final int index) {
+		if (index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("Index " + index + ", size " + this.size);
+		}
+		return (this.next - this.size + index + this.times.length) % this.times.length;
+	}
+
+	/**
+	 * Get the date of a sample
+	 *
+	 * @param index The index of the sample, 0 being the oldest
+	 * @return Its date (from SystemClock.uptimeMillis())
+	 */
+	public long getTime(final int index) {
+		return this.times[slot(index)];
+	}
+
+	/**
+	 * Get a value of a sample
+	 *
+	 * @param metric The metric
+	 * @param index The index of the sample, 0 being the oldest
+	 * @return The value of the metric in this sample
+	 */
+	public float get(final Metric metric, final int index) {
+		return this.values[metric.ordinal()][slot(index)];
+	}
+
+	/**
+	 * Get the latest value of a metric
+	 *
+	 * @param metric The metric
+	 * @return The value of the metric in the latest sample, NaN if there is none
+	 */
+	public float latest(final Metric metric) {
+		return this.size == 0 ? Float.NaN : get(metric, this.size - 1);
+	}
+
+	/**
+	 * Get the average of a metric over the latest samples
+	 *
+	 * @param metric The metric
+	 * @param count The number of samples to average (all the samples kept if there are less)
+	 * @return The average, NaN if there is no sample
+	 */
+	public float average(final Metric metric, final int count) {
+		final int n = Math.min(count, this.size);
+		if (n <= 0) {
+			return Float.NaN;
+		}
+		float sum = 0;
+		for (int i = this.size - n; i < this.size; ++i) {
+			sum += get(metric, i);
+		}
+		return sum / n;
+	}
+
+	/**
+	 * Get the maximum of a metric over the latest samples
+	 *
+	 * @param metric The metric
+	 * @param count The number of samples to look at (all the samples kept if there are less)
+	 * @return The maximum, NaN if there is no sample
+	 */
+	public float max(final Metric metric, final int count) {
+		final int n = Math.min(count, this.size);
+		float max = Float.NaN;
+		for (int i = this.size - n; i < this.size; ++i) {
+			final float value = get(metric, i);
+			if (!(value <= max)) {
+				max = value;
+			}
+		}
+		return max;
+	}
+}
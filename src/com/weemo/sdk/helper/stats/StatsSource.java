@@ -0,0 +1,32 @@
+package com.weemo.sdk.helper.stats;
+
+import com.weemo.sdk.WeemoCall;
+import com.weemo.sdk.WeemoStats;
+
+/**
+ * Gives the current stats of a call.
+ *
+ * The SDK defines {@link WeemoStats} but, depending on its version, may not give a way to get them.
+ * The default source is a {@link ReflectiveStatsSource}; another one can be given to {@link CallStatsMonitor#setSource(StatsSource)}.
+ */
+public interface StatsSource {
+
+	/**
+	 * Tells whether the stats of a call can be read at all.
+	 * Called once when the call becomes active: if not, the call is not sampled.
+	 *
+	 * @param call The call
+	 * @return Whether {@link #read(WeemoCall, WeemoStats)} may succeed for this call
+	 */
+	public boolean isAvailable(WeemoCall call);
+
+	/**
+	 * Reads the current stats of a call.
+	 * Called on the UI thread at each sample, so it should not allocate.
+	 *
+	 * @param call The call
+	 * @param stats The snapshot to fill
+	 * @return Whether the stats were read (false if they are not available)
+	 */
+	public boolean read(WeemoCall call, WeemoStats stats);
+}
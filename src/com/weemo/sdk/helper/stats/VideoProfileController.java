@@ -0,0 +1,196 @@
+package com.weemo.sdk.helper.stats;
+
+import javax.annotation.CheckForNull;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.weemo.sdk.WeemoCall;
+import com.weemo.sdk.WeemoCall.VideoProfile;
+import com.weemo.sdk.helper.R;
+
+/**
+ * Switches the incoming video of active calls between HD and SD according to their stats.
+ *
+ * At each sample, the received loss, jitter and latency are averaged over the last {@link #WINDOW} samples.
+ * The call is degraded to SD when one of them reaches its high threshold, and restored to HD when all of them
+ * are back under their low thresholds. The gap between both thresholds is the hysteresis.
+ *
+ * A profile is kept for a minimum dwell time before switching again: {@link #DEGRADE_DWELL} in HD,
+ * so that a short burst of loss does not degrade the call, and {@link #RESTORE_DWELL} in SD, so that the network
+ * has time to recover. If the call is degraded again soon after being restored, the network could not sustain HD:
+ * the SD dwell time is doubled, up to {@link #MAX_RESTORE_DWELL}.
+ *
+ * While the {@link CpuGovernor} sheds the video of a call, the call is left alone.
+ *
+ * WeemoCall.getVideoInProfile() does not tell the profile in use (it always answers SD),
+ * so the profile last requested for a call is tracked here, and given by {@link #getRequestedProfile(int)}.
+ *
+ * It is enabled by R.bool.adaptive_video_profile.
+ *
+ * This object must be used from the UI thread.
+ */
+public final class VideoProfileController implements CallStatsMonitor.SamplerListener, CallStatsSampler.SampleListener {
+
+	/** Log tag for Log.* */
+	private static final String LOGTAG = "VideoProfileController";
+
+	/** Number of samples over which the stats are averaged */
+	public static final int WINDOW = 3;
+
+	/** Received loss, in percent, from which the call is degraded */
+	public static final float LOSS_HIGH = 5;
+
+	/** Received loss, in percent, under which the call may be restored */
+	public static final float LOSS_LOW = 1;
+
+	/** Received video jitter, in milliseconds, from which the call is degraded */
+	public static final float JITTER_HIGH = 60;
+
+	/** Received video jitter, in milliseconds, under which the call may be restored */
+	public static final float JITTER_LOW = 25;
+
+	/** Latency, in milliseconds, from which the call is degraded */
+	public static final float LATENCY_HIGH = 400;
+
+	/** Latency, in milliseconds, under which the call may be restored */
+	public static final float LATENCY_LOW = 200;
+
+	/** Minimum time, in milliseconds, in HD before degrading */
+	public static final long DEGRADE_DWELL = 5000;
+
+	/** Minimum time, in milliseconds, in SD before restoring (doubled after each failed restore) */
+	public static final long RESTORE_DWELL = 20000;
+
+	/** Maximum time, in milliseconds, in SD before restoring */
+	public static final long MAX_RESTORE_DWELL = 160000;
+
+	/** Time, in milliseconds, after a restore during which a degrade means the restore failed */
+	private static final long FAILED_RESTORE_WINDOW = 30000;
+
+	/**
+	 * The adaptation state of a call
+	 */
+	private static final class State {
+		/** The incoming profile last requested by this controller (calls start in HD) */
+		VideoProfile profile = VideoProfile.HD;
+
+		/** When the profile was last switched (from SystemClock.uptimeMillis()) */
+		long switched = SystemClock.uptimeMillis();
+
+		/** Current minimum time in SD before restoring */
+		long restoreDwell = RESTORE_DWELL;
+
+		/** Whether HD was restored less than {@link #FAILED_RESTORE_WINDOW} ago */
+		boolean restored; // = false;
+	}
+
+	/** The controller used by the application, created on first use */
+	private static @CheckForNull VideoProfileController instance; // = null;
+
+	/** Call ID => the adaptation state of the call */
+	private final SparseArray<State> states = new SparseArray<State>();
+
+	/**
+	 * Constructor
+	 */
+	private VideoProfileController() {}
+
+	/**
+	 * Starts adapting the incoming video of the calls that become active, if enabled
+	 *
+	 * @param context Any context of the application
+	 */
+	public static void install(final Context context) {
+		if (instance != null || !context.getResources().getBoolean(R.bool.adaptive_video_profile)) {
+			return ;
+		}
+		instance = new VideoProfileController();
+		CallStatsMonitor.instance(context).addSamplerListener(instance);
+	}
+
+	/**
+	 * Get the incoming profile last requested for a call: SD while the {@link CpuGovernor} sheds its video,
+	 * otherwise the profile requested by the controller
+	 *
+	 * @param callId The ID of the call
+	 * @return The requested profile, HD if none was requested
+	 */
+	public static VideoProfile getRequestedProfile(final int callId) {
+		if (CpuGovernor.getLevel(callId) != CpuGovernor.Level.NORMAL) {
+			return VideoProfile.SD;
+		}
+		final State state = instance == null ? null : instance.states.get(callId);
+		return state == null ? VideoProfile.HD : state.profile;
+	}
+
+	@Override
+	public void onSamplerStarted(final CallStatsSampler sampler) {
+		this.states.put(sampler.getCall().getCallId(), new State());
+		sampler.addSampleListener(this);
+	}
+
+	@Override
+	public void onSamplerStopped(final CallStatsSampler sampler) {
+		sampler.removeSampleListener(this);
+		this.states.remove(sampler.getCall().getCallId());
+	}
+
+	@Override
+	public void onSample(final CallStatsSampler sampler) {
+		final WeemoCall call = sampler.getCall();
+		final State state = this.states.get(call.getCallId());
+		final StatsRing ring = sampler.getRing();
+		if (state == null || !call.isReceivingVideo() || ring.size() < WINDOW) {
+			return ;
+		}
+
+		final float loss = Math.max(ring.average(Metric.VIDEO_RECEIVED_LOSS, WINDOW), ring.average(Metric.AUDIO_RECEIVED_LOSS, WINDOW));
+		final float jitter = ring.average(Metric.VIDEO_RECEIVED_JITTER, WINDOW);
+		final float latency = ring.average(Metric.LATENCY, WINDOW);
+
+		final long now = SystemClock.uptimeMillis();
+		if (CpuGovernor.getLevel(call.getCallId()) != CpuGovernor.Level.NORMAL) {
+			return ;
+		}
+		final long dwelt = now - state.switched;
+
+		if (state.profile == VideoProfile.HD) {
+			if (dwelt >= DEGRADE_DWELL && (loss >= LOSS_HIGH || jitter >= JITTER_HIGH || latency >= LATENCY_HIGH)) {
+				if (state.restored && dwelt < FAILED_RESTORE_WINDOW) {
+					state.restoreDwell = Math.min(state.restoreDwell * 2, MAX_RESTORE_DWELL);
+				}
+				state.restored = false;
+				switchProfile(call, state, VideoProfile.SD, now);
+				Log.i(LOGTAG, "Call " + call.getCallId() + " degraded to SD (loss " + loss + "%, jitter " + jitter + "ms, latency " + latency
+						+ "ms), restore in " + state.restoreDwell + "ms at least");
+			}
+			else if (state.restored && dwelt >= FAILED_RESTORE_WINDOW) {
+				// HD held: the network has recovered
+				state.restored = false;
+				state.restoreDwell = RESTORE_DWELL;
+			}
+		}
+		else if (dwelt >= state.restoreDwell && loss <= LOSS_LOW && jitter <= JITTER_LOW && latency <= LATENCY_LOW) {
+			switchProfile(call, state, VideoProfile.HD, now);
+			state.restored = true;
+			Log.i(LOGTAG, "Call " + call.getCallId() + " restored to HD");
+		}
+	}
+
+	/**
+	 * Switches the incoming profile of a call
+	 *
+	 * @param call The call
+	 * @param state The adaptation state of the call
+	 * @param profile The new profile
+	 * @param now The current date (from SystemClock.uptimeMillis())
+	 */
+	private static void switchProfile(final WeemoCall call, final State state, final VideoProfile profile, final long now) {
+		call.setInVideoProfile(profile);
+		state.profile = profile;
+		state.switched = now;
+	}
+}
@@ -0,0 +1,2 @@
+@com.weemo.sdk.EverythingIsNonNullByDefault
+package com.weemo.sdk.helper.stats;
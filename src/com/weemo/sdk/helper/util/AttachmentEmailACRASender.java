@@ -17,6 +17,10 @@ import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.net.Uri;
 
+import com.weemo.sdk.helper.event.EventJournal;
+import com.weemo.sdk.helper.event.HelperEventBus;
+import com.weemo.sdk.helper.stats.CallHistograms;
+
 /**
  * This is used by ACRA to generate a (crash) report
  */
@@ -83,7 +87,8 @@ public class AttachmentEmailACRASender implements ReportSender {
 	}
 
 	/**
-	 * Build the body of the mail containing the crash report
+	 * Build the body of the mail containing the crash report, followed by the journal of the last Weemo events, the event listeners report
+	 * and the call histograms
 	 *
 	 * @param errorContent The crash report data
 	 * @return The body of the mail
@@ -100,6 +105,25 @@ public class AttachmentEmailACRASender implements ReportSender {
 			builder.append(errorContent.get(field));
 			builder.append("\n\n");
 		}
+
+		builder.append("WEEMO_EVENTS:\n");
+		EventJournal.instance().dump(builder);
+		builder.append("\n");
+
+		builder.append("WEEMO_LISTENERS:\n");
+		HelperEventBus.instance().report(builder);
+		builder.append("\n");
+
+		builder.append("WEEMO_HISTOGRAMS:\n");
+		final CallHistograms histograms = CallHistograms.peek();
+		if (histograms != null) {
+			histograms.report(builder);
+		}
+		else {
+			builder.append("no call was monitored\n");
+		}
+		builder.append("\n");
+
 		return builder.toString();
 	}
 
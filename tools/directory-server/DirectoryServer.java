@@ -0,0 +1,384 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import javax.imageio.ImageIO;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stand-in for the directory service used by com.weemo.sdk.helper.directory.DirectorySync,
+ * to run by hand during development (no automated test uses it).
+ *
+ * Serves <code>GET /contacts?since=&lt;cursor&gt;</code> from an in-memory directory in which every change
+ * is stamped with a version. The cursor is the last version the client has seen,
+ * so a delta is every contact (or removal) stamped after it.
+ * Clients without cursor, or with a cursor older than the last compaction, get the whole directory ("reset").
+ * Responses are paged ({@link #PAGE_SIZE} changes, "more": true) and gzipped when the client accepts it.
+ *
+ * Also serves <code>GET /avatars/&lt;id&gt;</code> for com.weemo.sdk.helper.avatar.AvatarCache:
+ * a generated {@link #AVATAR_SIZE} pixels PNG for half of the contacts, 404 for the others (which then display their initials).
+ *
+ * Usage (any JDK):
+ * <pre>
+ *   javac DirectoryServer.java &amp;&amp; java DirectoryServer [port] [initial contacts]
+ * </pre>
+ * Then type commands on the standard input to change the directory:
+ * <pre>
+ *   add &lt;id&gt; &lt;name&gt;      adds or renames a contact
+ *   del &lt;id&gt;             removes a contact
+ *   churn &lt;n&gt;            changes n random contacts
+ *   compact              forgets removals, so that clients with an older cursor get a reset
+ *   stats                prints the directory and request counters
+ *   quit
+ * </pre>
+ * From the Android emulator, the server is at http://10.0.2.2:&lt;port&gt;/: point R.string.directory_sync_url and R.string.avatar_url at it (both are empty by default).
+ */
+public class DirectoryServer {
+
+	/** Maximum number of changes in a response */
+	static final int PAGE_SIZE = 5000;
+
+	/** Width and height of the generated avatars, larger than displayed so that clients have to downsample */
+	static final int AVATAR_SIZE = 512;
+
+	/**
+	 * A contact, or the removal of a contact
+	 */
+	static final class Entry {
+		/** User ID */
+		final String id;
+
+		/** Display name, null if the contact was removed */
+		final String name;
+
+		/** Version of the last change of this contact */
+		final long version;
+
+		/**
+		 * Constructor
+		 *
+		 * @param id User ID
+		 * @param name Display name, null if the contact was removed
+		 * @param version Version of the change
+		 */
+		Entry(final String id, final String name, final long version) {
+			this.id = id;
+			this.name = name;
+			this.version = version;
+		}
+	}
+
+	/** User ID => last change */
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	/** Version of the last change */
+	private long version; // = 0;
+
+	/** Cursors up to this version cannot get a delta anymore, because removals were forgotten */
+	private long compactedVersion; // = 0;
+
+	/** Number of requests answered with a delta */
+	private int deltaCount; // = 0;
+
+	/** Number of requests answered with the whole directory */
+	private int resetCount; // = 0;
+
+	/** Random generator of the churn */
+	private final Random random = new Random(42);
+
+	/**
+	 * Adds, renames or removes a contact
+	 *
+	 * @param id User ID
+	 * @param name Display name, null to remove the contact
+	 */
+	synchronized void put(final String id, final String name) {
+		this.entries.put(id, new Entry(id, name, ++this.version));
+	}
+
+	/**
+	 * Changes random contacts: mostly renames, some additions and removals
+	 *
+	 * @param count The number of changes
+	 */
+	synchronized void churn(final int count) {
+		final List<String> ids = new ArrayList<String>(this.entries.keySet());
+		for (int i = 0; i < count; ++i) {
+			final int kind = this.random.nextInt(10);
+			if (kind < 2 || ids.isEmpty()) {
+				put(String.format("contact%06d", Integer.valueOf(this.random.nextInt(1000000))), "New contact " + this.version);
+			}
+			else {
+				final String id = ids.get(this.random.nextInt(ids.size()));
+				put(id, kind < 3 ? null : "Renamed " + id + " v" + (this.version + 1));
+			}
+		}
+	}
+
+	/**
+	 * Forgets removals
+	 */
+	synchronized void compact() {
+		final List<String> removed = new ArrayList<String>();
+		for (final Entry entry : this.entries.values()) {
+			if (entry.name == null) {
+				removed.add(entry.id);
+			}
+		}
+		this.entries.keySet().removeAll(removed);
+		this.compactedVersion = this.version;
+		System.out.println("Forgot " + removed.size() + " removals");
+	}
+
+	/**
+	 * Computes a response
+	 *
+	 * @param since The cursor sent by the client, null if none
+	 * @return The JSON response
+	 */
+	synchronized String respond(final String since) {
+		long from = -1;
+		if (since != null) {
+			try {
+				from = Long.parseLong(since);
+			}
+			catch (NumberFormatException e) {
+				from = -1;
+			}
+		}
+		final boolean reset = from < this.compactedVersion || from > this.version;
+
+		final List<Entry> changes = new ArrayList<Entry>();
+		for (final Entry entry : this.entries.values()) {
+			if (reset ? entry.name != null : entry.version > from) {
+				changes.add(entry);
+			}
+		}
+		Collections.sort(changes, new Comparator<Entry>() {
+			@Override public int compare(final Entry lhs, final Entry rhs) {
+				return lhs.version < rhs.version ? -1 : (lhs.version == rhs.version ? 0 : 1);
+			}
+		});
+
+		// A reset cannot be paged by version (all contacts may have old versions), so it is sent at once
+		final boolean more = !reset && changes.size() > PAGE_SIZE;
+		final List<Entry> page = more ? changes.subList(0, PAGE_SIZE) : changes;
+		final long cursor = more ? page.get(page.size() - 1).version : this.version;
+
+		if (reset) {
+			++this.resetCount;
+		}
+		else {
+			++this.deltaCount;
+		}
+
+		final StringBuilder json = new StringBuilder(64 + page.size() * 48);
+		json.append("{\"cursor\":\"").append(cursor).append("\",\"reset\":").append(reset).append(",\"more\":").append(more).append(",\"changes\":[");
+		for (int i = 0; i < page.size(); ++i) {
+			final Entry entry = page.get(i);
+			json.append(i == 0 ? "" : ",").append("{\"id\":");
+			quote(json, entry.id);
+			if (entry.name == null) {
+				json.append(",\"deleted\":true}");
+			}
+			else {
+				json.append(",\"name\":");
+				quote(json, entry.name);
+				json.append('}');
+			}
+		}
+		json.append("]}");
+
+		System.out.println("since=" + since + ": " + (reset ? "reset, " : "") + page.size() + " changes, cursor " + cursor + (more ? ", more" : ""));
+		return json.toString();
+	}
+
+	/**
+	 * Generates the avatar of a contact: concentric rings, colored from the user ID
+	 *
+	 * @param id The user ID
+	 * @return The PNG image, or null if this contact has no avatar
+	 * @throws IOException If the image could not be encoded
+	 */
+	synchronized byte[] avatar(final String id) throws IOException {
+		final Entry entry = this.entries.get(id);
+		if (entry == null || entry.name == null || (id.hashCode() & 1) != 0) {
+			return null;
+		}
+		final BufferedImage image = new BufferedImage(AVATAR_SIZE, AVATAR_SIZE, BufferedImage.TYPE_INT_RGB);
+		final Graphics2D graphics = image.createGraphics();
+		graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		final Random colors = new Random(id.hashCode());
+		for (int ring = 0; ring < 8; ++ring) {
+			final int inset = ring * AVATAR_SIZE / 16;
+			graphics.setColor(new Color(colors.nextInt(0x1000000)));
+			graphics.fillOval(inset, inset, AVATAR_SIZE - 2 * inset, AVATAR_SIZE - 2 * inset);
+		}
+		graphics.dispose();
+		final ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", png);
+		return png.toByteArray();
+	}
+
+	/**
+	 * Appends a JSON string
+	 *
+	 * @param json Where to append
+	 * @param value The string
+	 */
+	static void quote(final StringBuilder json, final String value) {
+		json.append('"');
+		for (int i = 0; i < value.length(); ++i) {
+			final char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			}
+			else if (c < 0x20) {
+				json.append(String.format("\\u%04x", Integer.valueOf(c)));
+			}
+			else {
+				json.append(c);
+			}
+		}
+		json.append('"');
+	}
+
+	/**
+	 * Get the value of a query parameter
+	 *
+	 * @param query The query string, may be null
+	 * @param name The parameter name
+	 * @return The decoded value, or null if absent
+	 * @throws IOException Never (UTF-8 is always supported)
+	 */
+	static String parameter(final String query, final String name) throws IOException {
+		if (query == null) {
+			return null;
+		}
+		for (final String pair : query.split("&")) {
+			final int equals = pair.indexOf('=');
+			if (equals != -1 && pair.substring(0, equals).equals(name)) {
+				return URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Starts the server and reads commands
+	 *
+	 * @param args [port] [initial contacts]
+	 * @throws IOException If the server could not start
+	 */
+	public static void main(final String[] args) throws IOException {
+		final int port = args.length > 0 ? Integer.parseInt(args[0]) : 8099;
+		final int initial = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+		System.setProperty("java.awt.headless", "true");
+
+		final DirectoryServer directory = new DirectoryServer();
+		for (int i = 0; i < initial; ++i) {
+			directory.put(String.format("contact%06d", Integer.valueOf(i)), "Contact " + i);
+		}
+
+		final HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext("/contacts", new HttpHandler() {
+			@Override public void handle(final HttpExchange exchange) throws IOException {
+				try {
+					final byte[] body = directory.respond(parameter(exchange.getRequestURI().getRawQuery(), "since")).getBytes("UTF-8");
+					final String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+					final boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+					exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+					if (gzip) {
+						exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+					}
+					exchange.sendResponseHeaders(200, 0);
+					final OutputStream output = gzip ? new GZIPOutputStream(exchange.getResponseBody()) : exchange.getResponseBody();
+					try {
+						output.write(body);
+					}
+					finally {
+						output.close();
+					}
+				}
+				finally {
+					exchange.close();
+				}
+			}
+		});
+		server.createContext("/avatars/", new HttpHandler() {
+			@Override public void handle(final HttpExchange exchange) throws IOException {
+				try {
+					final String path = exchange.getRequestURI().getRawPath();
+					final byte[] png = directory.avatar(URLDecoder.decode(path.substring(path.lastIndexOf('/') + 1), "UTF-8"));
+					if (png == null) {
+						exchange.sendResponseHeaders(404, -1);
+						return ;
+					}
+					exchange.getResponseHeaders().set("Content-Type", "image/png");
+					exchange.sendResponseHeaders(200, png.length);
+					exchange.getResponseBody().write(png);
+				}
+				finally {
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+		System.out.println("Serving " + initial + " contacts on http://localhost:" + port + "/contacts");
+
+		final BufferedReader input = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+		final Writer out = new OutputStreamWriter(System.out, "UTF-8");
+		String line;
+		while ((line = input.readLine()) != null) {
+			final String[] words = line.trim().split("\\s+", 3);
+			if (words[0].equals("add") && words.length >= 2) {
+				directory.put(words[1], words.length == 3 ? words[2] : words[1]);
+			}
+			else if (words[0].equals("del") && words.length == 2) {
+				directory.put(words[1], null);
+			}
+			else if (words[0].equals("churn") && words.length == 2) {
+				directory.churn(Integer.parseInt(words[1]));
+			}
+			else if (words[0].equals("compact")) {
+				directory.compact();
+			}
+			else if (words[0].equals("stats")) {
+				synchronized (directory) {
+					out.write("version " + directory.version + ", " + directory.entries.size() + " entries, "
+							+ directory.deltaCount + " delta responses, " + directory.resetCount + " reset responses\n");
+				}
+				out.flush();
+			}
+			else if (words[0].equals("quit")) {
+				break ;
+			}
+			else if (words[0].length() > 0) {
+				out.write("Commands: add <id> <name> | del <id> | churn <n> | compact | stats | quit\n");
+				out.flush();
+			}
+		}
+		server.stop(0);
+	}
+}
@@ -0,0 +1,375 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads the call recordings written by com.weemo.sdk.helper.stats.CallQualityRecorder, and prints,
+ * for each call and for all of them, the percentiles of latency, loss, jitter, frame rate and resolution,
+ * and the timeline of call events.
+ *
+ * The file format is documented in CallQualityRecorder. Metrics are found by name in the file header,
+ * so recordings of other versions of the application can be read as long as the format version is the same.
+ *
+ * Usage (any JDK):
+ * <pre>
+ *   javac QualityAnalyzer.java &amp;&amp; java QualityAnalyzer [-events] &lt;file.wcq or dir&gt;...
+ * </pre>
+ * To get the recordings of a device:
+ * <pre>
+ *   adb pull /sdcard/Android/data/com.weemo.sdk.helper/files/quality
+ * </pre>
+ */
+public class QualityAnalyzer {
+
+	/** Magic number at the start of a recording ("WCQ1") */
+	static final int MAGIC = 0x57435131;
+
+	/** Version of the file format */
+	static final int VERSION = 1;
+
+	/** Record type: a stats sample */
+	static final int RECORD_SAMPLE = 0;
+
+	/** Record type: an event */
+	static final int RECORD_EVENT = 1;
+
+	/** Names of the event codes, by code */
+	static final String[] EVENTS = {
+		"?", "created", "proceeding", "ringing", "active", "paused", "ended",
+		"video in started", "video in stopped", "profile HD", "profile SD"
+	};
+
+	/** Percentiles that are printed */
+	static final double[] PERCENTILES = { 50, 90, 95, 99 };
+
+	/**
+	 * A metric printed by the analyzer
+	 */
+	static final class Column {
+		/** Label of the metric */
+		final String label;
+
+		/** Names of the recorded metrics of which this column is the maximum */
+		final String[] metrics;
+
+		/**
+		 * Constructor
+		 *
+		 * @param label Label of the metric
+		 * @param metrics Names of the recorded metrics of which this column is the maximum
+		 */
+		Column(final String label, final String... metrics) {
+			this.label = label;
+			this.metrics = metrics;
+		}
+	}
+
+	/** The printed metrics */
+	static final Column[] COLUMNS = {
+		new Column("latency (ms)", "LATENCY"),
+		new Column("received loss (%)", "AUDIO_RECEIVED_LOSS", "VIDEO_RECEIVED_LOSS"),
+		new Column("sent loss (%)", "AUDIO_SENT_LOSS", "VIDEO_SENT_LOSS"),
+		new Column("video jitter (ms)", "VIDEO_RECEIVED_JITTER"),
+		new Column("video in (fps)", "VIDEO_RECEIVED_RATE"),
+		new Column("video in height (px)", "VIDEO_RECEIVED_HEIGHT"),
+		new Column("video out height (px)", "VIDEO_SENT_HEIGHT"),
+		new Column("local cpu (%)", "LOCAL_CPU")
+	};
+
+	/**
+	 * Growable array of doubles
+	 */
+	static final class Values {
+		/** The values */
+		double[] values = new double[256];
+
+		/** Number of values */
+		int size; // = 0;
+
+		/**
+		 * Adds a value
+		 *
+		 * @param value The value to add
+		 */
+		void add(final double value) {
+			if (this.size == this.values.length) {
+				this.values = Arrays.copyOf(this.values, this.size * 2);
+			}
+			this.values[this.size++] = value;
+		}
+
+		/**
+		 * Adds all the values of another array
+		 *
+		 * @param other The values to add
+		 */
+		void addAll(final Values other) {
+			for (int i = 0; i < other.size; ++i) {
+				add(other.values[i]);
+			}
+		}
+
+		/**
+		 * Get a percentile (nearest rank)
+		 *
+		 * @param sorted The values, sorted
+		 * @param percentile The percentile, from 0 to 100
+		 * @return The value under which the percentile of values are
+		 */
+		static double percentile(final double[] sorted, final double percentile) {
+			final int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+			return sorted[Math.max(rank - 1, 0)];
+		}
+	}
+
+	/**
+	 * A decoded recording
+	 */
+	static final class Recording {
+		/** The file */
+		File file;
+
+		/** Start of the call */
+		long start;
+
+		/** Call ID */
+		int callId;
+
+		/** Display name of the contact */
+		String displayName;
+
+		/** Duration of the recording, in milliseconds */
+		long duration;
+
+		/** Number of samples */
+		int samples;
+
+		/** Values of each column, by column index */
+		final Values[] columns = new Values[COLUMNS.length];
+
+		/** Events, as printable lines */
+		final List<String> events = new ArrayList<String>();
+	}
+
+	/**
+	 * Reads a recording
+	 *
+	 * @param file The file
+	 * @return The decoded recording
+	 * @throws IOException If the file could not be read or is not a recording
+	 */
+	static Recording read(final File file) throws IOException {
+		final Recording recording = new Recording();
+		recording.file = file;
+		for (int c = 0; c < COLUMNS.length; ++c) {
+			recording.columns[c] = new Values();
+		}
+
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a call recording");
+			}
+			final int version = in.readShort();
+			if (version != VERSION) {
+				throw new IOException("Unsupported version " + version);
+			}
+			recording.start = in.readLong();
+			recording.callId = in.readInt();
+			recording.displayName = in.readUTF();
+
+			final int count = in.readUnsignedByte();
+			final String[] names = new String[count];
+			final int[] scales = new int[count];
+			for (int i = 0; i < count; ++i) {
+				names[i] = in.readUTF();
+				scales[i] = in.readUnsignedByte();
+			}
+
+			// Metric index => indexes of the columns it belongs to
+			final int[][] columnsOf = new int[count][];
+			for (int i = 0; i < count; ++i) {
+				final List<Integer> columns = new ArrayList<Integer>();
+				for (int c = 0; c < COLUMNS.length; ++c) {
+					if (Arrays.asList(COLUMNS[c].metrics).contains(names[i])) {
+						columns.add(Integer.valueOf(c));
+					}
+				}
+				columnsOf[i] = new int[columns.size()];
+				for (int j = 0; j < columns.size(); ++j) {
+					columnsOf[i][j] = columns.get(j).intValue();
+				}
+			}
+
+			final int[] values = new int[count];
+			final int[] deltas = new int[count];
+			final double[] row = new double[COLUMNS.length];
+			long time = 0;
+			while (true) {
+				final int type;
+				try {
+					type = in.readUnsignedByte();
+				}
+				catch (EOFException e) {
+					break ;
+				}
+				try {
+					time += in.readUnsignedShort();
+					for (int i = 0; i < count; ++i) {
+						deltas[i] = in.readShort();
+					}
+				}
+				catch (EOFException e) {
+					// The application was killed while writing
+					break ;
+				}
+
+				if (type == RECORD_SAMPLE) {
+					Arrays.fill(row, Double.NaN);
+					for (int i = 0; i < count; ++i) {
+						values[i] += deltas[i];
+						final double value = (double) values[i] / scales[i];
+						for (final int c : columnsOf[i]) {
+							if (Double.isNaN(row[c]) || value > row[c]) {
+								row[c] = value;
+							}
+						}
+					}
+					for (int c = 0; c < COLUMNS.length; ++c) {
+						if (!Double.isNaN(row[c])) {
+							recording.columns[c].add(row[c]);
+						}
+					}
+					++recording.samples;
+				}
+				else if (type == RECORD_EVENT) {
+					final int code = deltas[0];
+					recording.events.add(String.format(Locale.US, "%8.1fs  %s", time / 1000.0, code > 0 && code < EVENTS.length ? EVENTS[code] : "event " + code));
+				}
+			}
+			recording.duration = time;
+		}
+		finally {
+			in.close();
+		}
+		return recording;
+	}
+
+	/**
+	 * Prints the percentiles of each column
+	 *
+	 * @param out Where to print
+	 * @param columns The values of each column
+	 */
+	static void printPercentiles(final PrintStream out, final Values[] columns) {
+		out.printf(Locale.US, "  %-22s", "");
+		for (final double percentile : PERCENTILES) {
+			out.printf(Locale.US, "%9s", "p" + (int) percentile);
+		}
+		out.printf(Locale.US, "%9s%9s%n", "max", "samples");
+		for (int c = 0; c < COLUMNS.length; ++c) {
+			if (columns[c].size == 0) {
+				continue ;
+			}
+			final double[] sorted = Arrays.copyOf(columns[c].values, columns[c].size);
+			Arrays.sort(sorted);
+			out.printf(Locale.US, "  %-22s", COLUMNS[c].label);
+			for (final double percentile : PERCENTILES) {
+				out.printf(Locale.US, "%9.1f", Double.valueOf(Values.percentile(sorted, percentile)));
+			}
+			out.printf(Locale.US, "%9.1f%9d%n", Double.valueOf(sorted[sorted.length - 1]), Integer.valueOf(sorted.length));
+		}
+	}
+
+	/**
+	 * Adds the recordings of a file or directory to a list
+	 *
+	 * @param file The file or directory
+	 * @param files The list of recordings
+	 */
+	static void collect(final File file, final List<File> files) {
+		if (file.isDirectory()) {
+			final File[] children = file.listFiles();
+			if (children != null) {
+				Arrays.sort(children);
+				for (final File child : children) {
+					if (child.getName().endsWith(".wcq")) {
+						files.add(child);
+					}
+				}
+			}
+		}
+		else {
+			files.add(file);
+		}
+	}
+
+	/**
+	 * Entry point
+	 *
+	 * @param args [-events] files or directories
+	 */
+	public static void main(final String[] args) {
+		boolean printEvents = false;
+		final List<File> files = new ArrayList<File>();
+		for (final String arg : args) {
+			if ("-events".equals(arg)) {
+				printEvents = true;
+			}
+			else {
+				collect(new File(arg), files);
+			}
+		}
+		if (files.isEmpty()) {
+			System.err.println("Usage: java QualityAnalyzer [-events] <file.wcq or dir>...");
+			System.exit(2);
+		}
+
+		final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+		final Values[] all = new Values[COLUMNS.length];
+		for (int c = 0; c < COLUMNS.length; ++c) {
+			all[c] = new Values();
+		}
+		int read = 0;
+		for (final File file : files) {
+			final Recording recording;
+			try {
+				recording = read(file);
+			}
+			catch (IOException e) {
+				System.err.println(file + ": " + e.getMessage());
+				continue ;
+			}
+			++read;
+
+			System.out.printf(Locale.US, "%s: call %d with \"%s\", %s, %.0fs, %d samples%n", file.getName(), Integer.valueOf(recording.callId),
+					recording.displayName, dateFormat.format(new Date(recording.start)), Double.valueOf(recording.duration / 1000.0), Integer.valueOf(recording.samples));
+			if (printEvents) {
+				for (final String event : recording.events) {
+					System.out.println("  " + event);
+				}
+			}
+			printPercentiles(System.out, recording.columns);
+			System.out.println();
+
+			for (int c = 0; c < COLUMNS.length; ++c) {
+				all[c].addAll(recording.columns[c]);
+			}
+		}
+
+		if (read > 1) {
+			System.out.println("All " + read + " calls:");
+			printPercentiles(System.out, all);
+		}
+	}
+}